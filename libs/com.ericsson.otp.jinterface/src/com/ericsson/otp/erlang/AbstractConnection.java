@@ -21,6 +21,7 @@ package com.ericsson.otp.erlang;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.Random;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * Maintains a connection between a Java process and a remote Erlang, Java or C node. The
@@ -58,6 +59,7 @@ public abstract class AbstractConnection extends Thread {
 
     protected static final byte passThrough = (byte) 0x70;
     protected static final byte version = (byte) 0x83;
+    protected static final byte distHeader = (byte) 0x44;
 
     // Erlang message header tags
     protected static final int linkTag = 1;
@@ -73,6 +75,10 @@ public abstract class AbstractConnection extends Thread {
     protected static final int regSendTTTag = 16;
     protected static final int exit2TTTag = 18;
 
+    private static final byte[] tock = {
+            0, 0, 0, 0
+    };
+
     // MD5 challenge messsage tags
     protected static final int ChallengeReply = 'r';
     protected static final int ChallengeAck = 'a';
@@ -102,6 +108,27 @@ public abstract class AbstractConnection extends Thread {
 
     private int flags;
 
+    // atoms the peer put in the distribution header atom cache, receiver side only
+    private OtpErlangAtom[] atomCache;
+
+    // messages up to this size are copied into one buffer and written at once
+    protected static final int maxGatherLen = 64 * 1024;
+
+    private volatile boolean gatheringWrites = true;
+    private volatile long coalesceNanos;
+
+    // reused by do_send when gathering writes
+    private OtpOutputStream gatherBuf;
+
+    // write coalescing state, guarded by coalesceLock
+    private final Object coalesceLock = new Object();
+    private OtpOutputStream pendingBuf = new OtpOutputStream();
+    private OtpOutputStream spareBuf = new OtpOutputStream();
+    private boolean batchOpen;
+    private long batchNo;
+    private long flushedBatchNo = -1;
+    private IOException coalesceError;
+
     static {
         // trace this connection?
         final String trace = System.getProperties().getProperty("OtpConnection.trace");
@@ -227,10 +254,8 @@ public abstract class AbstractConnection extends Thread {
         @SuppressWarnings("resource")
         final OtpOutputStream header = new OtpOutputStream(AbstractConnection.headerLen);
 
-        // preamble: 4 byte length + "passthrough" tag + version
-        header.write4BE(0); // reserve space for length
-        header.write1(AbstractConnection.passThrough);
-        header.write1(AbstractConnection.version);
+        // preamble: 4 byte length + "passthrough" tag or distribution header
+        final boolean distHdr = writePreamble(header);
 
         // header info
         header.write_tuple_head(4);
@@ -244,7 +269,9 @@ public abstract class AbstractConnection extends Thread {
         header.write_atom(dest);
 
         // version for payload
-        header.write1(AbstractConnection.version);
+        if (!distHdr) {
+            header.write1(AbstractConnection.version);
+        }
 
         // fix up length in preamble
         header.poke4BE(0, header.size() + payload.size() - 4);
@@ -271,10 +298,8 @@ public abstract class AbstractConnection extends Thread {
         @SuppressWarnings("resource")
         final OtpOutputStream header = new OtpOutputStream(AbstractConnection.headerLen);
 
-        // preamble: 4 byte length + "passthrough" tag + version
-        header.write4BE(0); // reserve space for length
-        header.write1(AbstractConnection.passThrough);
-        header.write1(AbstractConnection.version);
+        // preamble: 4 byte length + "passthrough" tag or distribution header
+        final boolean distHdr = writePreamble(header);
 
         // header info
         header.write_tuple_head(3);
@@ -287,7 +312,9 @@ public abstract class AbstractConnection extends Thread {
         header.write_any(dest);
 
         // version for payload
-        header.write1(AbstractConnection.version);
+        if (!distHdr) {
+            header.write1(AbstractConnection.version);
+        }
 
         // fix up length in preamble
         header.poke4BE(0, header.size() + payload.size() - 4);
@@ -306,10 +333,8 @@ public abstract class AbstractConnection extends Thread {
             final OtpOutputStream header = new OtpOutputStream(
                     AbstractConnection.headerLen);
 
-            // preamble: 4 byte length + "passthrough" tag + version
-            header.write4BE(0); // reserve space for length
-            header.write1(AbstractConnection.passThrough);
-            header.write1(AbstractConnection.version);
+            // preamble: 4 byte length + "passthrough" tag or distribution header
+            final boolean distHdr = writePreamble(header);
 
             header.write_tuple_head(4);
             header.write_long(AbstractConnection.regSendTag);
@@ -319,7 +344,9 @@ public abstract class AbstractConnection extends Thread {
             header.write_atom("auth");
 
             // version for payload
-            header.write1(AbstractConnection.version);
+            if (!distHdr) {
+                header.write1(AbstractConnection.version);
+            }
 
             // the payload
 
@@ -376,10 +403,8 @@ public abstract class AbstractConnection extends Thread {
         @SuppressWarnings("resource")
         final OtpOutputStream header = new OtpOutputStream(AbstractConnection.headerLen);
 
-        // preamble: 4 byte length + "passthrough" tag
-        header.write4BE(0); // reserve space for length
-        header.write1(AbstractConnection.passThrough);
-        header.write1(AbstractConnection.version);
+        // preamble: 4 byte length + "passthrough" tag or distribution header
+        writePreamble(header);
 
         // header
         header.write_tuple_head(3);
@@ -411,10 +436,8 @@ public abstract class AbstractConnection extends Thread {
         @SuppressWarnings("resource")
         final OtpOutputStream header = new OtpOutputStream(AbstractConnection.headerLen);
 
-        // preamble: 4 byte length + "passthrough" tag
-        header.write4BE(0); // reserve space for length
-        header.write1(AbstractConnection.passThrough);
-        header.write1(AbstractConnection.version);
+        // preamble: 4 byte length + "passthrough" tag or distribution header
+        writePreamble(header);
 
         // header
         header.write_tuple_head(3);
@@ -458,10 +481,8 @@ public abstract class AbstractConnection extends Thread {
         @SuppressWarnings("resource")
         final OtpOutputStream header = new OtpOutputStream(AbstractConnection.headerLen);
 
-        // preamble: 4 byte length + "passthrough" tag
-        header.write4BE(0); // reserve space for length
-        header.write1(AbstractConnection.passThrough);
-        header.write1(AbstractConnection.version);
+        // preamble: 4 byte length + "passthrough" tag or distribution header
+        writePreamble(header);
 
         // header
         header.write_tuple_head(4);
@@ -486,11 +507,7 @@ public abstract class AbstractConnection extends Thread {
 
         final byte[] lbuf = new byte[4];
         OtpInputStream ibuf;
-        OtpErlangObject traceobj;
         int len;
-        final byte[] tock = {
-                0, 0, 0, 0
-        };
 
         try {
             receive_loop:
@@ -502,220 +519,370 @@ public abstract class AbstractConnection extends Thread {
                     // read 4 bytes - get length of incoming packet
                     // socket.getInputStream().read(lbuf);
                     readSock(socket, lbuf);
-                    ibuf = new OtpInputStream(lbuf, flags);
-                    len = ibuf.read4BE();
+                    len = (lbuf[0] << 24 & 0xff000000) + (lbuf[1] << 16 & 0xff0000)
+                            + (lbuf[2] << 8 & 0xff00) + (lbuf[3] & 0xff);
 
                     // received tick? send tock!
                     if (len == 0) {
-                        synchronized (this) {
-                            final OutputStream out = socket.getOutputStream();
-                            out.write(tock);
-                            out.flush();
-                        }
+                        sendTock();
                     }
 
                 } while (len == 0); // tick_loop
 
                 // got a real message (maybe) - read len bytes
-                final byte[] tmpbuf = new byte[len];
+                final byte[] tmpbuf = OtpBufferPool.acquire(len);
                 // i = socket.getInputStream().read(tmpbuf);
-                readSock(socket, tmpbuf);
-                ibuf.close();
-                ibuf = new OtpInputStream(tmpbuf, flags);
+                readSock(socket, tmpbuf, len);
+                ibuf = new OtpInputStream(tmpbuf, 0, len, flags);
+                ibuf.pooled = true;
 
-                if (ibuf.read1() != AbstractConnection.passThrough) {
+                if (!processMessage(ibuf)) {
                     break receive_loop;
                 }
+            }
 
-                // got a real message (really)
-                OtpErlangObject reason = null;
-                OtpErlangAtom cookie = null;
-                OtpErlangObject tmp = null;
-                OtpErlangTuple head = null;
-                OtpErlangAtom toName;
-                OtpErlangPid to;
-                OtpErlangPid from;
-                int tag;
-
-                // decode the header
-                tmp = ibuf.read_any();
-                if (!(tmp instanceof OtpErlangTuple)) {
-                    break receive_loop;
-                }
+            // this section reachable only with break
+            // we have received garbage from peer
+            deliver(new OtpErlangExit("Remote is sending garbage"));
 
-                head = (OtpErlangTuple) tmp;
-                if (!(head.elementAt(0) instanceof OtpErlangLong)) {
-                    break receive_loop;
-                }
+        } // try
 
-                // lets see what kind of message this is
-                tag = (int) ((OtpErlangLong) head.elementAt(0)).longValue();
-
-                switch (tag) {
-                case AbstractConnection.sendTag: // { SEND, Cookie, ToPid }
-                case AbstractConnection.sendTTTag: // { SEND, Cookie, ToPid, TraceToken }
-                    if (!cookieOk) {
-                        // we only check this once, he can send us bad cookies
-                        // later if he likes
-                        if (!(head.elementAt(1) instanceof OtpErlangAtom)) {
-                            break receive_loop;
-                        }
-                        cookie = (OtpErlangAtom) head.elementAt(1);
-                        if (sendCookie) {
-                            if (!cookie.atomValue().equals(localNode.cookie())) {
-                                cookieError(localNode, cookie);
-                            }
-                        } else {
-                            if (!"".equals(cookie.atomValue())) {
-                                cookieError(localNode, cookie);
-                            }
-                        }
-                        cookieOk = true;
-                    }
+        catch (final OtpAuthException e) {
+            deliver(e);
+        } catch (final OtpErlangDecodeException e) {
+            deliver(new OtpErlangExit("Remote is sending garbage"));
+        } catch (final IOException e) {
+            deliver(new OtpErlangExit("Remote has closed connection"));
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * Start receiving messages. Connections over an {@link OtpNioSocketTransport} are
+     * served by its selector; the others run their own receive thread.
+     */
+    protected void startReceiving() {
+        if (socket instanceof OtpNioSocketTransport) {
+            if (!connected) {
+                deliver(new IOException("Not connected"));
+                return;
+            }
+            try {
+                ((OtpNioSocketTransport) socket).startReceiving(this);
+            } catch (final IOException e) {
+                nioFailed(e);
+            }
+        } else {
+            start();
+        }
+    }
 
-                    if (traceLevel >= AbstractConnection.sendThreshold) {
-                        System.out.println("<- " + headerType(head) + " " + head);
+    /*
+     * Called by the selector for each frame received, null for a tick. The frame comes
+     * from OtpBufferPool. Returns false if the connection was closed.
+     */
+    boolean nioReceived(final byte[] frame, final int len) {
+        if (done) {
+            return false;
+        }
+        try {
+            if (frame == null) {
+                sendTock();
+                return true;
+            }
+            final OtpInputStream ibuf = new OtpInputStream(frame, 0, len, flags);
+            ibuf.pooled = true;
+            if (processMessage(ibuf)) {
+                return true;
+            }
+            deliver(new OtpErlangExit("Remote is sending garbage"));
+        } catch (final OtpAuthException e) {
+            deliver(e);
+        } catch (final OtpErlangDecodeException e) {
+            deliver(new OtpErlangExit("Remote is sending garbage"));
+        } catch (final IOException e) {
+            deliver(new OtpErlangExit("Remote has closed connection"));
+        }
+        close();
+        return false;
+    }
 
-                        /* show received payload too */
-                        ibuf.mark(0);
-                        traceobj = ibuf.read_any();
+    // called by the selector when the channel fails
+    void nioFailed(final IOException e) {
+        if (!done) {
+            deliver(new OtpErlangExit("Remote has closed connection"));
+            close();
+        }
+    }
 
-                        if (traceobj != null) {
-                            System.out.println("   " + traceobj);
-                        } else {
-                            System.out.println("   (null)");
-                        }
-                        ibuf.reset();
-                    }
+    /*
+     * Reserve space for the length and write the message tag. When both sides announced
+     * dFlagDistHdrAtomCache the peer only accepts a distribution header, so an empty one
+     * is written; the terms after it carry no version tag. Returns true in that case.
+     */
+    private boolean writePreamble(final OtpOutputStream header) {
+        header.write4BE(0); // reserve space for length
+        if ((localNode.flags & peer.flags & AbstractNode.dFlagDistHdrAtomCache) != 0) {
+            header.write1(AbstractConnection.version);
+            header.write1(AbstractConnection.distHeader);
+            header.write1(0); // no atom cache refs
+            return true;
+        }
+        header.write1(AbstractConnection.passThrough);
+        header.write1(AbstractConnection.version);
+        return false;
+    }
 
-                    to = (OtpErlangPid) head.elementAt(2);
-
-                    deliver(new OtpMsg(to, ibuf));
-                    break;
-
-                case AbstractConnection.regSendTag: // { REG_SEND, FromPid, Cookie, ToName
-                                                    // }
-                case AbstractConnection.regSendTTTag: // { REG_SEND, FromPid, Cookie,
-                                                      // ToName,
-                    // TraceToken }
-                    if (!cookieOk) {
-                        // we only check this once, he can send us bad cookies
-                        // later if he likes
-                        if (!(head.elementAt(2) instanceof OtpErlangAtom)) {
-                            break receive_loop;
-                        }
-                        cookie = (OtpErlangAtom) head.elementAt(2);
-                        if (sendCookie) {
-                            if (!cookie.atomValue().equals(localNode.cookie())) {
-                                cookieError(localNode, cookie);
-                            }
-                        } else {
-                            if (!"".equals(cookie.atomValue())) {
-                                cookieError(localNode, cookie);
-                            }
-                        }
-                        cookieOk = true;
-                    }
+    /*
+     * Read the atom cache part of a distribution header, which the peer sends when we
+     * announced dFlagDistHdrAtomCache. Returns the atoms that ATOM_CACHE_REF tags in the
+     * control message and payload refer to.
+     */
+    OtpErlangAtom[] readDistHeader(final OtpInputStream ibuf)
+            throws OtpErlangDecodeException {
+        final int n = ibuf.read1();
+        if (n == 0) {
+            return null;
+        }
+        // a half byte per reference, the last one tells about long atoms
+        final byte[] refFlags = new byte[n / 2 + 1];
+        for (int i = 0; i < refFlags.length; i++) {
+            refFlags[i] = (byte) ibuf.read1();
+        }
+        final boolean longAtoms = (AbstractConnection.halfByte(refFlags, n) & 1) != 0;
+
+        if (atomCache == null) {
+            atomCache = new OtpErlangAtom[2048];
+        }
+        final OtpErlangAtom[] refs = new OtpErlangAtom[n];
+        for (int i = 0; i < n; i++) {
+            final int f = AbstractConnection.halfByte(refFlags, i);
+            final int index = (f & 7) << 8 | ibuf.read1();
+            if ((f & 8) != 0) {
+                final int len = longAtoms ? ibuf.read2BE() : ibuf.read1();
+                atomCache[index] = ibuf.read_atom_text(len, true);
+            } else if (atomCache[index] == null) {
+                throw new OtpErlangDecodeException("Unknown atom cache entry " + index);
+            }
+            refs[i] = atomCache[index];
+        }
+        return refs;
+    }
+
+    private static int halfByte(final byte[] b, final int i) {
+        return b[i >> 1] >> ((i & 1) << 2) & 0xf;
+    }
 
-                    if (traceLevel >= AbstractConnection.sendThreshold) {
-                        System.out.println("<- " + headerType(head) + " " + head);
+    protected synchronized void sendTock() throws IOException {
+        @SuppressWarnings("resource")
+        final OutputStream out = socket.getOutputStream();
+        out.write(AbstractConnection.tock);
+        out.flush();
+    }
 
-                        /* show received payload too */
-                        ibuf.mark(0);
-                        traceobj = ibuf.read_any();
+    /**
+     * Decode and deliver one message received from the peer, without its length prefix.
+     *
+     * @return false if the peer is sending garbage
+     */
+    protected boolean processMessage(final OtpInputStream ibuf)
+            throws OtpAuthException, OtpErlangDecodeException {
+        OtpErlangObject traceobj;
 
-                        if (traceobj != null) {
-                            System.out.println("   " + traceobj);
-                        } else {
-                            System.out.println("   (null)");
+        boolean handedOff = false;
+        try {
+            final int type = ibuf.read1();
+            if (type == OtpExternal.versionTag) {
+                if (ibuf.read1() != AbstractConnection.distHeader) {
+                    return false;
+                }
+                ibuf.atomRefs = readDistHeader(ibuf);
+            } else if (type != AbstractConnection.passThrough) {
+                return false;
+            }
+
+            // got a real message (really)
+            OtpErlangObject reason = null;
+            OtpErlangAtom cookie = null;
+            OtpErlangObject tmp = null;
+            OtpErlangTuple head = null;
+            OtpErlangAtom toName;
+            OtpErlangPid to;
+            OtpErlangPid from;
+            int tag;
+
+            // decode the header
+            tmp = ibuf.read_any();
+            if (!(tmp instanceof OtpErlangTuple)) {
+                return false;
+            }
+
+            head = (OtpErlangTuple) tmp;
+            if (!(head.elementAt(0) instanceof OtpErlangLong)) {
+                return false;
+            }
+
+            // lets see what kind of message this is
+            tag = (int) ((OtpErlangLong) head.elementAt(0)).longValue();
+
+            switch (tag) {
+            case AbstractConnection.sendTag: // { SEND, Cookie, ToPid }
+            case AbstractConnection.sendTTTag: // { SEND, Cookie, ToPid, TraceToken }
+                if (!cookieOk) {
+                    // we only check this once, he can send us bad cookies
+                    // later if he likes
+                    if (!(head.elementAt(1) instanceof OtpErlangAtom)) {
+                        return false;
+                    }
+                    cookie = (OtpErlangAtom) head.elementAt(1);
+                    if (sendCookie) {
+                        if (!cookie.atomValue().equals(localNode.cookie())) {
+                            cookieError(localNode, cookie);
+                        }
+                    } else {
+                        if (!"".equals(cookie.atomValue())) {
+                            cookieError(localNode, cookie);
                         }
-                        ibuf.reset();
                     }
+                    cookieOk = true;
+                }
 
-                    from = (OtpErlangPid) head.elementAt(1);
-                    toName = (OtpErlangAtom) head.elementAt(3);
+                if (traceLevel >= AbstractConnection.sendThreshold) {
+                    System.out.println("<- " + headerType(head) + " " + head);
 
-                    deliver(new OtpMsg(from, toName.atomValue(), ibuf));
-                    break;
+                    /* show received payload too */
+                    ibuf.mark(0);
+                    traceobj = ibuf.read_any();
 
-                case AbstractConnection.exitTag: // { EXIT, FromPid, ToPid, Reason }
-                case AbstractConnection.exit2Tag: // { EXIT2, FromPid, ToPid, Reason }
-                    if (head.elementAt(3) == null) {
-                        break receive_loop;
-                    }
-                    if (traceLevel >= AbstractConnection.ctrlThreshold) {
-                        System.out.println("<- " + headerType(head) + " " + head);
+                    if (traceobj != null) {
+                        System.out.println("   " + traceobj);
+                    } else {
+                        System.out.println("   (null)");
                     }
+                    ibuf.reset();
+                }
 
-                    from = (OtpErlangPid) head.elementAt(1);
-                    to = (OtpErlangPid) head.elementAt(2);
-                    reason = head.elementAt(3);
-
-                    deliver(new OtpMsg(tag, from, to, reason));
-                    break;
-
-                case AbstractConnection.exitTTTag: // { EXIT, FromPid, ToPid, TraceToken,
-                                                   // Reason }
-                case AbstractConnection.exit2TTTag: // { EXIT2, FromPid, ToPid,
-                                                    // TraceToken,
-                    // Reason
-                    // }
-                    // as above, but bifferent element number
-                    if (head.elementAt(4) == null) {
-                        break receive_loop;
+                to = (OtpErlangPid) head.elementAt(2);
+
+                handedOff = true;
+                deliver(new OtpMsg(to, ibuf));
+                break;
+
+            case AbstractConnection.regSendTag: // { REG_SEND, FromPid, Cookie, ToName
+                                                // }
+            case AbstractConnection.regSendTTTag: // { REG_SEND, FromPid, Cookie,
+                                                  // ToName,
+                // TraceToken }
+                if (!cookieOk) {
+                    // we only check this once, he can send us bad cookies
+                    // later if he likes
+                    if (!(head.elementAt(2) instanceof OtpErlangAtom)) {
+                        return false;
                     }
-                    if (traceLevel >= AbstractConnection.ctrlThreshold) {
-                        System.out.println("<- " + headerType(head) + " " + head);
+                    cookie = (OtpErlangAtom) head.elementAt(2);
+                    if (sendCookie) {
+                        if (!cookie.atomValue().equals(localNode.cookie())) {
+                            cookieError(localNode, cookie);
+                        }
+                    } else {
+                        if (!"".equals(cookie.atomValue())) {
+                            cookieError(localNode, cookie);
+                        }
                     }
+                    cookieOk = true;
+                }
 
-                    from = (OtpErlangPid) head.elementAt(1);
-                    to = (OtpErlangPid) head.elementAt(2);
-                    reason = head.elementAt(4);
+                if (traceLevel >= AbstractConnection.sendThreshold) {
+                    System.out.println("<- " + headerType(head) + " " + head);
 
-                    deliver(new OtpMsg(tag, from, to, reason));
-                    break;
+                    /* show received payload too */
+                    ibuf.mark(0);
+                    traceobj = ibuf.read_any();
 
-                case AbstractConnection.linkTag: // { LINK, FromPid, ToPid}
-                case AbstractConnection.unlinkTag: // { UNLINK, FromPid, ToPid}
-                    if (traceLevel >= AbstractConnection.ctrlThreshold) {
-                        System.out.println("<- " + headerType(head) + " " + head);
+                    if (traceobj != null) {
+                        System.out.println("   " + traceobj);
+                    } else {
+                        System.out.println("   (null)");
                     }
+                    ibuf.reset();
+                }
 
-                    from = (OtpErlangPid) head.elementAt(1);
-                    to = (OtpErlangPid) head.elementAt(2);
+                from = (OtpErlangPid) head.elementAt(1);
+                toName = (OtpErlangAtom) head.elementAt(3);
 
-                    deliver(new OtpMsg(tag, from, to));
-                    break;
+                handedOff = true;
+                deliver(new OtpMsg(from, toName.atomValue(), ibuf));
+                break;
 
-                // absolutely no idea what to do with these, so we ignore
-                // them...
-                case AbstractConnection.groupLeaderTag: // { GROUPLEADER, FromPid, ToPid}
-                    // (just show trace)
-                    if (traceLevel >= AbstractConnection.ctrlThreshold) {
-                        System.out.println("<- " + headerType(head) + " " + head);
-                    }
-                    break;
+            case AbstractConnection.exitTag: // { EXIT, FromPid, ToPid, Reason }
+            case AbstractConnection.exit2Tag: // { EXIT2, FromPid, ToPid, Reason }
+                if (head.elementAt(3) == null) {
+                    return false;
+                }
+                if (traceLevel >= AbstractConnection.ctrlThreshold) {
+                    System.out.println("<- " + headerType(head) + " " + head);
+                }
 
-                default:
-                    // garbage?
-                    break receive_loop;
+                from = (OtpErlangPid) head.elementAt(1);
+                to = (OtpErlangPid) head.elementAt(2);
+                reason = head.elementAt(3);
+
+                deliver(new OtpMsg(tag, from, to, reason));
+                break;
+
+            case AbstractConnection.exitTTTag: // { EXIT, FromPid, ToPid, TraceToken,
+                                               // Reason }
+            case AbstractConnection.exit2TTTag: // { EXIT2, FromPid, ToPid,
+                                                // TraceToken,
+                // Reason
+                // }
+                // as above, but bifferent element number
+                if (head.elementAt(4) == null) {
+                    return false;
+                }
+                if (traceLevel >= AbstractConnection.ctrlThreshold) {
+                    System.out.println("<- " + headerType(head) + " " + head);
                 }
-            }
 
-            // this section reachable only with break
-            // we have received garbage from peer
-            deliver(new OtpErlangExit("Remote is sending garbage"));
+                from = (OtpErlangPid) head.elementAt(1);
+                to = (OtpErlangPid) head.elementAt(2);
+                reason = head.elementAt(4);
 
-        } // try
+                deliver(new OtpMsg(tag, from, to, reason));
+                break;
 
-        catch (final OtpAuthException e) {
-            deliver(e);
-        } catch (final OtpErlangDecodeException e) {
-            deliver(new OtpErlangExit("Remote is sending garbage"));
-        } catch (final IOException e) {
-            deliver(new OtpErlangExit("Remote has closed connection"));
+            case AbstractConnection.linkTag: // { LINK, FromPid, ToPid}
+            case AbstractConnection.unlinkTag: // { UNLINK, FromPid, ToPid}
+                if (traceLevel >= AbstractConnection.ctrlThreshold) {
+                    System.out.println("<- " + headerType(head) + " " + head);
+                }
+
+                from = (OtpErlangPid) head.elementAt(1);
+                to = (OtpErlangPid) head.elementAt(2);
+
+                deliver(new OtpMsg(tag, from, to));
+                break;
+
+            // absolutely no idea what to do with these, so we ignore
+            // them...
+            case AbstractConnection.groupLeaderTag: // { GROUPLEADER, FromPid, ToPid}
+                // (just show trace)
+                if (traceLevel >= AbstractConnection.ctrlThreshold) {
+                    System.out.println("<- " + headerType(head) + " " + head);
+                }
+                break;
+
+            default:
+                // garbage?
+                return false;
+            }
+            return true;
         } finally {
-            close();
+            if (!handedOff) {
+                // nothing refers to the buffer anymore
+                ibuf.recycle();
+            }
         }
     }
 
@@ -800,30 +967,52 @@ public abstract class AbstractConnection extends Thread {
     }
 
     // used by send and send_reg (message types with payload)
-    protected synchronized void do_send(final OtpOutputStream header,
-            final OtpOutputStream payload) throws IOException {
-        try {
-            if (traceLevel >= AbstractConnection.sendThreshold) {
-                // Need to decode header and output buffer to show trace
-                // message!
-                // First make OtpInputStream, then decode.
-                try {
-                    final OtpErlangObject h = header.getOtpInputStream(5).read_any();
-                    System.out.println("-> " + headerType(h) + " " + h);
-
-                    OtpErlangObject o = payload.getOtpInputStream(0).read_any();
-                    System.out.println("   " + o);
-                    o = null;
-                } catch (final OtpErlangDecodeException e) {
-                    System.out.println("   " + "can't decode output buffer:" + e);
-                }
+    protected void do_send(final OtpOutputStream header, final OtpOutputStream payload)
+            throws IOException {
+        if (traceLevel >= AbstractConnection.sendThreshold) {
+            // Need to decode header and output buffer to show trace
+            // message!
+            // First make OtpInputStream, then decode.
+            try {
+                final OtpErlangObject h = header.getOtpInputStream(5).read_any();
+                System.out.println("-> " + headerType(h) + " " + h);
+
+                OtpErlangObject o = payload.getOtpInputStream(0).read_any();
+                System.out.println("   " + o);
+                o = null;
+            } catch (final OtpErlangDecodeException e) {
+                System.out.println("   " + "can't decode output buffer:" + e);
             }
+        }
+
+        if (coalesceNanos > 0
+                && header.size() + payload.size() <= AbstractConnection.maxGatherLen) {
+            coalescedSend(header, payload);
+        } else {
+            directSend(header, payload);
+        }
+    }
 
+    private synchronized void directSend(final OtpOutputStream header,
+            final OtpOutputStream payload) throws IOException {
+        try {
             // group flush op in favour of possible ssh-tunneled stream
             @SuppressWarnings("resource")
             final OutputStream out = socket.getOutputStream();
-            header.writeTo(out);
-            payload.writeTo(out);
+            if (gatheringWrites
+                    && header.size() + payload.size() <= AbstractConnection.maxGatherLen) {
+                // a single write means a single syscall and usually a single segment
+                if (gatherBuf == null) {
+                    gatherBuf = new OtpOutputStream(AbstractConnection.headerLen);
+                }
+                gatherBuf.reset();
+                header.writeTo(gatherBuf);
+                payload.writeTo(gatherBuf);
+                gatherBuf.writeTo(out);
+            } else {
+                header.writeTo(out);
+                payload.writeTo(out);
+            }
             out.flush();
         } catch (final IOException e) {
             close();
@@ -831,6 +1020,77 @@ public abstract class AbstractConnection extends Thread {
         }
     }
 
+    /*
+     * Group commit: the first sender of a batch waits for the coalescing window, then
+     * writes everything that was queued meanwhile in one go. The other senders only
+     * append their message and wait for the batch to be written, so that errors are
+     * still reported to the caller and a thread's messages stay in order.
+     */
+    private void coalescedSend(final OtpOutputStream header,
+            final OtpOutputStream payload) throws IOException {
+        final long myBatch;
+        final boolean leader;
+        synchronized (coalesceLock) {
+            if (coalesceError != null) {
+                throw new IOException(coalesceError.getMessage());
+            }
+            header.writeTo(pendingBuf);
+            payload.writeTo(pendingBuf);
+            myBatch = batchNo;
+            leader = !batchOpen;
+            batchOpen = true;
+        }
+        if (leader) {
+            LockSupport.parkNanos(coalesceNanos);
+            flushBatch();
+        } else {
+            synchronized (coalesceLock) {
+                boolean interrupted = false;
+                while (flushedBatchNo < myBatch && coalesceError == null) {
+                    try {
+                        coalesceLock.wait();
+                    } catch (final InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+                if (flushedBatchNo < myBatch) {
+                    throw new IOException(coalesceError.getMessage());
+                }
+            }
+        }
+    }
+
+    // the batch is taken under the connection lock, so batches are written in order
+    private synchronized void flushBatch() throws IOException {
+        final OtpOutputStream batch;
+        final long flushed;
+        synchronized (coalesceLock) {
+            batch = pendingBuf;
+            pendingBuf = spareBuf;
+            flushed = batchNo++;
+            batchOpen = false;
+        }
+        try {
+            batch.writeToAndFlush(socket.getOutputStream());
+        } catch (final IOException e) {
+            synchronized (coalesceLock) {
+                coalesceError = e;
+                coalesceLock.notifyAll();
+            }
+            close();
+            throw e;
+        }
+        synchronized (coalesceLock) {
+            batch.reset();
+            spareBuf = batch;
+            flushedBatchNo = flushed;
+            coalesceLock.notifyAll();
+        }
+    }
+
     // used by the other message types
     protected synchronized void do_send(final OtpOutputStream header) throws IOException {
         try {
@@ -896,14 +1156,20 @@ public abstract class AbstractConnection extends Thread {
 
     /* this method now throws exception if we don't get full read */
     protected int readSock(final OtpTransport s, final byte[] b) throws IOException {
+        return readSock(s, b, b.length);
+    }
+
+    /**
+     * Read exactly len bytes into the start of b.
+     */
+    protected int readSock(final OtpTransport s, final byte[] b, final int len)
+            throws IOException {
         int got = 0;
-        final int len = b.length;
         int i;
 
-        synchronized (this) {
-            if (s == null) {
-                throw new IOException("expected " + len + " bytes, socket was closed");
-            }
+        // no lock here: a writer blocked on a full socket holds it
+        if (s == null) {
+            throw new IOException("expected " + len + " bytes, socket was closed");
         }
 
         while (got < len) {
@@ -1352,6 +1618,32 @@ public abstract class AbstractConnection extends Thread {
         this.flags = flags;
     }
 
+    /**
+     * Write the header and payload of a message with a single write instead of two.
+     * Messages larger than 64 kB are always written in two steps, to avoid copying. On
+     * by default.
+     */
+    public void setGatheringWrites(final boolean gathering) {
+        gatheringWrites = gathering;
+    }
+
+    public boolean isGatheringWrites() {
+        return gatheringWrites;
+    }
+
+    /**
+     * Merge messages sent by concurrent threads into a single write. The first sender
+     * waits up to the given window for others to join; all of them return once the
+     * merged write is done. A window of 0 (the default) disables coalescing.
+     */
+    public void setWriteCoalescing(final long windowNanos) {
+        coalesceNanos = Math.max(0, windowNanos);
+    }
+
+    public long getWriteCoalescing() {
+        return coalesceNanos;
+    }
+
     public int getFlags() {
         return flags;
     }
@@ -88,6 +88,7 @@ public class AbstractNode implements OtpTransportFactory {
     static final int dFlagBitBinaries = 0x400;
     static final int dFlagNewFloats = 0x800;
     static final int dFlagUnicodeIo = 0x1000;
+    static final int dFlagDistHdrAtomCache = 0x2000; // we never cache outgoing atoms
     static final int dFlagUtf8Atoms = 0x10000;
     static final int dFlagMapTag = 0x20000;
     static final int dFlagBigCreation = 0x40000;
@@ -0,0 +1,189 @@
+/*
+ * %CopyrightBegin%
+ *
+ * Copyright Ericsson AB 2015. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under
+ * the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * %CopyrightEnd%
+ */
+
+package com.ericsson.otp.erlang;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A {@link GenericQueue} for many producers and one consumer at a time. Putting an
+ * object never takes a lock: producers swap themselves in as the new tail and link the
+ * previous one to it. A consumer waiting for an object parks and is unparked by the
+ * producer that brings it.
+ *
+ * <p>
+ * Consumers take turns through a lock, so several threads may still receive from the
+ * same mailbox; only the sending side is lock free.
+ * </p>
+ */
+public class LockFreeQueue extends GenericQueue {
+
+    private static final class Node {
+        volatile Node next;
+        Object contents;
+
+        Node(final Object o) {
+            contents = o;
+        }
+    }
+
+    private final AtomicReference<Node> tail;
+    private final AtomicReference<Thread> waiter = new AtomicReference<>();
+    private final ReentrantLock takeLock = new ReentrantLock();
+    private final LongAdder puts = new LongAdder();
+
+    // consumer side, guarded by takeLock
+    private Node head;
+    private volatile long takes;
+
+    public LockFreeQueue() {
+        head = new Node(null);
+        tail = new AtomicReference<>(head);
+    }
+
+    @Override
+    public void put(final Object o) {
+        final Node n = new Node(o);
+        tail.getAndSet(n).next = n;
+        puts.increment();
+
+        final Thread w = waiter.get();
+        if (w != null) {
+            LockSupport.unpark(w);
+        }
+    }
+
+    @Override
+    public Object get() {
+        takeLock.lock();
+        try {
+            Object o;
+            while ((o = poll()) == null) {
+                await(0);
+            }
+            return o;
+        } finally {
+            takeLock.unlock();
+        }
+    }
+
+    @Override
+    public Object get(final long timeout) throws InterruptedException {
+        final long stopTime = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        boolean locked = false;
+        while (!locked) {
+            try {
+                locked = takeLock.tryLock(stopTime - System.nanoTime(),
+                        TimeUnit.NANOSECONDS);
+            } catch (final InterruptedException e) {
+                // ignore, like GenericQueue
+                continue;
+            }
+            if (!locked) {
+                throw new InterruptedException("Get operation timed out");
+            }
+        }
+        try {
+            Object o;
+            while ((o = poll()) == null) {
+                final long left = stopTime - System.nanoTime();
+                if (left <= 0) {
+                    throw new InterruptedException("Get operation timed out");
+                }
+                await(left);
+            }
+            return o;
+        } finally {
+            takeLock.unlock();
+        }
+    }
+
+    @Override
+    public Object tryGet() {
+        takeLock.lock();
+        try {
+            return poll();
+        } finally {
+            takeLock.unlock();
+        }
+    }
+
+    @Override
+    public void flush() {
+        takeLock.lock();
+        try {
+            while (poll() != null) {
+                // drop it
+            }
+        } finally {
+            takeLock.unlock();
+        }
+    }
+
+    @Override
+    public int getCount() {
+        return (int) (puts.sum() - takes);
+    }
+
+    // take the head object, called with takeLock held
+    private Object poll() {
+        Node next = head.next;
+        if (next == null) {
+            if (tail.get() == head) {
+                return null;
+            }
+            // a producer has swapped in the tail but not linked it yet
+            while ((next = head.next) == null) {
+                Thread.yield();
+            }
+        }
+        final Object o = next.contents;
+        next.contents = null;
+        head = next;
+        takes++;
+        return o;
+    }
+
+    /*
+     * Park until a producer signals or the time (0 for none) runs out. Called with
+     * takeLock held; the queue is checked again after announcing ourselves, so a put
+     * can't slip in unnoticed.
+     */
+    private void await(final long nanos) {
+        final Thread self = Thread.currentThread();
+        waiter.set(self);
+        try {
+            if (head.next != null || tail.get() != head) {
+                return;
+            }
+            if (nanos > 0) {
+                LockSupport.parkNanos(this, nanos);
+            } else {
+                LockSupport.park(this);
+            }
+            // interrupts are ignored, like in GenericQueue; clear it or we'd spin
+            Thread.interrupted();
+        } finally {
+            waiter.set(null);
+        }
+    }
+}
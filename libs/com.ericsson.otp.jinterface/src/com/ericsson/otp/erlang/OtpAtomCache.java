@@ -0,0 +1,117 @@
+/*
+ * %CopyrightBegin%
+ *
+ * Copyright Ericsson AB 2015. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under
+ * the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * %CopyrightEnd%
+ */
+
+package com.ericsson.otp.erlang;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Bounded interning cache for atoms, shared by the decoder and
+ * {@link OtpErlangAtom#valueOf(String)}. Module and function names, tags and node names
+ * come back over and over; with the cache they are decoded to the same
+ * {@link OtpErlangAtom} instead of a new byte array, String and atom each time.
+ *
+ * <p>
+ * The cache is direct mapped: an atom whose slot is taken by another one replaces it.
+ * Only ASCII atoms are cached, for them the hash of the encoded bytes is the hash of the
+ * String. Slots are read and written without locking; atoms are immutable, so the worst
+ * a race can do is lose an entry.
+ * </p>
+ */
+final class OtpAtomCache {
+
+    // number of slots, a power of two
+    private static final int size = 4096;
+
+    private static final OtpErlangAtom[] atoms = new OtpErlangAtom[OtpAtomCache.size];
+
+    private OtpAtomCache() {
+    }
+
+    /**
+     * Get the atom with the given encoded name.
+     *
+     * @return the atom, or null if the name is not ASCII or too long.
+     */
+    static OtpErlangAtom get(final byte[] buf, final int off, final int len) {
+        if (len > OtpErlangAtom.maxAtomLength) {
+            return null;
+        }
+        int h = 0;
+        for (int i = off; i < off + len; i++) {
+            final byte b = buf[i];
+            if (b < 0) {
+                return null;
+            }
+            h = 31 * h + b;
+        }
+        final int slot = OtpAtomCache.slot(h);
+        OtpErlangAtom a = OtpAtomCache.atoms[slot];
+        if (a != null && OtpAtomCache.matches(a.atomValue(), buf, off, len)) {
+            return a;
+        }
+        a = new OtpErlangAtom(new String(buf, off, len, StandardCharsets.ISO_8859_1));
+        OtpAtomCache.atoms[slot] = a;
+        return a;
+    }
+
+    /**
+     * Get the atom with the given name.
+     */
+    static OtpErlangAtom get(final String name) {
+        final int slot = OtpAtomCache.slot(name.hashCode());
+        OtpErlangAtom a = OtpAtomCache.atoms[slot];
+        if (a != null && a.atomValue().equals(name)) {
+            return a;
+        }
+        a = new OtpErlangAtom(name);
+        if (OtpAtomCache.isAscii(name)) {
+            OtpAtomCache.atoms[slot] = a;
+        }
+        return a;
+    }
+
+    private static int slot(final int h) {
+        return (h ^ h >>> 16) & OtpAtomCache.size - 1;
+    }
+
+    private static boolean matches(final String s, final byte[] buf, final int off,
+            final int len) {
+        if (s.length() != len) {
+            return false;
+        }
+        for (int i = 0; i < len; i++) {
+            if (s.charAt(i) != buf[off + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isAscii(final String s) {
+        if (s.length() > OtpErlangAtom.maxAtomLength) {
+            return false;
+        }
+        for (int i = 0; i < s.length(); i++) {
+            if (s.charAt(i) >= 0x80) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * %CopyrightBegin%
+ *
+ * Copyright Ericsson AB 2015. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under
+ * the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * %CopyrightEnd%
+ */
+
+package com.ericsson.otp.erlang;
+
+/**
+ * Size-classed pool of receive buffers. Connections take a buffer for each incoming
+ * frame; it comes back when the message has been decoded (see {@link OtpMsg#getMsg()}),
+ * or right away for messages that carry no payload. Buffers that are handed out to
+ * applications through {@link OtpMbox#receiveBuf()} are never recycled.
+ *
+ * <p>
+ * Sizes are powers of two from 256 bytes to 64 kB; larger frames get a buffer of their
+ * own. Each class keeps at most {@link #maxPerClass} free buffers.
+ * </p>
+ */
+final class OtpBufferPool {
+
+    private static final int minShift = 8;
+    private static final int maxShift = 16;
+    private static final int maxPerClass = 64;
+
+    private static final byte[][][] free = new byte[OtpBufferPool.maxShift
+            - OtpBufferPool.minShift + 1][OtpBufferPool.maxPerClass][];
+    private static final int[] top = new int[OtpBufferPool.free.length];
+
+    private OtpBufferPool() {
+    }
+
+    /**
+     * Get a buffer of at least len bytes.
+     */
+    static byte[] acquire(final int len) {
+        if (len > 1 << OtpBufferPool.maxShift) {
+            return new byte[len];
+        }
+        final int c = OtpBufferPool.sizeClass(len);
+        final byte[][] stack = OtpBufferPool.free[c];
+        synchronized (stack) {
+            final int n = OtpBufferPool.top[c];
+            if (n > 0) {
+                final byte[] b = stack[n - 1];
+                stack[n - 1] = null;
+                OtpBufferPool.top[c] = n - 1;
+                return b;
+            }
+        }
+        return new byte[1 << c + OtpBufferPool.minShift];
+    }
+
+    /**
+     * Give back a buffer obtained from {@link #acquire(int)}. Its contents must not be
+     * used anymore.
+     */
+    static void release(final byte[] b) {
+        final int len = b.length;
+        if (len > 1 << OtpBufferPool.maxShift || Integer.bitCount(len) != 1) {
+            return;
+        }
+        final int c = OtpBufferPool.sizeClass(len);
+        if (len != 1 << c + OtpBufferPool.minShift) {
+            return;
+        }
+        final byte[][] stack = OtpBufferPool.free[c];
+        synchronized (stack) {
+            final int n = OtpBufferPool.top[c];
+            if (n < stack.length) {
+                stack[n] = b;
+                OtpBufferPool.top[c] = n + 1;
+            }
+        }
+    }
+
+    private static int sizeClass(final int len) {
+        if (len <= 1 << OtpBufferPool.minShift) {
+            return 0;
+        }
+        return 32 - Integer.numberOfLeadingZeros(len - 1) - OtpBufferPool.minShift;
+    }
+}
@@ -61,7 +61,7 @@ public class OtpConnection extends AbstractConnection {
         super(self, s);
         this.self = self;
         queue = new GenericQueue();
-        start();
+        startReceiving();
     }
 
     /*
@@ -77,7 +77,7 @@ public class OtpConnection extends AbstractConnection {
         super(self, other);
         this.self = self;
         queue = new GenericQueue();
-        start();
+        startReceiving();
     }
 
     @Override
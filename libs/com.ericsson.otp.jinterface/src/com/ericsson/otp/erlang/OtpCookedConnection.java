@@ -75,7 +75,7 @@ public class OtpCookedConnection extends AbstractConnection {
         super(self, s);
         this.self = self;
         links = new Links(25);
-        start();
+        startReceiving();
     }
 
     /*
@@ -91,7 +91,7 @@ public class OtpCookedConnection extends AbstractConnection {
         super(self, other);
         this.self = self;
         links = new Links(25);
-        start();
+        startReceiving();
     }
 
     // pass the error to the node
@@ -148,13 +148,15 @@ public class OtpCookedConnection extends AbstractConnection {
 
     /*
      * send to remote name dest is recipient's registered name, the nodename is implied by
-     * the choice of connection.
+     * the choice of connection. Returns the size of the encoded message.
      */
     @SuppressWarnings("resource")
-    void send(final OtpErlangPid from, final String dest, final OtpErlangObject msg)
+    int send(final OtpErlangPid from, final String dest, final OtpErlangObject msg)
             throws IOException {
         // encode and send the message
-        sendBuf(from, dest, new OtpOutputStream(msg));
+        final OtpOutputStream payload = new OtpOutputStream(msg);
+        sendBuf(from, dest, payload);
+        return payload.size();
     }
 
     @Override
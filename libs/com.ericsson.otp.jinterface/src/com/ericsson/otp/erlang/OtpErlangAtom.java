@@ -73,6 +73,24 @@ public class OtpErlangAtom extends OtpErlangObject {
         atom = String.valueOf(t);
     }
 
+    /**
+     * Get an atom for the given string. Unlike the constructor, this may return an
+     * instance that is shared with other callers and with decoded terms.
+     *
+     * @param atom
+     *            the string to create the atom from.
+     *
+     * @exception java.lang.IllegalArgumentException
+     *                if the string is null or contains more than {@link #maxAtomLength
+     *                maxAtomLength} characters.
+     */
+    public static OtpErlangAtom valueOf(final String atom) {
+        if (atom == null) {
+            throw new java.lang.IllegalArgumentException("null string value");
+        }
+        return OtpAtomCache.get(atom);
+    }
+
     /**
      * Get the actual string contained in this object.
      *
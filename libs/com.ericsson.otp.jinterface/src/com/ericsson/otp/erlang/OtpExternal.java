@@ -98,6 +98,9 @@ public class OtpExternal {
     /** The tag used for small unicode atoms */
     public static final int smallAtomUtf8Tag = 119;
 
+    /** The tag used for references into the atom cache of a distribution header */
+    public static final int atomCacheRefTag = 82;
+
     /** The tag used for compressed terms */
     public static final int compressedTag = 80;
 
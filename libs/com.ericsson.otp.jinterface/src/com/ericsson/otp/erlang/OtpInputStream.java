@@ -35,6 +35,12 @@ public class OtpInputStream extends ByteArrayInputStream {
 
     private final int flags;
 
+    // buf came from OtpBufferPool and may be recycled once decoded
+    boolean pooled;
+
+    // atoms of the distribution header, for atom cache references
+    OtpErlangAtom[] atomRefs;
+
     /**
      * @param buf
      */
@@ -64,6 +70,28 @@ public class OtpInputStream extends ByteArrayInputStream {
         this.flags = flags;
     }
 
+    /**
+     * Give the buffer back to the pool, if it came from there. The stream must not be
+     * used afterwards.
+     */
+    void recycle() {
+        if (pooled) {
+            pooled = false;
+            OtpBufferPool.release(super.buf);
+        }
+    }
+
+    /*
+     * Check that n more bytes can be read and return the current position.
+     */
+    private int require(final int n) throws OtpErlangDecodeException {
+        final int p = super.pos;
+        if (n > super.count - p) {
+            throw new OtpErlangDecodeException("Cannot read from input stream");
+        }
+        return p;
+    }
+
     /**
      * Get the current position in the stream.
      *
@@ -207,13 +235,10 @@ public class OtpInputStream extends ByteArrayInputStream {
      *                if the next byte cannot be read.
      */
     public int read2BE() throws OtpErlangDecodeException {
-        final byte[] b = new byte[2];
-        try {
-            super.read(b);
-        } catch (final IOException e) {
-            throw new OtpErlangDecodeException("Cannot read from input stream");
-        }
-        return (b[0] << 8 & 0xff00) + (b[1] & 0xff);
+        final byte[] b = super.buf;
+        final int p = require(2);
+        super.pos = p + 2;
+        return (b[p] << 8 & 0xff00) + (b[p + 1] & 0xff);
     }
 
     /**
@@ -225,14 +250,11 @@ public class OtpInputStream extends ByteArrayInputStream {
      *                if the next byte cannot be read.
      */
     public int read4BE() throws OtpErlangDecodeException {
-        final byte[] b = new byte[4];
-        try {
-            super.read(b);
-        } catch (final IOException e) {
-            throw new OtpErlangDecodeException("Cannot read from input stream");
-        }
-        return (b[0] << 24 & 0xff000000) + (b[1] << 16 & 0xff0000) + (b[2] << 8 & 0xff00)
-                + (b[3] & 0xff);
+        final byte[] b = super.buf;
+        final int p = require(4);
+        super.pos = p + 4;
+        return (b[p] << 24 & 0xff000000) + (b[p + 1] << 16 & 0xff0000)
+                + (b[p + 2] << 8 & 0xff00) + (b[p + 3] & 0xff);
     }
 
     /**
@@ -244,13 +266,10 @@ public class OtpInputStream extends ByteArrayInputStream {
      *                if the next byte cannot be read.
      */
     public int read2LE() throws OtpErlangDecodeException {
-        final byte[] b = new byte[2];
-        try {
-            super.read(b);
-        } catch (final IOException e) {
-            throw new OtpErlangDecodeException("Cannot read from input stream");
-        }
-        return (b[1] << 8 & 0xff00) + (b[0] & 0xff);
+        final byte[] b = super.buf;
+        final int p = require(2);
+        super.pos = p + 2;
+        return (b[p + 1] << 8 & 0xff00) + (b[p] & 0xff);
     }
 
     /**
@@ -262,14 +281,11 @@ public class OtpInputStream extends ByteArrayInputStream {
      *                if the next byte cannot be read.
      */
     public int read4LE() throws OtpErlangDecodeException {
-        final byte[] b = new byte[4];
-        try {
-            super.read(b);
-        } catch (final IOException e) {
-            throw new OtpErlangDecodeException("Cannot read from input stream");
-        }
-        return (b[3] << 24 & 0xff000000) + (b[2] << 16 & 0xff0000) + (b[1] << 8 & 0xff00)
-                + (b[0] & 0xff);
+        final byte[] b = super.buf;
+        final int p = require(4);
+        super.pos = p + 4;
+        return (b[p + 3] << 24 & 0xff000000) + (b[p + 2] << 16 & 0xff0000)
+                + (b[p + 1] << 8 & 0xff00) + (b[p] & 0xff);
     }
 
     /**
@@ -284,16 +300,13 @@ public class OtpInputStream extends ByteArrayInputStream {
      *                if the next byte cannot be read.
      */
     public long readLE(final int n) throws OtpErlangDecodeException {
-        final byte[] b = new byte[n];
-        try {
-            super.read(b);
-        } catch (final IOException e) {
-            throw new OtpErlangDecodeException("Cannot read from input stream");
-        }
+        final byte[] b = super.buf;
+        final int p = require(n);
+        super.pos = p + n;
         long v = 0;
         int i = n;
         while (i-- > 0) {
-            v = v << 8 | (long) b[i] & 0xff;
+            v = v << 8 | (long) b[p + i] & 0xff;
         }
         return v;
     }
@@ -310,15 +323,12 @@ public class OtpInputStream extends ByteArrayInputStream {
      *                if the next byte cannot be read.
      */
     public long readBE(final int n) throws OtpErlangDecodeException {
-        final byte[] b = new byte[n];
-        try {
-            super.read(b);
-        } catch (final IOException e) {
-            throw new OtpErlangDecodeException("Cannot read from input stream");
-        }
+        final byte[] b = super.buf;
+        final int p = require(n);
+        super.pos = p + n;
         long v = 0;
         for (int i = 0; i < n; i++) {
-            v = v << 8 | (long) b[i] & 0xff;
+            v = v << 8 | (long) b[p + i] & 0xff;
         }
         return v;
     }
@@ -344,21 +354,53 @@ public class OtpInputStream extends ByteArrayInputStream {
      * @exception OtpErlangDecodeException
      *                if the next term in the stream is not an atom.
      */
-    @SuppressWarnings("fallthrough")
     public String read_atom() throws OtpErlangDecodeException {
-        int tag;
-        int len = -1;
-        byte[] strbuf;
-        String atom;
+        return read_atom_term().atomValue();
+    }
 
-        tag = read1skip_version();
+    private OtpErlangAtom read_atom_term() throws OtpErlangDecodeException {
+        final int tag = read1skip_version();
 
         switch (tag) {
-
         case OtpExternal.atomTag:
-            len = read2BE();
-            strbuf = new byte[len];
-            this.readN(strbuf);
+            return read_atom_text(read2BE(), false);
+
+        case OtpExternal.smallAtomUtf8Tag:
+            return read_atom_text(read1(), true);
+
+        case OtpExternal.atomUtf8Tag:
+            return read_atom_text(read2BE(), true);
+
+        case OtpExternal.atomCacheRefTag:
+            final int i = read1();
+            if (atomRefs == null || i >= atomRefs.length) {
+                throw new OtpErlangDecodeException("Invalid atom cache reference: " + i);
+            }
+            return atomRefs[i];
+
+        default:
+            throw new OtpErlangDecodeException(
+                    "wrong tag encountered, expected " + OtpExternal.atomTag + ", or "
+                            + OtpExternal.atomUtf8Tag + ", got " + tag);
+        }
+    }
+
+    /*
+     * Read the len bytes of an atom's name. Common atoms come from OtpAtomCache.
+     */
+    OtpErlangAtom read_atom_text(final int len, final boolean utf8)
+            throws OtpErlangDecodeException {
+        final int p = require(len);
+        final OtpErlangAtom cached = OtpAtomCache.get(super.buf, p, len);
+        if (cached != null) {
+            super.pos = p + len;
+            return cached;
+        }
+
+        final byte[] strbuf = new byte[len];
+        this.readN(strbuf);
+        String atom;
+        if (!utf8) {
             try {
                 atom = new String(strbuf, "ISO-8859-1");
             } catch (final java.io.UnsupportedEncodingException e) {
@@ -371,17 +413,7 @@ public class OtpInputStream extends ByteArrayInputStream {
                  */
                 atom = atom.substring(0, OtpExternal.maxAtomLength);
             }
-            break;
-
-        case OtpExternal.smallAtomUtf8Tag:
-            len = read1();
-            // fall-through
-        case OtpExternal.atomUtf8Tag:
-            if (len < 0) {
-                len = read2BE();
-            }
-            strbuf = new byte[len];
-            this.readN(strbuf);
+        } else {
             try {
                 atom = new String(strbuf, "UTF-8");
             } catch (final java.io.UnsupportedEncodingException e) {
@@ -395,15 +427,8 @@ public class OtpInputStream extends ByteArrayInputStream {
                 final int[] cps = OtpErlangString.stringToCodePoints(atom);
                 atom = new String(cps, 0, OtpExternal.maxAtomLength);
             }
-            break;
-
-        default:
-            throw new OtpErlangDecodeException(
-                    "wrong tag encountered, expected " + OtpExternal.atomTag + ", or "
-                            + OtpExternal.atomUtf8Tag + ", got " + tag);
         }
-
-        return atom;
+        return new OtpErlangAtom(atom);
     }
 
     /**
@@ -1134,6 +1159,16 @@ public class OtpInputStream extends ByteArrayInputStream {
                     + OtpExternal.compressedTag + ", got " + tag);
         }
 
+        @SuppressWarnings("resource")
+        final OtpInputStream ois = new OtpInputStream(inflate(), flags);
+        ois.atomRefs = atomRefs;
+        return ois.read_any();
+    }
+
+    /*
+     * Inflate the compressed term following the compressed tag.
+     */
+    private byte[] inflate() throws OtpErlangDecodeException {
         final int size = read4BE();
         final byte[] abuf = new byte[size];
         final java.util.zip.InflaterInputStream is = new java.util.zip.InflaterInputStream(
@@ -1152,10 +1187,7 @@ public class OtpInputStream extends ByteArrayInputStream {
         } catch (final IOException e) {
             throw new OtpErlangDecodeException("Cannot read from input stream");
         }
-
-        @SuppressWarnings("resource")
-        final OtpInputStream ois = new OtpInputStream(abuf, flags);
-        return ois.read_any();
+        return abuf;
     }
 
     /**
@@ -1181,7 +1213,8 @@ public class OtpInputStream extends ByteArrayInputStream {
         case OtpExternal.atomTag:
         case OtpExternal.smallAtomUtf8Tag:
         case OtpExternal.atomUtf8Tag:
-            return new OtpErlangAtom(this);
+        case OtpExternal.atomCacheRefTag:
+            return read_atom_term();
 
         case OtpExternal.floatTag:
         case OtpExternal.newFloatTag:
@@ -1243,6 +1276,172 @@ public class OtpInputStream extends ByteArrayInputStream {
         }
     }
 
+    /**
+     * Read an arbitrary Erlang term from the stream without decoding it. The returned
+     * view shares the stream's buffer, only the parts of the term that are actually
+     * looked at get decoded.
+     *
+     * @return a view of the Erlang term.
+     *
+     * @exception OtpErlangDecodeException
+     *                if the stream does not contain a known Erlang type at the next
+     *                position.
+     */
+    public OtpLazyTerm read_lazy() throws OtpErlangDecodeException {
+        final int tag = peek1skip_version();
+        if (tag == OtpExternal.compressedTag) {
+            read1();
+            final byte[] abuf = inflate();
+            return new OtpLazyTerm(abuf, 0, abuf.length, flags, atomRefs);
+        }
+        final int start = super.pos;
+        skip_term();
+        return new OtpLazyTerm(super.buf, start, super.pos - start, flags, atomRefs);
+    }
+
+    /**
+     * Move past the next term in the stream without decoding it.
+     *
+     * @exception OtpErlangDecodeException
+     *                if the stream does not contain a known Erlang type at the next
+     *                position.
+     */
+    public void skip_term() throws OtpErlangDecodeException {
+        final int tag = read1skip_version();
+        int n;
+
+        switch (tag) {
+        case OtpExternal.smallIntTag:
+        case OtpExternal.atomCacheRefTag:
+            skip(1);
+            break;
+
+        case OtpExternal.intTag:
+            skip(4);
+            break;
+
+        case OtpExternal.smallBigTag:
+            skip(read1() + 1);
+            break;
+
+        case OtpExternal.largeBigTag:
+            skip(read4BE() + 1);
+            break;
+
+        case OtpExternal.atomTag:
+        case OtpExternal.atomUtf8Tag:
+            skip(read2BE());
+            break;
+
+        case OtpExternal.smallAtomUtf8Tag:
+            skip(read1());
+            break;
+
+        case OtpExternal.floatTag:
+            skip(31);
+            break;
+
+        case OtpExternal.newFloatTag:
+            skip(8);
+            break;
+
+        case OtpExternal.refTag:
+            skip_term();
+            skip(5);
+            break;
+
+        case OtpExternal.newRefTag:
+        case OtpExternal.newerRefTag:
+            n = read2BE();
+            skip_term();
+            skip((tag == OtpExternal.newRefTag ? 1 : 4) + 4 * n);
+            break;
+
+        case OtpExternal.portTag:
+            skip_term();
+            skip(5);
+            break;
+
+        case OtpExternal.newPortTag:
+            skip_term();
+            skip(8);
+            break;
+
+        case OtpExternal.pidTag:
+            skip_term();
+            skip(9);
+            break;
+
+        case OtpExternal.newPidTag:
+            skip_term();
+            skip(12);
+            break;
+
+        case OtpExternal.smallTupleTag:
+            skip_terms(read1());
+            break;
+
+        case OtpExternal.largeTupleTag:
+            skip_terms(read4BE());
+            break;
+
+        case OtpExternal.nilTag:
+            break;
+
+        case OtpExternal.stringTag:
+            skip(read2BE());
+            break;
+
+        case OtpExternal.listTag:
+            // elements and tail
+            skip_terms(read4BE() + 1);
+            break;
+
+        case OtpExternal.binTag:
+            skip(read4BE());
+            break;
+
+        case OtpExternal.bitBinTag:
+            skip(read4BE() + 1);
+            break;
+
+        case OtpExternal.mapTag:
+            skip_terms(2 * read4BE());
+            break;
+
+        case OtpExternal.newFunTag:
+            // the size includes itself
+            skip(read4BE() - 4);
+            break;
+
+        case OtpExternal.funTag:
+            n = read4BE();
+            // pid, module, index, uniq and the free variables
+            skip_terms(n + 4);
+            break;
+
+        case OtpExternal.externalFunTag:
+            skip_terms(3);
+            break;
+
+        default:
+            throw new OtpErlangDecodeException("Uknown data type: " + tag);
+        }
+    }
+
+    private void skip_terms(final int n) throws OtpErlangDecodeException {
+        for (int i = 0; i < n; i++) {
+            skip_term();
+        }
+    }
+
+    private void skip(final int n) throws OtpErlangDecodeException {
+        if (n < 0) {
+            throw new OtpErlangDecodeException("Cannot read from input stream");
+        }
+        super.pos = require(n) + n;
+    }
+
     public int read_map_head() throws OtpErlangDecodeException {
         int arity = 0;
         final int tag = read1skip_version();
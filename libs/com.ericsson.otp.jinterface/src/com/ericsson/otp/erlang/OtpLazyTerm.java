@@ -0,0 +1,235 @@
+/*
+ * %CopyrightBegin%
+ *
+ * Copyright Ericsson AB 2015. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under
+ * the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * %CopyrightEnd%
+ */
+
+package com.ericsson.otp.erlang;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A view of an encoded Erlang term that is decoded on demand. Tuple and list elements
+ * are views themselves, found by skipping over the encoded elements before them, so
+ * looking at a few fields of a large term doesn't build the rest of it.
+ *
+ * <p>
+ * {@link #decode()} builds the regular {@link OtpErlangObject} for the term (or for any
+ * element); the result is kept, so a view is decoded at most once.
+ * </p>
+ *
+ * <p>
+ * Views share the buffer they were read from, which must not be modified while they are
+ * in use. Views are obtained with {@link OtpInputStream#read_lazy()} or
+ * {@link OtpMbox#receiveLazy()}.
+ * </p>
+ */
+public final class OtpLazyTerm {
+
+    private final byte[] buf;
+    private final int offset;
+    private final int length;
+    private final int flags;
+    private final OtpErlangAtom[] atomRefs;
+
+    private OtpErlangObject decoded;
+
+    OtpLazyTerm(final byte[] buf, final int offset, final int length, final int flags,
+            final OtpErlangAtom[] atomRefs) {
+        this.buf = buf;
+        this.offset = offset;
+        this.length = length;
+        this.flags = flags;
+        this.atomRefs = atomRefs;
+    }
+
+    /**
+     * Create a view of an already decoded term.
+     */
+    public OtpLazyTerm(final OtpErlangObject o) {
+        final OtpOutputStream out = new OtpOutputStream(o);
+        buf = out.toByteArray();
+        offset = 0;
+        length = buf.length;
+        flags = 0;
+        atomRefs = null;
+        decoded = o;
+    }
+
+    /**
+     * Get the external format tag of the term; one of the tag constants in
+     * {@link OtpExternal}.
+     */
+    public int tag() {
+        return buf[offset] & 0xff;
+    }
+
+    public boolean isAtom() {
+        final int tag = tag();
+        return tag == OtpExternal.atomTag || tag == OtpExternal.atomUtf8Tag
+                || tag == OtpExternal.smallAtomUtf8Tag
+                || tag == OtpExternal.atomCacheRefTag;
+    }
+
+    public boolean isTuple() {
+        final int tag = tag();
+        return tag == OtpExternal.smallTupleTag || tag == OtpExternal.largeTupleTag;
+    }
+
+    /**
+     * A list, empty or not. Lists of small integers may be encoded as strings.
+     */
+    public boolean isList() {
+        final int tag = tag();
+        return tag == OtpExternal.nilTag || tag == OtpExternal.stringTag
+                || tag == OtpExternal.listTag;
+    }
+
+    /**
+     * Get the number of elements of a tuple or a list. For improper lists, the tail is
+     * not counted.
+     *
+     * @exception OtpErlangDecodeException
+     *                if the term is not a tuple or a list.
+     */
+    public int arity() throws OtpErlangDecodeException {
+        final OtpInputStream is = stream();
+        return isTuple() ? is.read_tuple_head() : is.read_list_head();
+    }
+
+    /**
+     * Get a view of the element at the given position of a tuple or a list.
+     *
+     * @return the element, or null if the position is out of range.
+     *
+     * @exception OtpErlangDecodeException
+     *                if the term is not a tuple or a list.
+     */
+    public OtpLazyTerm elementAt(final int i) throws OtpErlangDecodeException {
+        final OtpInputStream is = stream();
+        if (tag() == OtpExternal.stringTag) {
+            final int n = is.read_list_head();
+            if (i < 0 || i >= n) {
+                return null;
+            }
+            return new OtpLazyTerm(new OtpErlangLong(buf[offset + 3 + i] & 0xff));
+        }
+        final int n = isTuple() ? is.read_tuple_head() : is.read_list_head();
+        if (i < 0 || i >= n) {
+            return null;
+        }
+        for (int j = 0; j < i; j++) {
+            is.skip_term();
+        }
+        return is.read_lazy();
+    }
+
+    /**
+     * Get views of all the elements of a tuple or a list. This is cheaper than calling
+     * {@link #elementAt(int)} for each of them.
+     *
+     * @exception OtpErlangDecodeException
+     *                if the term is not a tuple or a list.
+     */
+    public List<OtpLazyTerm> elements() throws OtpErlangDecodeException {
+        final OtpInputStream is = stream();
+        if (tag() == OtpExternal.stringTag) {
+            final int n = is.read_list_head();
+            final List<OtpLazyTerm> result = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                result.add(new OtpLazyTerm(new OtpErlangLong(is.read1())));
+            }
+            return result;
+        }
+        final int n = isTuple() ? is.read_tuple_head() : is.read_list_head();
+        final List<OtpLazyTerm> result = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            result.add(is.read_lazy());
+        }
+        return result;
+    }
+
+    /**
+     * Get the name of an atom, without creating an {@link OtpErlangAtom}.
+     *
+     * @exception OtpErlangDecodeException
+     *                if the term is not an atom.
+     */
+    public String atomValue() throws OtpErlangDecodeException {
+        return stream().read_atom();
+    }
+
+    /**
+     * Get the value of an integer that fits in a long.
+     *
+     * @exception OtpErlangDecodeException
+     *                if the term is not an integer or if it is too large.
+     */
+    public long longValue() throws OtpErlangDecodeException {
+        return stream().read_long();
+    }
+
+    /**
+     * Check whether this is the given atom, without decoding anything.
+     */
+    public boolean isAtom(final String name) {
+        try {
+            return isAtom() && name.equals(atomValue());
+        } catch (final OtpErlangDecodeException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Decode the term.
+     *
+     * @return the term as a regular Erlang object.
+     *
+     * @exception OtpErlangDecodeException
+     *                if the term could not be decoded.
+     */
+    public OtpErlangObject decode() throws OtpErlangDecodeException {
+        OtpErlangObject o = decoded;
+        if (o == null) {
+            o = stream().read_any();
+            decoded = o;
+        }
+        return o;
+    }
+
+    /**
+     * Get the size of the encoded term, in bytes.
+     */
+    public int size() {
+        return length;
+    }
+
+    @SuppressWarnings("resource")
+    private OtpInputStream stream() {
+        final OtpInputStream is = new OtpInputStream(buf, offset, length, flags);
+        is.atomRefs = atomRefs;
+        return is;
+    }
+
+    @Override
+    public String toString() {
+        try {
+            return decode().toString();
+        } catch (final OtpErlangDecodeException e) {
+            return "#LazyTerm<" + tag() + ">";
+        }
+    }
+}
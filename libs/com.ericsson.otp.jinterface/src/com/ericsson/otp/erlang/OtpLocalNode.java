@@ -17,13 +17,15 @@
  */
 package com.ericsson.otp.erlang;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * This class represents local node types. It is used to group the node types
  * {@link OtpNode OtpNode} and {@link OtpSelf OtpSelf}.
  */
 public class OtpLocalNode extends AbstractNode {
-    private int serial;
-    private int pidCount = 1;
+    // pid number in the low 15 bits, serial in the 13 bits above
+    private final AtomicInteger pidSeq = new AtomicInteger(1);
     private int portCount = 1;
     private int refId[];
 
@@ -65,8 +67,7 @@ public class OtpLocalNode extends AbstractNode {
     }
 
     private void init() {
-        serial = 0;
-        pidCount = 1;
+        pidSeq.set(1);
         portCount = 1;
         refId = new int[3];
         refId[0] = 1;
@@ -109,20 +110,9 @@ public class OtpLocalNode extends AbstractNode {
      *
      * @return an Erlang pid.
      */
-    public synchronized OtpErlangPid createPid() {
-        final OtpErlangPid p = new OtpErlangPid(node, pidCount, serial, creation);
-
-        pidCount++;
-        if (pidCount > 0x7fff) {
-            pidCount = 0;
-
-            serial++;
-            if (serial > 0x1fff) { /* 13 bits */
-                serial = 0;
-            }
-        }
-
-        return p;
+    public OtpErlangPid createPid() {
+        final int n = pidSeq.getAndIncrement();
+        return new OtpErlangPid(node, n & 0x7fff, n >>> 15 & 0x1fff, creation);
     }
 
     /**
@@ -75,10 +75,11 @@ package com.ericsson.otp.erlang;
  */
 public class OtpMbox {
     OtpNode home;
-    OtpErlangPid self;
+    volatile OtpErlangPid self;
     GenericQueue queue;
     String name;
     Links links;
+    volatile OtpMboxListener listener;
 
     // package constructor: called by OtpNode:createMbox(name)
     // to create a named mbox
@@ -86,7 +87,7 @@ public class OtpMbox {
         this.self = self;
         this.home = home;
         this.name = name;
-        queue = new GenericQueue();
+        queue = home.lockFreeMailboxes ? new LockFreeQueue() : new GenericQueue();
         links = new Links(10);
     }
 
@@ -197,6 +198,51 @@ public class OtpMbox {
         return null;
     }
 
+    /**
+     * Block until a message arrives for this mailbox.
+     *
+     * @return an {@link OtpLazyTerm OtpLazyTerm} view of the body of the next message
+     *         waiting in this mailbox, decoded as far as it is looked at.
+     *
+     * @exception OtpErlangDecodeException
+     *                if the message can not be decoded.
+     *
+     * @exception OtpErlangExit
+     *                if a linked {@link OtpErlangPid pid} has exited or has sent an exit
+     *                signal to this mailbox.
+     */
+    public OtpLazyTerm receiveLazy() throws OtpErlangExit, OtpErlangDecodeException {
+        return receiveMsg().getLazyMsg();
+    }
+
+    /**
+     * Wait for a message to arrive for this mailbox.
+     *
+     * @param timeout
+     *            the time, in milliseconds, to wait for a message before returning null.
+     *
+     * @return an {@link OtpLazyTerm OtpLazyTerm} view of the body of the next message
+     *         waiting in this mailbox, decoded as far as it is looked at.
+     *
+     * @exception OtpErlangDecodeException
+     *                if the message can not be decoded.
+     *
+     * @exception OtpErlangExit
+     *                if a linked {@link OtpErlangPid pid} has exited or has sent an exit
+     *                signal to this mailbox.
+     */
+    public OtpLazyTerm receiveLazy(final long timeout)
+            throws OtpErlangExit, OtpErlangDecodeException {
+        try {
+            final OtpMsg m = receiveMsg(timeout);
+            if (m != null) {
+                return m.getLazyMsg();
+            }
+        } catch (final InterruptedException e) {
+        }
+        return null;
+    }
+
     /**
      * Block until a message arrives for this mailbox.
      *
@@ -252,7 +298,10 @@ public class OtpMbox {
      */
     public OtpMsg receiveMsg() throws OtpErlangExit {
 
-        final OtpMsg m = (OtpMsg) queue.get();
+        OtpMsg m = (OtpMsg) queue.get();
+        while (isStale(m)) {
+            m = (OtpMsg) queue.get();
+        }
 
         switch (m.type()) {
         case OtpMsg.exitTag:
@@ -288,7 +337,11 @@ public class OtpMbox {
      */
     public OtpMsg receiveMsg(final long timeout)
             throws InterruptedException, OtpErlangExit {
-        final OtpMsg m = (OtpMsg) queue.get(timeout);
+        final long stopTime = System.currentTimeMillis() + timeout;
+        OtpMsg m = (OtpMsg) queue.get(timeout);
+        while (m != null && isStale(m)) {
+            m = (OtpMsg) queue.get(Math.max(0, stopTime - System.currentTimeMillis()));
+        }
 
         if (m == null) {
             return null;
@@ -365,20 +418,33 @@ public class OtpMbox {
      *
      */
     public void send(final String aname, final String node, final OtpErlangObject msg) {
+        sendSized(aname, node, msg);
+    }
+
+    /**
+     * Send a message to a named mailbox created from another node, like
+     * {@link #send(String, String, OtpErlangObject)}, and tell how large it was.
+     *
+     * @return the size in bytes of the encoded message, 0 if it was delivered on this
+     *         node without being encoded, or -1 if it couldn't be sent.
+     */
+    public int sendSized(final String aname, final String node,
+            final OtpErlangObject msg) {
         try {
             final String currentNode = home.node();
             if (node.equals(currentNode) || (node.indexOf('@', 0) < 0 && node
                     .equals(currentNode.substring(0, currentNode.indexOf('@', 0))))) {
                 send(aname, msg);
-            } else {
-                // other node
-                final OtpCookedConnection conn = home.getConnection(node);
-                if (conn == null) {
-                    return;
-                }
-                conn.send(self, aname, msg);
+                return 0;
             }
+            // other node
+            final OtpCookedConnection conn = home.getConnection(node);
+            if (conn == null) {
+                return -1;
+            }
+            return conn.send(self, aname, msg);
         } catch (final Exception e) {
+            return -1;
         }
     }
 
@@ -633,6 +699,31 @@ public class OtpMbox {
         home.closeMbox(this);
     }
 
+    /**
+     * Be told when messages arrive in this mailbox, instead of waiting for them. If
+     * messages are already waiting, the listener is called once right away.
+     *
+     * @param l
+     *            the listener, or null to remove it.
+     */
+    public void setMessageListener(final OtpMboxListener l) {
+        listener = l;
+        if (l != null && queue.getCount() > 0) {
+            l.messageArrived(this);
+        }
+    }
+
+    /**
+     * Close this mailbox and hand it back to its node for reuse, discarding any messages
+     * left in it. Use this instead of {@link #close()} for short lived mailboxes that
+     * have received all the messages they were waiting for.
+     *
+     * @see OtpNode#recycleMbox(OtpMbox)
+     */
+    public void recycle() {
+        home.recycleMbox(this);
+    }
+
     @Override
     protected void finalize() {
         close();
@@ -668,6 +759,9 @@ public class OtpMbox {
      * intact.
      */
     void deliver(final OtpMsg m) {
+        if (isStale(m)) {
+            return;
+        }
         switch (m.type()) {
         case OtpMsg.linkTag:
             links.addLink(self, m.getSenderPid());
@@ -687,6 +781,20 @@ public class OtpMbox {
             queue.put(m);
             break;
         }
+        final OtpMboxListener l = listener;
+        if (l != null && m.type() != OtpMsg.linkTag && m.type() != OtpMsg.unlinkTag) {
+            l.messageArrived(this);
+        }
+    }
+
+    /*
+     * A message for a pid this mailbox had before it was recycled. The sender may have
+     * looked the mailbox up before the recycling and delivered after the queue was
+     * flushed, so this is checked again on receive.
+     */
+    private boolean isStale(final OtpMsg m) {
+        final OtpErlangPid to = m.getRecipientPid();
+        return to != null && !to.equals(self);
     }
 
     // used to break all known links to this mbox
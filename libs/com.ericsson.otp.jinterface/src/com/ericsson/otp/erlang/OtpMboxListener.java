@@ -0,0 +1,38 @@
+/*
+ * %CopyrightBegin%
+ *
+ * Copyright Ericsson AB 2015. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under
+ * the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * %CopyrightEnd%
+ */
+
+package com.ericsson.otp.erlang;
+
+/**
+ * Gets told when messages arrive in a mailbox, so that nobody needs to wait in
+ * {@link OtpMbox#receive()} for them. Register it with
+ * {@link OtpMbox#setMessageListener(OtpMboxListener)}.
+ */
+public interface OtpMboxListener {
+
+    /**
+     * A message (or exit signal) has been put in the mailbox. This is called on the
+     * thread that delivers the message, typically the connection's receive thread, so it
+     * must not block; get the message with {@link OtpMbox#receive(long) receive(0)} here
+     * or, better, on some other thread.
+     *
+     * @param mbox
+     *            the mailbox the message was put in.
+     */
+    void messageArrived(OtpMbox mbox);
+}
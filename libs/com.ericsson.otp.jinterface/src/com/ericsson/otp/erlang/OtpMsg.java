@@ -61,6 +61,8 @@ public class OtpMsg {
     protected int tag; // what type of message is this (send, link, exit etc)
     protected OtpInputStream paybuf;
     protected OtpErlangObject payload;
+    private OtpLazyTerm lazyPayload;
+    private int size;
 
     protected OtpErlangPid from;
     protected OtpErlangPid to;
@@ -73,6 +75,7 @@ public class OtpMsg {
         this.to = to;
         toName = null;
         this.paybuf = paybuf;
+        size = paybuf.available();
         payload = null;
     }
 
@@ -93,6 +96,7 @@ public class OtpMsg {
         this.toName = toName;
         to = null;
         this.paybuf = paybuf;
+        size = paybuf.available();
         payload = null;
     }
 
@@ -146,6 +150,10 @@ public class OtpMsg {
      *
      */
     OtpInputStream getMsgBuf() {
+        if (paybuf != null) {
+            // the caller owns the buffer now
+            paybuf.pooled = false;
+        }
         return paybuf;
     }
 
@@ -202,12 +210,57 @@ public class OtpMsg {
      *
      */
     public OtpErlangObject getMsg() throws OtpErlangDecodeException {
-        if (payload == null) {
+        if (payload == null && lazyPayload != null) {
+            payload = lazyPayload.decode();
+        } else if (payload == null) {
             payload = paybuf.read_any();
+            // decoded terms don't share the buffer, it can be reused
+            paybuf.recycle();
+            paybuf = null;
         }
         return payload;
     }
 
+    /**
+     * Get the size of the message as it was received, in bytes.
+     *
+     * @return the size of the encoded message, or 0 if it was sent from this node and
+     *         was never encoded.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * <p>
+     * Get a view of the message contained in this OtpMsg that is decoded only as far as
+     * it is looked at, see {@link OtpLazyTerm}.
+     * </p>
+     *
+     * <p>
+     * The view keeps the received buffer. Calling this method subsequent times returns
+     * the same view.
+     * </p>
+     *
+     * @return a view of the Erlang term.
+     *
+     * @exception OtpErlangDecodeException
+     *                if the byte stream does not contain an Erlang term.
+     */
+    public OtpLazyTerm getLazyMsg() throws OtpErlangDecodeException {
+        if (lazyPayload == null) {
+            if (payload != null) {
+                lazyPayload = new OtpLazyTerm(payload);
+            } else {
+                // the view shares the buffer, it can't be reused
+                paybuf.pooled = false;
+                lazyPayload = paybuf.read_lazy();
+                paybuf = null;
+            }
+        }
+        return lazyPayload;
+    }
+
     /**
      * <p>
      * Get the name of the recipient for this message.
@@ -0,0 +1,174 @@
+/*
+ * %CopyrightBegin%
+ *
+ * Copyright Ericsson AB 2015. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under
+ * the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * %CopyrightEnd%
+ */
+
+package com.ericsson.otp.erlang;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A fixed pool of I/O threads, each owning a {@link Selector}, that serves all the
+ * connections of the {@link OtpNioSocketTransport}s created by one
+ * {@link OtpNioTransportFactory}. Connections are spread over the threads round robin.
+ */
+class OtpNioSelector {
+
+    // size of the per-thread read buffer
+    private static final int readBufferSize = 64 * 1024;
+
+    private final IoThread[] threads;
+    private final AtomicInteger next = new AtomicInteger();
+
+    // channel writes, and the messages a channel didn't take in full
+    final AtomicLong writes = new AtomicLong();
+    final AtomicLong queuedWrites = new AtomicLong();
+    // most bytes handed to a channel in one write
+    volatile int maxWrite = Integer.MAX_VALUE;
+
+    OtpNioSelector(final int size) throws IOException {
+        threads = new IoThread[Math.max(1, size)];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new IoThread("otp-nio-" + i);
+            threads[i].start();
+        }
+    }
+
+    void register(final OtpNioSocketTransport transport) {
+        final IoThread thread = threads[(next.getAndIncrement() & Integer.MAX_VALUE)
+                % threads.length];
+        transport.setIoThread(thread);
+        thread.execute(new Runnable() {
+            @Override
+            public void run() {
+                thread.doRegister(transport);
+            }
+        });
+    }
+
+    void close() {
+        for (final IoThread thread : threads) {
+            thread.quit();
+        }
+    }
+
+    static class IoThread extends Thread {
+
+        private final Selector selector;
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        private final ByteBuffer readBuffer = ByteBuffer
+                .allocate(OtpNioSelector.readBufferSize);
+        private volatile boolean done;
+
+        IoThread(final String name) throws IOException {
+            super(name);
+            setDaemon(true);
+            selector = Selector.open();
+        }
+
+        /**
+         * Run a task on this thread; anything that touches selection keys goes through
+         * here.
+         */
+        void execute(final Runnable task) {
+            tasks.add(task);
+            selector.wakeup();
+        }
+
+        void quit() {
+            done = true;
+            selector.wakeup();
+        }
+
+        void doRegister(final OtpNioSocketTransport transport) {
+            try {
+                final SelectionKey key = transport.channel().register(selector,
+                        SelectionKey.OP_READ, transport);
+                transport.setKey(key);
+                if (transport.hasPendingWrites()) {
+                    key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                }
+            } catch (final IOException e) {
+                transport.failed(e);
+            }
+        }
+
+        void setWriteInterest(final OtpNioSocketTransport transport,
+                final boolean on) {
+            final SelectionKey key = transport.key();
+            if (key == null || !key.isValid()) {
+                return;
+            }
+            final int ops = key.interestOps();
+            key.interestOps(on ? ops | SelectionKey.OP_WRITE
+                    : ops & ~SelectionKey.OP_WRITE);
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (!done) {
+                    selector.select();
+                    Runnable task;
+                    while ((task = tasks.poll()) != null) {
+                        task.run();
+                    }
+                    final Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                    while (it.hasNext()) {
+                        final SelectionKey key = it.next();
+                        it.remove();
+                        final OtpNioSocketTransport transport = (OtpNioSocketTransport) key
+                                .attachment();
+                        try {
+                            if (key.isValid() && key.isWritable()) {
+                                transport.writePending();
+                            }
+                            if (key.isValid() && key.isReadable()) {
+                                transport.readAvailable(readBuffer);
+                            }
+                        } catch (final IOException e) {
+                            key.cancel();
+                            transport.failed(e);
+                        } catch (final RuntimeException e) {
+                            // only this peer is lost, not the others on the thread
+                            key.cancel();
+                            transport.failed(new IOException(e));
+                        }
+                    }
+                }
+            } catch (final IOException e) {
+                // selector broken, nothing more we can do on this thread
+            } finally {
+                for (final SelectionKey key : selector.keys()) {
+                    ((OtpNioSocketTransport) key.attachment())
+                            .failed(new IOException("I/O thread stopped"));
+                }
+                try {
+                    selector.close();
+                } catch (final IOException e) {
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * %CopyrightBegin%
+ *
+ * Copyright Ericsson AB 2015. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under
+ * the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * %CopyrightEnd%
+ */
+
+package com.ericsson.otp.erlang;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Server transport that accepts {@link OtpNioSocketTransport} connections. Accepting is
+ * blocking; only established connections are served by the selector.
+ */
+public class OtpNioServerTransport implements OtpServerTransport {
+
+    private final ServerSocketChannel channel;
+    private final OtpNioSelector selector;
+
+    OtpNioServerTransport(final int port, final OtpNioSelector selector)
+            throws IOException {
+        this.selector = selector;
+        channel = ServerSocketChannel.open();
+        channel.socket().bind(new InetSocketAddress(port));
+    }
+
+    @Override
+    public int getLocalPort() {
+        return channel.socket().getLocalPort();
+    }
+
+    @SuppressWarnings("resource")
+    @Override
+    public OtpTransport accept() throws IOException {
+        final SocketChannel sock = channel.accept();
+        return new OtpNioSocketTransport(sock, selector);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,334 @@
+/*
+ * %CopyrightBegin%
+ *
+ * Copyright Ericsson AB 2015. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under
+ * the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * %CopyrightEnd%
+ */
+
+package com.ericsson.otp.erlang;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+
+/**
+ * Transport over a {@link SocketChannel}. The channel stays in blocking mode while
+ * talking to epmd and during the handshake. After that, the connection's receive loop
+ * doesn't get a thread of its own: the channel is switched to non-blocking mode and
+ * served by one of the I/O threads of an {@link OtpNioSelector}.
+ *
+ * <p>
+ * In non-blocking mode, writes go straight to the channel as long as it accepts them;
+ * whatever it doesn't take is queued and written by the I/O thread when the channel
+ * becomes writable. {@link OutputStream#flush()} only waits when more than
+ * {@link #highWater} bytes are queued.
+ * </p>
+ */
+public class OtpNioSocketTransport implements OtpTransport {
+
+    // flush() waits while more than this is queued for a slow peer
+    private static final int highWater = 1024 * 1024;
+    // a longer frame is taken for a corrupt length, not something to allocate
+    private static final int maxFrame = 256 * 1024 * 1024;
+
+    private final SocketChannel channel;
+    private final OtpNioSelector selector;
+    private final InputStream in;
+    private final ChannelOutputStream out = new ChannelOutputStream();
+
+    private volatile OtpNioSelector.IoThread ioThread;
+    private volatile SelectionKey key;
+    private volatile AbstractConnection connection;
+
+    // read state, only touched by the I/O thread
+    private final ByteBuffer lenBuf = ByteBuffer.allocate(4);
+    private byte[] frame;
+    private int frameLen;
+    private int framePos;
+
+    OtpNioSocketTransport(final SocketChannel channel, final OtpNioSelector selector)
+            throws IOException {
+        this.channel = channel;
+        this.selector = selector;
+        channel.socket().setTcpNoDelay(true);
+        in = Channels.newInputStream(channel);
+    }
+
+    OtpNioSocketTransport(final InetSocketAddress addr, final OtpNioSelector selector)
+            throws IOException {
+        this(SocketChannel.open(addr), selector);
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        return in;
+    }
+
+    @Override
+    public OutputStream getOutputStream() throws IOException {
+        return out;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            channel.close();
+        } finally {
+            out.fail(new IOException("Connection closed"));
+        }
+    }
+
+    /**
+     * Hand the connection's receive loop over to the selector.
+     */
+    void startReceiving(final AbstractConnection conn) throws IOException {
+        connection = conn;
+        channel.configureBlocking(false);
+        selector.register(this);
+    }
+
+    SocketChannel channel() {
+        return channel;
+    }
+
+    void setIoThread(final OtpNioSelector.IoThread thread) {
+        ioThread = thread;
+    }
+
+    SelectionKey key() {
+        return key;
+    }
+
+    void setKey(final SelectionKey key) {
+        this.key = key;
+    }
+
+    boolean hasPendingWrites() {
+        return out.hasPending();
+    }
+
+    void writePending() throws IOException {
+        out.writePending();
+    }
+
+    /**
+     * Read whatever is available and deliver the complete frames. Called on the I/O
+     * thread when the channel is readable.
+     */
+    void readAvailable(final ByteBuffer buf) throws IOException {
+        for (;;) {
+            buf.clear();
+            final int n = channel.read(buf);
+            if (n < 0) {
+                throw new IOException("Remote has closed connection");
+            }
+            if (n == 0) {
+                return;
+            }
+            buf.flip();
+            while (buf.hasRemaining()) {
+                if (frame == null) {
+                    while (lenBuf.hasRemaining() && buf.hasRemaining()) {
+                        lenBuf.put(buf.get());
+                    }
+                    if (lenBuf.hasRemaining()) {
+                        break;
+                    }
+                    lenBuf.flip();
+                    final int len = lenBuf.getInt();
+                    lenBuf.clear();
+                    if (len < 0 || len > OtpNioSocketTransport.maxFrame) {
+                        throw new IOException("Invalid frame length " + len);
+                    }
+                    if (len == 0) {
+                        // received tick
+                        if (!connection.nioReceived(null, 0)) {
+                            return;
+                        }
+                        continue;
+                    }
+                    frame = OtpBufferPool.acquire(len);
+                    frameLen = len;
+                    framePos = 0;
+                }
+                final int count = Math.min(buf.remaining(), frameLen - framePos);
+                buf.get(frame, framePos, count);
+                framePos += count;
+                if (framePos == frameLen) {
+                    final byte[] msg = frame;
+                    frame = null;
+                    if (!connection.nioReceived(msg, frameLen)) {
+                        return;
+                    }
+                }
+            }
+            if (n < buf.capacity()) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * The channel is unusable; called on the I/O thread.
+     */
+    void failed(final IOException e) {
+        out.fail(e);
+        final AbstractConnection conn = connection;
+        if (conn != null) {
+            conn.nioFailed(e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "OtpNioSocketTransport[" + channel + "]";
+    }
+
+    private class ChannelOutputStream extends OutputStream {
+
+        private final ArrayDeque<ByteBuffer> pending = new ArrayDeque<>();
+        private int pendingBytes;
+        private IOException failure;
+
+        @Override
+        public void write(final int b) throws IOException {
+            write(new byte[] {
+                    (byte) b
+            }, 0, 1);
+        }
+
+        @Override
+        public synchronized void write(final byte[] b, final int off, final int len)
+                throws IOException {
+            if (failure != null) {
+                throw new IOException(failure.getMessage());
+            }
+            final ByteBuffer src = ByteBuffer.wrap(b, off, len);
+            if (channel.isBlocking()) {
+                while (src.hasRemaining()) {
+                    channelWrite(src);
+                }
+                return;
+            }
+            if (pending.isEmpty()) {
+                channelWrite(src);
+            }
+            if (src.hasRemaining()) {
+                selector.queuedWrites.incrementAndGet();
+                final ByteBuffer copy = ByteBuffer.allocate(src.remaining());
+                copy.put(src);
+                copy.flip();
+                final boolean wasEmpty = pending.isEmpty();
+                pending.add(copy);
+                pendingBytes += copy.remaining();
+                if (wasEmpty) {
+                    setWriteInterest(true);
+                }
+            }
+        }
+
+        @Override
+        public synchronized void flush() throws IOException {
+            boolean interrupted = false;
+            while (pendingBytes > OtpNioSocketTransport.highWater && failure == null) {
+                // drain it ourselves too, the I/O thread may be waiting for our lock
+                drain();
+                if (pendingBytes > OtpNioSocketTransport.highWater) {
+                    try {
+                        wait(1);
+                    } catch (final InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            if (failure != null) {
+                throw new IOException(failure.getMessage());
+            }
+        }
+
+        synchronized boolean hasPending() {
+            return !pending.isEmpty();
+        }
+
+        synchronized void writePending() throws IOException {
+            drain();
+            if (pending.isEmpty()) {
+                setWriteInterest(false);
+            }
+            notifyAll();
+        }
+
+        synchronized void fail(final IOException e) {
+            if (failure == null) {
+                failure = e;
+            }
+            pending.clear();
+            pendingBytes = 0;
+            notifyAll();
+        }
+
+        private void drain() throws IOException {
+            while (!pending.isEmpty()) {
+                final ByteBuffer buf = pending.peek();
+                final int n = channelWrite(buf);
+                pendingBytes -= n;
+                if (buf.hasRemaining()) {
+                    return;
+                }
+                pending.poll();
+            }
+        }
+
+        private int channelWrite(final ByteBuffer src) throws IOException {
+            selector.writes.incrementAndGet();
+            final int limit = src.limit();
+            if (src.remaining() > selector.maxWrite) {
+                src.limit(src.position() + selector.maxWrite);
+            }
+            try {
+                return channel.write(src);
+            } finally {
+                src.limit(limit);
+            }
+        }
+
+        private void setWriteInterest(final boolean on) {
+            final OtpNioSelector.IoThread thread = ioThread;
+            if (thread == null) {
+                // not registered yet, registration will look at the queue
+                return;
+            }
+            if (Thread.currentThread() == thread) {
+                thread.setWriteInterest(OtpNioSocketTransport.this, on);
+            } else {
+                thread.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        thread.setWriteInterest(OtpNioSocketTransport.this,
+                                hasPendingWrites());
+                    }
+                });
+            }
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * %CopyrightBegin%
+ *
+ * Copyright Ericsson AB 2015. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under
+ * the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * %CopyrightEnd%
+ */
+
+package com.ericsson.otp.erlang;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+
+/**
+ * Transport factory whose connections are served by a small, fixed pool of selector
+ * threads instead of one blocking reader thread each. Useful when attaching to many
+ * nodes. All connections of the nodes that share a factory share its I/O threads.
+ */
+public class OtpNioTransportFactory implements OtpTransportFactory {
+
+    private final OtpNioSelector selector;
+
+    /**
+     * Create a factory with one I/O thread per processor, but at most 4.
+     */
+    public OtpNioTransportFactory() throws IOException {
+        this(Math.min(4, Runtime.getRuntime().availableProcessors()));
+    }
+
+    public OtpNioTransportFactory(final int ioThreads) throws IOException {
+        selector = new OtpNioSelector(ioThreads);
+    }
+
+    /**
+     * @see OtpTransportFactory#createTransport(String, int)
+     */
+    @Override
+    public OtpTransport createTransport(final String addr, final int port)
+            throws IOException {
+        return new OtpNioSocketTransport(
+                new InetSocketAddress(InetAddress.getByName(addr), port), selector);
+    }
+
+    /**
+     * @see OtpTransportFactory#createTransport(InetAddress, int)
+     */
+    @Override
+    public OtpTransport createTransport(final InetAddress addr, final int port)
+            throws IOException {
+        return new OtpNioSocketTransport(new InetSocketAddress(addr, port), selector);
+    }
+
+    /**
+     * @see OtpTransportFactory#createServerTransport(int)
+     */
+    @Override
+    public OtpServerTransport createServerTransport(final int port) throws IOException {
+        return new OtpNioServerTransport(port, selector);
+    }
+
+    /**
+     * Hand at most this many bytes to a channel in one write, so that large messages are
+     * written in parts as they would be to a slow peer. Meant for tests.
+     */
+    public void setMaxWriteSize(final int bytes) {
+        selector.maxWrite = Math.max(1, bytes);
+    }
+
+    /**
+     * @return the number of writes to the channels of this factory so far
+     */
+    public long getWriteCount() {
+        return selector.writes.get();
+    }
+
+    /**
+     * @return the number of messages a channel didn't take in full, so that the rest was
+     *         queued for an I/O thread
+     */
+    public long getQueuedWriteCount() {
+        return selector.queuedWrites.get();
+    }
+
+    /**
+     * Stop the I/O threads. Connections still open will be closed.
+     */
+    public void close() {
+        selector.close();
+    }
+
+}
@@ -18,12 +18,17 @@
 package com.ericsson.otp.erlang;
 
 import java.io.IOException;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
 import java.lang.ref.WeakReference;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Enumeration;
-import java.util.Hashtable;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * <p>
@@ -73,6 +78,11 @@ public class OtpNode extends OtpLocalNode {
     // flags
     private int connFlags;
 
+    // send path settings for new connections
+    private boolean gatheringWrites = true;
+    volatile boolean lockFreeMailboxes;
+    private long writeCoalescing;
+
     /**
      * <p>
      * Create a node using the default cookie. The default cookie is found by reading the
@@ -222,7 +232,7 @@ public class OtpNode extends OtpLocalNode {
 
     private synchronized void init(final int aport) throws IOException {
         if (!initDone) {
-            connections = new Hashtable<>(17, 0.95f);
+            connections = new ConcurrentHashMap<>(17, 0.95f);
             mboxes = new Mailboxes();
             acceptor = new Acceptor(aport);
             initDone = true;
@@ -317,6 +327,27 @@ public class OtpNode extends OtpLocalNode {
         }
     }
 
+    /**
+     * Close the specified mailbox, keeping it for reuse by {@link #createMbox()} if
+     * mailbox pooling is enabled (see {@link #setMboxPoolSize(int)}). Messages still in
+     * the mailbox are discarded.
+     *
+     * <p>
+     * Only anonymous mailboxes without links are pooled, others are simply closed. A
+     * reused mailbox gets a new {@link OtpErlangPid pid}, so messages that are still on
+     * their way to the old one are dropped. The caller must not use the mailbox after
+     * this call.
+     * </p>
+     *
+     * @param mbox
+     *            the mailbox to recycle.
+     */
+    public void recycleMbox(final OtpMbox mbox) {
+        if (mbox != null && !mboxes.recycle(mbox)) {
+            closeMbox(mbox);
+        }
+    }
+
     /**
      * Create an named mailbox that can be used to send and receive messages with other,
      * similar mailboxes and with Erlang processes. Messages can be sent to this mailbox
@@ -545,7 +576,10 @@ public class OtpNode extends OtpLocalNode {
      */
     OtpCookedConnection getConnection(final String anode) {
         OtpPeer peer = null;
-        OtpCookedConnection conn = null;
+        OtpCookedConnection conn = connections.get(anode);
+        if (conn != null) {
+            return conn;
+        }
 
         synchronized (connections) {
             // first just try looking up the name as-is
@@ -553,13 +587,15 @@ public class OtpNode extends OtpLocalNode {
 
             if (conn == null) {
                 // in case node had no '@' add localhost info and try again
-                peer = new OtpPeer(anode);
+                peer = new OtpPeer(anode, transportFactory);
                 conn = connections.get(peer.node());
 
                 if (conn == null) {
                     try {
                         conn = new OtpCookedConnection(this, peer);
                         conn.setFlags(connFlags);
+                        conn.setGatheringWrites(gatheringWrites);
+                        conn.setWriteCoalescing(writeCoalescing);
                         addConnection(conn);
                     } catch (final Exception e) {
                         /* false = outgoing */
@@ -619,60 +655,68 @@ public class OtpNode extends OtpLocalNode {
     }
 
     /*
-     * this class used to wrap the mailbox hashtables so we can use weak references
+     * this class used to wrap the mailbox maps so we can use weak references. Entries
+     * whose mailbox has been collected are removed as they show up on the reference
+     * queues.
      */
     public class Mailboxes {
         // mbox pids here
-        private final Map<OtpErlangPid, WeakReference<OtpMbox>> byPid;
+        private final ConcurrentHashMap<OtpErlangPid, MboxRef> byPid;
         // mbox names here
-        private final Hashtable<String, WeakReference<OtpMbox>> byName;
+        private final ConcurrentHashMap<String, MboxRef> byName;
+        private final ReferenceQueue<OtpMbox> collectedPids = new ReferenceQueue<>();
+        private final ReferenceQueue<OtpMbox> collectedNames = new ReferenceQueue<>();
+
+        // closed anonymous mailboxes waiting to be reused
+        private final ConcurrentLinkedQueue<OtpMbox> pool = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger pooled = new AtomicInteger();
+        private volatile int poolSize;
 
         public Mailboxes() {
-            byPid = new Hashtable<>(17, 0.95f);
-            byName = new Hashtable<>(17, 0.95f);
+            byPid = new ConcurrentHashMap<>(17, 0.95f);
+            byName = new ConcurrentHashMap<>(17, 0.95f);
         }
 
         public OtpMbox create(final String name) {
-            OtpMbox m = null;
-
-            synchronized (byName) {
-                if (get(name) != null) {
-                    return null;
-                }
-                final OtpErlangPid pid = createPid();
-                m = new OtpMbox(OtpNode.this, pid, name);
-                byPid.put(pid, new WeakReference<>(m));
-                byName.put(name, new WeakReference<>(m));
+            final OtpErlangPid pid = createPid();
+            final OtpMbox m = new OtpMbox(OtpNode.this, pid);
+            if (!register(name, m)) {
+                return null;
             }
+            byPid.put(pid, new MboxRef(pid, m, collectedPids));
             return m;
         }
 
         public OtpMbox create() {
+            expunge();
             final OtpErlangPid pid = createPid();
-            final OtpMbox m = new OtpMbox(OtpNode.this, pid);
-            byPid.put(pid, new WeakReference<>(m));
+            OtpMbox m = pool.poll();
+            if (m != null) {
+                pooled.decrementAndGet();
+                // a fresh pid, so that late messages to the old one are not delivered
+                m.self = pid;
+            } else {
+                m = new OtpMbox(OtpNode.this, pid);
+            }
+            byPid.put(pid, new MboxRef(pid, m, collectedPids));
             return m;
         }
 
         public void clear() {
             byPid.clear();
             byName.clear();
+            pool.clear();
+            pooled.set(0);
         }
 
         public String[] names() {
-            String allnames[] = null;
-
-            synchronized (byName) {
-                final int n = byName.size();
-                final Enumeration<String> keys = byName.keys();
-                allnames = new String[n];
-
-                int i = 0;
-                while (keys.hasMoreElements()) {
-                    allnames[i++] = keys.nextElement();
+            final List<String> allnames = new ArrayList<>(byName.size());
+            for (final Map.Entry<String, MboxRef> e : byName.entrySet()) {
+                if (e.getValue().get() != null) {
+                    allnames.add(e.getKey());
                 }
             }
-            return allnames;
+            return allnames.toArray(new String[allnames.size()]);
         }
 
         public boolean register(final String name, final OtpMbox mbox) {
@@ -681,24 +725,28 @@ public class OtpNode extends OtpLocalNode {
                     byName.remove(mbox.name);
                     mbox.name = null;
                 }
-            } else {
-                synchronized (byName) {
-                    if (get(name) != null) {
-                        return false;
-                    }
-                    byName.put(name, new WeakReference<>(mbox));
+                return true;
+            }
+            expunge();
+            final MboxRef ref = new MboxRef(name, mbox, collectedNames);
+            for (;;) {
+                final MboxRef old = byName.putIfAbsent(name, ref);
+                if (old == null || old.get() == null && byName.replace(name, old, ref)) {
                     mbox.name = name;
+                    return true;
+                }
+                if (old.get() != null) {
+                    return false;
                 }
             }
-            return true;
         }
 
         /*
          * look up a mailbox based on its name. If the mailbox has gone out of scope we
-         * also remove the reference from the hashtable so we don't find it again.
+         * also remove the reference from the map so we don't find it again.
          */
         public OtpMbox get(final String name) {
-            final WeakReference<OtpMbox> wr = byName.get(name);
+            final MboxRef wr = byName.get(name);
 
             if (wr != null) {
                 final OtpMbox m = wr.get();
@@ -706,17 +754,17 @@ public class OtpNode extends OtpLocalNode {
                 if (m != null) {
                     return m;
                 }
-                byName.remove(name);
+                byName.remove(name, wr);
             }
             return null;
         }
 
         /*
          * look up a mailbox based on its pid. If the mailbox has gone out of scope we
-         * also remove the reference from the hashtable so we don't find it again.
+         * also remove the reference from the map so we don't find it again.
          */
         public OtpMbox get(final OtpErlangPid pid) {
-            final WeakReference<OtpMbox> wr = byPid.get(pid);
+            final MboxRef wr = byPid.get(pid);
 
             if (wr != null) {
                 final OtpMbox m = wr.get();
@@ -724,7 +772,7 @@ public class OtpNode extends OtpLocalNode {
                 if (m != null) {
                     return m;
                 }
-                byPid.remove(pid);
+                byPid.remove(pid, wr);
             }
             return null;
         }
@@ -735,6 +783,53 @@ public class OtpNode extends OtpLocalNode {
                 byName.remove(mbox.name);
             }
         }
+
+        /*
+         * unregister an anonymous mailbox without links and keep it for reuse, if
+         * there is room in the pool; returns false if the mailbox must be closed
+         * instead.
+         */
+        boolean recycle(final OtpMbox mbox) {
+            if (mbox.name != null || mbox.links.count() != 0) {
+                return false;
+            }
+            byPid.remove(mbox.self);
+            mbox.listener = null;
+            mbox.queue.flush();
+            if (pooled.incrementAndGet() > poolSize) {
+                pooled.decrementAndGet();
+            } else {
+                pool.offer(mbox);
+            }
+            return true;
+        }
+
+        void setPoolSize(final int size) {
+            poolSize = size;
+            while (pooled.get() > size && pool.poll() != null) {
+                pooled.decrementAndGet();
+            }
+        }
+
+        // drop the entries of collected mailboxes
+        private void expunge() {
+            Reference<? extends OtpMbox> ref;
+            while ((ref = collectedPids.poll()) != null) {
+                byPid.remove(((MboxRef) ref).key, ref);
+            }
+            while ((ref = collectedNames.poll()) != null) {
+                byName.remove(((MboxRef) ref).key, ref);
+            }
+        }
+    }
+
+    private static final class MboxRef extends WeakReference<OtpMbox> {
+        final Object key;
+
+        MboxRef(final Object key, final OtpMbox mbox, final ReferenceQueue<OtpMbox> q) {
+            super(mbox, q);
+            this.key = key;
+        }
     }
 
     /*
@@ -831,6 +926,8 @@ public class OtpNode extends OtpLocalNode {
                     synchronized (connections) {
                         conn = new OtpCookedConnection(OtpNode.this, newsock);
                         conn.setFlags(connFlags);
+                        conn.setGatheringWrites(gatheringWrites);
+                        conn.setWriteCoalescing(writeCoalescing);
                         addConnection(conn);
                     }
                 } catch (final OtpAuthException e) {
@@ -855,4 +952,65 @@ public class OtpNode extends OtpLocalNode {
     public void setFlags(final int flags) {
         connFlags = flags;
     }
+
+    /**
+     * Let peers refer to atoms they have sent before through the atom cache of the
+     * distribution header, instead of sending them in full in every message. Off by
+     * default. The capability is announced in the handshake, so this only affects
+     * connections set up afterwards. Messages we send on such connections start with a
+     * distribution header without atom cache refs, as the peer then expects.
+     */
+    public void setDistributionAtomCache(final boolean on) {
+        if (on) {
+            flags |= AbstractNode.dFlagDistHdrAtomCache;
+        } else {
+            flags &= ~AbstractNode.dFlagDistHdrAtomCache;
+        }
+    }
+
+    /**
+     * Use {@link LockFreeQueue}s for the mailboxes created from now on, instead of
+     * {@link GenericQueue}s.
+     */
+    public void setLockFreeMailboxes(final boolean on) {
+        lockFreeMailboxes = on;
+    }
+
+    /**
+     * Keep up to this many mailboxes passed to {@link #recycleMbox(OtpMbox)} for reuse
+     * by {@link #createMbox()}, which saves setting up a new mailbox for short lived
+     * request/response exchanges. 0 (the default) disables pooling.
+     */
+    public void setMboxPoolSize(final int size) {
+        mboxes.setPoolSize(size);
+    }
+
+    /**
+     * Write each message's header and payload with a single write. On by default.
+     *
+     * @see AbstractConnection#setGatheringWrites(boolean)
+     */
+    public void setGatheringWrites(final boolean gathering) {
+        synchronized (connections) {
+            gatheringWrites = gathering;
+            for (final OtpCookedConnection conn : connections.values()) {
+                conn.setGatheringWrites(gathering);
+            }
+        }
+    }
+
+    /**
+     * Merge messages sent concurrently on the same connection into one write, waiting at
+     * most the given window for them to come in. 0 (the default) disables coalescing.
+     *
+     * @see AbstractConnection#setWriteCoalescing(long)
+     */
+    public void setWriteCoalescing(final long windowNanos) {
+        synchronized (connections) {
+            writeCoalescing = windowNanos;
+            for (final OtpCookedConnection conn : connections.values()) {
+                conn.setWriteCoalescing(windowNanos);
+            }
+        }
+    }
 }
@@ -10,7 +10,9 @@ import org.erlide.backend.BackendUtils;
 import org.erlide.backend.api.IBackend;
 import org.erlide.backend.internal.BackendActivator;
 import org.erlide.runtime.rpc.IOtpRpc;
+import org.erlide.runtime.rpc.RpcBatch;
 import org.erlide.runtime.rpc.RpcException;
+import org.erlide.runtime.rpc.RpcResult;
 import org.erlide.runtime.rpc.RpcTimeoutException;
 import org.erlide.util.ErlLogger;
 import org.erlide.util.Util;
@@ -126,19 +128,53 @@ public class ErlideDebug {
         try {
             final OtpErlangObject res = backend.call(ErlideDebug.ERLIDE_DEBUG,
                     "interpret", "alxoo", moduleName, options, distributed, interpret);
-            if (res instanceof OtpErlangTuple) {
-                final OtpErlangTuple t = (OtpErlangTuple) res;
-                final OtpErlangObject o = t.elementAt(0);
-                if (o instanceof OtpErlangAtom) {
-                    final OtpErlangAtom moduleAtom = (OtpErlangAtom) o;
-                    return "module".equals(moduleAtom.atomValue());
+            return ErlideDebug.isInterpreted(res);
+        } catch (final RpcException e) {
+            ErlLogger.warn(e);
+        }
+        return false;
+    }
+
+    /**
+     * Interpret several modules with a single batch RPC.
+     *
+     * @return the names of the modules that couldn't be (de)interpreted
+     */
+    @SuppressWarnings("boxing")
+    public static List<String> interpret(final IOtpRpc backend,
+            final List<String> moduleNames, final List<OtpErlangList> options,
+            final boolean distributed, final boolean interpret) {
+        final List<String> failed = new ArrayList<>();
+        try {
+            final RpcBatch batch = backend.batch();
+            for (int i = 0; i < moduleNames.size(); i++) {
+                batch.add(ErlideDebug.ERLIDE_DEBUG, "interpret", "alxoo",
+                        moduleNames.get(i), options.get(i), distributed, interpret);
+            }
+            final List<RpcResult> results = batch.call();
+            for (int i = 0; i < moduleNames.size(); i++) {
+                final RpcResult res = results.get(i);
+                if (!res.isOk() || !ErlideDebug.isInterpreted(res.getValue())) {
+                    failed.add(moduleNames.get(i));
                 }
             }
-            return Util.isOk(res);
         } catch (final RpcException e) {
             ErlLogger.warn(e);
+            failed.addAll(moduleNames);
         }
-        return false;
+        return failed;
+    }
+
+    private static boolean isInterpreted(final OtpErlangObject res) {
+        if (res instanceof OtpErlangTuple) {
+            final OtpErlangTuple t = (OtpErlangTuple) res;
+            final OtpErlangObject o = t.elementAt(0);
+            if (o instanceof OtpErlangAtom) {
+                final OtpErlangAtom moduleAtom = (OtpErlangAtom) o;
+                return "module".equals(moduleAtom.atomValue());
+            }
+        }
+        return Util.isOk(res);
     }
 
     @SuppressWarnings("boxing")
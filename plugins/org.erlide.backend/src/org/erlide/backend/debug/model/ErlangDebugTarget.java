@@ -14,6 +14,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.EnumSet;
 import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -453,12 +454,29 @@ public class ErlangDebugTarget extends ErlangDebugElement
 
     public void interpretModules(final Collection<String> modules,
             final boolean distributed) {
+        final List<String> moduleNames = new ArrayList<>(modules.size());
+        final List<OtpErlangList> options = new ArrayList<>(modules.size());
+        final Map<IProject, OtpErlangList> projectDirs = new HashMap<>();
         for (final String pm : modules) {
             final String[] pms = pm.split(":");
             final IProject project = ResourcesPlugin.getWorkspace().getRoot()
                     .getProject(pms[0]);
             final String moduleName = pms[1].replace(".erl", "");
-            interpret(project, moduleName, distributed, true);
+            ErlLogger.debug("interpret " + moduleName);
+            OtpErlangList dirs = projectDirs.get(project);
+            if (dirs == null) {
+                dirs = getProjectDirs(project);
+                projectDirs.put(project, dirs);
+            }
+            moduleNames.add(moduleName);
+            options.add(dirs);
+        }
+        if (!moduleNames.isEmpty()) {
+            final List<String> failed = ErlideDebug.interpret(backend.getOtpRpc(),
+                    moduleNames, options, distributed, true);
+            if (!failed.isEmpty()) {
+                ErlLogger.warn("Could not interpret modules %s", failed);
+            }
         }
     }
 
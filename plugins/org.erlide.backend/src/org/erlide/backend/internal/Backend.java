@@ -11,6 +11,8 @@ package org.erlide.backend.internal;
 import java.io.File;
 import java.io.IOException;
 import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.runtime.Path;
@@ -362,18 +364,17 @@ public class Backend implements IStreamListener, IBackend {
     private void loadBeamsFromDir(final String outDir) {
         final File dir = new File(outDir);
         if (dir.isDirectory()) {
+            final Map<String, OtpErlangBinary> binaries = new LinkedHashMap<>();
             for (final File f : dir.listFiles()) {
                 final Path path = new Path(f.getPath());
                 if (path.getFileExtension() != null
                         && "beam".compareTo(path.getFileExtension()) == 0) {
                     final String m = path.removeFileExtension().lastSegment();
                     try {
-                        boolean ok = false;
                         final OtpErlangBinary bin = BeamUtil.getBeamBinary(m, path);
                         if (bin != null) {
-                            ok = BeamLoader.loadBeam(getOtpRpc(), m, bin);
-                        }
-                        if (!ok) {
+                            binaries.put(m, bin);
+                        } else {
                             ErlLogger.error("Could not load %s", m);
                         }
                     } catch (final Exception ex) {
@@ -381,6 +382,9 @@ public class Backend implements IStreamListener, IBackend {
                     }
                 }
             }
+            for (final String m : BeamLoader.loadBeams(getOtpRpc(), binaries)) {
+                ErlLogger.error("Could not load %s", m);
+            }
         }
     }
 
@@ -25,7 +25,7 @@ import org.eclipse.core.runtime.preferences.InstanceScope;
 import org.erlide.backend.debug.ErlangDebugOptionsManager;
 import org.erlide.core.internal.ErlangCoreLogger;
 import org.erlide.core.util.EncodingUtils;
-import org.erlide.runtime.rpc.RpcMonitor;
+import org.erlide.runtime.rpc.RpcMetrics;
 import org.erlide.util.ErlLogger;
 import org.erlide.util.SystemConfiguration;
 import org.osgi.framework.Bundle;
@@ -85,9 +85,9 @@ public final class ErlangCore {
         final String location = ResourcesPlugin.getWorkspace().getRoot().getLocation()
                 .toPortableString();
 
-        RpcMonitor.cleanupOldLogs(location, "rpc_monitor");
+        RpcMetrics.cleanupOldLogs(location, "rpc_monitor");
         ErlLogger.getInstance().dispose();
-        RpcMonitor.dump(ErlLogger.getInstance().getLogFile());
+        RpcMetrics.dump(ErlLogger.getInstance().getLogFile());
     }
 
     public IWorkspace getWorkspace() {
@@ -52,6 +52,7 @@ import org.erlide.runtime.api.BeamLoader;
 import org.erlide.runtime.rpc.IOtpRpc;
 import org.erlide.runtime.rpc.RpcException;
 import org.erlide.runtime.rpc.RpcFuture;
+import org.erlide.runtime.rpc.RpcPriority;
 import org.erlide.util.ErlLogger;
 import org.erlide.util.SystemConfiguration;
 
@@ -151,17 +152,13 @@ public final class BuilderHelper {
         final IErlProject eprj = ErlangEngine.getInstance().getModel()
                 .findProject(my_project);
         if (eprj != null) {
-            final Collection<IErlModule> ms = eprj.getModules();
+            final Collection<IErlModule> ms = ErlangEngine.getInstance()
+                    .getModelFindService()
+                    .findIncludingModules(eprj, resource.getName(), true);
             for (final IErlModule m : ms) {
-                final Collection<ErlangIncludeFile> incs = m.getIncludeFiles();
-                for (final ErlangIncludeFile ifile : incs) {
-                    if (ResourceUtil.samePath(ifile.getFilename(), resource.getName())) {
-                        if (m.getSourceKind() == SourceKind.ERL) {
-                            final BuildResource bres = new BuildResource(m.getResource());
-                            result.add(bres);
-                        }
-                        break;
-                    }
+                if (m.getSourceKind() == SourceKind.ERL) {
+                    final BuildResource bres = new BuildResource(m.getResource());
+                    result.add(bres);
                 }
             }
         }
@@ -562,8 +559,9 @@ public final class BuilderHelper {
             incs.add(p.toString());
         }
         try {
-            return backend.async_call(BuilderHelper.ERLIDE_BUILDER, "compile", "sslsx",
-                    fn.toString(), outputdir, incs, compilerOptions);
+            return backend.withPriority(RpcPriority.BULK).async_call(
+                    BuilderHelper.ERLIDE_BUILDER, "compile", "sslsx", fn.toString(),
+                    outputdir, incs, compilerOptions);
         } catch (final Exception e) {
             ErlLogger.debug(e);
             return null;
@@ -573,8 +571,9 @@ public final class BuilderHelper {
     public static RpcFuture compileYrl(final IOtpRpc backend, final String fn,
             final String output) {
         try {
-            return backend.async_call(BuilderHelper.ERLIDE_BUILDER, "compile_yrl", "ss",
-                    fn, output);
+            return backend.withPriority(RpcPriority.BULK)
+                    .async_call(BuilderHelper.ERLIDE_BUILDER, "compile_yrl", "ss", fn,
+                            output);
         } catch (final Exception e) {
             ErlLogger.debug(e);
             return null;
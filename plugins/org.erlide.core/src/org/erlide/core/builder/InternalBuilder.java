@@ -45,7 +45,9 @@ import org.erlide.engine.model.root.ErlangProjectProperties;
 import org.erlide.engine.model.root.IErlModel;
 import org.erlide.engine.model.root.IErlModule;
 import org.erlide.engine.model.root.IErlProject;
+import org.erlide.runtime.rpc.RpcException;
 import org.erlide.runtime.rpc.RpcFuture;
+import org.erlide.runtime.rpc.RpcTimeoutException;
 import org.erlide.util.ErlLogger;
 import org.erlide.util.SystemConfiguration;
 
@@ -225,6 +227,31 @@ public class InternalBuilder extends ErlangBuilder {
 
         notifier.setProgressPerCompilationUnit(1.0f / n);
         final Map<RpcFuture, IResource> results = new HashMap<>();
+        try {
+            compileAll(erlProject, project, kind, backend, compilerOptions,
+                    resourcesToBuild, notifier, results);
+        } catch (final OperationCanceledException e) {
+            // stop the compilations still running on the backend
+            for (final RpcFuture f : results.keySet()) {
+                f.cancel(true);
+            }
+            throw e;
+        }
+        helper.refreshOutputDir(project);
+
+        try {
+            helper.checkForClashes(backend.getOtpRpc(), project);
+        } catch (final Exception e) {
+        }
+        backend.removeProjectPath(model.findProject(project));
+
+    }
+
+    private void compileAll(final IErlProject erlProject, @NonNull final IProject project,
+            final BuildKind kind, final IBackend backend,
+            final OtpErlangList compilerOptions,
+            final Set<BuildResource> resourcesToBuild, final BuildNotifier notifier,
+            final Map<RpcFuture, IResource> results) {
         for (final BuildResource bres : resourcesToBuild) {
             notifier.checkCancel();
             final IResource resource = bres.getResource();
@@ -259,9 +286,14 @@ public class InternalBuilder extends ErlangBuilder {
                 notifier.checkCancel();
                 OtpErlangObject r;
                 try {
-                    r = result.getKey().get(100, TimeUnit.MILLISECONDS);
-                } catch (final Exception e) {
+                    r = result.getKey().checkedGet(100, TimeUnit.MILLISECONDS);
+                } catch (final RpcTimeoutException e) {
                     r = null;
+                } catch (final RpcException e) {
+                    ErlLogger.warn("Could not compile %s: %s",
+                            result.getValue().getName(), e.getMessage());
+                    done.add(result);
+                    continue;
                 }
                 if (r != null) {
                     final IResource resource = result.getValue();
@@ -275,14 +307,6 @@ public class InternalBuilder extends ErlangBuilder {
             waiting.removeAll(done);
             done.clear();
         }
-        helper.refreshOutputDir(project);
-
-        try {
-            helper.checkForClashes(backend.getOtpRpc(), project);
-        } catch (final Exception e) {
-        }
-        backend.removeProjectPath(model.findProject(project));
-
     }
 
     private void handleAppFile(final IProject project, final String outPath,
@@ -1,6 +1,6 @@
 package org.erlide.dialyzer.builder;
 
-import java.util.List;
+import java.util.Iterator;
 
 import org.eclipse.core.resources.IMarker;
 import org.eclipse.core.resources.IResource;
@@ -18,6 +18,7 @@ import org.erlide.util.Util;
 
 import com.ericsson.otp.erlang.OtpErlangList;
 import com.ericsson.otp.erlang.OtpErlangLong;
+import com.ericsson.otp.erlang.OtpErlangObject;
 import com.ericsson.otp.erlang.OtpErlangRangeException;
 import com.ericsson.otp.erlang.OtpErlangTuple;
 
@@ -33,31 +34,34 @@ public class DialyzerMarkerUtils {
         if (result == null || result.arity() == 0) {
             return;
         }
-        final List<String> warnings = ErlideDialyze.formatWarnings(backend, result);
-        for (int i = 0; i < warnings.size(); i++) {
-            final OtpErlangTuple t = (OtpErlangTuple) result.elementAt(i);
-            final OtpErlangTuple fileLine = (OtpErlangTuple) t.elementAt(1);
-            final String filename = Util.stringValue(fileLine.elementAt(0));
-            final OtpErlangLong lineL = (OtpErlangLong) fileLine.elementAt(1);
-            if (!filename.isEmpty()) {
-                int line = 1;
-                try {
-                    line = lineL.intValue();
-                } catch (final OtpErlangRangeException e) {
-                    ErlLogger.error(e);
-                }
-                if (line <= 0) {
-                    line = 1;
-                }
-
-                String msg = warnings.get(i);
-                final int j = msg.indexOf(": ");
-                if (j != -1) {
-                    msg = msg.substring(j + 1);
-                }
-                final IErlElementLocator model = ErlangEngine.getInstance().getModel();
-                DialyzerMarkerUtils.addDialyzerWarningMarker(model, filename, line, msg);
+        // the warnings are formatted in the same order, mark them as they come
+        final Iterator<OtpErlangObject> items = result.iterator();
+        ErlideDialyze.formatWarnings(backend, result, warning -> DialyzerMarkerUtils
+                .addWarningMarker((OtpErlangTuple) items.next(), warning));
+    }
+
+    private static void addWarningMarker(final OtpErlangTuple t, final String warning) {
+        final OtpErlangTuple fileLine = (OtpErlangTuple) t.elementAt(1);
+        final String filename = Util.stringValue(fileLine.elementAt(0));
+        final OtpErlangLong lineL = (OtpErlangLong) fileLine.elementAt(1);
+        if (!filename.isEmpty()) {
+            int line = 1;
+            try {
+                line = lineL.intValue();
+            } catch (final OtpErlangRangeException e) {
+                ErlLogger.error(e);
+            }
+            if (line <= 0) {
+                line = 1;
+            }
+
+            String msg = warning;
+            final int j = msg.indexOf(": ");
+            if (j != -1) {
+                msg = msg.substring(j + 1);
             }
+            final IErlElementLocator model = ErlangEngine.getInstance().getModel();
+            DialyzerMarkerUtils.addDialyzerWarningMarker(model, filename, line, msg);
         }
     }
 
@@ -98,10 +98,12 @@ public class DialyzerUtils {
             while (!future.isDone()) {
                 // check cancellation
                 if (monitor.isCanceled()) {
+                    future.cancel(true);
                     throw new OperationCanceledException();
                 }
                 // check backend down
                 if (!backend.isRunning()) {
+                    future.cancel(true);
                     throw new BackendException(
                             "Dialyzer: backend " + backend.getName() + " is down");
                 }
@@ -2,12 +2,15 @@ package org.erlide.dialyzer.builder;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.function.Consumer;
 
 import org.eclipse.core.runtime.IPath;
 import org.erlide.runtime.rpc.IOtpRpc;
 import org.erlide.runtime.rpc.IRpcResultCallback;
 import org.erlide.runtime.rpc.RpcException;
 import org.erlide.runtime.rpc.RpcFuture;
+import org.erlide.runtime.rpc.RpcPriority;
+import org.erlide.runtime.rpc.RpcStream;
 import org.erlide.util.ErlLogger;
 import org.erlide.util.Util;
 
@@ -30,39 +33,43 @@ public class ErlideDialyze {
         for (final IPath p : includeDirs) {
             incs.add(p.toString());
         }
-        return backend.async_call(ErlideDialyze.ERLIDE_DIALYZE, "dialyze", "lslslsoo",
-                files, pltPaths, incs, fromSource, noCheckPLT);
+        // on the bulk lane, so that cancelling the future stops dialyzer
+        return backend.withPriority(RpcPriority.BULK).async_call(
+                ErlideDialyze.ERLIDE_DIALYZE, "dialyze", "lslslsoo", files, pltPaths,
+                incs, fromSource, noCheckPLT);
     }
 
-    public static List<String> formatWarnings(final IOtpRpc backend,
-            final OtpErlangList warnings) {
-        final List<String> result = Lists.newArrayList();
-        try {
-            final OtpErlangList l = (OtpErlangList) backend
-                    .call(ErlideDialyze.ERLIDE_DIALYZE, "format_warnings", "x", warnings);
-            for (final OtpErlangObject o : l) {
-                result.add(Util.stringValue(o).trim());
+    /**
+     * Hand the formatted warnings to the consumer as they arrive, in the order of the
+     * list.
+     */
+    public static void formatWarnings(final IOtpRpc backend,
+            final OtpErlangList warnings, final Consumer<String> formatted) {
+        try (final RpcStream l = backend.stream(ErlideDialyze.ERLIDE_DIALYZE,
+                "format_warnings", "x", warnings)) {
+            while (l.hasNext()) {
+                formatted.accept(Util.stringValue(l.next()).trim());
             }
         } catch (final RpcException e) {
             ErlLogger.error(e);
         }
-        return result;
     }
 
     public static OtpErlangObject checkPlt(final IOtpRpc backend, final String plt,
             final List<String> ebinDirs) throws RpcException {
+        final IOtpRpc bulk = backend.withPriority(RpcPriority.BULK);
         if (ebinDirs == null) {
-            return backend.call(ErlideDialyze.UPDATE_TIMEOUT,
-                    ErlideDialyze.ERLIDE_DIALYZE, "check_plt", "s", plt);
+            return bulk.call(ErlideDialyze.UPDATE_TIMEOUT, ErlideDialyze.ERLIDE_DIALYZE,
+                    "check_plt", "s", plt);
         }
-        return backend.call(ErlideDialyze.UPDATE_TIMEOUT, ErlideDialyze.ERLIDE_DIALYZE,
+        return bulk.call(ErlideDialyze.UPDATE_TIMEOUT, ErlideDialyze.ERLIDE_DIALYZE,
                 "update_plt_with_additional_paths", "sls", plt, ebinDirs);
     }
 
-    public static void startCheckPlt(final IOtpRpc backend, final String plt,
+    public static RpcFuture startCheckPlt(final IOtpRpc backend, final String plt,
             final List<String> ebinDirs, final IRpcResultCallback callback)
             throws RpcException {
-        backend.async_call_result(callback, ErlideDialyze.ERLIDE_DIALYZE,
+        return backend.async_call_result(callback, ErlideDialyze.ERLIDE_DIALYZE,
                 "start_update_plt_with_additional_paths", "xsls", plt, ebinDirs);
     }
 }
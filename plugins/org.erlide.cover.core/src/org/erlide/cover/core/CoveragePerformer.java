@@ -13,6 +13,7 @@ import org.erlide.cover.constants.CoverConstants;
 import org.erlide.cover.views.model.StatsTreeModel;
 import org.erlide.engine.model.root.IErlModule;
 import org.erlide.runtime.rpc.RpcException;
+import org.erlide.runtime.rpc.RpcResult;
 import org.erlide.util.ErlLogger;
 
 import com.ericsson.otp.erlang.OtpErlangAtom;
@@ -121,20 +122,29 @@ public class CoveragePerformer implements ICoveragePerformer {
             includes.add(new OtpErlangList(ppath.append(include).toString()));
         }
 
+        final List<OtpErlangObject> paths = getModulePaths();
+
+        // set the includes and cover compile the chosen modules in one round trip
         try {
-            CoverBackend.getInstance().getBackend().getOtpRpc().call(
-                    CoverConstants.COVER_ERL_BACKEND, CoverConstants.FUN_SET_INCLUDES,
-                    "x", includes);
-        } catch (final RpcException e1) {
-            e1.printStackTrace();
-            throw new CoverException(e1);
+            final List<RpcResult> results = CoverBackend.getInstance().getBackend()
+                    .getOtpRpc().batch()
+                    .add(CoverConstants.COVER_ERL_BACKEND,
+                            CoverConstants.FUN_SET_INCLUDES, "x", includes)
+                    .add(CoverConstants.COVER_ERL_BACKEND, CoverConstants.FUN_PREP, "x",
+                            paths)
+                    .call();
+            for (final RpcResult result : results) {
+                if (!result.isOk()) {
+                    throw new CoverException(result.getValue().toString());
+                }
+            }
+        } catch (final RpcException e) {
+            ErlLogger.error(e);
+            throw new CoverException(e.getMessage());
         }
-
-        recompileModules();
     }
 
-    // cover compilation of chosen modules
-    private void recompileModules() throws CoverException {
+    private List<OtpErlangObject> getModulePaths() throws CoverException {
         final List<OtpErlangObject> paths = new ArrayList<>(config.getModules().size());
         for (final IErlModule module : config.getModules()) {
             if (module == null) {
@@ -145,16 +155,7 @@ public class CoveragePerformer implements ICoveragePerformer {
             log.info(module.getFilePath());
             paths.add(new OtpErlangList(module.getFilePath()));
         }
-
-        try {
-            CoverBackend.getInstance().getBackend().getOtpRpc().call(
-                    CoverConstants.COVER_ERL_BACKEND, CoverConstants.FUN_PREP, "x",
-                    paths);
-
-        } catch (final RpcException e) {
-            ErlLogger.error(e);
-            throw new CoverException(e.getMessage());
-        }
+        return paths;
     }
 
     /**
@@ -1,9 +1,16 @@
 package org.erlide.engine.model;
 
+import java.io.File;
+import java.io.IOException;
+
 import org.erlide.engine.model.root.IErlProject;
 import org.erlide.runtime.rpc.IOtpRpc;
 import org.erlide.runtime.rpc.IOtpRpcProvider;
+import org.erlide.runtime.rpc.RecordingOtpRpcProvider;
+import org.erlide.runtime.rpc.ReplayOtpRpcProvider;
+import org.erlide.runtime.rpc.RpcRecording;
 import org.erlide.runtime.runtimeinfo.RuntimeVersion;
+import org.erlide.util.ErlLogger;
 import org.erlide.util.services.ExtensionUtils;
 
 public class OtpRpcFactory {
@@ -34,9 +41,32 @@ public class OtpRpcFactory {
         return OtpRpcFactory.provider.get();
     }
 
+    /**
+     * Use the given provider instead of the one registered by the backend, for example a
+     * {@link ReplayOtpRpcProvider} to run without a runtime.
+     */
+    public static void setProvider(final IOtpRpcProvider provider) {
+        OtpRpcFactory.provider = provider;
+    }
+
     private static IOtpRpcProvider getOtpRpcProvider() {
-        return ExtensionUtils.getSingletonExtension("org.erlide.backend.backend",
-                IOtpRpcProvider.class);
+        if (RpcRecording.REPLAY_FILE != null) {
+            final File file = new File(RpcRecording.REPLAY_FILE);
+            try {
+                final RpcRecording recording = RpcRecording.load(file);
+                ErlLogger.info("Replaying %d RPCs from %s", recording.size(), file);
+                return new ReplayOtpRpcProvider(recording);
+            } catch (final IOException e) {
+                ErlLogger.error(e);
+            }
+        }
+        final IOtpRpcProvider result = ExtensionUtils.getSingletonExtension(
+                "org.erlide.backend.backend", IOtpRpcProvider.class);
+        if (RpcRecording.RECORD_FILE != null && result != null) {
+            return new RecordingOtpRpcProvider(result, new RpcRecording(null))
+                    .saveOnExit(new File(RpcRecording.RECORD_FILE));
+        }
+        return result;
     }
 
 }
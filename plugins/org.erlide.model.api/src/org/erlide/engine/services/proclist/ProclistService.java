@@ -1,8 +1,11 @@
 package org.erlide.engine.services.proclist;
 
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.eclipse.core.runtime.IProgressMonitor;
 import org.erlide.runtime.rpc.IOtpRpc;
 
-import com.ericsson.otp.erlang.OtpErlangList;
 import com.ericsson.otp.erlang.OtpErlangObject;
 import com.ericsson.otp.erlang.OtpErlangPid;
 
@@ -10,7 +13,11 @@ public interface ProclistService {
 
     void processListInit(IOtpRpc b);
 
-    OtpErlangList getProcessList(IOtpRpc b);
+    /**
+     * Hand the processes to the consumer a chunk at a time, as they arrive.
+     */
+    void getProcessList(IOtpRpc b, IProgressMonitor monitor,
+            Consumer<List<OtpErlangObject>> processes);
 
     OtpErlangObject getProcessInfo(IOtpRpc b, OtpErlangPid pid);
 
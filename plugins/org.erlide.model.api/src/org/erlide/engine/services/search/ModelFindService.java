@@ -51,4 +51,12 @@ public interface ModelFindService {
     String resolveMacroValue(final String definedName, final IErlModule module);
 
     Collection<IErlModule> findAllIncludedFiles(IErlModule module) throws CoreException;
+
+    /**
+     * The reverse of {@link #findAllIncludedFiles(IErlModule)}: the project's modules
+     * that include a file with the given name, directly or, if <code>transitive</code>,
+     * through other included files too.
+     */
+    Collection<IErlModule> findIncludingModules(IErlProject project, String fileName,
+            boolean transitive) throws ErlModelException;
 }
@@ -2,6 +2,7 @@ package org.erlide.engine.services.search;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.function.Consumer;
 
 import org.eclipse.core.runtime.IPath;
 import org.erlide.engine.services.ErlangService;
@@ -29,8 +30,13 @@ public interface OpenService extends ErlangService {
 
     OtpErlangTuple findFirstVar(final String name, final String source);
 
-    List<ExternalTreeEntry> getExternalModuleTree(IOtpRpc backend,
-            final String externalModules, final OtpErlangList pathVars);
+    /**
+     * Hand the entries of the tree to the consumer as they arrive.
+     *
+     * @return false if the tree couldn't be read to the end
+     */
+    boolean getExternalModuleTree(IOtpRpc backend, final String externalModules,
+            final OtpErlangList pathVars, final Consumer<ExternalTreeEntry> entries);
 
     String getExternalInclude(final String filePath, final String externalIncludes,
             final OtpErlangList pathVars);
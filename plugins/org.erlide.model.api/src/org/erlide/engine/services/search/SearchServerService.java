@@ -2,14 +2,20 @@ package org.erlide.engine.services.search;
 
 import org.erlide.runtime.rpc.IRpcResultCallback;
 import org.erlide.runtime.rpc.RpcException;
+import org.erlide.runtime.rpc.RpcFuture;
 
 import com.ericsson.otp.erlang.OtpErlangObject;
 import com.ericsson.otp.erlang.OtpErlangPid;
 
 public interface SearchServerService {
 
-    void startFindRefs(ErlangSearchPattern pattern, ErlSearchScope scope, String stateDir,
-            IRpcResultCallback callback, boolean updateSearchServer) throws RpcException;
+    /**
+     * @return a future that completes when the search is over; cancel it to stop
+     *         handling results.
+     */
+    RpcFuture startFindRefs(ErlangSearchPattern pattern, ErlSearchScope scope,
+            String stateDir, IRpcResultCallback callback, boolean updateSearchServer)
+            throws RpcException;
 
     OtpErlangObject findRefs(ErlangSearchPattern pattern, ErlSearchScope scope,
             String stateDir, boolean updateSearchServer) throws RpcException;
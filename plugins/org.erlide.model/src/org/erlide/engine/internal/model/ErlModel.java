@@ -40,6 +40,8 @@ import org.eclipse.xtext.xbase.lib.IterableExtensions;
 import org.erlide.engine.ErlangEngine;
 import org.erlide.engine.ModelPlugin;
 import org.erlide.engine.internal.model.cache.ErlModelCache;
+import org.erlide.engine.internal.model.cache.IncludeGraph;
+import org.erlide.engine.internal.model.cache.ModuleIndex;
 import org.erlide.engine.internal.model.root.ErlElementDelta;
 import org.erlide.engine.internal.model.root.ErlFolder;
 import org.erlide.engine.internal.model.root.ErlModule;
@@ -609,6 +611,7 @@ public class ErlModel extends Openable implements IErlModel {
         if (element != null) {
             final IParent p = element.getParent();
             p.removeChild(element);
+            IncludeGraph.getDefault().removeModulesIn(element);
             if (element instanceof IOpenable) {
                 final IOpenable openable = (IOpenable) element;
                 try {
@@ -1040,88 +1043,70 @@ public class ErlModel extends Openable implements IErlModel {
                 return module;
             }
         }
-        final List<IErlModule> allModules = Lists.newArrayList();
-        final Set<String> paths = Sets.newHashSet();
-        try {
-            for (int i = 0; i < 2; ++i) {
-                final boolean externalModules = i > 0;
-                if (externalModules && !checkExternals) {
-                    break;
-                }
-                if (project != null) {
-                    final IErlModule module = tryFindModule(Sets.newHashSet(project),
-                            moduleName, modulePath, allModules, paths, externalModules);
-                    if (module != null) {
-                        return module;
-                    }
-                }
-                if ((scope == Scope.REFERENCED_PROJECTS || scope == Scope.ALL_PROJECTS)
-                        && project != null) {
-                    final Collection<IErlProject> projects = project
-                            .getReferencedProjects();
-                    final IErlModule module = tryFindModule(projects, moduleName,
-                            modulePath, allModules, paths, externalModules);
-                    if (module != null) {
-                        return module;
-                    }
-                }
-
-                if (scope == Scope.ALL_PROJECTS) {
-                    final Collection<IErlProject> projects = getErlangProjects();
-                    final IErlModule module = tryFindModule(projects, moduleName,
-                            modulePath, allModules, paths, externalModules);
+        for (int i = 0; i < 2; ++i) {
+            final boolean externalModules = i > 0;
+            if (externalModules && !checkExternals) {
+                break;
+            }
+            IErlModule module = null;
+            if (project != null) {
+                module = getModuleIndex(project, externalModules).find(moduleName,
+                        modulePath);
+            }
+            if (module == null
+                    && (scope == Scope.REFERENCED_PROJECTS || scope == Scope.ALL_PROJECTS)
+                    && project != null) {
+                for (final IErlProject referenced : project.getReferencedProjects()) {
+                    module = getModuleIndex(referenced, externalModules).find(moduleName,
+                            modulePath);
                     if (module != null) {
-                        return module;
+                        break;
                     }
                 }
             }
-            return null;
-        } finally {
-            ErlModelCache.getDefault().putModules(allModules);
-        }
-    }
-
-    private IErlModule tryFindModule(final Collection<IErlProject> projects,
-            final String moduleName, final String modulePath,
-            final List<IErlModule> allModules, final Set<String> paths,
-            final boolean externalModules) throws ErlModelException {
-        IErlModule module;
-        for (final IErlProject project : projects) {
-            final Collection<IErlModule> modules = Lists.newArrayList();
-            final Collection<IErlModule> modulesOrExternals = externalModules
-                    ? project.getExternalModules()
-                    : project.getModules();
-            ErlModel.getAllModulesAux(modulesOrExternals, modules, paths);
-            allModules.addAll(modules);
-            module = findModule(modules, moduleName, modulePath);
+            if (module == null && scope == Scope.ALL_PROJECTS) {
+                module = getWorkspaceModuleIndex(externalModules).find(moduleName,
+                        modulePath);
+            }
             if (module != null) {
+                ErlModelCache.getDefault().putModule(module);
                 return module;
             }
         }
         return null;
     }
 
-    private IErlModule findModule(final Collection<IErlModule> modules,
-            final String moduleName, final String modulePath) {
-        if (modulePath != null) {
-            for (final IErlModule module : modules) {
-                final String path = module.getFilePath();
-                if (path != null && ResourceUtil.samePath(modulePath, path)) {
-                    return module;
-                }
-            }
+    /**
+     * The index is built the first time it is needed and kept until the project's
+     * modules change.
+     */
+    private ModuleIndex getModuleIndex(final IErlProject project,
+            final boolean externalModules) throws ErlModelException {
+        final ErlModelCache cache = ErlModelCache.getDefault();
+        ModuleIndex index = cache.getModuleIndex(project, externalModules);
+        if (index == null) {
+            final int generation = cache.getModulesGeneration();
+            index = ModuleIndex.of(externalModules ? project.getExternalModules()
+                    : project.getModules());
+            cache.putModuleIndex(project, externalModules, index, generation);
         }
-        if (moduleName != null) {
-            final boolean hasExtension = SystemConfiguration.hasExtension(moduleName);
-            for (final IErlModule module : modules) {
-                final String name = hasExtension ? module.getName()
-                        : module.getModuleName();
-                if (moduleName.equals(name)) {
-                    return module;
-                }
+        return index;
+    }
+
+    private ModuleIndex getWorkspaceModuleIndex(final boolean externalModules)
+            throws ErlModelException {
+        final ErlModelCache cache = ErlModelCache.getDefault();
+        ModuleIndex index = cache.getWorkspaceModuleIndex(externalModules);
+        if (index == null) {
+            final int generation = cache.getModulesGeneration();
+            final List<ModuleIndex> indexes = Lists.newArrayList();
+            for (final IErlProject project : getErlangProjects()) {
+                indexes.add(getModuleIndex(project, externalModules));
             }
+            index = ModuleIndex.of(indexes);
+            cache.putWorkspaceModuleIndex(externalModules, index, generation);
         }
-        return null;
+        return index;
     }
 
     @Override
@@ -1142,13 +1127,6 @@ public class ErlModel extends Openable implements IErlModel {
                 includeName, includePath, true, scope);
     }
 
-    private final Object fModelLock = new Object();
-
-    @Override
-    public Object getModelLock() {
-        return fModelLock;
-    }
-
     @Override
     public IErlElementDelta createElementDelta(final int kind, final int flags,
             final IErlElement element) {
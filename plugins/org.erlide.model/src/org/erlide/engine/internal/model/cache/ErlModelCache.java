@@ -6,6 +6,7 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.eclipse.xtext.xbase.lib.Pair;
 import org.erlide.engine.ErlangEngine;
@@ -39,6 +40,13 @@ public class ErlModelCache implements IDisposable {
     private final ModelChangeListener modelChangeListener;
     private final Cache<IErlProject, List<IErlModule>> projectModuleCache;
     private final Cache<IErlProject, List<IErlModule>> projectIncludeCache;
+    private final Cache<IErlProject, ModuleIndex> projectModuleIndex;
+    private final Cache<IErlProject, ModuleIndex> projectExternalModuleIndex;
+    private volatile ModuleIndex workspaceModuleIndex;
+    private volatile ModuleIndex workspaceExternalModuleIndex;
+    // changes each time some modules are added or removed, so that indexes that were
+    // built meanwhile aren't kept
+    private final AtomicInteger modulesGeneration = new AtomicInteger();
 
     public static ErlModelCache getDefault() {
         if (ErlModelCache.fgInstance == null) {
@@ -78,6 +86,8 @@ public class ErlModelCache implements IDisposable {
         externalTreeCache = ErlModelCache.newCache();
         projectModuleCache = ErlModelCache.newCache();
         projectIncludeCache = ErlModelCache.newCache();
+        projectModuleIndex = ErlModelCache.newCache();
+        projectExternalModuleIndex = ErlModelCache.newCache();
 
         modelChangeListener = new ModelChangeListener();
         ErlangEngine.getInstance().getModel().addModelChangeListener(modelChangeListener);
@@ -220,8 +230,82 @@ public class ErlModelCache implements IDisposable {
         projectIncludeCache.put(project, Lists.newArrayList(includes));
     }
 
+    public int getModulesGeneration() {
+        return modulesGeneration.get();
+    }
+
+    /**
+     * @return the index of the project's modules, or of its external modules; null if
+     *         it has to be built
+     */
+    public ModuleIndex getModuleIndex(final IErlProject project,
+            final boolean externalModules) {
+        return (externalModules ? projectExternalModuleIndex : projectModuleIndex)
+                .getIfPresent(project);
+    }
+
+    /**
+     * Keeps the index unless some modules changed since <code>generation</code>, which
+     * was taken before building it.
+     */
+    public void putModuleIndex(final IErlProject project, final boolean externalModules,
+            final ModuleIndex index, final int generation) {
+        (externalModules ? projectExternalModuleIndex : projectModuleIndex)
+                .put(project, index);
+        if (generation != modulesGeneration.get()) {
+            removeModuleIndex(project, externalModules);
+        }
+    }
+
+    public ModuleIndex getWorkspaceModuleIndex(final boolean externalModules) {
+        return externalModules ? workspaceExternalModuleIndex : workspaceModuleIndex;
+    }
+
+    public void putWorkspaceModuleIndex(final boolean externalModules,
+            final ModuleIndex index, final int generation) {
+        if (externalModules) {
+            workspaceExternalModuleIndex = index;
+        } else {
+            workspaceModuleIndex = index;
+        }
+        if (generation != modulesGeneration.get()) {
+            removeWorkspaceModuleIndexes();
+        }
+    }
+
+    /**
+     * The external modules of the project changed.
+     */
+    public void removeExternalModules(final IErlProject project) {
+        modulesGeneration.incrementAndGet();
+        if (project != null) {
+            projectExternalModuleIndex.invalidate(project);
+        }
+        workspaceExternalModuleIndex = null;
+    }
+
+    private void removeModuleIndex(final IErlProject project,
+            final boolean externalModules) {
+        (externalModules ? projectExternalModuleIndex : projectModuleIndex)
+                .invalidate(project);
+        if (externalModules) {
+            workspaceExternalModuleIndex = null;
+        } else {
+            workspaceModuleIndex = null;
+        }
+    }
+
+    private void removeWorkspaceModuleIndexes() {
+        workspaceModuleIndex = null;
+        workspaceExternalModuleIndex = null;
+    }
+
     public void removeProject(final IErlProject project) {
         // ErlLogger.debug("removeForProject %s", project.getName());
+        modulesGeneration.incrementAndGet();
+        projectModuleIndex.invalidate(project);
+        projectExternalModuleIndex.invalidate(project);
+        removeWorkspaceModuleIndexes();
         final List<IErlModule> includes = projectIncludeCache.getIfPresent(project);
         if (includes != null) {
             for (final IErlModule module : includes) {
@@ -255,6 +339,8 @@ public class ErlModelCache implements IDisposable {
 
     public void newProjectCreated() {
         pathToModuleCache.invalidateAll();
+        modulesGeneration.incrementAndGet();
+        removeWorkspaceModuleIndexes();
         // nameToModuleCache.clear();
     }
 
@@ -272,6 +358,10 @@ public class ErlModelCache implements IDisposable {
         // nameToModuleCache.clear();
         projectModuleCache.invalidateAll();
         projectIncludeCache.invalidateAll();
+        modulesGeneration.incrementAndGet();
+        projectModuleIndex.invalidateAll();
+        projectExternalModuleIndex.invalidateAll();
+        removeWorkspaceModuleIndexes();
     }
 
     static class DisabledErlModelCache extends ErlModelCache {
@@ -307,5 +397,16 @@ public class ErlModelCache implements IDisposable {
                 final List<IErlModule> modules) {
         }
 
+        @Override
+        public void putModuleIndex(final IErlProject project,
+                final boolean externalModules, final ModuleIndex index,
+                final int generation) {
+        }
+
+        @Override
+        public void putWorkspaceModuleIndex(final boolean externalModules,
+                final ModuleIndex index, final int generation) {
+        }
+
     }
 }
@@ -0,0 +1,166 @@
+package org.erlide.engine.internal.model.cache;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+import org.erlide.engine.model.IErlElement;
+import org.erlide.engine.model.IParent;
+import org.erlide.engine.model.erlang.ErlangIncludeFile;
+import org.erlide.engine.model.root.IErlModule;
+
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+/**
+ * Which modules include which files, in both directions, so that the modules depending
+ * on a header are found without opening and scanning all of them.
+ *
+ * <p>
+ * The edges of a module are replaced each time it is parsed, and dropped when it is
+ * removed. Included files are known by their name, without the directories, like the
+ * model matches <code>-include</code> attributes with headers. The graph is not saved,
+ * after a restart the edges are read from the {@link StructureIndex} again.
+ * </p>
+ */
+public class IncludeGraph {
+
+    private static final IncludeGraph fgInstance = new IncludeGraph();
+
+    // module -> names of the files it includes
+    private final Map<IErlModule, Set<String>> includes = Maps.newHashMap();
+    // file name -> modules that include it
+    private final Map<String, Set<IErlModule>> includedBy = Maps.newHashMap();
+
+    public static IncludeGraph getDefault() {
+        return IncludeGraph.fgInstance;
+    }
+
+    public synchronized void setIncludes(final IErlModule module,
+            final Collection<ErlangIncludeFile> includeFiles) {
+        removeEdges(module);
+        final Set<String> names = Sets.newHashSetWithExpectedSize(includeFiles.size());
+        for (final ErlangIncludeFile includeFile : includeFiles) {
+            names.add(IncludeGraph.key(includeFile.getFilenameLastPart()));
+        }
+        includes.put(module, names);
+        for (final String name : names) {
+            Set<IErlModule> modules = includedBy.get(name);
+            if (modules == null) {
+                modules = Sets.newHashSet();
+                includedBy.put(name, modules);
+            }
+            modules.add(module);
+        }
+    }
+
+    public synchronized boolean contains(final IErlModule module) {
+        return includes.containsKey(module);
+    }
+
+    public synchronized void removeModule(final IErlModule module) {
+        removeEdges(module);
+        includes.remove(module);
+    }
+
+    /**
+     * Removes the modules that are below the given element, e.g. in a removed folder.
+     */
+    public synchronized void removeModulesIn(final IErlElement element) {
+        if (element instanceof IErlModule) {
+            removeModule((IErlModule) element);
+            return;
+        }
+        final Iterator<IErlModule> it = includes.keySet().iterator();
+        while (it.hasNext()) {
+            final IErlModule module = it.next();
+            if (IncludeGraph.isIn(module, element)) {
+                removeEdges(module);
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * @return the names of the files the module includes
+     */
+    public synchronized Set<String> getIncludes(final IErlModule module) {
+        final Set<String> names = includes.get(module);
+        if (names == null) {
+            return Collections.emptySet();
+        }
+        return Sets.newHashSet(names);
+    }
+
+    /**
+     * @return the modules that include a file with this name
+     */
+    public synchronized Set<IErlModule> getIncludingModules(final String fileName) {
+        final Set<IErlModule> modules = includedBy.get(IncludeGraph.key(fileName));
+        if (modules == null) {
+            return Collections.emptySet();
+        }
+        return Sets.newHashSet(modules);
+    }
+
+    /**
+     * @return the modules that include a file with this name, or include another file
+     *         that does, and so on
+     */
+    public synchronized Set<IErlModule> getAllIncludingModules(final String fileName) {
+        final Set<IErlModule> result = Sets.newHashSet();
+        final Set<String> seen = Sets.newHashSet();
+        final Deque<String> pending = new ArrayDeque<>();
+        pending.add(IncludeGraph.key(fileName));
+        while (!pending.isEmpty()) {
+            final String name = pending.remove();
+            if (!seen.add(name)) {
+                continue;
+            }
+            final Set<IErlModule> modules = includedBy.get(name);
+            if (modules != null) {
+                for (final IErlModule module : modules) {
+                    result.add(module);
+                    pending.add(IncludeGraph.key(module.getName()));
+                }
+            }
+        }
+        return result;
+    }
+
+    private void removeEdges(final IErlModule module) {
+        final Set<String> names = includes.get(module);
+        if (names == null) {
+            return;
+        }
+        for (final String name : names) {
+            final Set<IErlModule> modules = includedBy.get(name);
+            if (modules != null) {
+                modules.remove(module);
+                if (modules.isEmpty()) {
+                    includedBy.remove(name);
+                }
+            }
+        }
+    }
+
+    private static boolean isIn(final IErlElement element, final IErlElement ancestor) {
+        IParent parent = element.getParent();
+        while (parent instanceof IErlElement) {
+            if (parent.equals(ancestor)) {
+                return true;
+            }
+            parent = ((IErlElement) parent).getParent();
+        }
+        return element.equals(ancestor);
+    }
+
+    private static String key(final String fileName) {
+        return ModuleIndex.pathKey(fileName);
+    }
+
+}
@@ -0,0 +1,125 @@
+package org.erlide.engine.internal.model.cache;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.eclipse.core.filesystem.EFS;
+import org.erlide.engine.model.root.IErlModule;
+import org.erlide.util.SystemConfiguration;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Finds modules by name or by path with hash lookups instead of scanning their list.
+ * The answers are the same as for a scan of the list in order: paths are tried before
+ * names and the first module that matches wins.
+ *
+ * <p>
+ * An index can be made of other indexes, like the one for the whole workspace is made
+ * of the projects' ones. Each of them stays a group of its own: a module found by path
+ * in a later group doesn't win over one found by name in an earlier group. Indexes are
+ * never changed; when the modules change, a new index is built.
+ * </p>
+ */
+public final class ModuleIndex {
+
+    public static final ModuleIndex EMPTY = ModuleIndex
+            .of(Collections.<IErlModule> emptyList());
+
+    private static final boolean CASE_SENSITIVE = EFS.getLocalFileSystem()
+            .isCaseSensitive();
+
+    private final IErlModule[] modules;
+    // the group of each module
+    private final int[] groups;
+    private final Map<String, Integer> byPath;
+    private final Map<String, Integer> byName;
+    private final Map<String, Integer> byModuleName;
+
+    private ModuleIndex(final IErlModule[] modules, final int[] groups) {
+        this.modules = modules;
+        this.groups = groups;
+        byPath = Maps.newHashMapWithExpectedSize(modules.length);
+        byName = Maps.newHashMapWithExpectedSize(modules.length);
+        byModuleName = Maps.newHashMapWithExpectedSize(modules.length);
+        for (int i = 0; i < modules.length; i++) {
+            final IErlModule module = modules[i];
+            final String path = module.getFilePath();
+            if (path != null) {
+                byPath.putIfAbsent(ModuleIndex.pathKey(path), i);
+            }
+            byName.putIfAbsent(module.getName(), i);
+            byModuleName.putIfAbsent(module.getModuleName(), i);
+        }
+    }
+
+    public static ModuleIndex of(final Collection<IErlModule> modules) {
+        return new ModuleIndex(modules.toArray(new IErlModule[modules.size()]),
+                new int[modules.size()]);
+    }
+
+    /**
+     * Joins the indexes, which are searched in the given order.
+     */
+    public static ModuleIndex of(final List<ModuleIndex> indexes) {
+        int size = 0;
+        for (final ModuleIndex index : indexes) {
+            size += index.modules.length;
+        }
+        final IErlModule[] modules = new IErlModule[size];
+        final int[] groups = new int[size];
+        int n = 0;
+        for (int g = 0; g < indexes.size(); g++) {
+            final IErlModule[] part = indexes.get(g).modules;
+            System.arraycopy(part, 0, modules, n, part.length);
+            Arrays.fill(groups, n, n + part.length, g);
+            n += part.length;
+        }
+        return new ModuleIndex(modules, groups);
+    }
+
+    /**
+     * @param moduleName
+     *            the module name, or the file name if it has an extension
+     * @return the module with the given path or, failing that, with the given name;
+     *         null if there is none
+     */
+    public IErlModule find(final String moduleName, final String modulePath) {
+        final Integer atPath = modulePath == null ? null
+                : byPath.get(ModuleIndex.pathKey(modulePath));
+        final Integer named;
+        if (moduleName == null) {
+            named = null;
+        } else if (SystemConfiguration.hasExtension(moduleName)) {
+            named = byName.get(moduleName);
+        } else {
+            named = byModuleName.get(moduleName);
+        }
+        if (atPath != null && (named == null || groups[atPath] <= groups[named])) {
+            return modules[atPath];
+        }
+        return named == null ? null : modules[named];
+    }
+
+    public List<IErlModule> getModules() {
+        return Collections.unmodifiableList(Lists.newArrayList(modules));
+    }
+
+    public int size() {
+        return modules.length;
+    }
+
+    /**
+     * Paths are compared like {@link org.erlide.engine.util.ResourceUtil#samePath}
+     * does.
+     */
+    static String pathKey(final String path) {
+        return ModuleIndex.CASE_SENSITIVE ? path : path.toLowerCase(Locale.ROOT);
+    }
+
+}
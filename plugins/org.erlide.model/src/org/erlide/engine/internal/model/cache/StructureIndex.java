@@ -0,0 +1,415 @@
+package org.erlide.engine.internal.model.cache;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+
+import org.erlide.engine.ErlangEngine;
+import org.erlide.util.ErlLogger;
+
+import com.ericsson.otp.erlang.OtpErlangDecodeException;
+import com.ericsson.otp.erlang.OtpErlangObject;
+import com.ericsson.otp.erlang.OtpErlangTuple;
+import com.ericsson.otp.erlang.OtpInputStream;
+import com.ericsson.otp.erlang.OtpOutputStream;
+import com.google.common.collect.Maps;
+import com.google.common.hash.Hashing;
+
+/**
+ * Keeps the parsed structure of the source files on disk, so that the model can be
+ * opened after a restart without parsing everything again. Entries are found by file
+ * path and are only used while the hash of the text is the same.
+ *
+ * <p>
+ * The file is a header followed by records that are only ever appended; a later record
+ * for a path replaces the earlier ones. It is mapped in memory when loaded and the terms
+ * are only decoded when asked for; the index itself only keeps where they are in the
+ * file. The file is compacted when loaded if it holds more replaced records than live
+ * ones.
+ * </p>
+ * <p>
+ * A mapped file can't be replaced or truncated on every platform, so compacting or
+ * discarding the file doesn't touch it: the index goes on in a file with the next
+ * generation number, and older generations are deleted when the index is loaded.
+ * </p>
+ */
+public class StructureIndex {
+
+    public static final String FILE_NAME = "erlide_structure.idx";
+
+    private static final int MAGIC = 0x45534931; // "ESI1"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+
+    private static final boolean disabled = Boolean
+            .valueOf(System.getProperty("erlide.noStructureIndex"));
+
+    private static StructureIndex fgInstance;
+
+    private static final class Entry {
+        final long hash;
+        final int length;
+        // where the encoded term is in the file
+        final int offset;
+        final int size;
+
+        Entry(final long hash, final int length, final int offset, final int size) {
+            this.hash = hash;
+            this.length = length;
+            this.offset = offset;
+            this.size = size;
+        }
+    }
+
+    private final File file;
+    // the generation in use, its file is named after the first one
+    private int generation;
+    private File current;
+    private final Map<String, Entry> entries = Maps.newHashMap();
+    // may end before the records appended since it was mapped
+    private ByteBuffer mapped;
+    // the size of the file, as far as we wrote it
+    private long end;
+    private boolean loaded;
+
+    public StructureIndex(final File file) {
+        this.file = file;
+    }
+
+    /**
+     * @return the file the index is kept in now
+     */
+    public synchronized File getFile() {
+        load();
+        return current;
+    }
+
+    public static synchronized StructureIndex getDefault() {
+        if (StructureIndex.fgInstance == null) {
+            final File file = StructureIndex.disabled ? null
+                    : new File(ErlangEngine.getInstance().getStateDir(),
+                            StructureIndex.FILE_NAME);
+            StructureIndex.fgInstance = new StructureIndex(file);
+        }
+        return StructureIndex.fgInstance;
+    }
+
+    /**
+     * @return the structure stored for this text of the file, or null if there is none
+     */
+    public OtpErlangTuple get(final String path, final String text) {
+        if (file == null || path == null || text == null) {
+            return null;
+        }
+        final byte[] bytes;
+        synchronized (this) {
+            load();
+            final Entry entry = entries.get(path);
+            if (entry == null || entry.length != text.length()
+                    || entry.hash != StructureIndex.hash(text)) {
+                return null;
+            }
+            bytes = contents(entry);
+        }
+        if (bytes == null) {
+            return null;
+        }
+        try {
+            final OtpErlangObject term = new OtpInputStream(bytes).read_any();
+            if (term instanceof OtpErlangTuple) {
+                return (OtpErlangTuple) term;
+            }
+        } catch (final OtpErlangDecodeException e) {
+            ErlLogger.warn(e);
+        }
+        synchronized (this) {
+            entries.remove(path);
+        }
+        return null;
+    }
+
+    public void put(final String path, final String text,
+            final OtpErlangTuple structure) {
+        if (file == null || path == null || text == null) {
+            return;
+        }
+        final long hash = StructureIndex.hash(text);
+        synchronized (this) {
+            load();
+            final Entry old = entries.get(path);
+            if (old != null && old.hash == hash && old.length == text.length()) {
+                return;
+            }
+        }
+        final OtpOutputStream out = new OtpOutputStream();
+        out.write_compressed(structure);
+        final byte[] bytes = out.toByteArray();
+        synchronized (this) {
+            try (DataOutputStream os = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(current, end != 0)))) {
+                if (end == 0) {
+                    StructureIndex.writeHeader(os);
+                    end = StructureIndex.HEADER_SIZE;
+                }
+                final int offset = StructureIndex.writeRecord(os, path, hash,
+                        text.length(), bytes, end);
+                entries.put(path, new Entry(hash, text.length(), offset, bytes.length));
+                end = offset + bytes.length;
+            } catch (final IOException e) {
+                ErlLogger.warn(e);
+                // we don't know how much of the record made it to the file
+                discard();
+            }
+        }
+    }
+
+    public synchronized int size() {
+        load();
+        return entries.size();
+    }
+
+    private void load() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        if (file == null) {
+            return;
+        }
+        findGeneration();
+        if (!current.isFile()) {
+            return;
+        }
+        int records = 0;
+        boolean broken = false;
+        if (!map()) {
+            discard();
+            return;
+        }
+        end = mapped.limit();
+        final ByteBuffer buf = mapped.duplicate();
+        try {
+            if (buf.getInt() != StructureIndex.MAGIC
+                    || buf.getInt() != StructureIndex.VERSION) {
+                ErlLogger.info("Discarding structure index %s of another version",
+                        current);
+                discard();
+                return;
+            }
+            while (buf.hasRemaining()) {
+                final int keyLength = buf.getInt();
+                if (keyLength < 0 || keyLength > buf.remaining()) {
+                    throw new BufferUnderflowException();
+                }
+                final byte[] key = new byte[keyLength];
+                buf.get(key);
+                final long hash = buf.getLong();
+                final int length = buf.getInt();
+                final int size = buf.getInt();
+                final int offset = buf.position();
+                if (size < 0 || size > buf.remaining()) {
+                    throw new BufferUnderflowException();
+                }
+                buf.position(offset + size);
+                entries.put(new String(key, StandardCharsets.UTF_8),
+                        new Entry(hash, length, offset, size));
+                records++;
+            }
+        } catch (final BufferUnderflowException e) {
+            // a write was cut off; what came before it is fine
+            broken = true;
+        }
+        if (broken || records > 2 * entries.size()) {
+            compact();
+        }
+    }
+
+    /*
+     * Write the live records to the next generation and map that one instead. The terms
+     * are copied one at a time, so the index never holds them all in memory.
+     */
+    private void compact() {
+        final File next = generationFile(generation + 1);
+        // a generation is only there once it is complete
+        final File tmp = new File(next.getPath() + ".tmp");
+        final Map<String, Entry> moved = Maps.newHashMap();
+        long pos = StructureIndex.HEADER_SIZE;
+        try (DataOutputStream os = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            StructureIndex.writeHeader(os);
+            for (final Map.Entry<String, Entry> e : entries.entrySet()) {
+                final Entry entry = e.getValue();
+                final byte[] bytes = contents(entry);
+                if (bytes == null) {
+                    throw new IOException("Could not read " + current);
+                }
+                final int offset = StructureIndex.writeRecord(os, e.getKey(),
+                        entry.hash, entry.length, bytes, pos);
+                moved.put(e.getKey(), new Entry(entry.hash, entry.length, offset,
+                        bytes.length));
+                pos = offset + bytes.length;
+            }
+        } catch (final IOException e) {
+            ErlLogger.warn(e);
+            StructureIndex.delete(tmp);
+            // appending after a cut off record would make the later ones unreadable
+            discard();
+            return;
+        }
+        try {
+            Files.move(tmp.toPath(), next.toPath());
+        } catch (final IOException e) {
+            ErlLogger.warn(e);
+            StructureIndex.delete(tmp);
+            discard();
+            return;
+        }
+        final File old = switchGeneration();
+        entries.clear();
+        entries.putAll(moved);
+        end = pos;
+        if (!map()) {
+            discard();
+        }
+        StructureIndex.delete(old);
+    }
+
+    // forget everything and start a new file on the next put
+    private void discard() {
+        final File old = switchGeneration();
+        entries.clear();
+        end = 0;
+        StructureIndex.delete(old);
+    }
+
+    /*
+     * Go on in the next generation; the old file may still be mapped until the buffer is
+     * collected, so deleting it can fail and is left to the next load then.
+     */
+    private File switchGeneration() {
+        final File old = current;
+        mapped = null;
+        generation++;
+        current = generationFile(generation);
+        return old;
+    }
+
+    // use the latest generation and delete the older ones
+    private void findGeneration() {
+        generation = 0;
+        final File dir = file.getAbsoluteFile().getParentFile();
+        final String[] names = dir == null ? null : dir.list();
+        if (names != null) {
+            for (final String name : names) {
+                generation = Math.max(generation, generationOf(name));
+            }
+            for (final String name : names) {
+                final int g = generationOf(name);
+                final boolean older = g >= 0 && g < generation;
+                final boolean unfinished = g < 0 && name.startsWith(file.getName())
+                        && name.endsWith(".tmp");
+                if (older || unfinished) {
+                    StructureIndex.delete(new File(dir, name));
+                }
+            }
+        }
+        current = generationFile(generation);
+    }
+
+    private File generationFile(final int g) {
+        return g == 0 ? file : new File(file.getPath() + "." + g);
+    }
+
+    /**
+     * @return -1 if the file isn't a generation of this index
+     */
+    private int generationOf(final String name) {
+        final String base = file.getName();
+        if (name.equals(base)) {
+            return 0;
+        }
+        if (!name.startsWith(base + ".")) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(name.substring(base.length() + 1));
+        } catch (final NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private boolean map() {
+        try (FileChannel channel = FileChannel.open(current.toPath(),
+                StandardOpenOption.READ)) {
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return true;
+        } catch (final IOException e) {
+            ErlLogger.warn(e);
+            mapped = null;
+            return false;
+        }
+    }
+
+    /*
+     * Copy an encoded term out of the mapped file. Records appended since the file was
+     * mapped are reached by mapping it again.
+     */
+    private byte[] contents(final Entry entry) {
+        if ((mapped == null || entry.offset + entry.size > mapped.limit()) && !map()) {
+            return null;
+        }
+        if (entry.offset + entry.size > mapped.limit()) {
+            return null;
+        }
+        final byte[] bytes = new byte[entry.size];
+        final ByteBuffer buf = mapped.duplicate();
+        buf.position(entry.offset);
+        buf.get(bytes);
+        return bytes;
+    }
+
+    private static void writeHeader(final DataOutputStream os) throws IOException {
+        os.writeInt(StructureIndex.MAGIC);
+        os.writeInt(StructureIndex.VERSION);
+    }
+
+    /**
+     * @return the offset of the encoded term in the file
+     */
+    private static int writeRecord(final DataOutputStream os, final String path,
+            final long hash, final int length, final byte[] bytes, final long pos)
+            throws IOException {
+        final byte[] key = path.getBytes(StandardCharsets.UTF_8);
+        final long offset = pos + 20 + key.length;
+        if (offset + bytes.length > Integer.MAX_VALUE) {
+            throw new IOException("Structure index is full");
+        }
+        os.writeInt(key.length);
+        os.write(key);
+        os.writeLong(hash);
+        os.writeInt(length);
+        os.writeInt(bytes.length);
+        os.write(bytes);
+        return (int) offset;
+    }
+
+    private static long hash(final String text) {
+        return Hashing.murmur3_128().hashString(text, StandardCharsets.UTF_8).asLong();
+    }
+
+    private static void delete(final File f) {
+        if (f.exists() && !f.delete()) {
+            ErlLogger.warn("Could not delete %s", f);
+        }
+    }
+
+}
@@ -9,6 +9,8 @@ import org.eclipse.core.runtime.CoreException;
 import org.erlide.engine.ErlangEngine;
 import org.erlide.engine.internal.model.SourceRange;
 import org.erlide.engine.internal.model.cache.ErlModelCache;
+import org.erlide.engine.internal.model.cache.IncludeGraph;
+import org.erlide.engine.internal.model.root.ErlModule;
 import org.erlide.engine.model.ErlElementKind;
 import org.erlide.engine.model.ErlModelException;
 import org.erlide.engine.model.IErlElement;
@@ -287,6 +289,53 @@ public class ModelFindUtil implements ModelFindService {
         return result;
     }
 
+    @Override
+    public Collection<IErlModule> findIncludingModules(final IErlProject project,
+            final String fileName, final boolean transitive) throws ErlModelException {
+        final Collection<IErlModule> modules = project.getModules();
+        final IncludeGraph graph = IncludeGraph.getDefault();
+        addToIncludeGraph(graph, modules);
+        if (transitive) {
+            addToIncludeGraph(graph, project.getIncludes());
+        }
+        final Set<IErlModule> including = transitive
+                ? graph.getAllIncludingModules(fileName)
+                : graph.getIncludingModules(fileName);
+        final List<IErlModule> result = Lists.newArrayList();
+        for (final IErlModule module : modules) {
+            if (including.contains(module)) {
+                result.add(module);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Modules get their edges when they are parsed. The ones that weren't yet get them
+     * from the structure index, and are only opened when it has nothing for their text.
+     */
+    private static void addToIncludeGraph(final IncludeGraph graph,
+            final Collection<IErlModule> modules) throws ErlModelException {
+        for (final IErlModule module : modules) {
+            if (graph.contains(module)) {
+                continue;
+            }
+            if (module instanceof ErlModule && ((ErlModule) module).restoreIncludes()) {
+                continue;
+            }
+            final boolean wasOpen = module.isOpen();
+            if (!wasOpen) {
+                module.open(null);
+            }
+            if (!graph.contains(module)) {
+                graph.setIncludes(module, module.getIncludeFiles());
+            }
+            if (!wasOpen) {
+                module.close();
+            }
+        }
+    }
+
     private Collection<IErlModule> getLocalIncludes(final IErlModule module)
             throws ErlModelException {
         final List<IErlModule> result = Lists.newArrayList();
@@ -129,16 +129,6 @@ public abstract class SourceRefElement extends ErlElement implements ISourceRefe
     // return getParent().getUnderlyingResource();
     // }
 
-    /**
-     * @see IParent
-     */
-    @Override
-    public boolean hasChildren() {
-        synchronized (getModelLock()) {
-            return !internalGetChildren().isEmpty();
-        }
-    }
-
     public void setSourceRangeOffset(final int offset) {
         fSourceRangeOffset = offset;
     }
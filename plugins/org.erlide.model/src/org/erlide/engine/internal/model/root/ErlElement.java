@@ -8,10 +8,12 @@
  *******************************************************************************/
 package org.erlide.engine.internal.model.root;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.resources.IResourceDelta;
@@ -19,7 +21,6 @@ import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.PlatformObject;
 import org.eclipse.core.runtime.jobs.ISchedulingRule;
 import org.eclipse.jdt.annotation.NonNull;
-import org.erlide.engine.ErlangEngine;
 import org.erlide.engine.internal.model.cache.ErlModelCache;
 import org.erlide.engine.model.ErlElementKind;
 import org.erlide.engine.model.ErlModelException;
@@ -44,7 +45,15 @@ public abstract class ErlElement extends PlatformObject
      */
     private final IParent fParent;
 
-    private final List<IErlElement> fChildren = Lists.newArrayList();
+    private static final IErlElement[] NO_CHILDREN = {};
+    private static final AtomicReferenceFieldUpdater<ErlElement, IErlElement[]> CHILDREN = AtomicReferenceFieldUpdater
+            .newUpdater(ErlElement.class, IErlElement[].class, "fChildren");
+
+    /**
+     * This element's children. The array is never modified, changes publish a new one,
+     * so readers don't need any lock and writers only contend on the same element.
+     */
+    private volatile IErlElement[] fChildren = ErlElement.NO_CHILDREN;
 
     /**
      * This element's name, or an empty <code>String</code> if this element does not have
@@ -204,19 +213,16 @@ public abstract class ErlElement extends PlatformObject
      */
     @Override
     public boolean hasChildren() {
-        synchronized (getModelLock()) {
-            return !internalGetChildren().isEmpty();
-        }
+        return fChildren.length > 0;
     }
 
     @Override
     public boolean hasChildrenOfKind(final ErlElementKind... kinds) {
-        synchronized (getModelLock()) {
-            for (final ErlElementKind kind : kinds) {
-                for (final IErlElement child : internalGetChildren()) {
-                    if (child.getKind() == kind) {
-                        return true;
-                    }
+        final IErlElement[] children = fChildren;
+        for (final ErlElementKind kind : kinds) {
+            for (final IErlElement child : children) {
+                if (child.getKind() == kind) {
+                    return true;
                 }
             }
         }
@@ -372,21 +378,19 @@ public abstract class ErlElement extends PlatformObject
 
     @Override
     public List<IErlElement> getChildren() throws ErlModelException {
-        synchronized (getModelLock()) {
-            return Collections
-                    .unmodifiableList(Lists.newArrayList(internalGetChildren()));
-        }
+        return internalGetChildren();
     }
 
+    /**
+     * The children as they are now; later changes don't show in the returned list.
+     */
     public List<IErlElement> internalGetChildren() {
-        return fChildren;
+        return Collections.unmodifiableList(Arrays.asList(fChildren));
     }
 
     @Override
     public int getChildCount() {
-        synchronized (getModelLock()) {
-            return internalGetChildren().size();
-        }
+        return fChildren.length;
     }
 
     /**
@@ -399,12 +403,11 @@ public abstract class ErlElement extends PlatformObject
     public List<IErlElement> getChildrenOfKind(final ErlElementKind... kinds)
             throws ErlModelException {
         final List<IErlElement> result = Lists.newArrayList();
-        synchronized (getModelLock()) {
-            for (final ErlElementKind kind : kinds) {
-                for (final IErlElement element : internalGetChildren()) {
-                    if (element.getKind() == kind) {
-                        result.add(element);
-                    }
+        final IErlElement[] children = fChildren;
+        for (final ErlElementKind kind : kinds) {
+            for (final IErlElement element : children) {
+                if (element.getKind() == kind) {
+                    result.add(element);
                 }
             }
         }
@@ -431,29 +434,38 @@ public abstract class ErlElement extends PlatformObject
 
     @Override
     public void removeChild(final IErlElement child) {
-        synchronized (getModelLock()) {
-            clearCaches();
-            fChildren.remove(child);
-        }
+        clearCaches();
+        IErlElement[] old;
+        IErlElement[] children;
+        do {
+            old = fChildren;
+            final int i = Arrays.asList(old).indexOf(child);
+            if (i < 0) {
+                return;
+            }
+            children = new IErlElement[old.length - 1];
+            System.arraycopy(old, 0, children, 0, i);
+            System.arraycopy(old, i + 1, children, i, old.length - i - 1);
+        } while (!ErlElement.CHILDREN.compareAndSet(this, old, children));
     }
 
     @Override
     public void addChild(final IErlElement child) {
-        synchronized (getModelLock()) {
-            clearCaches();
-            fChildren.add(child);
-        }
+        clearCaches();
+        IErlElement[] old;
+        IErlElement[] children;
+        do {
+            old = fChildren;
+            children = Arrays.copyOf(old, old.length + 1);
+            children[old.length] = child;
+        } while (!ErlElement.CHILDREN.compareAndSet(this, old, children));
     }
 
     @Override
     public void setChildren(final Collection<? extends IErlElement> children) {
-        synchronized (getModelLock()) {
-            clearCaches();
-            fChildren.clear();
-            if (children != null) {
-                fChildren.addAll(children);
-            }
-        }
+        clearCaches();
+        fChildren = children == null || children.isEmpty() ? ErlElement.NO_CHILDREN
+                : children.toArray(new IErlElement[children.size()]);
     }
 
     public void setStructureKnown(final boolean newStructureKnown) {
@@ -466,27 +478,19 @@ public abstract class ErlElement extends PlatformObject
     }
 
     private static IErlElement getChildNamed(final ErlElement parent, final String name) {
-        synchronized (parent.getModelLock()) {
-            for (final IErlElement child : parent.internalGetChildren()) {
-                if (child.getName().equals(name)) {
-                    return child;
-                }
+        for (final IErlElement child : parent.fChildren) {
+            if (child.getName().equals(name)) {
+                return child;
             }
         }
         return null;
     }
 
-    protected Object getModelLock() {
-        return ErlangEngine.getInstance().getModel().getModelLock();
-    }
-
     private static IErlElement getChildWithResource(final ErlElement parent,
             final IResource rsrc) {
-        synchronized (parent.getModelLock()) {
-            for (final IErlElement child : parent.internalGetChildren()) {
-                if (rsrc.equals(child.getResource())) {
-                    return child;
-                }
+        for (final IErlElement child : parent.fChildren) {
+            if (rsrc.equals(child.getResource())) {
+                return child;
             }
         }
         return null;
@@ -496,9 +500,7 @@ public abstract class ErlElement extends PlatformObject
     public final void accept(final IErlElementVisitor visitor,
             final Set<@NonNull AcceptFlags> flags, final ErlElementKind leafKind)
             throws ErlModelException {
-        synchronized (getModelLock()) {
-            internalAccept(visitor, flags, leafKind);
-        }
+        internalAccept(visitor, flags, leafKind);
     }
 
     private final void internalAccept(final IErlElementVisitor visitor,
@@ -513,7 +515,7 @@ public abstract class ErlElement extends PlatformObject
                 visitChildren = visitor.visit(this);
             }
             if (visitChildren) {
-                for (final IErlElement child : internalGetChildren()) {
+                for (final IErlElement child : fChildren) {
                     child.accept(visitor, flags, leafKind);
                 }
             }
@@ -69,6 +69,13 @@ public class ErlExternalReferenceEntry extends Openable implements IErlExternal
         return false;
     }
 
+    @Override
+    public void clearCaches() {
+        getModelCache().removeExternalModules(
+                ErlangEngine.getInstance().getModelUtilService().getProject(this));
+        super.clearCaches();
+    }
+
     private String getName(final String file) {
         final IPath p = new Path(file);
         return p.lastSegment();
@@ -22,6 +22,7 @@ import org.erlide.engine.services.search.ExternalTreeEntry;
 import org.erlide.runtime.rpc.IOtpRpc;
 
 import com.ericsson.otp.erlang.OtpErlangList;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 
 public class ErlExternalReferenceEntryList extends Openable implements IErlExternalRoot {
@@ -46,83 +47,103 @@ public class ErlExternalReferenceEntryList extends Openable implements IErlExter
 
     @Override
     public boolean buildStructure(final IProgressMonitor pm) throws ErlModelException {
-        // TODO some code duplication within this function
         // ErlLogger.debug("ErlExternalReferenceEntryList.buildStructure %s",
         // getName());
 
         final IErlProject project = ErlangEngine.getInstance().getModelUtilService()
                 .getProject(this);
+        setChildren(null);
+        final ExternalTree modules = new ExternalTree(false);
+        addExternalTree(pm, project, externalModules, modules);
+        modules.open(pm);
+        final ExternalTree includes = new ExternalTree(true);
+        addExternalTree(pm, project, externalIncludes, includes);
+        includes.addOtherItems("includes", projectIncludes);
+        includes.open(pm);
+        return true;
+    }
+
+    /*
+     * Fill in the tree from the cache, or from the backend as the entries arrive. Only
+     * complete trees are cached.
+     */
+    private void addExternalTree(final IProgressMonitor pm, final IErlProject project,
+            final String externalPath, final ExternalTree tree) {
         final ErlModelCache cache = ErlModelCache.getDefault();
-        List<ExternalTreeEntry> externalModuleTree = cache
-                .getExternalTree(externalModules);
-        List<ExternalTreeEntry> externalIncludeTree = cache
-                .getExternalTree(externalIncludes);
-        if (externalModuleTree == null || externalIncludeTree == null) {
-            final OtpErlangList pathVars = ErlangEngine.getInstance().getModel()
-                    .getPathVars();
-            final IOtpRpc backend = OtpRpcFactory.getOtpRpcForProject(project);
-            if (externalModuleTree == null && !externalModules.isEmpty()) {
-                if (pm != null) {
-                    pm.worked(1);
-                }
-                externalModuleTree = ErlangEngine.getInstance().getOpenService()
-                        .getExternalModuleTree(backend, externalModules, pathVars);
-            }
-            if (externalIncludeTree == null && !externalIncludes.isEmpty()) {
-                if (pm != null) {
-                    pm.worked(1);
-                }
-                externalIncludeTree = ErlangEngine.getInstance().getOpenService()
-                        .getExternalModuleTree(backend, externalIncludes, pathVars);
-            }
+        final List<ExternalTreeEntry> cached = cache.getExternalTree(externalPath);
+        if (cached != null) {
+            cached.forEach(tree::add);
+            return;
         }
-        setChildren(null);
-        final IErlModel model = ErlangEngine.getInstance().getModel();
-        if (externalModuleTree != null && !externalModuleTree.isEmpty()) {
-            addExternalEntries(pm, externalModuleTree, model, "modules", null, false);
-            cache.putExternalTree(externalModules, project, externalModuleTree);
+        if (externalPath.isEmpty()) {
+            return;
         }
-        if (externalIncludeTree != null && !externalIncludeTree.isEmpty()
-                || !projectIncludes.isEmpty()) {
-            addExternalEntries(pm, externalIncludeTree, model, "includes",
-                    projectIncludes, true);
-            if (externalIncludeTree != null) {
-                cache.putExternalTree(externalIncludes, project, externalIncludeTree);
-            }
+        if (pm != null) {
+            pm.worked(1);
         }
-        return true;
+        final OtpErlangList pathVars = ErlangEngine.getInstance().getModel()
+                .getPathVars();
+        final IOtpRpc backend = OtpRpcFactory.getOtpRpcForProject(project);
+        final List<ExternalTreeEntry> entries = Lists.newArrayList();
+        final boolean complete = ErlangEngine.getInstance().getOpenService()
+                .getExternalModuleTree(backend, externalPath, pathVars, entry -> {
+                    entries.add(entry);
+                    tree.add(entry);
+                });
+        if (complete && !entries.isEmpty()) {
+            cache.putExternalTree(externalPath, project, entries);
+        }
+    }
+
+    @Override
+    public void clearCaches() {
+        getModelCache().removeExternalModules(
+                ErlangEngine.getInstance().getModelUtilService().getProject(this));
+        super.clearCaches();
     }
 
-    private void addExternalEntries(final IProgressMonitor pm,
-            final List<ExternalTreeEntry> externalTree, final IErlModel model,
-            final String rootName, final List<String> otherItems,
-            final boolean includeDir) throws ErlModelException {
-        final Map<IPath, IErlExternal> pathToEntryMap = Maps.newHashMap();
-        pathToEntryMap.put(new Path("root"), this);
-        IErlExternal parent = null;
-        if (externalTree != null && !externalTree.isEmpty()) {
-            for (final ExternalTreeEntry entry : externalTree) {
-                final IPath path = entry.getPath();
-                parent = pathToEntryMap.get(entry.getParentPath());
-                if (entry.isModule()) {
-                    final IErlModule module = model.getModuleFromFile(parent,
-                            getNameFromPath(path), path, null);
-                    parent.addChild(module);
-                } else {
-                    final String name = ErlExternalReferenceEntryList
-                            .getNameFromExternalPath(path);
-                    final ErlExternalReferenceEntry externalReferenceEntry = new ErlExternalReferenceEntry(
-                            parent, name, path, true, includeDir);
-                    pathToEntryMap.put(path, externalReferenceEntry);
-                    externalReferenceEntry.open(pm);
-                    parent.addChild(externalReferenceEntry);
-                }
+    /*
+     * Builds the children of the list from the entries of an external tree, which come
+     * parents first.
+     */
+    private class ExternalTree {
+
+        private final boolean includeDir;
+        private final IErlModel model = ErlangEngine.getInstance().getModel();
+        private final Map<IPath, IErlExternal> pathToEntryMap = Maps.newHashMap();
+        private final List<ErlExternalReferenceEntry> added = Lists.newArrayList();
+        private IErlExternal parent;
+
+        ExternalTree(final boolean includeDir) {
+            this.includeDir = includeDir;
+            pathToEntryMap.put(new Path("root"), ErlExternalReferenceEntryList.this);
+        }
+
+        void add(final ExternalTreeEntry entry) {
+            final IPath path = entry.getPath();
+            parent = pathToEntryMap.get(entry.getParentPath());
+            if (entry.isModule()) {
+                final IErlModule module = model.getModuleFromFile(parent,
+                        getNameFromPath(path), path, null);
+                parent.addChild(module);
+            } else {
+                final String name = ErlExternalReferenceEntryList
+                        .getNameFromExternalPath(path);
+                final ErlExternalReferenceEntry externalReferenceEntry = new ErlExternalReferenceEntry(
+                        parent, name, path, true, includeDir);
+                pathToEntryMap.put(path, externalReferenceEntry);
+                added.add(externalReferenceEntry);
+                parent.addChild(externalReferenceEntry);
             }
         }
-        if (otherItems != null) {
+
+        void addOtherItems(final String rootName, final List<String> otherItems) {
+            if (otherItems == null || otherItems.isEmpty()) {
+                return;
+            }
             if (parent == null) {
-                parent = new ErlExternalReferenceEntry(this, rootName,
-                        new Path("." + rootName + "."), true, includeDir);
+                parent = new ErlExternalReferenceEntry(ErlExternalReferenceEntryList.this,
+                        rootName, new Path("." + rootName + "."), true, includeDir);
                 addChild(parent);
             }
             for (final String path : otherItems) {
@@ -132,6 +153,12 @@ public class ErlExternalReferenceEntryList extends Openable implements IErlExter
                 parent.addChild(module);
             }
         }
+
+        void open(final IProgressMonitor pm) throws ErlModelException {
+            for (final ErlExternalReferenceEntry entry : added) {
+                entry.open(pm);
+            }
+        }
     }
 
     private String getNameFromPath(final IPath path) {
@@ -19,15 +19,18 @@ import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceDelta;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.Path;
 import org.erlide.engine.ErlangEngine;
 import org.erlide.engine.internal.model.SourceRange;
+import org.erlide.engine.internal.model.cache.IncludeGraph;
 import org.erlide.engine.internal.services.parsing.ErlParser;
 import org.erlide.engine.internal.util.ModelConfig;
 import org.erlide.engine.model.ErlElementKind;
@@ -46,7 +49,6 @@ import org.erlide.engine.model.erlang.IErlMember;
 import org.erlide.engine.model.erlang.IErlPreprocessorDef;
 import org.erlide.engine.model.erlang.IErlTypespec;
 import org.erlide.engine.model.erlang.ISourceRange;
-import org.erlide.engine.model.erlang.ISourceReference;
 import org.erlide.engine.model.erlang.SourceKind;
 import org.erlide.engine.model.root.IErlFolder;
 import org.erlide.engine.model.root.IErlModel;
@@ -74,8 +76,15 @@ public class ErlModule extends Openable implements IErlModule {
     protected String path;
     private String initialText;
     private boolean parsed;
+    // the structure was read from the index and the text wasn't sent to the backend, so
+    // neither its scanner nor the search server know this module yet
+    private boolean restored;
     private final String scannerName;
-    private final Collection<IErlComment> comments;
+    // replaced, never modified, so that readers need no lock
+    private volatile List<IErlComment> comments;
+    // bumped after the children change, so that older position indexes are rebuilt
+    private final AtomicInteger childrenVersion = new AtomicInteger();
+    private volatile PositionIndex positionIndex;
     private ScannerService scanner;
     private final Charset encoding;
 
@@ -101,7 +110,7 @@ public class ErlModule extends Openable implements IErlModule {
         moduleKind = SourceKind.nameToModuleKind(name);
         parsed = false;
         scannerName = createScannerName();
-        comments = Lists.newArrayList();
+        comments = Collections.emptyList();
         if (ModelConfig.verbose) {
             // final IErlElement element = (IErlElement) parent;
             // final String parentName = element.getName();
@@ -115,6 +124,12 @@ public class ErlModule extends Openable implements IErlModule {
         final String text = getInitialText();
         if (text != null) {
             final ErlParser parser = new ErlParser(OtpRpcFactory.getOtpRpc());
+            // edits go to the scanner, so only unedited text can be restored
+            if (!parsed && scanner == null && parser.restore(this, getFilePath(), text)) {
+                restored = true;
+                return true;
+            }
+            restored = false;
             parsed = parser.parse(this, scannerName, !parsed, getFilePath(), text, true);
             return parsed;
         }
@@ -165,6 +180,7 @@ public class ErlModule extends Openable implements IErlModule {
     public synchronized boolean buildStructure(final IProgressMonitor pm)
             throws ErlModelException {
         if (internalBuildStructure(pm)) {
+            IncludeGraph.getDefault().setIncludes(this, includeFiles());
             final IErlModel model = ErlangEngine.getInstance().getModel();
             if (model != null) {
                 model.notifyChange(this);
@@ -174,6 +190,29 @@ public class ErlModule extends Openable implements IErlModule {
         return false;
     }
 
+    /**
+     * Adds the module to the include graph from the structure stored for its text,
+     * without opening it.
+     *
+     * @return false if no structure was stored for the current text
+     */
+    public synchronized boolean restoreIncludes() {
+        if (parsed || scanner != null) {
+            return false;
+        }
+        final String text = getInitialText();
+        if (text == null) {
+            return false;
+        }
+        final List<ErlangIncludeFile> includes = ErlParser
+                .restoreIncludeFiles(getFilePath(), text);
+        if (includes == null) {
+            return false;
+        }
+        IncludeGraph.getDefault().setIncludes(this, includes);
+        return true;
+    }
+
     @Override
     public String getFilePath() {
         if (file != null) {
@@ -187,32 +226,40 @@ public class ErlModule extends Openable implements IErlModule {
 
     @Override
     public IErlElement getElementAt(final int position) throws ErlModelException {
-        return ErlangEngine.getInstance().getModel().innermostThat(this, e -> {
-            if (e instanceof ISourceReference) {
-                final ISourceReference ch = (ISourceReference) e;
-                ISourceRange r;
-                r = ch.getSourceRange();
-                if (r != null && r.hasPosition(position)) {
-                    return true;
-                }
-            }
-            return false;
-        });
+        return getPositionIndex().getElementAt(position);
     }
 
     @Override
     public IErlMember getElementAtLine(final int lineNumber) {
-        return (IErlMember) ErlangEngine.getInstance().getModel().innermostThat(this,
-                e -> {
-                    if (e instanceof ISourceReference) {
-                        final ISourceReference sr = (ISourceReference) e;
-                        if (sr.getLineStart() <= lineNumber
-                                && sr.getLineEnd() >= lineNumber) {
-                            return true;
-                        }
-                    }
-                    return false;
-                });
+        return (IErlMember) getPositionIndex().getElementAtLine(lineNumber);
+    }
+
+    private PositionIndex getPositionIndex() {
+        PositionIndex index = positionIndex;
+        final int version = childrenVersion.get();
+        if (index == null || index.getVersion() != version) {
+            index = PositionIndex.of(this, version);
+            positionIndex = index;
+        }
+        return index;
+    }
+
+    @Override
+    public void setChildren(final Collection<? extends IErlElement> children) {
+        super.setChildren(children);
+        childrenVersion.incrementAndGet();
+    }
+
+    @Override
+    public void addChild(final IErlElement child) {
+        super.addChild(child);
+        childrenVersion.incrementAndGet();
+    }
+
+    @Override
+    public void removeChild(final IErlElement child) {
+        super.removeChild(child);
+        childrenVersion.incrementAndGet();
     }
 
     @Override
@@ -245,19 +292,13 @@ public class ErlModule extends Openable implements IErlModule {
 
     @Override
     public void setComments(final Collection<? extends IErlComment> comments) {
-        synchronized (getModelLock()) {
-            this.comments.clear();
-            if (comments != null) {
-                this.comments.addAll(comments);
-            }
-        }
+        this.comments = comments == null || comments.isEmpty() ? Collections.emptyList()
+                : Collections.unmodifiableList(new ArrayList<IErlComment>(comments));
     }
 
     @Override
     public Collection<IErlComment> getComments() {
-        synchronized (getModelLock()) {
-            return Collections.unmodifiableCollection(comments);
-        }
+        return comments;
     }
 
     @Override
@@ -327,13 +368,11 @@ public class ErlModule extends Openable implements IErlModule {
     @Override
     public IErlPreprocessorDef findPreprocessorDef(final String definedName,
             final ErlElementKind kind) {
-        synchronized (getModelLock()) {
-            for (final IErlElement m : internalGetChildren()) {
-                if (m instanceof IErlPreprocessorDef) {
-                    final IErlPreprocessorDef pd = (IErlPreprocessorDef) m;
-                    if (pd.getKind() == kind && pd.getDefinedName().equals(definedName)) {
-                        return pd;
-                    }
+        for (final IErlElement m : internalGetChildren()) {
+            if (m instanceof IErlPreprocessorDef) {
+                final IErlPreprocessorDef pd = (IErlPreprocessorDef) m;
+                if (pd.getKind() == kind && pd.getDefinedName().equals(definedName)) {
+                    return pd;
                 }
             }
         }
@@ -345,19 +384,21 @@ public class ErlModule extends Openable implements IErlModule {
         if (!isStructureKnown()) {
             open(null);
         }
+        return includeFiles();
+    }
+
+    private List<ErlangIncludeFile> includeFiles() {
         final List<ErlangIncludeFile> r = Lists.newArrayList();
-        synchronized (getModelLock()) {
-            for (final IErlElement m : internalGetChildren()) {
-                if (m instanceof IErlAttribute) {
-                    final IErlAttribute a = (IErlAttribute) m;
-                    final OtpErlangObject v = a.getValue();
-                    if (v instanceof OtpErlangString) {
-                        final String s = ((OtpErlangString) v).stringValue();
-                        if ("include".equals(a.getName())) {
-                            r.add(new ErlangIncludeFile(false, s));
-                        } else if ("include_lib".equals(a.getName())) {
-                            r.add(new ErlangIncludeFile(true, s));
-                        }
+        for (final IErlElement m : internalGetChildren()) {
+            if (m instanceof IErlAttribute) {
+                final IErlAttribute a = (IErlAttribute) m;
+                final OtpErlangObject v = a.getValue();
+                if (v instanceof OtpErlangString) {
+                    final String s = ((OtpErlangString) v).stringValue();
+                    if ("include".equals(a.getName())) {
+                        r.add(new ErlangIncludeFile(false, s));
+                    } else if ("include_lib".equals(a.getName())) {
+                        r.add(new ErlangIncludeFile(true, s));
                     }
                 }
             }
@@ -368,12 +409,10 @@ public class ErlModule extends Openable implements IErlModule {
     @Override
     public Collection<IErlImport> getImports() {
         final List<IErlImport> result = new ArrayList<>();
-        synchronized (getModelLock()) {
-            for (final IErlElement e : internalGetChildren()) {
-                if (e instanceof IErlImport) {
-                    final IErlImport ei = (IErlImport) e;
-                    result.add(ei);
-                }
+        for (final IErlElement e : internalGetChildren()) {
+            if (e instanceof IErlImport) {
+                final IErlImport ei = (IErlImport) e;
+                result.add(ei);
             }
         }
         return result;
@@ -431,44 +470,37 @@ public class ErlModule extends Openable implements IErlModule {
             scanner.dispose();
             scanner = null;
         }
+        IncludeGraph.getDefault().removeModule(this);
         ErlangEngine.getInstance().getModel().removeModule(this);
     }
 
+    @Override
+    public synchronized void resourceChanged(final IResourceDelta delta) {
+        super.resourceChanged(delta);
+        if (delta != null && (delta.getFlags() & IResourceDelta.CONTENT) == 0) {
+            return;
+        }
+        // the file changed on disk, what we know of its text is out of date
+        IncludeGraph.getDefault().removeModule(this);
+        if (file != null && scanner == null) {
+            initialText = null;
+            parsed = false;
+            restored = false;
+        }
+    }
+
     @Override
     public Set<ISourceUnit> getDirectDependentModules() throws ErlModelException {
-        final Set<ISourceUnit> result = new HashSet<>();
         final IErlProject project = modelUtilService.getProject(this);
-        for (final IErlModule module : project.getModules()) {
-            final boolean wasOpen = module.isOpen();
-            if (!wasOpen) {
-                module.open(null);
-            }
-            final Collection<ErlangIncludeFile> incs = module.getIncludeFiles();
-            for (final ErlangIncludeFile inc : incs) {
-                if (inc.getFilename().equals(getName())) {
-                    result.add(module);
-                    break;
-                }
-            }
-            if (!wasOpen) {
-                module.close();
-            }
-        }
-        return result;
+        return new HashSet<ISourceUnit>(ErlangEngine.getInstance().getModelFindService()
+                .findIncludingModules(project, getName(), false));
     }
 
     @Override
     public Set<ISourceUnit> getAllDependentModules() throws CoreException {
-        final Set<ISourceUnit> result = new HashSet<>();
         final IErlProject project = modelUtilService.getProject(this);
-        for (final IErlModule module : project.getModules()) {
-            final Collection<IErlModule> allIncludedFiles = ErlangEngine.getInstance()
-                    .getModelFindService().findAllIncludedFiles(module);
-            if (allIncludedFiles.contains(this)) {
-                result.add(module);
-            }
-        }
-        return result;
+        return new HashSet<ISourceUnit>(ErlangEngine.getInstance().getModelFindService()
+                .findIncludingModules(project, getName(), true));
     }
 
     @Override
@@ -476,6 +508,7 @@ public class ErlModule extends Openable implements IErlModule {
             throws ErlModelException {
         initialText = newText;
         parsed = false;
+        restored = false;
         setStructureKnown(false);
         scanner.initialScan(newText, "", ErlModule.logging);
         final boolean built = buildStructure(null);
@@ -510,20 +543,37 @@ public class ErlModule extends Openable implements IErlModule {
         final String text = getInitialText();
         scanner = ErlangEngine.getInstance().getScannerProviderService().get(scannerName);
         scanner.initialScan(text, filePath, ErlModule.logging);
+        // the backend must know the text before it's edited
+        parseRestored();
         return scanner;
     }
 
+    /**
+     * Lets the backend parse the text if the structure was restored from the index, so
+     * that its scanner and the search server know the module. Searches call it for the
+     * modules in their scope, so it happens at most once per module and only when needed.
+     */
+    public synchronized void parseRestored() {
+        if (!restored) {
+            return;
+        }
+        restored = false;
+        final String text = getInitialText();
+        if (text != null) {
+            parsed = new ErlParser(OtpRpcFactory.getOtpRpc()).parse(this, scannerName,
+                    true, getFilePath(), text, true);
+        }
+    }
+
     @Override
     public Collection<IErlPreprocessorDef> getPreprocessorDefs(
             final ErlElementKind kind) {
         final List<IErlPreprocessorDef> result = Lists.newArrayList();
-        synchronized (getModelLock()) {
-            for (final IErlElement e : internalGetChildren()) {
-                if (e instanceof IErlPreprocessorDef) {
-                    final IErlPreprocessorDef pd = (IErlPreprocessorDef) e;
-                    if (pd.getKind() == kind || kind == ErlElementKind.PROBLEM) {
-                        result.add(pd);
-                    }
+        for (final IErlElement e : internalGetChildren()) {
+            if (e instanceof IErlPreprocessorDef) {
+                final IErlPreprocessorDef pd = (IErlPreprocessorDef) e;
+                if (pd.getKind() == kind || kind == ErlElementKind.PROBLEM) {
+                    result.add(pd);
                 }
             }
         }
@@ -47,6 +47,13 @@ public class ErlOtpExternalReferenceEntryList extends Openable
         return true;
     }
 
+    @Override
+    public void clearCaches() {
+        getModelCache().removeExternalModules(
+                ErlangEngine.getInstance().getModelUtilService().getProject(this));
+        super.clearCaches();
+    }
+
     private void addExternalEntries(final IProgressMonitor pm, final IOtpRpc backend) {
         final OtpErlangList structure = ErlangEngine.getInstance().getOpenService()
                 .getOtpLibStructure(backend);
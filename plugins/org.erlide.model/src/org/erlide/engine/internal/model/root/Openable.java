@@ -215,7 +215,7 @@ public abstract class Openable extends ErlElement implements IOpenable {
                 }
             }
         }
-        internalGetChildren().clear();
+        setChildren(null);
         setStructureKnown(false);
     }
 }
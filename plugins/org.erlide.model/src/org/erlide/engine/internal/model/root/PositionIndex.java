@@ -0,0 +1,185 @@
+package org.erlide.engine.internal.model.root;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import org.erlide.engine.model.ErlModelException;
+import org.erlide.engine.model.IErlElement;
+import org.erlide.engine.model.IParent;
+import org.erlide.engine.model.erlang.ISourceRange;
+import org.erlide.engine.model.erlang.ISourceReference;
+import org.erlide.engine.model.root.IErlModel;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Finds the innermost element of a module at an offset or a line with a binary search.
+ * The answers are the same as those of {@link IErlModel#innermostThat}: of the elements
+ * containing the position, the first one in a depth first walk that visits the children
+ * before their parent wins.
+ *
+ * <p>
+ * The positions are cut in segments where the winner doesn't change, which are found
+ * by sweeping over the start and end of all the elements. An index is never changed;
+ * when the children of the module change, a new index is built.
+ * </p>
+ */
+final class PositionIndex {
+
+    private final int version;
+    private final Segments offsets;
+    private final Segments lines;
+
+    private PositionIndex(final int version, final Segments offsets,
+            final Segments lines) {
+        this.version = version;
+        this.offsets = offsets;
+        this.lines = lines;
+    }
+
+    /**
+     * @param version
+     *            the version of the module's children, read before the children are
+     */
+    static PositionIndex of(final IParent module, final int version) {
+        final List<ISourceReference> elements = Lists.newArrayList();
+        PositionIndex.collect(module, elements);
+        final int n = elements.size();
+        final long[] offsetFrom = new long[n];
+        final long[] offsetTo = new long[n];
+        final long[] lineFrom = new long[n];
+        final long[] lineTo = new long[n];
+        for (int i = 0; i < n; i++) {
+            final ISourceReference element = elements.get(i);
+            final ISourceRange r = element.getSourceRange();
+            if (r == null) {
+                // never matches
+                offsetFrom[i] = 1;
+                offsetTo[i] = 0;
+            } else {
+                offsetFrom[i] = r.getOffset();
+                offsetTo[i] = (long) r.getOffset() + r.getLength();
+            }
+            lineFrom[i] = element.getLineStart();
+            lineTo[i] = element.getLineEnd();
+        }
+        final IErlElement[] ranked = elements.toArray(new IErlElement[n]);
+        return new PositionIndex(version, new Segments(ranked, offsetFrom, offsetTo),
+                new Segments(ranked, lineFrom, lineTo));
+    }
+
+    int getVersion() {
+        return version;
+    }
+
+    IErlElement getElementAt(final int offset) {
+        return offsets.find(offset);
+    }
+
+    IErlElement getElementAtLine(final int line) {
+        return lines.find(line);
+    }
+
+    // the elements that can match, children before their parent
+    private static void collect(final IParent parent,
+            final List<ISourceReference> elements) {
+        final List<IErlElement> children;
+        try {
+            children = parent.getChildren();
+        } catch (final ErlModelException e) {
+            return;
+        }
+        for (final IErlElement child : children) {
+            if (child instanceof IParent) {
+                PositionIndex.collect((IParent) child, elements);
+            }
+            if (child instanceof ISourceReference) {
+                elements.add((ISourceReference) child);
+            }
+        }
+    }
+
+    private static final class Segments {
+        // where each segment starts, and what is found in it (may be null)
+        private final long[] starts;
+        private final IErlElement[] found;
+
+        /**
+         * @param from
+         *            the first position of each element, in the order they win
+         * @param to
+         *            the last position of each element
+         */
+        Segments(final IErlElement[] ranked, final long[] from, final long[] to) {
+            final int n = ranked.length;
+            final long[] points = new long[2 * n];
+            for (int i = 0; i < n; i++) {
+                points[2 * i] = from[i];
+                points[2 * i + 1] = to[i] + 1;
+            }
+            Arrays.sort(points);
+            int m = 0;
+            for (int i = 0; i < points.length; i++) {
+                if (m == 0 || points[i] != points[m - 1]) {
+                    points[m++] = points[i];
+                }
+            }
+            // elements by where they start and end
+            final Integer[] byStart = PositionIndex.order(from, to, from);
+            final Integer[] byEnd = PositionIndex.order(from, to, to);
+            final PriorityQueue<Integer> open = new PriorityQueue<>();
+            final boolean[] closed = new boolean[n];
+            final long[] segmentStarts = new long[m];
+            final IErlElement[] segmentFound = new IErlElement[m];
+            int k = 0;
+            int s = 0;
+            int e = 0;
+            for (int p = 0; p < m; p++) {
+                final long point = points[p];
+                while (e < byEnd.length && to[byEnd[e]] + 1 <= point) {
+                    closed[byEnd[e++]] = true;
+                }
+                while (s < byStart.length && from[byStart[s]] <= point) {
+                    final int i = byStart[s++];
+                    if (to[i] >= point) {
+                        open.add(i);
+                    }
+                }
+                while (!open.isEmpty() && closed[open.peek()]) {
+                    open.remove();
+                }
+                final IErlElement winner = open.isEmpty() ? null : ranked[open.peek()];
+                if (k == 0 || segmentFound[k - 1] != winner) {
+                    segmentStarts[k] = point;
+                    segmentFound[k] = winner;
+                    k++;
+                }
+            }
+            starts = Arrays.copyOf(segmentStarts, k);
+            found = Arrays.copyOf(segmentFound, k);
+        }
+
+        IErlElement find(final long position) {
+            int i = Arrays.binarySearch(starts, position);
+            if (i < 0) {
+                i = -i - 2;
+            }
+            return i < 0 ? null : found[i];
+        }
+    }
+
+    // the non empty intervals, sorted by the given ends
+    private static Integer[] order(final long[] from, final long[] to,
+            final long[] by) {
+        final List<Integer> result = Lists.newArrayListWithCapacity(from.length);
+        for (int i = 0; i < from.length; i++) {
+            if (from[i] <= to[i]) {
+                result.add(i);
+            }
+        }
+        result.sort((a, b) -> Long.compare(by[a], by[b]));
+        return result.toArray(new Integer[result.size()]);
+    }
+
+}
@@ -16,6 +16,7 @@ import java.util.LinkedList;
 import java.util.List;
 
 import org.erlide.engine.ErlangEngine;
+import org.erlide.engine.internal.model.cache.StructureIndex;
 import org.erlide.engine.internal.model.erlang.ErlAttribute;
 import org.erlide.engine.internal.model.erlang.ErlComment;
 import org.erlide.engine.internal.model.erlang.ErlExport;
@@ -30,6 +31,7 @@ import org.erlide.engine.internal.model.erlang.ErlTypespec;
 import org.erlide.engine.internal.model.erlang.SourceRefElement;
 import org.erlide.engine.model.ErlModelException;
 import org.erlide.engine.model.IErlElement;
+import org.erlide.engine.model.erlang.ErlangIncludeFile;
 import org.erlide.engine.model.erlang.IErlAttribute;
 import org.erlide.engine.model.erlang.IErlComment;
 import org.erlide.engine.model.erlang.IErlFunction;
@@ -107,22 +109,16 @@ public final class ErlParser {
             final OtpErlangTuple t = (OtpErlangTuple) res.elementAt(1);
             forms = (OtpErlangList) t.elementAt(1);
             comments = (OtpErlangList) t.elementAt(2);
+            if (initialParse) {
+                StructureIndex.getDefault().put(path, initialText,
+                        new OtpErlangTuple(new OtpErlangObject[] {
+                                forms, comments
+                        }));
+            }
         } else {
             ErlLogger.error("error when parsing %s: %s", path, res);
         }
-        if (forms == null) {
-            module.setChildren(null);
-        } else {
-            final List<IErlElement> children = createForms(module, forms);
-            module.setChildren(children);
-        }
-        if (comments == null) {
-            module.setComments(null);
-        } else {
-            final List<IErlComment> moduleComments = createComments(module, comments);
-            module.setComments(moduleComments);
-        }
-        attachFunctionComments(module);
+        setStructure(module, forms, comments);
         String cached = "reparsed";
         if (res != null && res.arity() > 2) {
             final OtpErlangObject res2 = res.elementAt(2);
@@ -139,6 +135,78 @@ public final class ErlParser {
         return forms != null && comments != null;
     }
 
+    /**
+     * Sets the structure that was stored for this text of the module, without asking the
+     * backend to parse it.
+     *
+     * @return false if nothing was stored for this text
+     */
+    public boolean restore(final IErlModule module, final String path,
+            final String text) {
+        final OtpErlangTuple t = StructureIndex.getDefault().get(path, text);
+        if (t == null || t.arity() != 2) {
+            return false;
+        }
+        setStructure(module, (OtpErlangList) t.elementAt(0),
+                (OtpErlangList) t.elementAt(1));
+        if (ErlParser.TRACE) {
+            ErlLogger.debug("Restored structure of %s", path);
+        }
+        return true;
+    }
+
+    /**
+     * Reads the include attributes from the structure that was stored for this text of
+     * the module, without creating its elements.
+     *
+     * @return null if nothing usable was stored for this text
+     */
+    public static List<ErlangIncludeFile> restoreIncludeFiles(final String path,
+            final String text) {
+        final OtpErlangTuple t = StructureIndex.getDefault().get(path, text);
+        if (t == null || t.arity() != 2) {
+            return null;
+        }
+        final List<ErlangIncludeFile> result = Lists.newArrayList();
+        for (final OtpErlangObject form : (OtpErlangList) t.elementAt(0)) {
+            final OtpErlangTuple el = (OtpErlangTuple) form;
+            final String type = ((OtpErlangAtom) el.elementAt(0)).atomValue();
+            if ("tree".equals(type)) {
+                // the name is only known after asking the backend
+                return null;
+            }
+            if (!"attribute".equals(type)
+                    || !(el.elementAt(3) instanceof OtpErlangString)) {
+                continue;
+            }
+            final String name = ((OtpErlangAtom) el.elementAt(2)).atomValue();
+            final String s = ((OtpErlangString) el.elementAt(3)).stringValue();
+            if ("include".equals(name)) {
+                result.add(new ErlangIncludeFile(false, s));
+            } else if ("include_lib".equals(name)) {
+                result.add(new ErlangIncludeFile(true, s));
+            }
+        }
+        return result;
+    }
+
+    private void setStructure(final IErlModule module, final OtpErlangList forms,
+            final OtpErlangList comments) {
+        if (forms == null) {
+            module.setChildren(null);
+        } else {
+            final List<IErlElement> children = createForms(module, forms);
+            module.setChildren(children);
+        }
+        if (comments == null) {
+            module.setComments(null);
+        } else {
+            final List<IErlComment> moduleComments = createComments(module, comments);
+            module.setComments(moduleComments);
+        }
+        attachFunctionComments(module);
+    }
+
     private List<IErlComment> createComments(final IErlModule module,
             final OtpErlangList comments) {
         final List<IErlComment> moduleComments = Lists
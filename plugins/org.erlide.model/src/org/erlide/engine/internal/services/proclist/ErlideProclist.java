@@ -1,11 +1,15 @@
 package org.erlide.engine.internal.services.proclist;
 
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.eclipse.core.runtime.IProgressMonitor;
 import org.erlide.engine.services.proclist.ProclistService;
 import org.erlide.runtime.rpc.IOtpRpc;
+import org.erlide.runtime.rpc.RpcStream;
 import org.erlide.util.ErlLogger;
 
 import com.ericsson.otp.erlang.OtpErlangAtom;
-import com.ericsson.otp.erlang.OtpErlangList;
 import com.ericsson.otp.erlang.OtpErlangObject;
 import com.ericsson.otp.erlang.OtpErlangPid;
 
@@ -25,18 +29,24 @@ public class ErlideProclist implements ProclistService {
     }
 
     @Override
-    public OtpErlangList getProcessList(final IOtpRpc b) {
+    public void getProcessList(final IOtpRpc b, final IProgressMonitor monitor,
+            final Consumer<List<OtpErlangObject>> processes) {
         if (b == null) {
-            return new OtpErlangList();
+            return;
         }
-        try {
-            final OtpErlangObject result = b.call(ErlideProclist.MODULE_NAME,
-                    "process_list", "");
-            return (OtpErlangList) result;
+        // busy nodes have many processes, show them as they come
+        try (final RpcStream stream = b.stream(ErlideProclist.MODULE_NAME,
+                "process_list", "")) {
+            while (stream.hasNext()) {
+                if (monitor.isCanceled()) {
+                    stream.cancel();
+                    break;
+                }
+                processes.accept(stream.nextChunk());
+            }
         } catch (final Exception e) {
             ErlLogger.warn(e);
         }
-        return new OtpErlangList();
     }
 
     @Override
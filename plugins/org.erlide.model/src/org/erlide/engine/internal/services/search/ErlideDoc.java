@@ -1,10 +1,12 @@
 package org.erlide.engine.internal.services.search;
 
+import java.io.File;
 import java.util.Collection;
 import java.util.List;
 
 import org.erlide.engine.ErlangEngine;
 import org.erlide.engine.services.search.OtpDocService;
+import org.erlide.runtime.rpc.CachingOtpRpc;
 import org.erlide.runtime.rpc.IOtpRpc;
 import org.erlide.runtime.rpc.RpcException;
 import org.erlide.util.ErlLogger;
@@ -20,6 +22,13 @@ import com.ericsson.otp.erlang.OtpErlangTuple;
 public class ErlideDoc implements OtpDocService {
 
     private static final String ERLIDE_OTP_DOC = "erlide_otp_doc";
+    static {
+        CachingOtpRpc.register(ErlideDoc.ERLIDE_OTP_DOC, "get_modules",
+                CachingOtpRpc.RUNTIME);
+        CachingOtpRpc.register(ErlideDoc.ERLIDE_OTP_DOC, "get_doc",
+                ErlideDoc::docVersion);
+    }
+
     private final IOtpRpc backend;
     private final String stateDir;
 
@@ -106,4 +115,23 @@ public class ErlideDoc implements OtpDocService {
         // }
         return "";
     }
+
+    /*
+     * Only the docs of external functions are cached, until their source changes.
+     */
+    private static Object docVersion(final Object[] args) {
+        if (!(args[1] instanceof OtpErlangTuple)) {
+            return null;
+        }
+        final OtpErlangTuple input = (OtpErlangTuple) args[1];
+        if (input.arity() < 4
+                || !new OtpErlangAtom("external").equals(input.elementAt(0))) {
+            return null;
+        }
+        if (input.arity() > 4 && input.elementAt(4) instanceof OtpErlangString) {
+            final String path = ((OtpErlangString) input.elementAt(4)).stringValue();
+            return Long.valueOf(new File(path).lastModified());
+        }
+        return Boolean.TRUE;
+    }
 }
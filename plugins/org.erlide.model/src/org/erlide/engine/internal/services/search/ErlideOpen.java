@@ -3,6 +3,7 @@ package org.erlide.engine.internal.services.search;
 import java.util.Collection;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.Path;
@@ -10,8 +11,11 @@ import org.erlide.engine.model.SourcePathUtils;
 import org.erlide.engine.services.search.ExternalTreeEntry;
 import org.erlide.engine.services.search.OpenResult;
 import org.erlide.engine.services.search.OpenService;
+import org.erlide.runtime.rpc.CachingOtpRpc;
 import org.erlide.runtime.rpc.IOtpRpc;
 import org.erlide.runtime.rpc.RpcException;
+import org.erlide.runtime.rpc.RpcPriority;
+import org.erlide.runtime.rpc.RpcStream;
 import org.erlide.util.ErlLogger;
 import org.erlide.util.Util;
 import org.erlide.util.erlang.OtpErlang;
@@ -27,6 +31,14 @@ import com.google.common.collect.Lists;
 public class ErlideOpen implements OpenService {
 
     private static final String ERLIDE_OPEN = "erlide_open";
+    static {
+        CachingOtpRpc.register(ErlideOpen.ERLIDE_OPEN, "get_otp_lib_structure",
+                CachingOtpRpc.RUNTIME);
+        CachingOtpRpc.register(ErlideOpen.ERLIDE_OPEN, "get_lib_files",
+                CachingOtpRpc.RUNTIME);
+        CachingOtpRpc.register(ErlideOpen.ERLIDE_OPEN, "get_includes_in_dir",
+                CachingOtpRpc.lastModified(0));
+    }
 
     private final IOtpRpc ideBackend;
     private final String stateDir;
@@ -104,40 +116,35 @@ public class ErlideOpen implements OpenService {
     }
 
     @Override
-    public List<ExternalTreeEntry> getExternalModuleTree(final IOtpRpc backend,
-            final String externalModules, final OtpErlangList pathVars) {
+    public boolean getExternalModuleTree(final IOtpRpc backend,
+            final String externalModules, final OtpErlangList pathVars,
+            final Consumer<ExternalTreeEntry> consumer) {
         ErlLogger.debug("open:external_module_tree -> " + externalModules);
         final Stopwatch stopwatch = Stopwatch.createStarted();
-        try {
-            final OtpErlangObject res = backend.call(ErlideOpen.ERLIDE_OPEN,
-                    "get_external_module_tree", "x",
-                    mkContext(externalModules, null, pathVars, null, null));
-            if (Util.isOk(res)) {
-                OtpErlangTuple t = (OtpErlangTuple) res;
-                final OtpErlangList l = (OtpErlangList) t.elementAt(1);
-                final List<ExternalTreeEntry> result = Lists
-                        .newArrayListWithCapacity(l.arity());
-                for (final OtpErlangObject i : l) {
-                    t = (OtpErlangTuple) i;
-                    final String parentPath = Util.stringValue(t.elementAt(0));
-                    final String path = Util.stringValue(t.elementAt(1));
-                    final OtpErlangAtom isModuleA = (OtpErlangAtom) t.elementAt(2);
-                    result.add(new ExternalTreeEntry(new Path(parentPath), new Path(path),
-                            "module".equals(isModuleA.atomValue())));
-                }
-                final String msg = "open:external_module_tree <- " + stopwatch;
-                if (stopwatch.elapsed(TimeUnit.SECONDS) > 5) {
-                    ErlLogger.warn("WARNING " + msg);
-                } else {
-                    ErlLogger.debug(msg);
-                }
-                return result;
+        // the tree can be huge, hand it out as it arrives
+        try (final RpcStream entries = backend.withPriority(RpcPriority.BULK).stream(
+                ErlideOpen.ERLIDE_OPEN, "get_external_module_tree", "x",
+                mkContext(externalModules, null, pathVars, null, null))) {
+            while (entries.hasNext()) {
+                final OtpErlangTuple t = (OtpErlangTuple) entries.next();
+                final String parentPath = Util.stringValue(t.elementAt(0));
+                final String path = Util.stringValue(t.elementAt(1));
+                final OtpErlangAtom isModuleA = (OtpErlangAtom) t.elementAt(2);
+                consumer.accept(new ExternalTreeEntry(new Path(parentPath),
+                        new Path(path), "module".equals(isModuleA.atomValue())));
             }
         } catch (final RpcException e) {
             ErlLogger.warn("open:external_module_tree TIMEOUT <- " + stopwatch);
             ErlLogger.warn(e);
+            return false;
+        }
+        final String msg = "open:external_module_tree <- " + stopwatch;
+        if (stopwatch.elapsed(TimeUnit.SECONDS) > 5) {
+            ErlLogger.warn("WARNING " + msg);
+        } else {
+            ErlLogger.debug(msg);
         }
-        return Lists.newArrayList();
+        return true;
     }
 
     @Override
@@ -1,5 +1,6 @@
 package org.erlide.engine.internal.services.search;
 
+import org.erlide.engine.internal.model.root.ErlModule;
 import org.erlide.engine.model.root.IErlModule;
 import org.erlide.engine.services.search.ErlSearchScope;
 import org.erlide.engine.services.search.ErlangSearchPattern;
@@ -7,6 +8,8 @@ import org.erlide.engine.services.search.SearchServerService;
 import org.erlide.runtime.rpc.IOtpRpc;
 import org.erlide.runtime.rpc.IRpcResultCallback;
 import org.erlide.runtime.rpc.RpcException;
+import org.erlide.runtime.rpc.RpcFuture;
+import org.erlide.runtime.rpc.RpcPriority;
 import org.erlide.util.Util;
 
 import com.ericsson.otp.erlang.OtpErlangAtom;
@@ -30,6 +33,10 @@ public class ErlideSearchServer implements SearchServerService {
         final OtpErlangObject[] result = new OtpErlangObject[scope.size()];
         int i = 0;
         for (final IErlModule module : scope.getModules()) {
+            if (module instanceof ErlModule) {
+                // refs of modules restored from the structure index are only needed now
+                ((ErlModule) module).parseRestored();
+            }
             result[i] = make2Tuple(module.getScannerName(), module.getFilePath());
             i++;
         }
@@ -43,14 +50,14 @@ public class ErlideSearchServer implements SearchServerService {
     }
 
     @Override
-    public void startFindRefs(final ErlangSearchPattern pattern,
+    public RpcFuture startFindRefs(final ErlangSearchPattern pattern,
             final ErlSearchScope scope, final String stateDir,
             final IRpcResultCallback callback, final boolean updateSearchServer)
             throws RpcException {
         final OtpErlangList modules = getModulesFromScope(scope);
-        backend.async_call_result(callback, "erlide_search_server", "start_find_refs",
-                "xxxso", pattern.getSearchObject(), modules, stateDir,
-                updateSearchServer);
+        return backend.withPriority(RpcPriority.BULK).async_call_result(callback,
+                "erlide_search_server", "start_find_refs", "xxxso",
+                pattern.getSearchObject(), modules, stateDir, updateSearchServer);
     }
 
     @Override
@@ -59,9 +66,10 @@ public class ErlideSearchServer implements SearchServerService {
             final boolean updateSearchServer) throws RpcException {
         final OtpErlangList modules = getModulesFromScope(scope);
         final OtpErlangObject searchObject = pattern.getSearchObject();
-        final OtpErlangObject r = backend.call(ErlideSearchServer.SEARCH_LONG_TIMEOUT,
-                "erlide_search_server", "find_refs", "xxso", searchObject, modules,
-                stateDir, updateSearchServer);
+        final OtpErlangObject r = backend.withPriority(RpcPriority.BULK).call(
+                ErlideSearchServer.SEARCH_LONG_TIMEOUT, "erlide_search_server",
+                "find_refs", "xxso", searchObject, modules, stateDir,
+                updateSearchServer);
         if (Util.isOk(r)) {
             return r;
         }
@@ -3,9 +3,12 @@ package org.erlide.engine.internal.services.search;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.erlide.runtime.rpc.CachingOtpRpc;
 import org.erlide.runtime.rpc.IOtpRpc;
 import org.erlide.runtime.rpc.RpcException;
+import org.erlide.runtime.rpc.RpcResult;
 import org.erlide.util.ErlLogger;
 import org.erlide.util.Util;
 
@@ -16,12 +19,20 @@ import com.ericsson.otp.erlang.OtpErlangTuple;
 
 public class ErlideXref {
     private static final String ERLIDE_XREF = "erlide_xref";
+    // bumped when the scope changes, so that the cached module list is dropped
+    private static final AtomicInteger scopeVersion = new AtomicInteger();
+    static {
+        CachingOtpRpc.register(ErlideXref.ERLIDE_XREF, "modules",
+                args -> Integer.valueOf(ErlideXref.scopeVersion.get()));
+    }
 
     public static void addDirs(final IOtpRpc backend, final Collection<String> dirs) {
         try {
             backend.call(ErlideXref.ERLIDE_XREF, "add_dirs", "ls", dirs);
         } catch (final RpcException e) {
             ErlLogger.warn(e);
+        } finally {
+            ErlideXref.scopeVersion.incrementAndGet();
         }
     }
 
@@ -48,15 +59,20 @@ public class ErlideXref {
 
     public static void setScope(final IOtpRpc backend, final List<String> scope) {
         final List<String> mods = ErlideXref.modules(backend);
-        ErlideXref.removeModules(backend, mods);
-        ErlideXref.addDirs(backend, scope);
-    }
-
-    private static void removeModules(final IOtpRpc backend, final List<String> mods) {
+        // the batch runs in order, so the old modules are gone before adding the new
         try {
-            backend.call(ErlideXref.ERLIDE_XREF, "remove_modules", "ls", mods);
+            final List<RpcResult> results = backend.batch()
+                    .add(ErlideXref.ERLIDE_XREF, "remove_modules", "ls", mods)
+                    .add(ErlideXref.ERLIDE_XREF, "add_dirs", "ls", scope).call();
+            for (final RpcResult result : results) {
+                if (!result.isOk()) {
+                    ErlLogger.error("xref set scope: %s", result.getValue());
+                }
+            }
         } catch (final RpcException e) {
             ErlLogger.error(e);
+        } finally {
+            ErlideXref.scopeVersion.incrementAndGet();
         }
     }
 
@@ -8,6 +8,7 @@ import org.erlide.engine.services.text.IndentResult;
 import org.erlide.engine.services.text.IndentService;
 import org.erlide.runtime.rpc.IOtpRpc;
 import org.erlide.runtime.rpc.RpcException;
+import org.erlide.runtime.rpc.RpcPriority;
 
 import com.ericsson.otp.erlang.OtpErlangAtom;
 import com.ericsson.otp.erlang.OtpErlangLong;
@@ -63,9 +64,9 @@ public class ErlideIndent implements IndentService {
     public OtpErlangObject indentLines(final int offset, final int length,
             final String text, final int indentw, final int tabw, final boolean useTabs,
             final Map<String, String> prefs) throws RpcException {
-        final OtpErlangObject o = backend.call(40000, "erlide_indent", "indent_lines",
-                "siiiiolx", text, offset, length, indentw, tabw, useTabs,
-                fixIndentPrefs(prefs));
+        final OtpErlangObject o = backend.withPriority(RpcPriority.BULK).call(40000,
+                "erlide_indent", "indent_lines", "siiiiolx", text, offset, length,
+                indentw, tabw, useTabs, fixIndentPrefs(prefs));
         return o;
     }
 
@@ -73,9 +74,9 @@ public class ErlideIndent implements IndentService {
     public OtpErlangObject templateIndentLines(final String prefix, final String text,
             final int indentw, final int tabw, final boolean useTabs,
             final Map<String, String> prefs) throws RpcException {
-        final OtpErlangObject o = backend.call(20000, "erlide_indent",
-                "template_indent_lines", "ssiiolx", prefix, text, indentw, tabw, useTabs,
-                fixIndentPrefs(prefs));
+        final OtpErlangObject o = backend.withPriority(RpcPriority.BULK).call(20000,
+                "erlide_indent", "template_indent_lines", "ssiiolx", prefix, text,
+                indentw, tabw, useTabs, fixIndentPrefs(prefs));
         return o;
     }
 
@@ -2,8 +2,11 @@ package org.erlide.runtime.api;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 import org.erlide.runtime.rpc.IOtpRpc;
+import org.erlide.runtime.rpc.RpcBatch;
+import org.erlide.runtime.rpc.RpcResult;
 import org.erlide.util.ErlLogger;
 
 import com.ericsson.otp.erlang.OtpErlangAtom;
@@ -45,6 +48,69 @@ public class BeamLoader {
         return false;
     }
 
+    /**
+     * Load several modules using one batch RPC to check for sticky modules and one to
+     * load the binaries.
+     *
+     * @return the names of the modules that could not be loaded
+     */
+    public static List<String> loadBeams(final IOtpRpc backend,
+            final Map<String, OtpErlangBinary> beams) {
+        final List<String> failed = new ArrayList<>();
+        if (beams.isEmpty()) {
+            return failed;
+        }
+        final List<String> names = new ArrayList<>(beams.keySet());
+        try {
+            final RpcBatch stickyBatch = backend.batch();
+            for (final String moduleName : names) {
+                stickyBatch.add("code", "is_sticky", "a", moduleName);
+            }
+            final List<RpcResult> sticky = stickyBatch.call();
+
+            final List<String> toLoad = new ArrayList<>();
+            final RpcBatch loadBatch = backend.batch();
+            for (int i = 0; i < names.size(); i++) {
+                final String moduleName = names.get(i);
+                final RpcResult r = sticky.get(i);
+                if (r.isOk() && r.getValue() instanceof OtpErlangAtom
+                        && !((OtpErlangAtom) r.getValue()).booleanValue()) {
+                    toLoad.add(moduleName);
+                    loadBatch.add("code", "load_binary", "asb", moduleName,
+                            moduleName + ".erl", beams.get(moduleName));
+                } else {
+                    ErlLogger.warn("sticky:: %s", moduleName);
+                    failed.add(moduleName);
+                }
+            }
+            final List<RpcResult> loaded = loadBatch.call();
+            for (int i = 0; i < toLoad.size(); i++) {
+                final OtpErlangObject r = loaded.get(i).getValue();
+                if (!BeamLoader.isLoaded(r)) {
+                    ErlLogger.error("Could not load " + toLoad.get(i) + ": " + r);
+                    failed.add(toLoad.get(i));
+                }
+            }
+        } catch (final Exception e) {
+            ErlLogger.warn(e);
+            for (final String moduleName : names) {
+                if (!failed.contains(moduleName)) {
+                    failed.add(moduleName);
+                }
+            }
+        }
+        return failed;
+    }
+
+    private static boolean isLoaded(final OtpErlangObject r) {
+        if (r instanceof OtpErlangTuple) {
+            final OtpErlangTuple t = (OtpErlangTuple) r;
+            return t.elementAt(0) instanceof OtpErlangAtom
+                    && "module".equals(((OtpErlangAtom) t.elementAt(0)).atomValue());
+        }
+        return false;
+    }
+
     public static void reloadAllCode(final IOtpRpc backend) {
         try {
             final OtpErlangList loaded = (OtpErlangList) backend.call("code",
@@ -59,10 +125,12 @@ public class BeamLoader {
                     mine.add(mod);
                 }
             }
+            final RpcBatch batch = backend.batch();
             for (final OtpErlangAtom mod : mine) {
                 // ErlLogger.debug(">>> reload " + mod);
-                backend.call("c", "l", "x", mod);
+                batch.add("c", "l", "x", mod);
             }
+            batch.call();
         } catch (final Exception e) {
             ErlLogger.error(e);
         }
@@ -10,6 +10,7 @@ package org.erlide.runtime.api;
 
 import java.util.concurrent.Executor;
 
+import org.erlide.runtime.events.ErlEventDispatcher;
 import org.erlide.runtime.rpc.IOtpRpc;
 import org.erlide.runtime.runtimeinfo.RuntimeVersion;
 import org.erlide.util.IDisposable;
@@ -42,6 +43,8 @@ public interface IOtpNodeProxy extends IDisposable {
 
     void registerEventListener(Object handler);
 
+    ErlEventDispatcher getEventDispatcher();
+
     void addRuntimeListener(Listener listener, Executor executor);
 
 }
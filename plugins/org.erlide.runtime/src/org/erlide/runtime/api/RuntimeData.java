@@ -11,6 +11,7 @@ import java.util.regex.Pattern;
 
 import org.eclipse.jdt.annotation.NonNull;
 import org.eclipse.jdt.annotation.Nullable;
+import org.erlide.runtime.rpc.RpcCompression;
 import org.erlide.runtime.runtimeinfo.RuntimeInfo;
 import org.erlide.util.ErlangFunctionCall;
 import org.erlide.util.HostnameChecker;
@@ -44,6 +45,9 @@ public class RuntimeData {
 
     protected boolean reportErrors;
 
+    protected int rpcCompressionThreshold;
+    protected int rpcCompressionLevel;
+
     public RuntimeData() {
         cookie = "";
         managed = true;
@@ -62,6 +66,8 @@ public class RuntimeData {
         initialInterpretedModules = Sets.newHashSet();
         runtimeInfo = null;
         debug = false;
+        rpcCompressionThreshold = RpcCompression.DEFAULT_THRESHOLD;
+        rpcCompressionLevel = RpcCompression.DEFAULT_LEVEL;
     }
 
     public RuntimeData(final RuntimeInfo runtime, final String mode) {
@@ -301,4 +307,17 @@ public class RuntimeData {
         reportErrors = value;
     }
 
+    public RpcCompression getRpcCompression() {
+        return new RpcCompression(rpcCompressionThreshold, rpcCompressionLevel);
+    }
+
+    /**
+     * Compress RPC arguments and results larger than the threshold, in bytes; useful
+     * for runtimes on other hosts. A negative threshold turns it off.
+     */
+    public void setRpcCompression(final int threshold, final int level) {
+        rpcCompressionThreshold = threshold;
+        rpcCompressionLevel = level;
+    }
+
 }
@@ -1,15 +1,19 @@
 package org.erlide.runtime.events;
 
 import org.erlide.runtime.api.IOtpNodeProxy;
+import org.erlide.util.ErlLogger;
 
+import com.ericsson.otp.erlang.OtpErlangDecodeException;
 import com.ericsson.otp.erlang.OtpErlangObject;
 import com.ericsson.otp.erlang.OtpErlangPid;
+import com.ericsson.otp.erlang.OtpLazyTerm;
 
 public class ErlEvent {
 
     private final String topic;
     private final IOtpNodeProxy runtime;
-    private final OtpErlangObject event;
+    private OtpErlangObject event;
+    private final OtpLazyTerm lazyEvent;
     private final OtpErlangPid sender;
 
     public ErlEvent(final String topic, final IOtpNodeProxy runtime,
@@ -17,10 +21,29 @@ public class ErlEvent {
         this.topic = topic;
         this.runtime = runtime;
         this.event = event;
+        lazyEvent = null;
         this.sender = sender;
     }
 
-    public OtpErlangObject getEvent() {
+    /**
+     * The event data is only decoded when a handler asks for it.
+     */
+    public ErlEvent(final String topic, final IOtpNodeProxy runtime,
+            final OtpLazyTerm event, final OtpErlangPid sender) {
+        this.topic = topic;
+        this.runtime = runtime;
+        lazyEvent = event;
+        this.sender = sender;
+    }
+
+    public synchronized OtpErlangObject getEvent() {
+        if (event == null && lazyEvent != null) {
+            try {
+                event = lazyEvent.decode();
+            } catch (final OtpErlangDecodeException e) {
+                ErlLogger.error(e);
+            }
+        }
         return event;
     }
 
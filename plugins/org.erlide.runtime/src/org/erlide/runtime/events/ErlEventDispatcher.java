@@ -0,0 +1,294 @@
+package org.erlide.runtime.events;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.erlide.util.ErlLogger;
+
+import com.google.common.eventbus.DeadEvent;
+import com.google.common.eventbus.EventBus;
+import com.google.common.eventbus.Subscribe;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Routes backend events to the handlers of their topic.
+ *
+ * <p>
+ * {@link ErlangEventHandler}s only get the events of their topic. Each topic has its own
+ * bounded queue, drained by one thread at a time, so a slow handler only holds back the
+ * events of its own topic. Events of a topic are handled in the order they arrived; there
+ * is no ordering between topics. What happens when a queue is full is decided by the
+ * topic's {@link OverflowPolicy}.
+ * </p>
+ *
+ * <p>
+ * Other handlers get all the events, synchronously on the thread that receives them, like
+ * before.
+ * </p>
+ */
+public class ErlEventDispatcher {
+
+    public enum OverflowPolicy {
+        /**
+         * Wait until there is room in the queue. No event is lost, but the receiving
+         * thread stalls behind the slowest topic.
+         */
+        BLOCK,
+        /**
+         * Drop the oldest queued event.
+         */
+        DROP_OLDEST,
+        /**
+         * Replace the last queued event from the same sender, for topics where only the
+         * latest event matters; drop the oldest if there is none.
+         */
+        COALESCE
+    }
+
+    /**
+     * A snapshot of the queue of one topic.
+     */
+    public static final class TopicStats {
+        private final String topic;
+        private final int queued;
+        private final int maxQueued;
+        private final long delivered;
+        private final long dropped;
+
+        TopicStats(final String topic, final int queued, final int maxQueued,
+                final long delivered, final long dropped) {
+            this.topic = topic;
+            this.queued = queued;
+            this.maxQueued = maxQueued;
+            this.delivered = delivered;
+            this.dropped = dropped;
+        }
+
+        public String getTopic() {
+            return topic;
+        }
+
+        public int getQueued() {
+            return queued;
+        }
+
+        public int getMaxQueued() {
+            return maxQueued;
+        }
+
+        public long getDelivered() {
+            return delivered;
+        }
+
+        /**
+         * Events dropped or coalesced because the queue was full.
+         */
+        public long getDropped() {
+            return dropped;
+        }
+
+        @Override
+        public String toString() {
+            return topic + ": queued=" + queued + " max=" + maxQueued + " delivered="
+                    + delivered + " dropped=" + dropped;
+        }
+    }
+
+    public static final int DEFAULT_CAPACITY = Integer
+            .getInteger("erlide.event.queue", 1024).intValue();
+
+    private static final ThreadFactory threadFactory = new ThreadFactoryBuilder()
+            .setDaemon(true).setNameFormat("erlide-event-%d").build();
+    private static final ExecutorService threadPool = Executors
+            .newCachedThreadPool(ErlEventDispatcher.threadFactory);
+
+    private final String name;
+    private final Executor executor;
+    private final Map<String, Topic> topics = new ConcurrentHashMap<>();
+    private final EventBus allTopics;
+    private final AtomicInteger allTopicsHandlers = new AtomicInteger();
+
+    public ErlEventDispatcher(final String name) {
+        this(name, ErlEventDispatcher.threadPool);
+    }
+
+    public ErlEventDispatcher(final String name, final Executor executor) {
+        this.name = name;
+        this.executor = executor;
+        allTopics = new EventBus(name);
+        allTopics.register(this);
+    }
+
+    /**
+     * Register a handler. {@link ErlangEventHandler}s are registered for their topic,
+     * other objects for all events.
+     */
+    public void register(final Object handler) {
+        if (handler instanceof ErlangEventHandler) {
+            topic(((ErlangEventHandler) handler).getTopic()).bus.register(handler);
+        } else {
+            allTopics.register(handler);
+            allTopicsHandlers.incrementAndGet();
+        }
+    }
+
+    /**
+     * Set how events of the topic are queued. Topics use {@link OverflowPolicy#BLOCK} and
+     * {@link #DEFAULT_CAPACITY} if not configured.
+     */
+    public void configure(final String topic, final OverflowPolicy policy,
+            final int capacity) {
+        topic(topic).configure(policy, Math.max(1, capacity));
+    }
+
+    public void dispatch(final ErlEvent event) {
+        final Topic topic = topics.get(event.getTopic());
+        if (topic != null) {
+            topic.offer(event);
+        }
+        if (topic == null || allTopicsHandlers.get() > 0) {
+            allTopics.post(event);
+        }
+    }
+
+    public List<TopicStats> getStats() {
+        final List<TopicStats> result = new ArrayList<>();
+        for (final Topic topic : topics.values()) {
+            result.add(topic.stats());
+        }
+        return result;
+    }
+
+    /**
+     * @return the stats of the topic, or null if nobody listens to it.
+     */
+    public TopicStats getStats(final String topic) {
+        final Topic t = topics.get(topic);
+        return t == null ? null : t.stats();
+    }
+
+    @Subscribe
+    public void deadEventHandler(final DeadEvent dead) {
+        ErlLogger.warn("Dead event: " + dead + " in runtime " + name);
+    }
+
+    private Topic topic(final String topic) {
+        Topic t = topics.get(topic);
+        if (t == null) {
+            synchronized (topics) {
+                t = topics.get(topic);
+                if (t == null) {
+                    t = new Topic(topic);
+                    topics.put(topic, t);
+                }
+            }
+        }
+        return t;
+    }
+
+    private final class Topic implements Runnable {
+        private final String topic;
+        private final EventBus bus;
+        private final ArrayDeque<ErlEvent> queue = new ArrayDeque<>();
+        private OverflowPolicy policy = OverflowPolicy.BLOCK;
+        private int capacity = ErlEventDispatcher.DEFAULT_CAPACITY;
+        private boolean scheduled;
+        private int maxQueued;
+        private long delivered;
+        private long dropped;
+
+        Topic(final String topic) {
+            this.topic = topic;
+            bus = new EventBus(name + ":" + topic);
+        }
+
+        synchronized void configure(final OverflowPolicy aPolicy, final int aCapacity) {
+            policy = aPolicy;
+            capacity = aCapacity;
+            notifyAll();
+        }
+
+        synchronized void offer(final ErlEvent event) {
+            if (queue.size() >= capacity) {
+                switch (policy) {
+                case BLOCK:
+                    boolean interrupted = false;
+                    while (queue.size() >= capacity && policy == OverflowPolicy.BLOCK) {
+                        try {
+                            wait();
+                        } catch (final InterruptedException e) {
+                            interrupted = true;
+                        }
+                    }
+                    if (interrupted) {
+                        Thread.currentThread().interrupt();
+                    }
+                    break;
+                case COALESCE:
+                    if (replaceLastFrom(event)) {
+                        dropped++;
+                        return;
+                    }
+                    //$FALL-THROUGH$
+                case DROP_OLDEST:
+                default:
+                    break;
+                }
+                while (queue.size() >= capacity) {
+                    queue.poll();
+                    dropped++;
+                }
+            }
+            queue.add(event);
+            maxQueued = Math.max(maxQueued, queue.size());
+            if (!scheduled) {
+                scheduled = true;
+                executor.execute(this);
+            }
+        }
+
+        private boolean replaceLastFrom(final ErlEvent event) {
+            final Iterator<ErlEvent> it = queue.descendingIterator();
+            while (it.hasNext()) {
+                final ErlEvent queued = it.next();
+                if (queued.getSender() != null
+                        && queued.getSender().equals(event.getSender())) {
+                    it.remove();
+                    queue.add(event);
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public void run() {
+            for (;;) {
+                final ErlEvent event;
+                synchronized (this) {
+                    event = queue.poll();
+                    if (event == null) {
+                        scheduled = false;
+                        return;
+                    }
+                    delivered++;
+                    notifyAll();
+                }
+                bus.post(event);
+            }
+        }
+
+        synchronized TopicStats stats() {
+            return new TopicStats(topic, queue.size(), maxQueued, delivered, dropped);
+        }
+    }
+}
@@ -1,12 +1,16 @@
 package org.erlide.runtime.internal;
 
+import java.util.List;
+
 import org.erlide.runtime.api.IOtpNodeProxy;
 import org.erlide.runtime.events.ErlEvent;
 
 import com.ericsson.otp.erlang.OtpErlangAtom;
+import com.ericsson.otp.erlang.OtpErlangDecodeException;
 import com.ericsson.otp.erlang.OtpErlangObject;
 import com.ericsson.otp.erlang.OtpErlangPid;
 import com.ericsson.otp.erlang.OtpErlangTuple;
+import com.ericsson.otp.erlang.OtpLazyTerm;
 
 public class EventParser {
 
@@ -23,6 +27,24 @@ public class EventParser {
         return new ErlEvent(topic, runtime, event, sender);
     }
 
+    /**
+     * Only the topic and the sender are decoded; the event data is decoded when a
+     * handler for the topic looks at it.
+     */
+    public ErlEvent parse(final OtpLazyTerm msg, final IOtpNodeProxy runtime)
+            throws OtpErlangDecodeException {
+        if (msg == null || !msg.isTuple()) {
+            return null;
+        }
+        final List<OtpLazyTerm> elements = msg.elements();
+        if (elements.size() < 4 || !elements.get(1).isAtom()) {
+            return null;
+        }
+        final String topic = elements.get(1).atomValue();
+        final OtpErlangPid sender = (OtpErlangPid) elements.get(3).decode();
+        return new ErlEvent(topic, runtime, elements.get(2), sender);
+    }
+
     public boolean isEventMessage(final OtpErlangObject msg) {
         try {
             final OtpErlangTuple tmsg = (OtpErlangTuple) msg;
@@ -9,11 +9,14 @@
 package org.erlide.runtime.internal;
 
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
 
 import org.erlide.util.ErlLogger;
 import org.erlide.util.erlang.OtpBindings;
 import org.erlide.util.erlang.OtpErlang;
 import org.erlide.util.erlang.OtpParserException;
+import org.erlide.util.erlang.OtpPattern;
 
 import com.ericsson.otp.erlang.OtpErlangAtom;
 import com.ericsson.otp.erlang.OtpErlangException;
@@ -88,129 +91,175 @@ public class IOServer implements Runnable {
         }
     }
 
-    private final OtpErlangObject error = OtpErlang.mkTuple(new OtpErlangAtom("error"),
-            new OtpErlangAtom("request"));
+    private static final OtpErlangObject ERROR = OtpErlang
+            .mkTuple(new OtpErlangAtom("error"), new OtpErlangAtom("request"));
+    private static final OtpErlangObject ENOTSUP = OtpErlang
+            .mkTuple(new OtpErlangAtom("error"), new OtpErlangAtom("enotsup"));
+
+    private static final OtpPattern PUT_CHARS = IOServer
+            .pattern("{put_chars, Chars}");
+    private static final OtpPattern PUT_CHARS_ENC = IOServer
+            .pattern("{put_chars, Enc:a, Chars}");
+    private static final OtpPattern PUT_CHARS_MFA = IOServer
+            .pattern("{put_chars, M:a, F:a, A}");
+    private static final OtpPattern PUT_CHARS_ENC_MFA = IOServer
+            .pattern("{put_chars, Enc:a, M:a, F:a, A}");
+    private static final OtpPattern GET_UNTIL = IOServer
+            .pattern("{get_until, Prompt}");
+    private static final OtpPattern GET_UNTIL_N = IOServer
+            .pattern("{get_until, Prompt, N:i}");
+    private static final OtpPattern GET_UNTIL_ENC = IOServer
+            .pattern("{get_until, Enc:a, Prompt}");
+    private static final OtpPattern GET_UNTIL_ENC_N = IOServer
+            .pattern("{get_until, Enc:a, Prompt, N:i}");
+    private static final OtpPattern GET_UNTIL_MFA = IOServer
+            .pattern("{get_until, Prompt, M:a, F:a, A}");
+    private static final OtpPattern GET_UNTIL_ENC_MFA = IOServer
+            .pattern("{get_until, Enc:a, Prompt, M:a, F:a, A}");
+    private static final OtpPattern REQUESTS = IOServer.pattern("{requests, Reqs:lx}");
+    private static final OtpPattern SETOPTS = IOServer.pattern("{setopts, Opts:lx}");
+
+    private interface RequestHandler {
+        OtpErlangObject handle(IOServer server, OtpErlangPid from, OtpErlangTuple request)
+                throws OtpErlangException;
+    }
+
+    // by the tag of the request tuple
+    private static final Map<String, RequestHandler> HANDLERS = new HashMap<>();
+    static {
+        IOServer.HANDLERS.put("put_chars", IOServer::putChars);
+        IOServer.HANDLERS.put("get_until", IOServer::getUntil);
+        IOServer.HANDLERS.put("requests", IOServer::requests);
+        IOServer.HANDLERS.put("setopts", IOServer::setOpts);
+        IOServer.HANDLERS.put("get_geometry",
+                (server, from, request) -> IOServer.ENOTSUP);
+    }
 
     private OtpErlangObject processRequest(final OtpErlangPid from,
             final OtpErlangObject arequest) {
         if (callback == null) {
-            return error;
+            return IOServer.ERROR;
         }
-        OtpBindings b;
         try {
             if (arequest instanceof OtpErlangTuple) {
                 final OtpErlangTuple request = (OtpErlangTuple) arequest;
-                final String tag = ((OtpErlangAtom) request.elementAt(0)).atomValue();
-                if ("put_chars".equals(tag)) {
-                    b = OtpErlang.match("{put_chars, Chars}", request);
-                    if (b != null) {
-                        return callback.putChars(from, IOEncoding.latin1, b.get("Chars"));
-                    }
-
-                    b = OtpErlang.match("{put_chars, Enc:a, Chars}", request);
-                    if (b != null) {
-                        final String enc = b.getAtom("Enc");
-                        return callback.putChars(from, IOEncoding.valueOf(enc),
-                                b.get("Chars"));
-                    }
-
-                    b = OtpErlang.match("{put_chars, M:a, F:a, A}", request);
-                    if (b != null) {
-                        final String m = b.getAtom("M");
-                        final String f = b.getAtom("F");
-                        final Collection<OtpErlangObject> a = b.getList("A");
-                        return callback.putChars(from, IOEncoding.latin1, m, f, a);
-                    }
-
-                    b = OtpErlang.match("{put_chars, Enc:a, M:a, F:a, A}", request);
-                    if (b != null) {
-                        final String enc = b.getAtom("Enc");
-                        final String m = b.getAtom("M");
-                        final String f = b.getAtom("F");
-                        final Collection<OtpErlangObject> a = b.getList("A");
-                        return callback.putChars(from, IOEncoding.valueOf(enc), m, f, a);
-                    }
-                    return error;
-                } else if ("get_until".equals(tag)) {
-                    b = OtpErlang.match("{get_until, Prompt}", request);
-                    if (b != null) {
-                        return callback.getUntil(IOEncoding.latin1, b.get("Prompt"));
-                    }
-                    b = OtpErlang.match("{get_until, Prompt, N:i}", request);
-                    if (b != null) {
-                        final long n = b.getLong("N");
-                        return callback.getUntil(IOEncoding.latin1, b.get("Prompt"), n);
-                    }
-                    b = OtpErlang.match("{get_until, Enc:a, Prompt}", request);
-                    if (b != null) {
-                        final String enc = b.getAtom("Enc");
-                        return callback.getUntil(IOEncoding.valueOf(enc),
-                                b.get("Prompt"));
-                    }
-                    b = OtpErlang.match("{get_until, Enc:a, Prompt, N:i}", request);
-                    if (b != null) {
-                        final String enc = b.getAtom("Enc");
-                        final long n = b.getLong("N");
-                        return callback.getUntil(IOEncoding.valueOf(enc), b.get("Prompt"),
-                                n);
-                    }
-                    b = OtpErlang.match("{get_until, Prompt, M:a, F:a, A}", request);
-                    if (b != null) {
-                        final String m = b.getAtom("M");
-                        final String f = b.getAtom("F");
-                        final Collection<OtpErlangObject> a = b.getList("A");
-                        return callback.getUntil(IOEncoding.latin1, b.get("Prompt"), m, f,
-                                a);
-                    }
-                    b = OtpErlang.match("{get_until, Enc: a, Prompt, M:a, F:a, A}",
-                            request);
-                    if (b != null) {
-                        final String enc = b.getAtom("Enc");
-                        final String m = b.getAtom("M");
-                        final String f = b.getAtom("F");
-                        final Collection<OtpErlangObject> a = b.getList("A");
-                        return callback.getUntil(IOEncoding.valueOf(enc), b.get("Prompt"),
-                                m, f, a);
-                    }
-                } else if ("requests".equals(tag)) {
-                    b = OtpErlang.match("{requests, Reqs:lx}", request);
-                    if (b != null) {
-                        final Collection<OtpErlangObject> reqs = b.getList("Reqs");
-                        OtpErlangObject val = null;
-                        for (final OtpErlangObject r : reqs) {
-                            val = processRequest(from, r);
-                            if (val.equals(error)) {
-                                return error;
-                            }
-                        }
-                        return val == null ? error : val;
-                    }
-                } else if ("setopts".equals(tag)) {
-                    b = OtpErlang.match("{setopts, Opts:lx}", request);
-                    if (b != null) {
-                        final Collection<OtpErlangObject> opts = b.getList("Opts");
-                        return callback.setOpts(opts);
-                    }
-                } else if ("get_geometry".equals(tag)) {
-                    return OtpErlang.mkTuple(new OtpErlangAtom("error"),
-                            new OtpErlangAtom("enotsup"));
-                } else {
-                    return error;
+                final RequestHandler handler = IOServer.HANDLERS
+                        .get(((OtpErlangAtom) request.elementAt(0)).atomValue());
+                if (handler != null) {
+                    final OtpErlangObject reply = handler.handle(this, from, request);
+                    return reply != null ? reply : IOServer.ERROR;
                 }
             } else if (arequest instanceof OtpErlangAtom) {
-                final OtpErlangAtom tag = (OtpErlangAtom) arequest;
-                if ("getopts".equals(tag.atomValue())) {
+                if ("getopts".equals(((OtpErlangAtom) arequest).atomValue())) {
                     return callback.getOpts();
                 }
-                return error;
-            } else {
-                return error;
             }
-        } catch (final OtpParserException e) {
-            ErlLogger.error(e);
         } catch (final OtpErlangException e) {
             ErlLogger.error(e);
         }
-        return error;
+        return IOServer.ERROR;
+    }
+
+    private OtpErlangObject putChars(final OtpErlangPid from,
+            final OtpErlangTuple request) throws OtpErlangException {
+        OtpBindings b = IOServer.PUT_CHARS.match(request);
+        if (b != null) {
+            return callback.putChars(from, IOEncoding.latin1, b.get("Chars"));
+        }
+        b = IOServer.PUT_CHARS_ENC.match(request);
+        if (b != null) {
+            final String enc = b.getAtom("Enc");
+            return callback.putChars(from, IOEncoding.valueOf(enc), b.get("Chars"));
+        }
+        b = IOServer.PUT_CHARS_MFA.match(request);
+        if (b != null) {
+            final String m = b.getAtom("M");
+            final String f = b.getAtom("F");
+            final Collection<OtpErlangObject> a = b.getList("A");
+            return callback.putChars(from, IOEncoding.latin1, m, f, a);
+        }
+        b = IOServer.PUT_CHARS_ENC_MFA.match(request);
+        if (b != null) {
+            final String enc = b.getAtom("Enc");
+            final String m = b.getAtom("M");
+            final String f = b.getAtom("F");
+            final Collection<OtpErlangObject> a = b.getList("A");
+            return callback.putChars(from, IOEncoding.valueOf(enc), m, f, a);
+        }
+        return null;
+    }
+
+    private OtpErlangObject getUntil(final OtpErlangPid from,
+            final OtpErlangTuple request) throws OtpErlangException {
+        OtpBindings b = IOServer.GET_UNTIL.match(request);
+        if (b != null) {
+            return callback.getUntil(IOEncoding.latin1, b.get("Prompt"));
+        }
+        b = IOServer.GET_UNTIL_N.match(request);
+        if (b != null) {
+            final long n = b.getLong("N");
+            return callback.getUntil(IOEncoding.latin1, b.get("Prompt"), n);
+        }
+        b = IOServer.GET_UNTIL_ENC.match(request);
+        if (b != null) {
+            final String enc = b.getAtom("Enc");
+            return callback.getUntil(IOEncoding.valueOf(enc), b.get("Prompt"));
+        }
+        b = IOServer.GET_UNTIL_ENC_N.match(request);
+        if (b != null) {
+            final String enc = b.getAtom("Enc");
+            final long n = b.getLong("N");
+            return callback.getUntil(IOEncoding.valueOf(enc), b.get("Prompt"), n);
+        }
+        b = IOServer.GET_UNTIL_MFA.match(request);
+        if (b != null) {
+            final String m = b.getAtom("M");
+            final String f = b.getAtom("F");
+            final Collection<OtpErlangObject> a = b.getList("A");
+            return callback.getUntil(IOEncoding.latin1, b.get("Prompt"), m, f, a);
+        }
+        b = IOServer.GET_UNTIL_ENC_MFA.match(request);
+        if (b != null) {
+            final String enc = b.getAtom("Enc");
+            final String m = b.getAtom("M");
+            final String f = b.getAtom("F");
+            final Collection<OtpErlangObject> a = b.getList("A");
+            return callback.getUntil(IOEncoding.valueOf(enc), b.get("Prompt"), m, f,
+                    a);
+        }
+        return null;
+    }
+
+    private OtpErlangObject requests(final OtpErlangPid from,
+            final OtpErlangTuple request) throws OtpErlangException {
+        final OtpBindings b = IOServer.REQUESTS.match(request);
+        if (b == null) {
+            return null;
+        }
+        OtpErlangObject val = null;
+        for (final OtpErlangObject r : b.getList("Reqs")) {
+            val = processRequest(from, r);
+            if (val.equals(IOServer.ERROR)) {
+                return IOServer.ERROR;
+            }
+        }
+        return val;
+    }
+
+    private OtpErlangObject setOpts(final OtpErlangPid from,
+            final OtpErlangTuple request) throws OtpErlangException {
+        final OtpBindings b = IOServer.SETOPTS.match(request);
+        if (b == null) {
+            return null;
+        }
+        return callback.setOpts(b.getList("Opts"));
+    }
+
+    private static OtpPattern pattern(final String pattern) {
+        try {
+            return OtpPattern.compile(pattern);
+        } catch (final OtpParserException e) {
+            throw new IllegalStateException(e);
+        }
     }
 }
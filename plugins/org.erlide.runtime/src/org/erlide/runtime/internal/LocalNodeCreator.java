@@ -1,9 +1,14 @@
 package org.erlide.runtime.internal;
 
+import java.io.IOException;
+
 import org.eclipse.xtext.xbase.lib.Exceptions;
 import org.erlide.util.HostnameChecker;
 
+import com.ericsson.otp.erlang.OtpNioTransportFactory;
 import com.ericsson.otp.erlang.OtpNode;
+import com.ericsson.otp.erlang.OtpSocketTransportFactory;
+import com.ericsson.otp.erlang.OtpTransportFactory;
 import com.google.common.base.Strings;
 
 @SuppressWarnings("all")
@@ -16,12 +21,13 @@ public class LocalNodeCreator {
                         .getErlangHostName(longName);
                 OtpNode _xifexpression = null;
                 final boolean _isNullOrEmpty = Strings.isNullOrEmpty(cookie);
+                final OtpTransportFactory factory = LocalNodeCreator.transportFactory();
                 if (_isNullOrEmpty) {
                     final String _create = NodeNameCreator.create(hostName);
-                    _xifexpression = new OtpNode(_create);
+                    _xifexpression = new OtpNode(_create, factory);
                 } else {
                     final String _create_1 = NodeNameCreator.create(hostName);
-                    _xifexpression = new OtpNode(_create_1, cookie);
+                    _xifexpression = new OtpNode(_create_1, cookie, factory);
                 }
                 _xblockexpression = _xifexpression;
             }
@@ -31,15 +37,46 @@ public class LocalNodeCreator {
         }
     }
 
+    private static OtpTransportFactory nioFactory;
+
+    /**
+     * All local nodes share one selector based transport when erlide.otp.nio is set,
+     * otherwise each connection gets its own reader thread.
+     */
+    private static synchronized OtpTransportFactory transportFactory() throws IOException {
+        if (!Boolean.getBoolean("erlide.otp.nio")) {
+            return new OtpSocketTransportFactory();
+        }
+        if (LocalNodeCreator.nioFactory == null) {
+            LocalNodeCreator.nioFactory = new OtpNioTransportFactory();
+        }
+        return LocalNodeCreator.nioFactory;
+    }
+
     public static OtpNode startLocalNode(final OtpNodeProxy runtime, final String cookie,
             final boolean hasLongName) {
-        LocalNodeCreator.wait_for_epmd();
-        final OtpNode lNode = LocalNodeCreator.createOtpNode(cookie, hasLongName);
+        final OtpNode lNode = LocalNodeCreator.startLaneNode(cookie, hasLongName);
         final ErlideNodeStatus statusWatcher = new ErlideNodeStatus(runtime);
         lNode.registerStatusHandler(statusWatcher);
         return lNode;
     }
 
+    /**
+     * A local node with its own connection to the runtime, for a separate RPC lane. Its
+     * status isn't watched, the runtime's main node takes care of that.
+     */
+    public static OtpNode startLaneNode(final String cookie, final boolean hasLongName) {
+        LocalNodeCreator.wait_for_epmd();
+        final OtpNode lNode = LocalNodeCreator.createOtpNode(cookie, hasLongName);
+        // write coalescing window is in nanoseconds, 0 is off
+        lNode.setGatheringWrites(!Boolean.getBoolean("erlide.otp.nogather"));
+        lNode.setWriteCoalescing(Long.getLong("erlide.otp.coalesce", 0L).longValue());
+        lNode.setDistributionAtomCache(Boolean.getBoolean("erlide.otp.atomcache"));
+        lNode.setLockFreeMailboxes(Boolean.getBoolean("erlide.otp.lockfree"));
+        lNode.setMboxPoolSize(Integer.getInteger("erlide.otp.mboxpool", 0).intValue());
+        return lNode;
+    }
+
     public static void wait_for_epmd() {
         LocalNodeCreator.wait_for_epmd(null);
     }
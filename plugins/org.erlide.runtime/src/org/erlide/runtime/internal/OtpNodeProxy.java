@@ -19,10 +19,13 @@ import java.util.concurrent.TimeoutException;
 import org.erlide.runtime.api.IOtpNodeProxy;
 import org.erlide.runtime.api.RuntimeData;
 import org.erlide.runtime.events.ErlEvent;
+import org.erlide.runtime.events.ErlEventDispatcher;
 import org.erlide.runtime.events.ErlangLogEventHandler;
 import org.erlide.runtime.events.LogEventHandler;
 import org.erlide.runtime.internal.rpc.OtpRpc;
+import org.erlide.runtime.rpc.CachingOtpRpc;
 import org.erlide.runtime.rpc.IOtpRpc;
+import org.erlide.runtime.rpc.RpcPriority;
 import org.erlide.runtime.runtimeinfo.RuntimeVersion;
 import org.erlide.runtime.service.CooldownRestartPolicy;
 import org.erlide.runtime.service.NeverRestartPolicy;
@@ -36,11 +39,9 @@ import com.ericsson.otp.erlang.OtpErlangDecodeException;
 import com.ericsson.otp.erlang.OtpErlangExit;
 import com.ericsson.otp.erlang.OtpErlangObject;
 import com.ericsson.otp.erlang.OtpErlangPid;
+import com.ericsson.otp.erlang.OtpLazyTerm;
 import com.ericsson.otp.erlang.OtpMbox;
 import com.ericsson.otp.erlang.OtpNode;
-import com.google.common.eventbus.DeadEvent;
-import com.google.common.eventbus.EventBus;
-import com.google.common.eventbus.Subscribe;
 import com.google.common.util.concurrent.AbstractExecutionThreadService;
 import com.google.common.util.concurrent.MoreExecutors;
 import com.google.common.util.concurrent.Service;
@@ -54,6 +55,10 @@ public class OtpNodeProxy implements IOtpNodeProxy {
     private static final int MAX_RETRIES = 15;
     public static final int RETRY_DELAY = Integer
             .parseInt(System.getProperty("erlide.connect.delay", "400"));
+    public static final int RPC_CACHE_SIZE = Integer
+            .parseInt(System.getProperty("erlide.rpc.cache.size", "2000"));
+    // bulk calls get their own connection, unless erlide.rpc.nolanes is set
+    public static final boolean RPC_LANES = !Boolean.getBoolean("erlide.rpc.nolanes");
 
     private final Service service;
     protected final RuntimeData data;
@@ -61,7 +66,10 @@ public class OtpNodeProxy implements IOtpNodeProxy {
     final ErlRuntimeReporter reporter;
     private OtpMbox eventMBox;
     private IOtpRpc otpRpc;
-    private final EventBus eventBus;
+    private OtpNode bulkNode;
+    private volatile OtpRpc bulkRpc;
+    private boolean bulkLaneFailed;
+    private final ErlEventDispatcher eventDispatcher;
     private final EventParser eventHelper;
     private Process process;
     private volatile int exitCode = -1;
@@ -76,8 +84,7 @@ public class OtpNodeProxy implements IOtpNodeProxy {
 
         eventHelper = new EventParser();
         final String nodeName = getNodeName();
-        eventBus = new EventBus(nodeName);
-        eventBus.register(this);
+        eventDispatcher = new ErlEventDispatcher(nodeName);
         registerEventListener(new LogEventHandler());
         registerEventListener(new ErlangLogEventHandler());
 
@@ -95,16 +102,15 @@ public class OtpNodeProxy implements IOtpNodeProxy {
     }
 
     private void receiveEventMessage(final OtpMbox eventBox) throws OtpErlangExit {
-        OtpErlangObject msg = null;
         try {
-            msg = eventBox.receive(OtpNodeProxy.POLL_INTERVAL);
+            final OtpLazyTerm msg = eventBox.receiveLazy(OtpNodeProxy.POLL_INTERVAL);
             final ErlEvent busEvent = eventHelper.parse(msg, this);
             if (busEvent != null) {
                 if (OtpNodeProxy.DEBUG) {
                     ErlLogger.debug("MSG: %s", "[" + busEvent.getSender() + "::"
                             + busEvent.getTopic() + ": " + busEvent.getEvent() + "]");
                 }
-                eventBus.post(busEvent);
+                eventDispatcher.dispatch(busEvent);
             }
         } catch (final OtpErlangExit e) {
             ErlLogger.error(e);
@@ -147,6 +153,7 @@ public class OtpNodeProxy implements IOtpNodeProxy {
     @Override
     public void dispose() {
         otpRpc.setConnected(false);
+        closeLanes();
         localNode.close();
         service.stopAsync();
     }
@@ -198,7 +205,12 @@ public class OtpNodeProxy implements IOtpNodeProxy {
 
     @Override
     public void registerEventListener(final Object handler) {
-        eventBus.register(handler);
+        eventDispatcher.register(handler);
+    }
+
+    @Override
+    public ErlEventDispatcher getEventDispatcher() {
+        return eventDispatcher;
     }
 
     private void connect() throws Exception {
@@ -253,11 +265,6 @@ public class OtpNodeProxy implements IOtpNodeProxy {
         }
     }
 
-    @Subscribe
-    public void deadEventHandler(final DeadEvent dead) {
-        ErlLogger.warn("Dead event: " + dead + " in runtime " + getNodeName());
-    }
-
     private class ErlRuntimeListener extends Listener {
 
         @Override
@@ -374,6 +381,7 @@ public class OtpNodeProxy implements IOtpNodeProxy {
                 waitForExit();
             }
             otpRpc.setConnected(false);
+            closeLanes();
             if (managed) {
                 process.destroy();
                 process = null;
@@ -458,7 +466,61 @@ public class OtpNodeProxy implements IOtpNodeProxy {
             localNode = LocalNodeCreator.startLocalNode(OtpNodeProxy.this,
                     data.getCookie(), data.hasLongName());
             eventMBox = createMbox("rex");
-            otpRpc = new OtpRpc(localNode, getNodeName());
+            final OtpRpc rpc = new OtpRpc(localNode, getNodeName());
+            rpc.setCompression(data.getRpcCompression());
+            if (OtpNodeProxy.RPC_LANES) {
+                rpc.setLanes(this::getLane);
+            }
+            otpRpc = new CachingOtpRpc(rpc, OtpNodeProxy.RPC_CACHE_SIZE);
+        }
+    }
+
+    /*
+     * The bulk lane is connected on first use, through a second local node, so that
+     * large transfers don't queue in front of the interactive calls on the same
+     * connection. If it can't connect, bulk calls share the interactive lane.
+     */
+    IOtpRpc getLane(final RpcPriority priority) {
+        if (priority == RpcPriority.INTERACTIVE) {
+            return otpRpc;
+        }
+        OtpRpc result = bulkRpc;
+        if (result != null) {
+            return result;
+        }
+        synchronized (this) {
+            result = bulkRpc;
+            if (result == null) {
+                if (bulkLaneFailed || !isRunning()) {
+                    return otpRpc;
+                }
+                final OtpNode node = LocalNodeCreator.startLaneNode(data.getCookie(),
+                        data.hasLongName());
+                if (!node.ping(getNodeName(), OtpNodeProxy.RETRY_DELAY)) {
+                    ErlLogger.warn("Could not open the bulk lane to %s", getNodeName());
+                    node.close();
+                    bulkLaneFailed = true;
+                    return otpRpc;
+                }
+                result = new OtpRpc(node, getNodeName(), OtpRpc.MULTIPLEXED,
+                        RpcPriority.BULK);
+                result.setLanes(this::getLane);
+                result.setCompression(data.getRpcCompression());
+                result.setConnected(true);
+                bulkNode = node;
+                bulkRpc = result;
+            }
+        }
+        return result;
+    }
+
+    private synchronized void closeLanes() {
+        bulkLaneFailed = false;
+        if (bulkRpc != null) {
+            bulkRpc.setConnected(false);
+            bulkNode.close();
+            bulkRpc = null;
+            bulkNode = null;
         }
     }
 
@@ -0,0 +1,96 @@
+package org.erlide.runtime.internal.rpc;
+
+import org.erlide.runtime.rpc.IOtpRpc;
+import org.erlide.runtime.rpc.RpcException;
+import org.erlide.runtime.rpc.RpcFuture;
+import org.erlide.runtime.rpc.RpcMetrics;
+import org.erlide.runtime.rpc.RpcTimeoutException;
+
+import com.ericsson.otp.erlang.OtpErlangAtom;
+import com.ericsson.otp.erlang.OtpErlangExit;
+import com.ericsson.otp.erlang.OtpErlangObject;
+import com.ericsson.otp.erlang.OtpMbox;
+import com.ericsson.otp.erlang.OtpMboxListener;
+
+/**
+ * A future for a call with its own reply mailbox, completed when the reply arrives
+ * instead of by a thread waiting for it. The reply is picked up on one of the
+ * {@link RpcExecutors#callbacks()} threads.
+ *
+ * <p>
+ * The process running a cancellable call is linked to the mailbox (see
+ * {@link RpcRequest}), so that closing the mailbox on cancel or timeout stops it too.
+ * Once the reply is in, the mailbox is recycled and must not be touched any more.
+ * </p>
+ */
+class MailboxRpcFuture extends RpcFuture implements OtpMboxListener {
+
+    private final OtpMbox mbox;
+    private final IOtpRpc rpc;
+    private boolean released;
+
+    MailboxRpcFuture(final RpcMetrics.Call call, final OtpMbox mbox, final String env,
+            final boolean logCalls, final IOtpRpc rpc) {
+        super(call, env, logCalls);
+        this.mbox = mbox;
+        this.rpc = rpc;
+    }
+
+    void start() {
+        mbox.setMessageListener(this);
+    }
+
+    @Override
+    public void messageArrived(final OtpMbox box) {
+        RpcExecutors.callbacks().execute(() -> receive());
+    }
+
+    private synchronized void receive() {
+        if (released || isDone()) {
+            return;
+        }
+        try {
+            // recycles the mailbox when there is a reply
+            final OtpErlangObject result = rpc.getRpcResult(mbox, 0, getEnv());
+            released = true;
+            complete(result);
+        } catch (final RpcTimeoutException e) {
+            // somebody else got it
+        } catch (final RpcException e) {
+            released = true;
+            if (e.getCause() instanceof OtpErlangExit) {
+                // the link broke, there will be no reply
+                mbox.close();
+            }
+            fail(MailboxRpcFuture.isDeadline(e) ? new RpcTimeoutException(getEnv()) : e);
+        }
+    }
+
+    @Override
+    protected synchronized void timedOut() {
+        exit(RpcRequest.TIMEOUT);
+    }
+
+    @Override
+    protected synchronized void cancelled() {
+        exit(RpcRequest.CANCELLED);
+    }
+
+    private void exit(final OtpErlangAtom reason) {
+        if (released) {
+            return;
+        }
+        released = true;
+        mbox.setMessageListener(null);
+        mbox.exit(reason);
+    }
+
+    /*
+     * The runtime stopped the call at its deadline, and the exit came through the link.
+     */
+    private static boolean isDeadline(final RpcException e) {
+        return e.getCause() instanceof OtpErlangExit
+                && RpcRequest.TIMEOUT.equals(((OtpErlangExit) e.getCause()).reason());
+    }
+
+}
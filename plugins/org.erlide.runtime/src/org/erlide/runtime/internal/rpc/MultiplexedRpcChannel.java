@@ -0,0 +1,146 @@
+package org.erlide.runtime.internal.rpc;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.erlide.runtime.rpc.RpcCompression;
+import org.erlide.runtime.rpc.RpcException;
+import org.erlide.runtime.rpc.RpcFuture;
+import org.erlide.runtime.rpc.RpcMetrics;
+import org.erlide.util.ErlLogger;
+import org.erlide.util.erlang.OtpErlang;
+
+import com.ericsson.otp.erlang.OtpErlangAtom;
+import com.ericsson.otp.erlang.OtpErlangDecodeException;
+import com.ericsson.otp.erlang.OtpErlangExit;
+import com.ericsson.otp.erlang.OtpErlangLong;
+import com.ericsson.otp.erlang.OtpErlangObject;
+import com.ericsson.otp.erlang.OtpErlangTuple;
+import com.ericsson.otp.erlang.OtpMbox;
+import com.ericsson.otp.erlang.OtpMsg;
+import com.ericsson.otp.erlang.OtpNode;
+
+/**
+ * All RPCs to one peer share a single long-lived reply mailbox. Requests are sent to
+ * <code>rex</code> as gen_server calls tagged with a unique number, so that replies
+ * come back as <code>{Tag, Result}</code> and a single dispatcher thread can hand them
+ * to the waiting futures.
+ *
+ * <p>
+ * Sending doesn't take any lock besides the connection's write lock.
+ * </p>
+ */
+public class MultiplexedRpcChannel {
+
+    private static final OtpErlangAtom GEN_CALL = new OtpErlangAtom("$gen_call");
+    private static final long POLL_INTERVAL = 500;
+
+    private final String peer;
+    private final OtpMbox replyBox;
+    private final AtomicLong tags = new AtomicLong();
+    private final Map<Long, MultiplexedRpcFuture> pending = new ConcurrentHashMap<>();
+    private final Thread dispatcher;
+    private volatile boolean closed;
+
+    public MultiplexedRpcChannel(final OtpNode node, final String peer) {
+        this.peer = peer;
+        replyBox = node.createMbox();
+        dispatcher = new Thread(this::dispatchLoop, "rpc-dispatch " + peer);
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+    }
+
+    /**
+     * Send a <code>{call, M, F, A, GroupLeader}</code> request to the peer's rex server.
+     */
+    public RpcFuture call(final OtpErlangObject request, final RpcMetrics.Call call,
+            final String env, final boolean logCalls) throws RpcException {
+        if (closed) {
+            throw new RpcException(String.format("backend %s down", peer));
+        }
+        final long tag = tags.incrementAndGet();
+        final MultiplexedRpcFuture future = new MultiplexedRpcFuture(call, tag, env,
+                logCalls, this);
+        pending.put(tag, future);
+        if (closed) {
+            pending.remove(tag);
+            throw new RpcException(String.format("backend %s down", peer));
+        }
+        final OtpErlangObject from = OtpErlang.mkTuple(replyBox.self(),
+                new OtpErlangLong(tag));
+        call.sent(replyBox.sendSized("rex", peer,
+                OtpErlang.mkTuple(MultiplexedRpcChannel.GEN_CALL, from, request)));
+        return future;
+    }
+
+    /**
+     * Send a message using the channel's mailbox as sender.
+     */
+    public void send(final String name, final OtpErlangObject msg) {
+        replyBox.send(name, peer, msg);
+    }
+
+    void abandon(final MultiplexedRpcFuture future) {
+        pending.remove(future.getTag());
+    }
+
+    public int pendingCount() {
+        return pending.size();
+    }
+
+    public void close() {
+        closed = true;
+        replyBox.close();
+        final RpcException down = new RpcException(
+                String.format("backend %s down", peer));
+        for (final MultiplexedRpcFuture future : pending.values()) {
+            future.fail(down);
+        }
+        pending.clear();
+    }
+
+    private void dispatchLoop() {
+        while (!closed) {
+            try {
+                final OtpMsg msg = replyBox
+                        .receiveMsg(MultiplexedRpcChannel.POLL_INTERVAL);
+                if (msg != null) {
+                    dispatch(msg.getMsg(), msg.size());
+                }
+            } catch (final InterruptedException e) {
+                // nothing arrived
+            } catch (final OtpErlangExit e) {
+                if (!closed) {
+                    ErlLogger.warn("RPC channel to %s got exit: %s", peer, e.reason());
+                }
+            } catch (final OtpErlangDecodeException e) {
+                ErlLogger.error(e);
+            }
+        }
+    }
+
+    private void dispatch(final OtpErlangObject msg, final int size) {
+        if (OtpRpc.CHECK_RPC) {
+            ErlLogger.debug("RPC channel <= " + msg);
+        }
+        if (!(msg instanceof OtpErlangTuple)) {
+            return;
+        }
+        final OtpErlangTuple t = (OtpErlangTuple) msg;
+        if (t.arity() != 2 || !(t.elementAt(0) instanceof OtpErlangLong)) {
+            return;
+        }
+        final long tag = ((OtpErlangLong) t.elementAt(0)).longValue();
+        final MultiplexedRpcFuture future = pending.remove(tag);
+        if (future != null) {
+            future.received(size);
+            try {
+                future.complete(RpcCompression.decode(t.elementAt(1)));
+            } catch (final OtpErlangDecodeException e) {
+                future.fail(new RpcException(e));
+            }
+        }
+    }
+
+}
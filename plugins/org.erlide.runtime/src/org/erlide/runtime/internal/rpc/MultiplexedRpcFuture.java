@@ -0,0 +1,55 @@
+package org.erlide.runtime.internal.rpc;
+
+import org.erlide.runtime.rpc.RpcException;
+import org.erlide.runtime.rpc.RpcFuture;
+import org.erlide.runtime.rpc.RpcMetrics;
+
+import com.ericsson.otp.erlang.OtpErlangObject;
+
+/**
+ * A future whose reply is delivered by a {@link MultiplexedRpcChannel} dispatcher
+ * instead of being read from a private mailbox.
+ */
+class MultiplexedRpcFuture extends RpcFuture {
+
+    private final MultiplexedRpcChannel channel;
+    private final long tag;
+
+    MultiplexedRpcFuture(final RpcMetrics.Call call, final long tag, final String env,
+            final boolean logCalls, final MultiplexedRpcChannel channel) {
+        super(call, env, logCalls);
+        this.tag = tag;
+        this.channel = channel;
+    }
+
+    long getTag() {
+        return tag;
+    }
+
+    @Override
+    protected boolean complete(final OtpErlangObject value) {
+        return super.complete(value);
+    }
+
+    @Override
+    protected boolean fail(final RpcException e) {
+        return super.fail(e);
+    }
+
+    @Override
+    protected void received(final int bytes) {
+        super.received(bytes);
+    }
+
+    @Override
+    protected void timedOut() {
+        // let the dispatcher drop a late reply
+        channel.abandon(this);
+    }
+
+    @Override
+    protected void cancelled() {
+        channel.abandon(this);
+    }
+
+}
@@ -1,35 +1,36 @@
 package org.erlide.runtime.internal.rpc;
 
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
 import org.erlide.runtime.rpc.IOtpRpc;
 import org.erlide.runtime.rpc.IRpcCallback;
 import org.erlide.runtime.rpc.IRpcResultCallback;
+import org.erlide.runtime.rpc.RpcBatch;
+import org.erlide.runtime.rpc.RpcCompression;
 import org.erlide.runtime.rpc.RpcException;
 import org.erlide.runtime.rpc.RpcFuture;
-import org.erlide.runtime.rpc.RpcMonitor;
+import org.erlide.runtime.rpc.RpcMetrics;
+import org.erlide.runtime.rpc.RpcPriority;
 import org.erlide.runtime.rpc.RpcResult;
+import org.erlide.runtime.rpc.RpcStream;
 import org.erlide.runtime.rpc.RpcTimeoutException;
 import org.erlide.util.ErlLogger;
+import org.erlide.util.erlang.Converters;
 import org.erlide.util.erlang.OtpErlang;
-import org.erlide.util.erlang.Signature;
 import org.erlide.util.erlang.SignatureException;
 import org.erlide.util.erlang.TypeConverter;
 
 import com.ericsson.otp.erlang.OtpErlangAtom;
 import com.ericsson.otp.erlang.OtpErlangDecodeException;
 import com.ericsson.otp.erlang.OtpErlangExit;
-import com.ericsson.otp.erlang.OtpErlangList;
 import com.ericsson.otp.erlang.OtpErlangObject;
 import com.ericsson.otp.erlang.OtpErlangPid;
 import com.ericsson.otp.erlang.OtpErlangRef;
 import com.ericsson.otp.erlang.OtpErlangTuple;
 import com.ericsson.otp.erlang.OtpMbox;
+import com.ericsson.otp.erlang.OtpMsg;
 import com.ericsson.otp.erlang.OtpNode;
-import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 public class OtpRpc implements IOtpRpc {
 
@@ -40,33 +41,110 @@ public class OtpRpc implements IOtpRpc {
     // use this for debugging
     public static final boolean CHECK_RPC = Boolean.getBoolean("erlide.checkrpc");
 
+    // send all calls through one reply mailbox instead of one mailbox per call
+    public static final boolean MULTIPLEXED = Boolean
+            .getBoolean("erlide.rpc.multiplexed");
+
     public static long DEFAULT_TIMEOUT;
     static {
         OtpRpc.setDefaultTimeout();
     }
 
-    private static final ThreadFactory threadFactory = new ThreadFactoryBuilder()
-            .setDaemon(true).setNameFormat("rpc-%d").build();
-    private static final ExecutorService threadPool = Executors
-            .newCachedThreadPool(OtpRpc.threadFactory);
-
     private final String nodeName;
     private final OtpNode localNode;
     private volatile boolean connected;
+    private final boolean multiplexed;
+    private volatile MultiplexedRpcChannel channel;
+    private final RpcPriority priority;
+    // calls are linked to their reply mailbox and get a deadline on the runtime
+    private final boolean cancellable;
+    private volatile Function<RpcPriority, IOtpRpc> lanes;
+    private volatile RpcCompression compression = RpcCompression.OFF;
 
     public OtpRpc(final OtpNode localNode, final String nodeName) {
+        this(localNode, nodeName, OtpRpc.MULTIPLEXED);
+    }
+
+    public OtpRpc(final OtpNode localNode, final String nodeName,
+            final boolean multiplexed) {
+        this(localNode, nodeName, multiplexed, RpcPriority.INTERACTIVE);
+    }
+
+    /**
+     * @param priority
+     *            the lane this object serves; its calls are counted under it
+     */
+    public OtpRpc(final OtpNode localNode, final String nodeName,
+            final boolean multiplexed, final RpcPriority priority) {
         this.localNode = localNode;
         this.nodeName = nodeName;
+        this.multiplexed = multiplexed;
+        this.priority = priority;
+        cancellable = priority == RpcPriority.BULK;
         connected = false;
     }
 
+    /**
+     * Where {@link #withPriority(RpcPriority)} finds the other lanes of the runtime.
+     */
+    public void setLanes(final Function<RpcPriority, IOtpRpc> lanes) {
+        this.lanes = lanes;
+    }
+
+    /**
+     * When to compress the arguments and the results of the calls.
+     */
+    public void setCompression(final RpcCompression compression) {
+        this.compression = compression;
+    }
+
+    public RpcCompression getCompression() {
+        return compression;
+    }
+
+    @Override
+    public IOtpRpc withPriority(final RpcPriority aPriority) {
+        final Function<RpcPriority, IOtpRpc> theLanes = lanes;
+        if (aPriority == priority || theLanes == null) {
+            return this;
+        }
+        return theLanes.apply(aPriority);
+    }
+
     @Override
     public void setConnected(final boolean connected) {
         this.connected = connected;
+        if (!connected) {
+            closeChannel();
+        }
+    }
+
+    public boolean isMultiplexed() {
+        return multiplexed;
+    }
+
+    private MultiplexedRpcChannel getChannel() {
+        MultiplexedRpcChannel result = channel;
+        if (result == null) {
+            synchronized (this) {
+                if (channel == null) {
+                    channel = new MultiplexedRpcChannel(localNode, nodeName);
+                }
+                result = channel;
+            }
+        }
+        return result;
+    }
+
+    private synchronized void closeChannel() {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
     }
 
     @Override
-    public void async_call_result(final IRpcResultCallback cb, final String m,
+    public RpcFuture async_call_result(final IRpcResultCallback cb, final String m,
             final String f, final String signature, final Object... args)
             throws RpcException {
         final OtpErlangAtom gleader = OtpRpc.USER_ATOM;
@@ -75,8 +153,10 @@ public class OtpRpc implements IOtpRpc {
             System.arraycopy(args, 0, args1, 1, args.length);
             final OtpMbox mbox = localNode.createMbox();
             args1[0] = mbox.self();
-            new RpcResultReceiver(mbox, cb);
+            final RpcResultReceiver receiver = new RpcResultReceiver(mbox, cb,
+                    m + ":" + f + "/" + args.length);
             rpcCast(localNode, nodeName, false, gleader, m, f, signature, args1);
+            return receiver;
         } catch (final SignatureException e) {
             throw new RpcException(e);
         }
@@ -88,8 +168,8 @@ public class OtpRpc implements IOtpRpc {
             throws RpcException {
         checkConnected();
         try {
-            return sendRpcCall(localNode, nodeName, false, gleader, module, fun,
-                    signature, args0);
+            return sendRpcCall(localNode, nodeName, false, true, OtpRpc.INFINITY,
+                    gleader, module, fun, signature, args0);
         } catch (final SignatureException e) {
             throw new RpcException(e);
         }
@@ -114,21 +194,24 @@ public class OtpRpc implements IOtpRpc {
             final String signature, final Object... args) throws RpcException {
         checkConnected();
         try {
-            final RpcFuture future = sendRpcCall(localNode, nodeName, false, gleader,
-                    module, fun, signature, args);
-            final Runnable target = () -> {
-                OtpErlangObject result;
-                try {
-                    result = future.checkedGet(timeout, TimeUnit.MILLISECONDS);
-                    cb.onSuccess(result);
-                } catch (final Exception e) {
+            final RpcFuture future = sendRpcCall(localNode, nodeName, false, true,
+                    timeout, gleader, module, fun, signature, args);
+            future.failAfter(timeout, TimeUnit.MILLISECONDS);
+            future.toCompletableFuture().whenCompleteAsync((result, failure) -> {
+                Throwable error = failure;
+                if (error == null) {
+                    try {
+                        cb.onSuccess(result);
+                    } catch (final Exception e) {
+                        error = e;
+                    }
+                }
+                if (error != null) {
                     ErlLogger.error("Could not execute RPC " + module + ":" + fun + " : "
-                            + e.getMessage());
-                    cb.onFailure(e);
+                            + error.getMessage());
+                    cb.onFailure(error);
                 }
-            };
-            // We can't use jobs here, it's an Eclipse dependency
-            OtpRpc.threadPool.execute(target);
+            }, RpcExecutors.callbacks());
         } catch (final SignatureException e) {
             throw new RpcException(e);
         }
@@ -141,9 +224,14 @@ public class OtpRpc implements IOtpRpc {
         checkConnected();
         OtpErlangObject result = null;
         try {
-            final RpcFuture future = sendRpcCall(localNode, nodeName, false, gleader,
-                    module, fun, signature, args0);
-            result = future.checkedGet(timeout, TimeUnit.MILLISECONDS);
+            final RpcFuture future = sendRpcCall(localNode, nodeName, false, false,
+                    timeout, gleader, module, fun, signature, args0);
+            try {
+                result = future.checkedGet(timeout, TimeUnit.MILLISECONDS);
+            } catch (final RpcTimeoutException e) {
+                future.cancel(true);
+                throw e;
+            }
             if (OtpRpc.CHECK_RPC) {
                 ErlLogger.debug("RPC result:: " + result);
             }
@@ -162,6 +250,38 @@ public class OtpRpc implements IOtpRpc {
         return call(timeout, OtpRpc.USER_ATOM, module, fun, signature, args0);
     }
 
+    @Override
+    public RpcStream stream(final String m, final String f, final String signature,
+            final Object... args) throws RpcException {
+        return stream(OtpRpc.DEFAULT_TIMEOUT, m, f, signature, args);
+    }
+
+    @Override
+    public RpcStream stream(final long timeout, final String module, final String fun,
+            final String signature, final Object... args0) throws RpcException {
+        checkConnected();
+        try {
+            final OtpErlangObject[] args = convertArgs(signature, args0);
+            // a mailbox of its own, where the chunks arrive
+            final OtpMbox mbox = localNode.createMbox();
+            final OtpErlangRef ref = localNode.createRef();
+            final OtpErlangObject req = OtpErlang.mkTuple(mbox.self(),
+                    RpcRequest.buildStream(OtpErlangAtom.valueOf(module),
+                            OtpErlangAtom.valueOf(fun), args, OtpRpc.USER_ATOM,
+                            compression, mbox.self(), ref, RpcStream.CHUNK_SIZE,
+                            RpcStream.WINDOW));
+            final String env = module + ":" + fun + "/" + args0.length;
+            final RpcMetrics.Call call = RpcMetrics.start(priority, env);
+            call.sent(mbox.sendSized("rex", nodeName, req));
+            if (OtpRpc.CHECK_RPC) {
+                ErlLogger.debug("RPC (stream) " + mbox.hashCode() + "=> " + req);
+            }
+            return new RpcStream(mbox, ref, timeout, env, call);
+        } catch (final SignatureException e) {
+            throw new RpcException(e);
+        }
+    }
+
     @Override
     public void cast(final OtpErlangObject gleader, final String module, final String fun,
             final String signature, final Object... args0) throws RpcException {
@@ -240,11 +360,20 @@ public class OtpRpc implements IOtpRpc {
     public void send(final String name, final Object msg) {
         try {
             checkConnected();
-            send(localNode, nodeName, name, msg);
+            if (multiplexed) {
+                getChannel().send(name, TypeConverter.java2erlang(msg, "x"));
+            } else {
+                send(localNode, nodeName, name, msg);
+            }
         } catch (final Exception e) {
         }
     }
 
+    @Override
+    public RpcBatch batch() {
+        return new RpcBatch(this, nodeName);
+    }
+
     private void checkConnected() throws RpcException {
         if (!isConnected()) {
             throw new RpcException(String.format("backend %s down", nodeName));
@@ -294,31 +423,88 @@ public class OtpRpc implements IOtpRpc {
         return false;
     }
 
-    private synchronized RpcFuture sendRpcCall(final OtpNode node, final String peer,
+    /**
+     * @param async
+     *            whether the reply must complete the future by itself, or will be
+     *            waited for by the caller.
+     * @param deadline
+     *            for cancellable calls, how long the runtime lets the call run, in
+     *            milliseconds
+     */
+    private RpcFuture sendRpcCall(final OtpNode node, final String peer,
+            final boolean logCalls, final boolean async, final long deadline,
+            final OtpErlangObject gleader, final String module, final String fun,
+            final String signature, final Object... args0)
+            throws SignatureException, RpcException {
+        if (cancellable) {
+            // the call is linked to its own mailbox, a shared one can't be closed
+            return sendMailboxRpcCall(node, peer, logCalls, true, deadline, gleader,
+                    module, fun, signature, args0);
+        }
+        if (multiplexed) {
+            return sendMultiplexedRpcCall(node, peer, logCalls, gleader, module, fun,
+                    signature, args0);
+        }
+        return sendMailboxRpcCall(node, peer, logCalls, async, OtpRpc.INFINITY,
+                gleader, module, fun, signature, args0);
+    }
+
+    private RpcFuture sendMultiplexedRpcCall(final OtpNode node, final String peer,
             final boolean logCalls, final OtpErlangObject gleader, final String module,
             final String fun, final String signature, final Object... args0)
+            throws SignatureException, RpcException {
+        final OtpErlangObject[] args = convertArgs(signature, args0);
+
+        final OtpErlangObject req = buildRpcRequest(gleader, module, fun, args, null,
+                OtpRpc.INFINITY);
+        if (logCalls) {
+            final Object[] args01 = {
+                    module, fun, argString(args)
+            };
+            ErlLogger.debug("call -> %s:%s(%s)", args01);
+        }
+        final String env = module + ":" + fun + "/" + args0.length;
+        final RpcFuture future = getChannel().call(req,
+                RpcMetrics.start(priority, env), env, logCalls);
+        if (OtpRpc.CHECK_RPC) {
+            ErlLogger.debug("RPC (multiplexed)=> " + req);
+        }
+        return future;
+    }
+
+    private synchronized RpcFuture sendMailboxRpcCall(final OtpNode node,
+            final String peer, final boolean logCalls, final boolean async,
+            final long deadline, final OtpErlangObject gleader, final String module,
+            final String fun, final String signature, final Object... args0)
             throws SignatureException {
         final OtpErlangObject[] args = convertArgs(signature, args0);
 
         OtpErlangObject res = null;
         final OtpMbox mbox = node.createMbox();
-        res = buildRpcCall(mbox.self(), gleader, module, fun, args);
+        res = OtpErlang.mkTuple(mbox.self(), buildRpcRequest(gleader, module, fun, args,
+                cancellable ? mbox.self() : null, deadline));
         if (logCalls) {
             final Object[] args01 = {
                     module, fun, argString(args)
             };
             ErlLogger.debug("call -> %s:%s(%s)", args01);
         }
-        //
-        final OtpErlangRef ref = RpcMonitor.recordRequest(node, peer, module, fun, args,
-                OtpErlang.sizeOf(res));
-        //
-        mbox.send("rex", peer, res);
+        final String env = module + ":" + fun + "/" + args0.length;
+        final RpcMetrics.Call call = RpcMetrics.start(priority, env);
+        RpcFuture future;
+        if (async) {
+            final MailboxRpcFuture mboxFuture = new MailboxRpcFuture(call, mbox, env,
+                    logCalls, this);
+            mboxFuture.start();
+            future = mboxFuture;
+        } else {
+            future = new RpcFuture(call, mbox, env, logCalls, this);
+        }
+        call.sent(mbox.sendSized("rex", peer, res));
         if (OtpRpc.CHECK_RPC) {
             ErlLogger.debug("RPC " + mbox.hashCode() + "=> " + res);
         }
-        return new RpcFuture(ref, mbox, module + ":" + fun + "/" + args0.length, logCalls,
-                this);
+        return future;
     }
 
     private static final String SEP = ", ";
@@ -351,17 +537,17 @@ public class OtpRpc implements IOtpRpc {
         OtpErlangObject res = null;
         try {
             try {
-                if (timeout == OtpRpc.INFINITY) {
-                    res = mbox.receive();
-                } else {
-                    res = mbox.receive(timeout);
+                final OtpMsg msg = receiveMsg(mbox, timeout);
+                if (msg != null) {
+                    RpcMetrics.received(priority, env, msg.size());
+                    res = msg.getMsg();
                 }
                 if (OtpRpc.CHECK_RPC) {
                     ErlLogger.debug("RPC " + mbox.hashCode() + "<= " + res);
                 }
             } finally {
                 if (res != null) {
-                    mbox.close();
+                    mbox.recycle();
                 }
             }
             if (res == null) {
@@ -375,7 +561,7 @@ public class OtpRpc implements IOtpRpc {
             if (t.arity() != 2) {
                 throw new RpcException(res.toString());
             }
-            res = t.elementAt(1);
+            res = RpcCompression.decode(t.elementAt(1));
 
         } catch (final OtpErlangExit e) {
             throw new RpcException(e);
@@ -385,14 +571,23 @@ public class OtpRpc implements IOtpRpc {
         return res;
     }
 
-    private OtpErlangObject buildRpcCall(final OtpErlangPid pid,
-            final OtpErlangObject gleader, final String module, final String fun,
-            final OtpErlangObject[] args) {
-        final OtpErlangObject m = new OtpErlangAtom(module);
-        final OtpErlangObject f = new OtpErlangAtom(fun);
-        final OtpErlangObject a = new OtpErlangList(args);
-        return OtpErlang.mkTuple(pid,
-                OtpErlang.mkTuple(new OtpErlangAtom("call"), m, f, a, gleader));
+    private static OtpMsg receiveMsg(final OtpMbox mbox, final long timeout)
+            throws OtpErlangExit {
+        if (timeout == OtpRpc.INFINITY) {
+            return mbox.receiveMsg();
+        }
+        try {
+            return mbox.receiveMsg(timeout);
+        } catch (final InterruptedException e) {
+            return null;
+        }
+    }
+
+    private OtpErlangTuple buildRpcRequest(final OtpErlangObject gleader,
+            final String module, final String fun, final OtpErlangObject[] args,
+            final OtpErlangPid link, final long deadline) {
+        return RpcRequest.build(OtpErlangAtom.valueOf(module),
+                OtpErlangAtom.valueOf(fun), args, gleader, compression, link, deadline);
     }
 
     private void rpcCast(final OtpNode node, final String peer, final boolean logCalls,
@@ -417,34 +612,18 @@ public class OtpRpc implements IOtpRpc {
     private OtpErlangObject[] convertArgs(final String signature, final Object... args)
             throws SignatureException {
         final Object[] args0 = args == null ? new OtpErlangObject[] {} : args;
-
-        Signature[] type;
-        type = Signature.parse(signature);
-        if (type == null) {
-            type = new Signature[args0.length];
-            for (int i = 0; i < args0.length; i++) {
-                type[i] = new Signature('x');
-            }
-        }
-        if (type.length != args0.length) {
-            throw new SignatureException("Signature doesn't match parameter number: "
-                    + type.length + "/" + args0.length);
-        }
-        final OtpErlangObject[] args1 = new OtpErlangObject[args0.length];
-        for (int i = 0; i < args1.length; i++) {
-            args1[i] = TypeConverter.java2erlang(args0[i], type[i]);
-        }
-        return args1;
+        return Converters.convert(Converters.forSignature(signature, args0.length),
+                args0);
     }
 
     private OtpErlangObject buildRpcCastMsg(final OtpErlangObject gleader,
             final String module, final String fun, final OtpErlangObject[] args) {
-        final OtpErlangObject m = new OtpErlangAtom(module);
-        final OtpErlangObject f = new OtpErlangAtom(fun);
-        final OtpErlangObject a = new OtpErlangList(args);
-        final OtpErlangAtom castTag = new OtpErlangAtom("$gen_cast");
-        return OtpErlang.mkTuple(castTag,
-                OtpErlang.mkTuple(new OtpErlangAtom("cast"), m, f, a, gleader));
+        final OtpErlangTuple call = buildRpcRequest(gleader, module, fun, args, null,
+                OtpRpc.INFINITY);
+        final OtpErlangObject[] cast = call.elements();
+        cast[0] = OtpErlangAtom.valueOf("cast");
+        final OtpErlangAtom castTag = OtpErlangAtom.valueOf("$gen_cast");
+        return OtpErlang.mkTuple(castTag, new OtpErlangTuple(cast));
     }
 
 }
@@ -0,0 +1,49 @@
+package org.erlide.runtime.internal.rpc;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * The threads shared by all asynchronous RPCs: one timer thread for the timeouts, and a
+ * few threads to pick up replies and run the callbacks. Their number doesn't depend on
+ * how many calls are in flight.
+ */
+public final class RpcExecutors {
+
+    private static final int CALLBACK_THREADS = Integer
+            .getInteger("erlide.rpc.callbacks",
+                    Math.max(2, Runtime.getRuntime().availableProcessors()))
+            .intValue();
+
+    private static final ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(
+            1, new ThreadFactoryBuilder().setDaemon(true).setNameFormat("rpc-timer")
+                    .build());
+    static {
+        // most timeouts are cancelled, don't keep them around until they expire
+        RpcExecutors.timer.setRemoveOnCancelPolicy(true);
+    }
+
+    private static final ExecutorService callbacks = Executors.newFixedThreadPool(
+            RpcExecutors.CALLBACK_THREADS, new ThreadFactoryBuilder().setDaemon(true)
+                    .setNameFormat("rpc-callback-%d").build());
+
+    private RpcExecutors() {
+    }
+
+    public static ScheduledExecutorService timer() {
+        return RpcExecutors.timer;
+    }
+
+    /**
+     * Where replies are decoded and callbacks run. Callbacks should not block for long,
+     * they hold up the replies of other calls.
+     */
+    public static Executor callbacks() {
+        return RpcExecutors.callbacks;
+    }
+}
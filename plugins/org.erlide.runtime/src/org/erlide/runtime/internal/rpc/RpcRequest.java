@@ -0,0 +1,303 @@
+package org.erlide.runtime.internal.rpc;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.erlide.runtime.rpc.RpcCompression;
+import org.erlide.util.erlang.OtpErlang;
+import org.erlide.util.erlang.OtpParserException;
+
+import com.ericsson.otp.erlang.OtpErlangAtom;
+import com.ericsson.otp.erlang.OtpErlangList;
+import com.ericsson.otp.erlang.OtpErlangLong;
+import com.ericsson.otp.erlang.OtpErlangObject;
+import com.ericsson.otp.erlang.OtpErlangPid;
+import com.ericsson.otp.erlang.OtpErlangRef;
+import com.ericsson.otp.erlang.OtpErlangTuple;
+
+/**
+ * Builds the <code>{call, M, F, A, GroupLeader}</code> requests for rex.
+ *
+ * <p>
+ * A plain request just applies the function. When the arguments or the result are to
+ * be compressed (see {@link RpcCompression}), or the call must be stoppable on the
+ * runtime side, the request is sent to <code>erl_eval:expr/5</code> instead, with an
+ * expression that does the extra work around the apply, since the runtime has no code
+ * of ours for it:
+ * </p>
+ *
+ * <pre>
+ * erlang:link(P),                          % the caller's reply mailbox
+ * {ok, K} = timer:exit_after(D, timeout),  % the deadline
+ * try
+ *     R = erlang:apply(M, F, A),           % or binary_to_term(A)
+ *     R                                    % or compressed, if large
+ * after
+ *     erlang:unlink(P),
+ *     timer:cancel(K)
+ * end
+ * </pre>
+ *
+ * <p>
+ * The process that runs the call is linked to the reply mailbox while it works, so
+ * closing the mailbox with a reason other than <code>normal</code> kills it; see
+ * {@link #CANCELLED}.
+ * </p>
+ * <p>
+ * A streamed call (see {@link #buildStream}) sends a list result to the reply mailbox
+ * in chunks of at most <code>N</code> elements, and waits for an acknowledgement when
+ * <code>W</code> of them haven't been taken yet. The reply to rex only says how many
+ * chunks were sent; any other result is passed on as it is:
+ * </p>
+ *
+ * <pre>
+ * erlang:link(P),
+ * Take = fun Loop(0, Xs, Acc) -&gt; {lists:reverse(Acc), Xs};
+ *            Loop(_, [], Acc) -&gt; {lists:reverse(Acc), []};
+ *            Loop(K, [X | Xs], Acc) -&gt; Loop(K - 1, Xs, [X | Acc])
+ *        end,
+ * Send = fun Loop([], _, I) -&gt; {S, done, I};
+ *            Loop(Xs, 0, I) -&gt; receive {S, ack} -&gt; Loop(Xs, 1, I) end;
+ *            Loop(Xs, C, I) -&gt;
+ *                {Chunk, Rest} = Take(N, Xs, []),
+ *                P ! {S, chunk, erlang:self(), Chunk},
+ *                Loop(Rest, C - 1, I + 1)
+ *        end,
+ * try
+ *     R = erlang:apply(M, F, A),
+ *     case R of
+ *         {ok, L} when is_list(L) -&gt; Send(L, W, 0);
+ *         L when is_list(L) -&gt; Send(L, W, 0);
+ *         _ -&gt; R
+ *     end
+ * after
+ *     erlang:unlink(P)
+ * end
+ * </pre>
+ */
+public final class RpcRequest {
+
+    /**
+     * The exit reason that stops a call that was cancelled.
+     */
+    public static final OtpErlangAtom CANCELLED = new OtpErlangAtom("cancelled");
+    /**
+     * The exit reason that stops a call that has passed its deadline.
+     */
+    public static final OtpErlangAtom TIMEOUT = new OtpErlangAtom("timeout");
+
+    private static final OtpErlangAtom CALL = new OtpErlangAtom("call");
+    private static final OtpErlangAtom ERL_EVAL = new OtpErlangAtom("erl_eval");
+    private static final OtpErlangAtom EXPR = new OtpErlangAtom("expr");
+    private static final OtpErlangAtom NONE = new OtpErlangAtom("none");
+    private static final OtpErlangAtom VALUE = new OtpErlangAtom("value");
+
+    private static final OtpErlangObject LINK = RpcRequest
+            .parse("{call,1,{remote,1,{atom,1,erlang},{atom,1,link}},[{var,1,'P'}]}");
+    private static final OtpErlangObject UNLINK = RpcRequest
+            .parse("{call,1,{remote,1,{atom,1,erlang},{atom,1,unlink}},[{var,1,'P'}]}");
+    private static final OtpErlangObject EXIT_AFTER = RpcRequest
+            .parse("{match,1,{tuple,1,[{atom,1,ok},{var,1,'K'}]},"
+                    + "{call,1,{remote,1,{atom,1,timer},{atom,1,exit_after}},"
+                    + "[{var,1,'D'},{atom,1,timeout}]}}");
+    private static final OtpErlangObject CANCEL_TIMER = RpcRequest
+            .parse("{call,1,{remote,1,{atom,1,timer},{atom,1,cancel}},[{var,1,'K'}]}");
+    private static final OtpErlangObject APPLY = RpcRequest
+            .parse("{match,1,{var,1,'R'},{call,1,{remote,1,{atom,1,erlang},"
+                    + "{atom,1,apply}},[{var,1,'M'},{var,1,'F'},{var,1,'A'}]}}");
+    private static final OtpErlangObject APPLY_ZIPPED = RpcRequest
+            .parse("{match,1,{var,1,'R'},{call,1,{remote,1,{atom,1,erlang},"
+                    + "{atom,1,apply}},[{var,1,'M'},{var,1,'F'},"
+                    + "{call,1,{remote,1,{atom,1,erlang},{atom,1,binary_to_term}},"
+                    + "[{var,1,'A'}]}]}}");
+    private static final OtpErlangObject RESULT = RpcRequest.parse("{var,1,'R'}");
+    // case erlang:external_size(R) > T of
+    // true -> {'$erlide_zip', erlang:term_to_binary(R, [{compressed, L}])};
+    // false -> R
+    // end
+    private static final OtpErlangObject RESULT_ZIPPED = RpcRequest
+            .parse("{'case',1,{op,1,'>',{call,1,{remote,1,{atom,1,erlang},"
+                    + "{atom,1,external_size}},[{var,1,'R'}]},{var,1,'T'}},["
+                    + "{clause,1,[{atom,1,true}],[],[{tuple,1,[{atom,1,'$erlide_zip'},"
+                    + "{call,1,{remote,1,{atom,1,erlang},{atom,1,term_to_binary}},"
+                    + "[{var,1,'R'},{cons,1,{tuple,1,[{atom,1,compressed},"
+                    + "{var,1,'L'}]},{nil,1}}]}]}]},"
+                    + "{clause,1,[{atom,1,false}],[],[{var,1,'R'}]}]}");
+    private static final OtpErlangObject TAKE = RpcRequest
+            .parse("{match,1,{var,1,'Take'},{named_fun,1,'Loop',["
+                    + "{clause,1,[{integer,1,0},{var,1,'Xs'},{var,1,'Acc'}],[],"
+                    + "[{tuple,1,[{call,1,{remote,1,{atom,1,lists},{atom,1,reverse}},"
+                    + "[{var,1,'Acc'}]},{var,1,'Xs'}]}]},"
+                    + "{clause,1,[{var,1,'_'},{nil,1},{var,1,'Acc'}],[],"
+                    + "[{tuple,1,[{call,1,{remote,1,{atom,1,lists},{atom,1,reverse}},"
+                    + "[{var,1,'Acc'}]},{nil,1}]}]},"
+                    + "{clause,1,[{var,1,'K'},{cons,1,{var,1,'X'},{var,1,'Xs'}},"
+                    + "{var,1,'Acc'}],[],[{call,1,{var,1,'Loop'},"
+                    + "[{op,1,'-',{var,1,'K'},{integer,1,1}},{var,1,'Xs'},"
+                    + "{cons,1,{var,1,'X'},{var,1,'Acc'}}]}]}]}}");
+    private static final OtpErlangObject SEND = RpcRequest
+            .parse("{match,1,{var,1,'Send'},{named_fun,1,'Loop',["
+                    + "{clause,1,[{nil,1},{var,1,'_'},{var,1,'I'}],[],"
+                    + "[{tuple,1,[{var,1,'S'},{atom,1,done},{var,1,'I'}]}]},"
+                    + "{clause,1,[{var,1,'Xs'},{integer,1,0},{var,1,'I'}],[],"
+                    + "[{'receive',1,[{clause,1,[{tuple,1,[{var,1,'S'},{atom,1,ack}]}],"
+                    + "[],[{call,1,{var,1,'Loop'},[{var,1,'Xs'},{integer,1,1},"
+                    + "{var,1,'I'}]}]}]}]},"
+                    + "{clause,1,[{var,1,'Xs'},{var,1,'C'},{var,1,'I'}],[],"
+                    + "[{match,1,{tuple,1,[{var,1,'Chunk'},{var,1,'Rest'}]},"
+                    + "{call,1,{var,1,'Take'},[{var,1,'N'},{var,1,'Xs'},{nil,1}]}},"
+                    + "{op,1,'!',{var,1,'P'},{tuple,1,[{var,1,'S'},{atom,1,chunk},"
+                    + "{call,1,{remote,1,{atom,1,erlang},{atom,1,self}},[]},"
+                    + "{var,1,'Chunk'}]}},"
+                    + "{call,1,{var,1,'Loop'},[{var,1,'Rest'},"
+                    + "{op,1,'-',{var,1,'C'},{integer,1,1}},"
+                    + "{op,1,'+',{var,1,'I'},{integer,1,1}}]}]}]}}");
+    private static final OtpErlangObject SEND_RESULT = RpcRequest
+            .parse("{'case',1,{var,1,'R'},["
+                    + "{clause,1,[{tuple,1,[{atom,1,ok},{var,1,'L'}]}],"
+                    + "[[{call,1,{atom,1,is_list},[{var,1,'L'}]}]],"
+                    + "[{call,1,{var,1,'Send'},[{var,1,'L'},{var,1,'W'},{integer,1,0}]}]},"
+                    + "{clause,1,[{var,1,'L'}],[[{call,1,{atom,1,is_list},[{var,1,'L'}]}]],"
+                    + "[{call,1,{var,1,'Send'},[{var,1,'L'},{var,1,'W'},{integer,1,0}]}]},"
+                    + "{clause,1,[{var,1,'_'}],[],[{var,1,'R'}]}]}");
+
+    private RpcRequest() {
+    }
+
+    /**
+     * @param link
+     *            the reply mailbox that the call is to be linked to, or null
+     * @param deadline
+     *            the time, in milliseconds, after which the runtime stops the call;
+     *            {@link OtpRpc#INFINITY} for none
+     */
+    public static OtpErlangTuple build(final OtpErlangAtom module,
+            final OtpErlangAtom fun, final OtpErlangObject[] args,
+            final OtpErlangObject gleader, final RpcCompression compression,
+            final OtpErlangPid link, final long deadline) {
+        final OtpErlangList argList = new OtpErlangList(args);
+        final boolean hasDeadline = deadline != OtpRpc.INFINITY;
+        if (!compression.isEnabled() && link == null && !hasDeadline) {
+            return OtpErlang.mkTuple(RpcRequest.CALL, module, fun, argList, gleader);
+        }
+
+        // an orddict, the keys must be sorted
+        final List<OtpErlangObject> bindings = new ArrayList<>();
+        final List<OtpErlangObject> body = new ArrayList<>();
+        if (compression.shouldCompress(argList)) {
+            bindings.add(RpcRequest.binding("A", compression.compress(argList)));
+            body.add(RpcRequest.APPLY_ZIPPED);
+        } else {
+            bindings.add(RpcRequest.binding("A", argList));
+            body.add(RpcRequest.APPLY);
+        }
+        if (hasDeadline) {
+            bindings.add(RpcRequest.binding("D", new OtpErlangLong(deadline)));
+        }
+        bindings.add(RpcRequest.binding("F", fun));
+        if (compression.isEnabled()) {
+            bindings.add(
+                    RpcRequest.binding("L", new OtpErlangLong(compression.getLevel())));
+            body.add(RpcRequest.RESULT_ZIPPED);
+        } else {
+            body.add(RpcRequest.RESULT);
+        }
+        bindings.add(RpcRequest.binding("M", module));
+        if (link != null) {
+            bindings.add(RpcRequest.binding("P", link));
+        }
+        if (compression.isEnabled()) {
+            bindings.add(RpcRequest.binding("T",
+                    new OtpErlangLong(compression.getThreshold())));
+        }
+
+        final List<OtpErlangObject> block = new ArrayList<>();
+        final List<OtpErlangObject> after = new ArrayList<>();
+        if (link != null) {
+            block.add(RpcRequest.LINK);
+            after.add(RpcRequest.UNLINK);
+        }
+        if (hasDeadline) {
+            block.add(RpcRequest.EXIT_AFTER);
+            after.add(RpcRequest.CANCEL_TIMER);
+        }
+        if (after.isEmpty()) {
+            block.addAll(body);
+        } else {
+            block.add(OtpErlang.mkTuple(new OtpErlangAtom("try"), new OtpErlangLong(1),
+                    OtpErlang.mkList(body), new OtpErlangList(), new OtpErlangList(),
+                    OtpErlang.mkList(after)));
+        }
+        final OtpErlangObject expression = OtpErlang.mkTuple(new OtpErlangAtom("block"),
+                new OtpErlangLong(1), OtpErlang.mkList(block));
+        return RpcRequest.evalRequest(expression, bindings, gleader);
+    }
+
+    /**
+     * A call whose list result is sent in chunks; see the class comment.
+     *
+     * @param link
+     *            the reply mailbox, where the chunks go
+     * @param ref
+     *            tags the chunks, the acknowledgements and the final reply
+     * @param chunkSize
+     *            the most elements in a chunk
+     * @param window
+     *            how many chunks may be sent before one is acknowledged
+     */
+    public static OtpErlangTuple buildStream(final OtpErlangAtom module,
+            final OtpErlangAtom fun, final OtpErlangObject[] args,
+            final OtpErlangObject gleader, final RpcCompression compression,
+            final OtpErlangPid link, final OtpErlangRef ref, final int chunkSize,
+            final int window) {
+        final OtpErlangList argList = new OtpErlangList(args);
+        // an orddict, the keys must be sorted
+        final List<OtpErlangObject> bindings = new ArrayList<>();
+        final List<OtpErlangObject> body = new ArrayList<>();
+        if (compression.shouldCompress(argList)) {
+            bindings.add(RpcRequest.binding("A", compression.compress(argList)));
+            body.add(RpcRequest.APPLY_ZIPPED);
+        } else {
+            bindings.add(RpcRequest.binding("A", argList));
+            body.add(RpcRequest.APPLY);
+        }
+        body.add(RpcRequest.SEND_RESULT);
+        bindings.add(RpcRequest.binding("F", fun));
+        bindings.add(RpcRequest.binding("M", module));
+        bindings.add(RpcRequest.binding("N", new OtpErlangLong(chunkSize)));
+        bindings.add(RpcRequest.binding("P", link));
+        bindings.add(RpcRequest.binding("S", ref));
+        bindings.add(RpcRequest.binding("W", new OtpErlangLong(window)));
+
+        final OtpErlangObject block = OtpErlang.mkList(RpcRequest.LINK, RpcRequest.TAKE,
+                RpcRequest.SEND,
+                OtpErlang.mkTuple(new OtpErlangAtom("try"), new OtpErlangLong(1),
+                        OtpErlang.mkList(body), new OtpErlangList(), new OtpErlangList(),
+                        OtpErlang.mkList(RpcRequest.UNLINK)));
+        return RpcRequest.evalRequest(
+                OtpErlang.mkTuple(new OtpErlangAtom("block"), new OtpErlangLong(1), block),
+                bindings, gleader);
+    }
+
+    private static OtpErlangTuple evalRequest(final OtpErlangObject expression,
+            final List<OtpErlangObject> bindings, final OtpErlangObject gleader) {
+        return OtpErlang.mkTuple(RpcRequest.CALL, RpcRequest.ERL_EVAL, RpcRequest.EXPR,
+                OtpErlang.mkList(expression, OtpErlang.mkList(bindings),
+                        RpcRequest.NONE, RpcRequest.NONE, RpcRequest.VALUE),
+                gleader);
+    }
+
+    private static OtpErlangTuple binding(final String name,
+            final OtpErlangObject value) {
+        return OtpErlang.mkTuple(new OtpErlangAtom(name), value);
+    }
+
+    private static OtpErlangObject parse(final String form) {
+        try {
+            return OtpErlang.parse(form);
+        } catch (final OtpParserException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
@@ -8,17 +8,22 @@
  *******************************************************************************/
 package org.erlide.runtime.internal.rpc;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.erlide.runtime.rpc.IRpcResultCallback;
+import org.erlide.runtime.rpc.RpcFuture;
 import org.erlide.util.ErlLogger;
 
 import com.ericsson.otp.erlang.OtpErlangAtom;
 import com.ericsson.otp.erlang.OtpErlangObject;
 import com.ericsson.otp.erlang.OtpErlangTuple;
 import com.ericsson.otp.erlang.OtpMbox;
+import com.ericsson.otp.erlang.OtpMboxListener;
 
 /**
- * This is a thread driven by a mailbox, that waits for rpc results and dispatches them to
- * registered callback.
+ * Dispatches the messages arriving in a mailbox to a registered callback. It doesn't
+ * have a thread of its own: messages are handled on one of the shared
+ * {@link RpcExecutors#callbacks()} threads, one at a time and in order.
  *
  * Protocol:
  * <ul>
@@ -26,45 +31,78 @@ import com.ericsson.otp.erlang.OtpMbox;
  * <li>caller sends request via rpc:cast()</li>
  * <li>receiver waits for "start" message; calls callback</li>
  * <li>receiver waits for "progress" messages; calls callback for each one</li>
- * <li>receiver waits for "stop" message, calls callback and quits</li>
+ * <li>receiver waits for "stop" message, calls callback and closes the mailbox</li>
  * </ul>
+ *
+ * The receiver is also the future of the whole exchange: it completes with the value
+ * of the "stop" message, and cancelling it closes the mailbox and drops any further
+ * messages.
  */
-public class RpcResultReceiver implements Runnable {
+public class RpcResultReceiver extends RpcFuture implements OtpMboxListener, Runnable {
 
     private final IRpcResultCallback callback;
     private final OtpMbox mbox;
+    // arrivals not yet handled; whoever brings it up from 0 schedules the handling
+    private final AtomicInteger arrived = new AtomicInteger();
 
-    public RpcResultReceiver(final OtpMbox box, final IRpcResultCallback callback) {
+    public RpcResultReceiver(final OtpMbox box, final IRpcResultCallback callback,
+            final String env) {
+        super(null, env, false);
         this.callback = callback;
         mbox = box;
-        new Thread(this, "rpc").start();
+        mbox.setMessageListener(this);
+    }
+
+    @Override
+    public void messageArrived(final OtpMbox box) {
+        if (arrived.getAndIncrement() == 0) {
+            RpcExecutors.callbacks().execute(this);
+        }
     }
 
     @Override
     public void run() {
-        boolean done = false;
+        int missed = 1;
         do {
             OtpErlangObject msg;
             try {
-                msg = mbox.receive(3000);
-                if (msg != null) {
-                    if (msg instanceof OtpErlangTuple) {
-                        final OtpErlangTuple tuple = (OtpErlangTuple) msg;
-                        final String tag = ((OtpErlangAtom) tuple.elementAt(0))
-                                .atomValue();
-                        if ("start".equals(tag)) {
-                            callback.start(tuple.elementAt(1));
-                        } else if ("stop".equals(tag)) {
-                            done = true;
-                            callback.stop(tuple.elementAt(1));
-                        } else if ("progress".equals(tag)) {
-                            callback.progress(tuple.elementAt(1));
-                        }
+                while (!isDone() && (msg = mbox.receive(0)) != null) {
+                    if (handle(msg)) {
+                        mbox.setMessageListener(null);
+                        mbox.close();
+                        return;
                     }
                 }
             } catch (final Exception e) {
                 ErlLogger.error(e);
             }
-        } while (!done || Thread.interrupted());
+            missed = arrived.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    /**
+     * @return true when done.
+     */
+    private boolean handle(final OtpErlangObject msg) {
+        if (msg instanceof OtpErlangTuple) {
+            final OtpErlangTuple tuple = (OtpErlangTuple) msg;
+            final String tag = ((OtpErlangAtom) tuple.elementAt(0)).atomValue();
+            if ("start".equals(tag)) {
+                callback.start(tuple.elementAt(1));
+            } else if ("stop".equals(tag)) {
+                callback.stop(tuple.elementAt(1));
+                complete(tuple.elementAt(1));
+                return true;
+            } else if ("progress".equals(tag)) {
+                callback.progress(tuple.elementAt(1));
+            }
+        }
+        return false;
+    }
+
+    @Override
+    protected void cancelled() {
+        mbox.setMessageListener(null);
+        mbox.exit(RpcRequest.CANCELLED);
     }
 }
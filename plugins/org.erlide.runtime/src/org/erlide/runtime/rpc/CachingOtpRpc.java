@@ -0,0 +1,352 @@
+package org.erlide.runtime.rpc;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import org.erlide.util.Util;
+import org.erlide.util.erlang.Converters;
+import org.erlide.util.erlang.SignatureException;
+
+import com.ericsson.otp.erlang.OtpErlangObject;
+import com.ericsson.otp.erlang.OtpErlangPid;
+import com.ericsson.otp.erlang.OtpMbox;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Remembers the results of the calls to functions whose result only changes with the
+ * runtime or with a few files, so that they don't go over the wire again on every
+ * hover or completion.
+ *
+ * <p>
+ * The functions are registered once with {@link #register(String, String, Function)},
+ * together with a validity key computed from the call arguments: a cached result is
+ * used only as long as the key stays the same, for example the timestamp of the
+ * directory that was listed. The cache belongs to one runtime and is emptied when it
+ * disconnects. Concurrent identical calls share a single round trip. Everything else
+ * is passed to the wrapped {@link IOtpRpc} unchanged.
+ * </p>
+ */
+public class CachingOtpRpc implements IOtpRpc {
+
+    /**
+     * The result is valid as long as the runtime is running.
+     */
+    public static final Function<Object[], Object> RUNTIME = args -> Boolean.TRUE;
+
+    private static final Map<String, Function<Object[], Object>> cacheable = new ConcurrentHashMap<>();
+
+    private final IOtpRpc rpc;
+    private final Cache<List<Object>, OtpErlangObject> cache;
+    private final Map<List<Object>, CompletableFuture<OtpErlangObject>> running = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder shared = new LongAdder();
+
+    private interface Call {
+        OtpErlangObject call() throws RpcException;
+    }
+
+    public CachingOtpRpc(final IOtpRpc rpc, final int maximumSize) {
+        this.rpc = rpc;
+        cache = CacheBuilder.newBuilder().maximumSize(maximumSize).build();
+    }
+
+    /**
+     * Cache the results of <code>module:function</code>, with any arity.
+     *
+     * @param validity
+     *            computes from the call arguments a key that changes whenever the result
+     *            may change; if it returns null, that call isn't cached
+     */
+    public static void register(final String module, final String function,
+            final Function<Object[], Object> validity) {
+        CachingOtpRpc.cacheable.put(module + ":" + function, validity);
+    }
+
+    public static void unregister(final String module, final String function) {
+        CachingOtpRpc.cacheable.remove(module + ":" + function);
+    }
+
+    /**
+     * The result is valid as long as the file or directory named by the given argument
+     * isn't modified.
+     */
+    public static Function<Object[], Object> lastModified(final int arg) {
+        return args -> Long.valueOf(new File(String.valueOf(args[arg])).lastModified());
+    }
+
+    public void invalidate() {
+        cache.invalidateAll();
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+    /**
+     * Calls answered from the cache.
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Calls of cached functions that went to the runtime.
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Calls that waited for the result of an identical call that was running.
+     */
+    public long getShared() {
+        return shared.sum();
+    }
+
+    @Override
+    public OtpErlangObject call(final String m, final String f, final String signature,
+            final Object... a) throws RpcException {
+        final List<Object> key = key(m, f, signature, a);
+        if (key == null) {
+            return rpc.call(m, f, signature, a);
+        }
+        return cached(key, -1, () -> rpc.call(m, f, signature, a));
+    }
+
+    @Override
+    public OtpErlangObject call(final long timeout, final String m, final String f,
+            final String signature, final Object... a) throws RpcException {
+        final List<Object> key = key(m, f, signature, a);
+        if (key == null) {
+            return rpc.call(timeout, m, f, signature, a);
+        }
+        return cached(key, timeout, () -> rpc.call(timeout, m, f, signature, a));
+    }
+
+    @Override
+    public RpcResult call_noexception(final String m, final String f,
+            final String signature, final Object... a) {
+        try {
+            return new RpcResult(call(m, f, signature, a));
+        } catch (final RpcException e) {
+            return RpcResult.error(e.getMessage());
+        }
+    }
+
+    @Override
+    public RpcResult call_noexception(final long timeout, final String m, final String f,
+            final String signature, final Object... args) {
+        try {
+            return new RpcResult(call(timeout, m, f, signature, args));
+        } catch (final RpcException e) {
+            return RpcResult.error(e.getMessage());
+        }
+    }
+
+    private List<Object> key(final String m, final String f, final String signature,
+            final Object... args) throws RpcException {
+        final Function<Object[], Object> validity = CachingOtpRpc.cacheable
+                .get(m + ":" + f);
+        if (validity == null) {
+            return null;
+        }
+        final Object version = validity.apply(args);
+        if (version == null) {
+            return null;
+        }
+        try {
+            final OtpErlangObject[] terms = Converters
+                    .convert(Converters.forSignature(signature, args.length), args);
+            return Arrays.asList(m, f, version, Arrays.asList(terms));
+        } catch (final SignatureException e) {
+            throw new RpcException(e);
+        }
+    }
+
+    private OtpErlangObject cached(final List<Object> key, final long timeout,
+            final Call call) throws RpcException {
+        OtpErlangObject result = cache.getIfPresent(key);
+        if (result != null) {
+            hits.increment();
+            return result;
+        }
+        final CompletableFuture<OtpErlangObject> future = new CompletableFuture<>();
+        final CompletableFuture<OtpErlangObject> other = running.putIfAbsent(key,
+                future);
+        if (other != null) {
+            shared.increment();
+            return CachingOtpRpc.await(other, timeout);
+        }
+        try {
+            // it may have been stored while we were registering
+            result = cache.getIfPresent(key);
+            if (result != null) {
+                hits.increment();
+            } else {
+                misses.increment();
+                result = call.call();
+                if (result != null && !Util.isError(result)) {
+                    cache.put(key, result);
+                }
+            }
+            future.complete(result);
+            return result;
+        } catch (final Throwable e) {
+            // don't leave the others waiting
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            running.remove(key, future);
+        }
+    }
+
+    private static OtpErlangObject await(final CompletableFuture<OtpErlangObject> future,
+            final long timeout) throws RpcException {
+        try {
+            if (timeout < 0) {
+                return future.get();
+            }
+            return future.get(timeout, TimeUnit.MILLISECONDS);
+        } catch (final TimeoutException e) {
+            throw new RpcTimeoutException(e.getMessage());
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RpcException(e);
+        } catch (final ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof RpcException) {
+                throw (RpcException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RpcException(e);
+        }
+    }
+
+    @Override
+    public OtpErlangObject call(final long timeout, final OtpErlangObject gleader,
+            final String m, final String f, final String signature, final Object... a)
+            throws RpcException {
+        return rpc.call(timeout, gleader, m, f, signature, a);
+    }
+
+    @Override
+    public RpcFuture async_call(final String m, final String f, final String signature,
+            final Object... args) throws RpcException {
+        return rpc.async_call(m, f, signature, args);
+    }
+
+    @Override
+    public RpcFuture async_call(final OtpErlangObject gleader, final String m,
+            final String f, final String signature, final Object... args)
+            throws RpcException {
+        return rpc.async_call(gleader, m, f, signature, args);
+    }
+
+    @Override
+    public void async_call_cb(final IRpcCallback cb, final String m, final String f,
+            final String signature, final Object... args) throws RpcException {
+        rpc.async_call_cb(cb, m, f, signature, args);
+    }
+
+    @Override
+    public void async_call_cb(final IRpcCallback cb, final long timeout, final String m,
+            final String f, final String signature, final Object... args)
+            throws RpcException {
+        rpc.async_call_cb(cb, timeout, m, f, signature, args);
+    }
+
+    @Override
+    public void async_call_cb(final IRpcCallback cb, final long timeout,
+            final OtpErlangObject gleader, final String m, final String f,
+            final String signature, final Object... args) throws RpcException {
+        rpc.async_call_cb(cb, timeout, gleader, m, f, signature, args);
+    }
+
+    @Override
+    public RpcStream stream(final String m, final String f, final String signature,
+            final Object... args) throws RpcException {
+        return rpc.stream(m, f, signature, args);
+    }
+
+    @Override
+    public RpcStream stream(final long timeout, final String m, final String f,
+            final String signature, final Object... args) throws RpcException {
+        return rpc.stream(timeout, m, f, signature, args);
+    }
+
+    @Override
+    public void cast(final String m, final String f, final String signature,
+            final Object... args) throws RpcException {
+        rpc.cast(m, f, signature, args);
+    }
+
+    @Override
+    public void cast(final OtpErlangObject gleader, final String m, final String f,
+            final String signature, final Object... args) throws RpcException {
+        rpc.cast(gleader, m, f, signature, args);
+    }
+
+    @Override
+    public RpcFuture async_call_result(final IRpcResultCallback cb, final String m,
+            final String f, final String signature, final Object... args)
+            throws RpcException {
+        return rpc.async_call_result(cb, m, f, signature, args);
+    }
+
+    @Override
+    public void send(final OtpErlangPid pid, final Object msg) {
+        rpc.send(pid, msg);
+    }
+
+    @Override
+    public void send(final String name, final Object msg) {
+        rpc.send(name, msg);
+    }
+
+    @Override
+    public void send(final String fullNodeName, final String name, final Object msg) {
+        rpc.send(fullNodeName, name, msg);
+    }
+
+    @Override
+    public RpcBatch batch() {
+        return rpc.batch();
+    }
+
+    @Override
+    public IOtpRpc withPriority(final RpcPriority priority) {
+        final IOtpRpc lane = rpc.withPriority(priority);
+        return lane == rpc ? this : lane;
+    }
+
+    @Override
+    public OtpErlangObject getRpcResult(final OtpMbox mbox, final long timeout,
+            final String env) throws RpcException {
+        return rpc.getRpcResult(mbox, timeout, env);
+    }
+
+    @Override
+    public void setConnected(final boolean connected) {
+        if (!connected) {
+            invalidate();
+        }
+        rpc.setConnected(connected);
+    }
+
+}
@@ -33,6 +33,23 @@ public interface IOtpRpc {
             final OtpErlangObject gleader, final String m, final String f,
             final String signature, final Object... args) throws RpcException;
 
+    /**
+     * Make a RPC whose result is a long list and go through it one element at a time.
+     * The call is sent right away and the runtime sends the list in chunks, as fast as
+     * they are taken from the stream.
+     */
+    RpcStream stream(final String m, final String f, final String signature,
+            final Object... args) throws RpcException;
+
+    /**
+     * Make a RPC whose result is a long list and go through it one element at a time.
+     *
+     * @param timeout
+     *            how long to wait for each chunk
+     */
+    RpcStream stream(final long timeout, final String m, final String f,
+            final String signature, final Object... args) throws RpcException;
+
     /**
      * Make a RPC but don't wait for any result.
      */
@@ -70,10 +87,15 @@ public interface IOtpRpc {
     /**
      * Calls a function that supports sending progress reports back. The first argument is
      * implicit and is the pid where the reports are to be sent.
+     *
+     * @return a future that completes with the value of the "stop" report. Cancelling
+     *         it closes the mailbox that gets the reports, so that no more of them are
+     *         handled.
      */
     // y
-    void async_call_result(final IRpcResultCallback cb, final String m, final String f,
-            final String signature, final Object... args) throws RpcException;
+    RpcFuture async_call_result(final IRpcResultCallback cb, final String m,
+            final String f, final String signature, final Object... args)
+            throws RpcException;
 
     /**
      * Convenience method to send a remote message.
@@ -93,6 +115,18 @@ public interface IOtpRpc {
     // n
     void send(final String fullNodeName, final String name, final Object msg);
 
+    /**
+     * Start collecting calls that will be sent together, as a single RPC.
+     */
+    RpcBatch batch();
+
+    /**
+     * The calls made through the result go through the lane of the given priority, so
+     * that bulk calls don't delay interactive ones. It is this object if the runtime
+     * has a single lane.
+     */
+    IOtpRpc withPriority(RpcPriority priority);
+
     // y (RpcFuture)
     OtpErlangObject getRpcResult(OtpMbox mbox, long timeout, String env)
             throws RpcException;
@@ -0,0 +1,310 @@
+package org.erlide.runtime.rpc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+
+import org.erlide.util.ErlLogger;
+import org.erlide.util.erlang.OtpErlang;
+
+import com.ericsson.otp.erlang.OtpErlangAtom;
+import com.ericsson.otp.erlang.OtpErlangObject;
+import com.ericsson.otp.erlang.OtpErlangPid;
+import com.ericsson.otp.erlang.OtpMbox;
+
+/**
+ * Passes the calls to the wrapped {@link IOtpRpc} and keeps their replies in a
+ * {@link RpcRecording}, to be served later by {@link ReplayOtpRpc}. Calls that time out
+ * or are cancelled aren't recorded, since their reply is unknown; casts and messages
+ * have none.
+ */
+public class RecordingOtpRpc implements IOtpRpc {
+
+    private final IOtpRpc rpc;
+    private final RpcRecording recording;
+
+    public RecordingOtpRpc(final IOtpRpc rpc, final RpcRecording recording) {
+        this.rpc = rpc;
+        this.recording = recording;
+    }
+
+    public RpcRecording getRecording() {
+        return recording;
+    }
+
+    @Override
+    public OtpErlangObject call(final String m, final String f, final String signature,
+            final Object... a) throws RpcException {
+        final long start = System.nanoTime();
+        try {
+            final OtpErlangObject result = rpc.call(m, f, signature, a);
+            record(start, m, f, signature, a, result);
+            return result;
+        } catch (final RpcException e) {
+            recordError(start, m, f, signature, a, e);
+            throw e;
+        }
+    }
+
+    @Override
+    public OtpErlangObject call(final long timeout, final String m, final String f,
+            final String signature, final Object... a) throws RpcException {
+        final long start = System.nanoTime();
+        try {
+            final OtpErlangObject result = rpc.call(timeout, m, f, signature, a);
+            record(start, m, f, signature, a, result);
+            return result;
+        } catch (final RpcException e) {
+            recordError(start, m, f, signature, a, e);
+            throw e;
+        }
+    }
+
+    @Override
+    public OtpErlangObject call(final long timeout, final OtpErlangObject gleader,
+            final String m, final String f, final String signature, final Object... a)
+            throws RpcException {
+        final long start = System.nanoTime();
+        try {
+            final OtpErlangObject result = rpc.call(timeout, gleader, m, f, signature, a);
+            record(start, m, f, signature, a, result);
+            return result;
+        } catch (final RpcException e) {
+            recordError(start, m, f, signature, a, e);
+            throw e;
+        }
+    }
+
+    @Override
+    public RpcResult call_noexception(final String m, final String f,
+            final String signature, final Object... a) {
+        try {
+            return new RpcResult(call(m, f, signature, a));
+        } catch (final RpcException e) {
+            return RpcResult.error(e.getMessage());
+        }
+    }
+
+    @Override
+    public RpcResult call_noexception(final long timeout, final String m, final String f,
+            final String signature, final Object... args) {
+        try {
+            return new RpcResult(call(timeout, m, f, signature, args));
+        } catch (final RpcException e) {
+            return RpcResult.error(e.getMessage());
+        }
+    }
+
+    @Override
+    public RpcFuture async_call(final String m, final String f, final String signature,
+            final Object... args) throws RpcException {
+        return recorded(System.nanoTime(), rpc.async_call(m, f, signature, args), m, f,
+                signature, args);
+    }
+
+    @Override
+    public RpcFuture async_call(final OtpErlangObject gleader, final String m,
+            final String f, final String signature, final Object... args)
+            throws RpcException {
+        return recorded(System.nanoTime(),
+                rpc.async_call(gleader, m, f, signature, args), m, f, signature, args);
+    }
+
+    @Override
+    public void async_call_cb(final IRpcCallback cb, final String m, final String f,
+            final String signature, final Object... args) throws RpcException {
+        rpc.async_call_cb(recorded(cb, m, f, signature, args), m, f, signature, args);
+    }
+
+    @Override
+    public void async_call_cb(final IRpcCallback cb, final long timeout, final String m,
+            final String f, final String signature, final Object... args)
+            throws RpcException {
+        rpc.async_call_cb(recorded(cb, m, f, signature, args), timeout, m, f, signature,
+                args);
+    }
+
+    @Override
+    public void async_call_cb(final IRpcCallback cb, final long timeout,
+            final OtpErlangObject gleader, final String m, final String f,
+            final String signature, final Object... args) throws RpcException {
+        rpc.async_call_cb(recorded(cb, m, f, signature, args), timeout, gleader, m, f,
+                signature, args);
+    }
+
+    @Override
+    public RpcFuture async_call_result(final IRpcResultCallback cb, final String m,
+            final String f, final String signature, final Object... args)
+            throws RpcException {
+        final long start = System.nanoTime();
+        final List<OtpErlangObject> reports = new ArrayList<>();
+        final IRpcResultCallback recorder = new IRpcResultCallback() {
+            @Override
+            public void start(final OtpErlangObject msg) {
+                report("start", msg);
+                cb.start(msg);
+            }
+
+            @Override
+            public void progress(final OtpErlangObject msg) {
+                report("progress", msg);
+                cb.progress(msg);
+            }
+
+            @Override
+            public void stop(final OtpErlangObject msg) {
+                report("stop", msg);
+                final List<OtpErlangObject> all;
+                synchronized (reports) {
+                    all = new ArrayList<>(reports);
+                }
+                try {
+                    recording.recordReports(m, f,
+                            RpcRecording.convert(signature, args), all,
+                            RecordingOtpRpc.micros(start));
+                } catch (final RpcException e) {
+                    ErlLogger.warn(e);
+                }
+                cb.stop(msg);
+            }
+
+            private void report(final String tag, final OtpErlangObject msg) {
+                synchronized (reports) {
+                    reports.add(OtpErlang.mkTuple(new OtpErlangAtom(tag), msg));
+                }
+            }
+        };
+        return rpc.async_call_result(recorder, m, f, signature, args);
+    }
+
+    /**
+     * The reply is fetched in one go and recorded whole, the stream replays it.
+     */
+    @Override
+    public RpcStream stream(final String m, final String f, final String signature,
+            final Object... args) throws RpcException {
+        return RpcStream.of(call(m, f, signature, args), m + ":" + f);
+    }
+
+    @Override
+    public RpcStream stream(final long timeout, final String m, final String f,
+            final String signature, final Object... args) throws RpcException {
+        return RpcStream.of(call(timeout, m, f, signature, args), m + ":" + f);
+    }
+
+    @Override
+    public void cast(final String m, final String f, final String signature,
+            final Object... args) throws RpcException {
+        rpc.cast(m, f, signature, args);
+    }
+
+    @Override
+    public void cast(final OtpErlangObject gleader, final String m, final String f,
+            final String signature, final Object... args) throws RpcException {
+        rpc.cast(gleader, m, f, signature, args);
+    }
+
+    @Override
+    public void send(final OtpErlangPid pid, final Object msg) {
+        rpc.send(pid, msg);
+    }
+
+    @Override
+    public void send(final String name, final Object msg) {
+        rpc.send(name, msg);
+    }
+
+    @Override
+    public void send(final String fullNodeName, final String name, final Object msg) {
+        rpc.send(fullNodeName, name, msg);
+    }
+
+    @Override
+    public RpcBatch batch() {
+        final String nodeName = rpc.batch().getNodeName();
+        recording.usedNode(nodeName);
+        return new RpcBatch(this, nodeName);
+    }
+
+    @Override
+    public IOtpRpc withPriority(final RpcPriority priority) {
+        final IOtpRpc lane = rpc.withPriority(priority);
+        return lane == rpc ? this : new RecordingOtpRpc(lane, recording);
+    }
+
+    @Override
+    public OtpErlangObject getRpcResult(final OtpMbox mbox, final long timeout,
+            final String env) throws RpcException {
+        return rpc.getRpcResult(mbox, timeout, env);
+    }
+
+    @Override
+    public void setConnected(final boolean connected) {
+        rpc.setConnected(connected);
+    }
+
+    private RpcFuture recorded(final long start, final RpcFuture future, final String m,
+            final String f, final String signature, final Object... args) {
+        future.toCompletableFuture().whenComplete((result, failure) -> {
+            if (failure == null) {
+                record(start, m, f, signature, args, result);
+            } else {
+                recordError(start, m, f, signature, args, failure);
+            }
+        });
+        return future;
+    }
+
+    private IRpcCallback recorded(final IRpcCallback cb, final String m, final String f,
+            final String signature, final Object... args) {
+        final long start = System.nanoTime();
+        return new IRpcCallback() {
+            @Override
+            public void onSuccess(final OtpErlangObject result) {
+                record(start, m, f, signature, args, result);
+                cb.onSuccess(result);
+            }
+
+            @Override
+            public void onFailure(final Throwable t) {
+                recordError(start, m, f, signature, args, t);
+                cb.onFailure(t);
+            }
+        };
+    }
+
+    private void record(final long start, final String m, final String f,
+            final String signature, final Object[] args, final OtpErlangObject result) {
+        if (result == null) {
+            return;
+        }
+        try {
+            recording.record(m, f, RpcRecording.convert(signature, args), result,
+                    RecordingOtpRpc.micros(start));
+        } catch (final RpcException e) {
+            ErlLogger.warn(e);
+        }
+    }
+
+    private void recordError(final long start, final String m, final String f,
+            final String signature, final Object[] args, final Throwable failure) {
+        final Throwable e = failure instanceof CompletionException
+                && failure.getCause() != null ? failure.getCause() : failure;
+        if (e instanceof RpcTimeoutException || e instanceof CancellationException
+                || !(e instanceof RpcException)) {
+            return;
+        }
+        try {
+            recording.recordError(m, f, RpcRecording.convert(signature, args),
+                    e.getMessage(), RecordingOtpRpc.micros(start));
+        } catch (final RpcException x) {
+            ErlLogger.warn(x);
+        }
+    }
+
+    private static long micros(final long start) {
+        return (System.nanoTime() - start) / 1000;
+    }
+
+}
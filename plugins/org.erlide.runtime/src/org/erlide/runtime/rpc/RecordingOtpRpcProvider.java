@@ -0,0 +1,62 @@
+package org.erlide.runtime.rpc;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.erlide.runtime.runtimeinfo.RuntimeVersion;
+import org.erlide.util.ErlLogger;
+
+/**
+ * Records the calls to all the runtimes of another provider into one recording, which
+ * is saved to a file when the VM exits.
+ */
+public class RecordingOtpRpcProvider implements IOtpRpcProvider {
+
+    private final IOtpRpcProvider provider;
+    private final RpcRecording recording;
+
+    public RecordingOtpRpcProvider(final IOtpRpcProvider provider,
+            final RpcRecording recording) {
+        this.provider = provider;
+        this.recording = recording;
+    }
+
+    public RpcRecording getRecording() {
+        return recording;
+    }
+
+    /**
+     * Save the recording to the given file when the VM exits.
+     */
+    public RecordingOtpRpcProvider saveOnExit(final File file) {
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                recording.save(file);
+                ErlLogger.info("Saved %d RPCs to %s", recording.size(), file);
+            } catch (final IOException e) {
+                ErlLogger.error(e);
+            }
+        }, "save RPC recording"));
+        return this;
+    }
+
+    @Override
+    public IOtpRpc get() {
+        return wrap(provider.get());
+    }
+
+    @Override
+    public IOtpRpc get(final RuntimeVersion version) {
+        return wrap(provider.get(version));
+    }
+
+    @Override
+    public IOtpRpc get(final String projectName) {
+        return wrap(provider.get(projectName));
+    }
+
+    private IOtpRpc wrap(final IOtpRpc rpc) {
+        return rpc == null ? null : new RecordingOtpRpc(rpc, recording);
+    }
+
+}
@@ -0,0 +1,275 @@
+package org.erlide.runtime.rpc;
+
+import java.util.concurrent.TimeUnit;
+
+import org.erlide.runtime.internal.rpc.RpcExecutors;
+import org.erlide.util.ErlLogger;
+
+import com.ericsson.otp.erlang.OtpErlangObject;
+import com.ericsson.otp.erlang.OtpErlangPid;
+import com.ericsson.otp.erlang.OtpErlangTuple;
+import com.ericsson.otp.erlang.OtpMbox;
+
+/**
+ * Answers the calls from a {@link RpcRecording} instead of a runtime, the same way
+ * every time, so that the Java side can be benchmarked and tested on machines without
+ * Erlang. Calls that weren't recorded fail with a {@link RpcException}; casts and
+ * messages go nowhere.
+ *
+ * <p>
+ * Replies can be delayed by a part of the time the calls took when they were recorded,
+ * see {@link #setLatency(double)}. Asynchronous replies are delayed without holding a
+ * thread.
+ * </p>
+ */
+public class ReplayOtpRpc implements IOtpRpc {
+
+    private final RpcRecording recording;
+    private volatile double latency = RpcRecording.REPLAY_LATENCY;
+
+    public ReplayOtpRpc(final RpcRecording recording) {
+        this.recording = recording;
+    }
+
+    public RpcRecording getRecording() {
+        return recording;
+    }
+
+    /**
+     * @param factor
+     *            how much of the recorded time each call takes: 0 for none, 1 for as
+     *            much as when it was recorded
+     */
+    public void setLatency(final double factor) {
+        latency = factor;
+    }
+
+    @Override
+    public OtpErlangObject call(final String m, final String f, final String signature,
+            final Object... a) throws RpcException {
+        final RpcRecording.Reply reply = next(m, f, signature, a);
+        sleep(reply);
+        return ReplayOtpRpc.value(reply);
+    }
+
+    @Override
+    public OtpErlangObject call(final long timeout, final String m, final String f,
+            final String signature, final Object... a) throws RpcException {
+        return call(m, f, signature, a);
+    }
+
+    @Override
+    public OtpErlangObject call(final long timeout, final OtpErlangObject gleader,
+            final String m, final String f, final String signature, final Object... a)
+            throws RpcException {
+        return call(m, f, signature, a);
+    }
+
+    @Override
+    public RpcResult call_noexception(final String m, final String f,
+            final String signature, final Object... a) {
+        try {
+            return new RpcResult(call(m, f, signature, a));
+        } catch (final RpcException e) {
+            return RpcResult.error(e.getMessage());
+        }
+    }
+
+    @Override
+    public RpcResult call_noexception(final long timeout, final String m, final String f,
+            final String signature, final Object... args) {
+        return call_noexception(m, f, signature, args);
+    }
+
+    @Override
+    public RpcFuture async_call(final String m, final String f, final String signature,
+            final Object... args) throws RpcException {
+        final RpcRecording.Reply reply = next(m, f, signature, args);
+        final RpcFuture future = new RpcFuture(null, ReplayOtpRpc.env(m, f), false);
+        later(reply, () -> {
+            try {
+                future.complete(ReplayOtpRpc.value(reply));
+            } catch (final RpcException e) {
+                future.fail(e);
+            }
+        });
+        return future;
+    }
+
+    @Override
+    public RpcFuture async_call(final OtpErlangObject gleader, final String m,
+            final String f, final String signature, final Object... args)
+            throws RpcException {
+        return async_call(m, f, signature, args);
+    }
+
+    @Override
+    public void async_call_cb(final IRpcCallback cb, final String m, final String f,
+            final String signature, final Object... args) throws RpcException {
+        async_call(m, f, signature, args).toCompletableFuture()
+                .whenCompleteAsync((result, failure) -> {
+                    if (failure == null) {
+                        cb.onSuccess(result);
+                    } else {
+                        cb.onFailure(failure);
+                    }
+                }, RpcExecutors.callbacks());
+    }
+
+    @Override
+    public void async_call_cb(final IRpcCallback cb, final long timeout, final String m,
+            final String f, final String signature, final Object... args)
+            throws RpcException {
+        async_call_cb(cb, m, f, signature, args);
+    }
+
+    @Override
+    public void async_call_cb(final IRpcCallback cb, final long timeout,
+            final OtpErlangObject gleader, final String m, final String f,
+            final String signature, final Object... args) throws RpcException {
+        async_call_cb(cb, m, f, signature, args);
+    }
+
+    @Override
+    public RpcFuture async_call_result(final IRpcResultCallback cb, final String m,
+            final String f, final String signature, final Object... args)
+            throws RpcException {
+        final RpcRecording.Reply reply = next(m, f, signature, args);
+        if (reply.getReports() == null) {
+            throw new RpcException(
+                    "recorded reply of " + ReplayOtpRpc.env(m, f) + " has no reports");
+        }
+        final RpcFuture future = new RpcFuture(null, ReplayOtpRpc.env(m, f), false);
+        later(reply, () -> {
+            for (final OtpErlangObject r : reply.getReports()) {
+                if (future.isDone()) {
+                    return;
+                }
+                final OtpErlangTuple report = (OtpErlangTuple) r;
+                final String tag = report.elementAt(0).toString();
+                final OtpErlangObject msg = report.elementAt(1);
+                if ("start".equals(tag)) {
+                    cb.start(msg);
+                } else if ("progress".equals(tag)) {
+                    cb.progress(msg);
+                } else if ("stop".equals(tag)) {
+                    cb.stop(msg);
+                    future.complete(msg);
+                }
+            }
+        });
+        return future;
+    }
+
+    @Override
+    public RpcStream stream(final String m, final String f, final String signature,
+            final Object... args) throws RpcException {
+        return RpcStream.of(call(m, f, signature, args), ReplayOtpRpc.env(m, f));
+    }
+
+    @Override
+    public RpcStream stream(final long timeout, final String m, final String f,
+            final String signature, final Object... args) throws RpcException {
+        return stream(m, f, signature, args);
+    }
+
+    @Override
+    public void cast(final String m, final String f, final String signature,
+            final Object... args) throws RpcException {
+    }
+
+    @Override
+    public void cast(final OtpErlangObject gleader, final String m, final String f,
+            final String signature, final Object... args) throws RpcException {
+    }
+
+    @Override
+    public void send(final OtpErlangPid pid, final Object msg) {
+    }
+
+    @Override
+    public void send(final String name, final Object msg) {
+    }
+
+    @Override
+    public void send(final String fullNodeName, final String name, final Object msg) {
+    }
+
+    @Override
+    public RpcBatch batch() {
+        return new RpcBatch(this, recording.getNodeName());
+    }
+
+    @Override
+    public IOtpRpc withPriority(final RpcPriority priority) {
+        return this;
+    }
+
+    @Override
+    public OtpErlangObject getRpcResult(final OtpMbox mbox, final long timeout,
+            final String env) throws RpcException {
+        throw new RpcException("no mailboxes when replaying");
+    }
+
+    @Override
+    public void setConnected(final boolean connected) {
+    }
+
+    private RpcRecording.Reply next(final String m, final String f,
+            final String signature, final Object... args) throws RpcException {
+        final RpcRecording.Reply reply = recording.next(m, f,
+                RpcRecording.convert(signature, args));
+        if (reply == null) {
+            throw new RpcException("no recorded reply for " + m + ":" + f + "/"
+                    + (args == null ? 0 : args.length));
+        }
+        return reply;
+    }
+
+    private long delay(final RpcRecording.Reply reply) {
+        return (long) (reply.getMicros() * latency);
+    }
+
+    private void sleep(final RpcRecording.Reply reply) {
+        final long micros = delay(reply);
+        if (micros > 0) {
+            try {
+                TimeUnit.MICROSECONDS.sleep(micros);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void later(final RpcRecording.Reply reply, final Runnable action) {
+        final Runnable safe = () -> {
+            try {
+                action.run();
+            } catch (final Exception e) {
+                ErlLogger.error(e);
+            }
+        };
+        final long micros = delay(reply);
+        if (micros > 0) {
+            RpcExecutors.timer().schedule(
+                    () -> RpcExecutors.callbacks().execute(safe), micros,
+                    TimeUnit.MICROSECONDS);
+        } else {
+            RpcExecutors.callbacks().execute(safe);
+        }
+    }
+
+    private static OtpErlangObject value(final RpcRecording.Reply reply)
+            throws RpcException {
+        final String error = reply.getError();
+        if (error != null) {
+            throw new RpcException(error);
+        }
+        return reply.getValue();
+    }
+
+    private static String env(final String m, final String f) {
+        return m + ":" + f;
+    }
+
+}
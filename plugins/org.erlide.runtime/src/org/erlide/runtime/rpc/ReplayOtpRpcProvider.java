@@ -0,0 +1,31 @@
+package org.erlide.runtime.rpc;
+
+import org.erlide.runtime.runtimeinfo.RuntimeVersion;
+
+/**
+ * Answers every runtime's calls from the same recording.
+ */
+public class ReplayOtpRpcProvider implements IOtpRpcProvider {
+
+    private final ReplayOtpRpc rpc;
+
+    public ReplayOtpRpcProvider(final RpcRecording recording) {
+        rpc = new ReplayOtpRpc(recording);
+    }
+
+    @Override
+    public IOtpRpc get() {
+        return rpc;
+    }
+
+    @Override
+    public IOtpRpc get(final RuntimeVersion version) {
+        return rpc;
+    }
+
+    @Override
+    public IOtpRpc get(final String projectName) {
+        return rpc;
+    }
+
+}
@@ -0,0 +1,166 @@
+package org.erlide.runtime.rpc;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.erlide.runtime.internal.rpc.OtpRpc;
+import org.erlide.util.erlang.Converters;
+import org.erlide.util.erlang.SignatureException;
+
+import com.ericsson.otp.erlang.OtpErlangAtom;
+import com.ericsson.otp.erlang.OtpErlangExternalFun;
+import com.ericsson.otp.erlang.OtpErlangList;
+import com.ericsson.otp.erlang.OtpErlangObject;
+
+/**
+ * Collects several calls to the same backend and sends them as a single RPC, so that
+ * they cost one round trip instead of one each.
+ *
+ * <p>
+ * The calls are executed in order, by the same remote process. Each one is wrapped in
+ * <code>rpc:call/4</code> on the remote node, so a failing call doesn't abort the
+ * others; its result will be a <code>{badrpc, Reason}</code> that shows up as a not ok
+ * {@link RpcResult}.
+ * </p>
+ *
+ * <p>
+ * Batches of more than {@link #CHUNK_SIZE} calls are sent in chunks of that size, one
+ * after the other, and each chunk runs in a process of its own. The timeout applies to
+ * each call, as if they were made one by one. If a chunk times out, the calls in it and
+ * in the chunks after it get error results; the results of the earlier chunks are kept.
+ * </p>
+ *
+ * <pre>
+ * final List&lt;RpcResult&gt; results = rpc.batch()
+ *         .add("code", "is_sticky", "a", "foo")
+ *         .add("code", "is_sticky", "a", "bar")
+ *         .call();
+ * </pre>
+ */
+public class RpcBatch {
+
+    /**
+     * The most calls sent in one round trip.
+     */
+    public static final int CHUNK_SIZE = 32;
+
+    private static final OtpErlangExternalFun APPLY = new OtpErlangExternalFun(
+            "erlang", "apply", 2);
+    private static final OtpErlangExternalFun RPC_CALL = new OtpErlangExternalFun("rpc",
+            "call", 4);
+
+    private final IOtpRpc rpc;
+    private final OtpErlangAtom node;
+    private final List<OtpErlangObject> calls = new ArrayList<>();
+
+    public RpcBatch(final IOtpRpc rpc, final String nodeName) {
+        this.rpc = rpc;
+        node = new OtpErlangAtom(nodeName);
+    }
+
+    /**
+     * Append a call to the batch. The arguments are converted according to the
+     * signature, as for {@link IOtpRpc#call(String, String, String, Object...)}.
+     */
+    public RpcBatch add(final String m, final String f, final String signature,
+            final Object... args) throws RpcException {
+        try {
+            calls.add(new OtpErlangList(new OtpErlangObject[] {
+                    node, new OtpErlangAtom(m), new OtpErlangAtom(f),
+                    new OtpErlangList(RpcBatch.convertArgs(signature, args))
+            }));
+        } catch (final SignatureException e) {
+            throw new RpcException(e);
+        }
+        return this;
+    }
+
+    public String getNodeName() {
+        return node.atomValue();
+    }
+
+    public int size() {
+        return calls.size();
+    }
+
+    public boolean isEmpty() {
+        return calls.isEmpty();
+    }
+
+    /**
+     * Send the whole batch in one message, without waiting. The future's value is the
+     * list of results, in the order the calls were added.
+     */
+    public RpcFuture send() throws RpcException {
+        return send(calls);
+    }
+
+    private RpcFuture send(final List<OtpErlangObject> chunk) throws RpcException {
+        final OtpErlangObject[] funs = new OtpErlangObject[chunk.size()];
+        for (int i = 0; i < funs.length; i++) {
+            funs[i] = RpcBatch.RPC_CALL;
+        }
+        return rpc.async_call("lists", "zipwith", "xxx", RpcBatch.APPLY,
+                new OtpErlangList(funs),
+                new OtpErlangList(chunk.toArray(new OtpErlangObject[chunk.size()])));
+    }
+
+    public List<RpcResult> call() throws RpcException {
+        return call(OtpRpc.DEFAULT_TIMEOUT);
+    }
+
+    /**
+     * Send the batch and wait for all the results. An exception is thrown only if the
+     * batch as a whole fails; individual failures and timeouts are reported in the
+     * results.
+     *
+     * @param timeout
+     *            how long each call may take, in milliseconds
+     */
+    public List<RpcResult> call(final long timeout) throws RpcException {
+        if (calls.isEmpty()) {
+            return Collections.emptyList();
+        }
+        final List<RpcResult> results = new ArrayList<>(calls.size());
+        for (int from = 0; from < calls.size(); from += RpcBatch.CHUNK_SIZE) {
+            final List<OtpErlangObject> chunk = calls.subList(from,
+                    Math.min(calls.size(), from + RpcBatch.CHUNK_SIZE));
+            final RpcFuture future = send(chunk);
+            final OtpErlangObject res;
+            try {
+                res = future.checkedGet(RpcBatch.scale(timeout, chunk.size()),
+                        TimeUnit.MILLISECONDS);
+            } catch (final RpcTimeoutException e) {
+                future.cancel(true);
+                final RpcResult timedOut = RpcResult.error("timeout");
+                final RpcResult notSent = RpcResult
+                        .error("not sent, an earlier call timed out");
+                for (int i = from; i < calls.size(); i++) {
+                    results.add(i < from + chunk.size() ? timedOut : notSent);
+                }
+                return results;
+            }
+            if (!(res instanceof OtpErlangList)) {
+                throw new RpcException("Bad batch RPC: " + res);
+            }
+            for (final OtpErlangObject r : (OtpErlangList) res) {
+                results.add(new RpcResult(r));
+            }
+        }
+        return results;
+    }
+
+    private static long scale(final long timeout, final int n) {
+        return timeout > Long.MAX_VALUE / n ? Long.MAX_VALUE : timeout * n;
+    }
+
+    private static OtpErlangObject[] convertArgs(final String signature,
+            final Object... args) throws SignatureException {
+        final Object[] args0 = args == null ? new OtpErlangObject[] {} : args;
+        return Converters.convert(Converters.forSignature(signature, args0.length),
+                args0);
+    }
+
+}
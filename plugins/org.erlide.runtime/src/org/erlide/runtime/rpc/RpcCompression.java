@@ -0,0 +1,275 @@
+package org.erlide.runtime.rpc;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.ericsson.otp.erlang.OtpErlangAtom;
+import com.ericsson.otp.erlang.OtpErlangBinary;
+import com.ericsson.otp.erlang.OtpErlangBitstr;
+import com.ericsson.otp.erlang.OtpErlangDecodeException;
+import com.ericsson.otp.erlang.OtpErlangList;
+import com.ericsson.otp.erlang.OtpErlangObject;
+import com.ericsson.otp.erlang.OtpErlangString;
+import com.ericsson.otp.erlang.OtpErlangTuple;
+import com.ericsson.otp.erlang.OtpExternal;
+import com.ericsson.otp.erlang.OtpInputStream;
+import com.ericsson.otp.erlang.OtpLazyTerm;
+import com.ericsson.otp.erlang.OtpOutputStream;
+
+/**
+ * Compresses the arguments and the results of the RPCs to one runtime when they are
+ * larger than a threshold, for runtimes reached through slow links.
+ *
+ * <p>
+ * Distribution doesn't accept compressed terms inside messages, and the runtime side
+ * has no code to unpack them, so a compressing call is sent to <code>erl_eval</code>
+ * as a small expression (see <code>RpcRequest</code>) that decodes the arguments with
+ * <code>binary_to_term</code>, applies the function and compresses a large result
+ * with <code>term_to_binary</code>. Such a result comes back as
+ * <code>{'$erlide_zip', Binary}</code> and is unpacked by
+ * {@link #decode(OtpErlangObject)}. With compression off, requests go out unchanged.
+ * </p>
+ *
+ * <p>
+ * The bytes saved and the CPU time spent are counted for all runtimes together.
+ * </p>
+ */
+public final class RpcCompression {
+
+    /**
+     * Arguments and results larger than this many bytes are compressed; a negative
+     * value turns compression off.
+     */
+    public static final int DEFAULT_THRESHOLD = Integer
+            .parseInt(System.getProperty("erlide.rpc.compress.threshold", "-1"));
+    /**
+     * The zlib level, 1 (fastest) to 9 (smallest).
+     */
+    public static final int DEFAULT_LEVEL = Integer
+            .parseInt(System.getProperty("erlide.rpc.compress.level", "1"));
+
+    public static final RpcCompression OFF = new RpcCompression(-1,
+            RpcCompression.DEFAULT_LEVEL);
+
+    private static final OtpErlangAtom ZIPPED = new OtpErlangAtom("$erlide_zip");
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    private static final LongAdder compressedArguments = new LongAdder();
+    private static final LongAdder compressedResults = new LongAdder();
+    private static final LongAdder bytesBefore = new LongAdder();
+    private static final LongAdder bytesAfter = new LongAdder();
+    private static final LongAdder compressTime = new LongAdder();
+    private static final LongAdder decompressTime = new LongAdder();
+
+    private final int threshold;
+    private final int level;
+
+    public RpcCompression(final int threshold, final int level) {
+        this.threshold = threshold;
+        this.level = level;
+    }
+
+    public boolean isEnabled() {
+        return threshold >= 0;
+    }
+
+    public int getThreshold() {
+        return threshold;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    /**
+     * @return whether the arguments are large enough to be sent compressed.
+     */
+    public boolean shouldCompress(final OtpErlangList args) {
+        return isEnabled() && RpcCompression.estimateSize(args, threshold) > threshold;
+    }
+
+    /**
+     * @return the term encoded and compressed, to be unpacked on the runtime by
+     *         <code>binary_to_term</code>.
+     */
+    public OtpErlangBinary compress(final OtpErlangObject term) {
+        final long start = RpcCompression.cpuTime();
+        @SuppressWarnings("resource")
+        final OtpOutputStream out = new OtpOutputStream();
+        out.write1(OtpExternal.versionTag);
+        out.write_compressed(term, level);
+        final byte[] bytes = out.toByteArray();
+        RpcCompression.compressTime.add(RpcCompression.cpuTime() - start);
+        RpcCompression.compressedArguments.increment();
+        RpcCompression.bytesBefore.add(RpcCompression.uncompressedSize(bytes));
+        RpcCompression.bytesAfter.add(bytes.length);
+        return new OtpErlangBinary(bytes);
+    }
+
+    /**
+     * @return the result unpacked, if it came compressed.
+     */
+    public static OtpErlangObject decode(final OtpErlangObject result)
+            throws OtpErlangDecodeException {
+        if (!RpcCompression.isZipped(result)) {
+            return result;
+        }
+        final byte[] bytes = ((OtpErlangBitstr) ((OtpErlangTuple) result).elementAt(1))
+                .binaryValue();
+        final long start = RpcCompression.cpuTime();
+        try {
+            @SuppressWarnings("resource")
+            final OtpInputStream in = new OtpInputStream(bytes);
+            return in.read_any();
+        } finally {
+            RpcCompression.decompressed(bytes, start);
+        }
+    }
+
+    /**
+     * @return the result unpacked, if it came compressed. The unpacked term is still
+     *         decoded lazily.
+     */
+    public static OtpLazyTerm decode(final OtpLazyTerm result)
+            throws OtpErlangDecodeException {
+        if (!result.isTuple() || result.arity() != 2
+                || !result.elementAt(0).isAtom(RpcCompression.ZIPPED.atomValue())) {
+            return result;
+        }
+        final byte[] bytes = ((OtpErlangBitstr) result.elementAt(1).decode())
+                .binaryValue();
+        final long start = RpcCompression.cpuTime();
+        try {
+            @SuppressWarnings("resource")
+            final OtpInputStream in = new OtpInputStream(bytes);
+            return in.read_lazy();
+        } finally {
+            RpcCompression.decompressed(bytes, start);
+        }
+    }
+
+    /**
+     * Calls whose arguments were compressed.
+     */
+    public static long getCompressedArguments() {
+        return RpcCompression.compressedArguments.sum();
+    }
+
+    /**
+     * Replies that came compressed.
+     */
+    public static long getCompressedResults() {
+        return RpcCompression.compressedResults.sum();
+    }
+
+    /**
+     * The size of what was compressed, in bytes.
+     */
+    public static long getBytesBefore() {
+        return RpcCompression.bytesBefore.sum();
+    }
+
+    /**
+     * The size of what was compressed, after compression.
+     */
+    public static long getBytesAfter() {
+        return RpcCompression.bytesAfter.sum();
+    }
+
+    public static long getBytesSaved() {
+        return RpcCompression.getBytesBefore() - RpcCompression.getBytesAfter();
+    }
+
+    /**
+     * The CPU time spent compressing arguments, in nanoseconds.
+     */
+    public static long getCompressTime() {
+        return RpcCompression.compressTime.sum();
+    }
+
+    /**
+     * The CPU time spent unpacking results, in nanoseconds.
+     */
+    public static long getDecompressTime() {
+        return RpcCompression.decompressTime.sum();
+    }
+
+    public static void reset() {
+        RpcCompression.compressedArguments.reset();
+        RpcCompression.compressedResults.reset();
+        RpcCompression.bytesBefore.reset();
+        RpcCompression.bytesAfter.reset();
+        RpcCompression.compressTime.reset();
+        RpcCompression.decompressTime.reset();
+    }
+
+    /*
+     * A cheap guess of the encoded size, that stops as soon as it is over the limit.
+     * Only binaries and strings can get large enough to matter.
+     */
+    static long estimateSize(final OtpErlangObject term, final long limit) {
+        if (term instanceof OtpErlangBitstr) {
+            return ((OtpErlangBitstr) term).size();
+        }
+        if (term instanceof OtpErlangString) {
+            return ((OtpErlangString) term).stringValue().length();
+        }
+        if (term instanceof OtpErlangAtom) {
+            return ((OtpErlangAtom) term).atomValue().length();
+        }
+        OtpErlangObject[] elements = null;
+        if (term instanceof OtpErlangList) {
+            elements = ((OtpErlangList) term).elements();
+        } else if (term instanceof OtpErlangTuple) {
+            elements = ((OtpErlangTuple) term).elements();
+        }
+        if (elements == null) {
+            return 8;
+        }
+        long result = 5;
+        for (final OtpErlangObject element : elements) {
+            result += RpcCompression.estimateSize(element, limit - result);
+            if (result > limit) {
+                break;
+            }
+        }
+        return result;
+    }
+
+    private static void decompressed(final byte[] bytes, final long start) {
+        RpcCompression.decompressTime.add(RpcCompression.cpuTime() - start);
+        RpcCompression.compressedResults.increment();
+        RpcCompression.bytesBefore.add(RpcCompression.uncompressedSize(bytes));
+        RpcCompression.bytesAfter.add(bytes.length);
+    }
+
+    /*
+     * Version, compressed tag, then the size of the term before compression.
+     */
+    private static long uncompressedSize(final byte[] bytes) {
+        if (bytes.length < 6 || (bytes[1] & 0xff) != OtpExternal.compressedTag) {
+            return bytes.length;
+        }
+        return 1 + ((bytes[2] & 0xffL) << 24 | (bytes[3] & 0xffL) << 16
+                | (bytes[4] & 0xffL) << 8 | bytes[5] & 0xffL);
+    }
+
+    private static boolean isZipped(final OtpErlangObject result) {
+        if (!(result instanceof OtpErlangTuple)) {
+            return false;
+        }
+        final OtpErlangTuple t = (OtpErlangTuple) result;
+        return t.arity() == 2 && RpcCompression.ZIPPED.equals(t.elementAt(0))
+                && t.elementAt(1) instanceof OtpErlangBitstr;
+    }
+
+    private static long cpuTime() {
+        if (RpcCompression.THREADS.isCurrentThreadCpuTimeSupported()) {
+            return RpcCompression.THREADS.getCurrentThreadCpuTime();
+        }
+        return System.nanoTime();
+    }
+
+}
@@ -8,30 +8,60 @@
  *******************************************************************************/
 package org.erlide.runtime.rpc;
 
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.erlide.runtime.internal.rpc.OtpRpc;
+import org.erlide.runtime.internal.rpc.RpcExecutors;
 import org.erlide.util.ErlLogger;
 
 import com.ericsson.otp.erlang.OtpErlangObject;
-import com.ericsson.otp.erlang.OtpErlangRef;
 import com.ericsson.otp.erlang.OtpMbox;
 import com.google.common.util.concurrent.ListenableFuture;
 
+/**
+ * The pending result of a RPC.
+ *
+ * <p>
+ * The result can be waited for with {@link #checkedGet(long, TimeUnit)}, or be acted upon
+ * when it arrives, through {@link #toCompletableFuture()} or
+ * {@link #addListener(Runnable, Executor)}. For the latter, the reply must be delivered
+ * by whoever receives it (see {@link #complete(OtpErlangObject)}); futures that read
+ * their reply from a private mailbox only complete when somebody waits for them.
+ * </p>
+ *
+ * <p>
+ * Waiting in vain doesn't end the call, the result can be waited for again. A call that
+ * is no longer wanted should be cancelled with {@link #cancel(boolean)}, which drops a
+ * late reply and, for calls sent on the {@link RpcPriority#BULK} lane, also stops the
+ * work on the runtime.
+ * </p>
+ */
 public class RpcFuture implements ListenableFuture<OtpErlangObject> {
 
     private final OtpMbox mbox;
-    private OtpErlangObject result;
     private final String env;
     private final boolean logCalls;
 
     private final IOtpRpc rpc;
-    private final OtpErlangRef ref;
+    private final RpcMetrics.Call call;
+    private final CompletableFuture<OtpErlangObject> completion = new CompletableFuture<>();
+    // set by whoever is using the private mailbox; the reply recycles it, so it stays set
+    private final AtomicBoolean mboxTaken = new AtomicBoolean();
 
-    public RpcFuture(final OtpErlangRef ref, final OtpMbox mbox, final String env,
+    /**
+     * @param call
+     *            where the call's statistics go, or null.
+     */
+    public RpcFuture(final RpcMetrics.Call call, final OtpMbox mbox, final String env,
             final boolean logCalls, final IOtpRpc rpc) {
-        this.ref = ref;
+        this.call = call;
 
         this.mbox = mbox;
         this.env = env;
@@ -39,6 +69,16 @@ public class RpcFuture implements ListenableFuture<OtpErlangObject> {
         this.rpc = rpc;
     }
 
+    /**
+     * For futures whose reply is not read from a private mailbox, but delivered by some
+     * other party through {@link #complete(OtpErlangObject)} or
+     * {@link #fail(RpcException)}.
+     */
+    protected RpcFuture(final RpcMetrics.Call call, final String env,
+            final boolean logCalls) {
+        this(call, null, env, logCalls, null);
+    }
+
     @Override
     public OtpErlangObject get() {
         try {
@@ -59,21 +99,58 @@ public class RpcFuture implements ListenableFuture<OtpErlangObject> {
 
     @Override
     public boolean isDone() {
-        return result != null;
+        return completion.isDone();
     }
 
     @Override
     public void addListener(final Runnable listener, final Executor executor) {
+        completion.whenCompleteAsync((result, failure) -> listener.run(), executor);
     }
 
+    /**
+     * Give up the call. A late reply is dropped, and threads waiting for the result get a
+     * {@link RpcException}.
+     *
+     * @return false if the call had already completed.
+     */
     @Override
     public boolean cancel(final boolean mayInterruptIfRunning) {
-        return false;
+        // unlike cancel(), this tells whether it was this call that cancelled it
+        if (!completion.completeExceptionally(new CancellationException())) {
+            return false;
+        }
+        if (call != null) {
+            call.failed();
+        }
+        cancelled();
+        return true;
     }
 
     @Override
     public boolean isCancelled() {
-        return false;
+        return completion.isCancelled();
+    }
+
+    /**
+     * The completion of this call. It completes exceptionally with a
+     * {@link RpcException} if the call fails or times out.
+     */
+    public CompletableFuture<OtpErlangObject> toCompletableFuture() {
+        return completion;
+    }
+
+    /**
+     * Fail the call with a {@link RpcTimeoutException} if no reply has arrived within the
+     * given time. The timeouts of all calls are kept by a single shared timer.
+     */
+    public RpcFuture failAfter(final long timeout, final TimeUnit unit) {
+        if (timeout == OtpRpc.INFINITY || completion.isDone()) {
+            return this;
+        }
+        final ScheduledFuture<?> timer = RpcExecutors.timer()
+                .schedule(() -> failTimedOut(), timeout, unit);
+        completion.whenComplete((result, failure) -> timer.cancel(false));
+        return this;
     }
 
     public OtpErlangObject checkedGet() throws RpcException {
@@ -86,18 +163,140 @@ public class RpcFuture implements ListenableFuture<OtpErlangObject> {
 
     public OtpErlangObject checkedGet(final long timeout, final TimeUnit unit)
             throws RpcException {
-        result = rpc.getRpcResult(mbox, TimeUnit.MILLISECONDS.convert(timeout, unit),
-                env);
-        if (isDone()) {
-            RpcMonitor.recordResponse(ref, result);
-            if (logCalls) {
-                final Object[] args0 = {
-                        result
-                };
-                ErlLogger.debug("call <- %s", args0);
-            }
+        final OtpErlangObject result = waitForResult(
+                TimeUnit.MILLISECONDS.convert(timeout, unit));
+        if (isCancelled()) {
+            throw cancelledException();
+        }
+        if (result != null) {
+            complete(result);
         }
         return result;
     }
 
+    /**
+     * Deliver the reply. Only the first reply or failure counts.
+     *
+     * @return true if this completed the call.
+     */
+    protected boolean complete(final OtpErlangObject result) {
+        if (completion.isDone()) {
+            return false;
+        }
+        if (call != null) {
+            call.completed();
+        }
+        if (logCalls) {
+            final Object[] args0 = {
+                    result
+            };
+            ErlLogger.debug("call <- %s", args0);
+        }
+        return completion.complete(result);
+    }
+
+    /**
+     * Fail the call. Only the first reply or failure counts.
+     *
+     * @return true if this completed the call.
+     */
+    protected boolean fail(final RpcException e) {
+        if (!completion.completeExceptionally(e)) {
+            return false;
+        }
+        if (call != null) {
+            if (e instanceof RpcTimeoutException) {
+                call.timedOut();
+            } else {
+                call.failed();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Count the size of the reply, in bytes.
+     */
+    protected void received(final int bytes) {
+        if (call != null) {
+            call.received(bytes);
+        }
+    }
+
+    /**
+     * Called when the call timed out before its reply arrived, so that a late reply can
+     * be dropped.
+     */
+    protected void timedOut() {
+    }
+
+    /**
+     * Called when the call was cancelled before its reply arrived, so that a late reply
+     * can be dropped.
+     */
+    protected void cancelled() {
+        if (mbox != null && mboxTaken.compareAndSet(false, true)) {
+            mbox.close();
+        }
+    }
+
+    protected RpcException cancelledException() {
+        return new RpcException("cancelled " + (env != null ? env : "??"));
+    }
+
+    private void failTimedOut() {
+        if (fail(new RpcTimeoutException(env != null ? env : "??"))) {
+            timedOut();
+        }
+    }
+
+    /**
+     * Block until the reply arrives or the timeout (in milliseconds) expires.
+     */
+    protected OtpErlangObject waitForResult(final long timeout) throws RpcException {
+        if (mbox != null && mboxTaken.compareAndSet(false, true)) {
+            try {
+                return rpc.getRpcResult(mbox, timeout, env);
+            } catch (final RpcTimeoutException e) {
+                // the caller may still try again, or cancel
+                mboxTaken.set(false);
+                if (isCancelled()) {
+                    cancelled();
+                    throw cancelledException();
+                }
+                if (call != null) {
+                    call.timedOut();
+                }
+                throw e;
+            }
+        }
+        try {
+            if (timeout != OtpRpc.INFINITY) {
+                try {
+                    return completion.get(timeout, TimeUnit.MILLISECONDS);
+                } catch (final TimeoutException e) {
+                    // the call goes on, the caller may still try again, or cancel
+                    throw new RpcTimeoutException(env != null ? env : "??");
+                }
+            }
+            return completion.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (final CancellationException e) {
+            throw cancelledException();
+        } catch (final ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof RpcException) {
+                throw (RpcException) cause;
+            }
+            throw new RpcException(cause instanceof Exception ? (Exception) cause
+                    : new Exception(cause));
+        }
+        throw new RpcTimeoutException(env != null ? env : "??");
+    }
+
+    protected String getEnv() {
+        return env;
+    }
+
 }
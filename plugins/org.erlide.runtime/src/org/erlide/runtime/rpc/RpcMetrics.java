@@ -0,0 +1,442 @@
+package org.erlide.runtime.rpc;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.erlide.util.ErlLogger;
+
+/**
+ * RPC statistics, always on. For each called function (<code>module:function/arity</code>)
+ * we keep the number of calls, failures and timeouts, the calls in flight, a latency
+ * histogram and the bytes sent and received, as they went over the wire. The same is
+ * kept for each {@link RpcPriority lane}, to see how the interactive calls fare.
+ *
+ * <p>
+ * Recording a call only updates counters: there are no locks and nothing is encoded
+ * again, so this can stay on in production. {@link #getStats()} takes a snapshot that
+ * can be inspected or exported; {@link #dump(PrintStream)} prints it as a table.
+ * </p>
+ */
+public final class RpcMetrics {
+
+    /**
+     * The latency histogram has buckets of growing width, in microseconds: each power of
+     * two is split in 8, so a bucket is at most 12.5% wide. Calls longer than 2^31 us
+     * (about 36 minutes) go to the last one.
+     */
+    public static final int BUCKETS = 232;
+
+    private static final Map<String, Function> functions = new ConcurrentHashMap<>();
+    private static volatile Function[] lanes = RpcMetrics.newLanes();
+
+    /**
+     * One call being recorded. It is finished by exactly one of {@link #completed()},
+     * {@link #failed()} or {@link #timedOut()}; later calls are ignored.
+     */
+    public static final class Call {
+        private static final AtomicIntegerFieldUpdater<Call> FINISHED = AtomicIntegerFieldUpdater
+                .newUpdater(Call.class, "finished");
+
+        private final Function function;
+        private final Function lane;
+        private final long start = System.nanoTime();
+        private volatile int finished;
+
+        Call(final Function function, final Function lane) {
+            this.function = function;
+            this.lane = lane;
+        }
+
+        public String getFunction() {
+            return function.name;
+        }
+
+        /**
+         * Count the bytes of the request, as told by <code>OtpMbox.sendSized</code>.
+         */
+        public void sent(final int bytes) {
+            if (bytes > 0) {
+                function.bytesSent.add(bytes);
+                lane.bytesSent.add(bytes);
+            }
+        }
+
+        public void received(final int bytes) {
+            if (bytes > 0) {
+                function.bytesReceived.add(bytes);
+                lane.bytesReceived.add(bytes);
+            }
+        }
+
+        public void completed() {
+            if (finish()) {
+                final long nanos = System.nanoTime() - start;
+                function.record(nanos);
+                lane.record(nanos);
+            }
+        }
+
+        public void failed() {
+            if (finish()) {
+                function.failures.increment();
+                lane.failures.increment();
+            }
+        }
+
+        public void timedOut() {
+            if (finish()) {
+                function.timeouts.increment();
+                lane.timeouts.increment();
+            }
+        }
+
+        private boolean finish() {
+            if (!Call.FINISHED.compareAndSet(this, 0, 1)) {
+                return false;
+            }
+            function.inFlight.decrementAndGet();
+            lane.inFlight.decrementAndGet();
+            return true;
+        }
+    }
+
+    /**
+     * A snapshot of the statistics of one function. Latencies are in microseconds.
+     */
+    public static final class FunctionStats {
+        private final String function;
+        private final long calls;
+        private final int inFlight;
+        private final long failures;
+        private final long timeouts;
+        private final long bytesSent;
+        private final long bytesReceived;
+        private final long totalLatency;
+        private final long maxLatency;
+        private final long[] histogram;
+
+        FunctionStats(final Function f) {
+            function = f.name;
+            calls = f.calls.sum();
+            inFlight = f.inFlight.get();
+            failures = f.failures.sum();
+            timeouts = f.timeouts.sum();
+            bytesSent = f.bytesSent.sum();
+            bytesReceived = f.bytesReceived.sum();
+            totalLatency = f.totalLatency.sum();
+            maxLatency = f.maxLatency.get();
+            histogram = new long[RpcMetrics.BUCKETS];
+            for (int i = 0; i < histogram.length; i++) {
+                histogram[i] = f.histogram.get(i);
+            }
+        }
+
+        public String getFunction() {
+            return function;
+        }
+
+        public long getCalls() {
+            return calls;
+        }
+
+        public int getInFlight() {
+            return inFlight;
+        }
+
+        public long getFailures() {
+            return failures;
+        }
+
+        public long getTimeouts() {
+            return timeouts;
+        }
+
+        public long getBytesSent() {
+            return bytesSent;
+        }
+
+        public long getBytesReceived() {
+            return bytesReceived;
+        }
+
+        /**
+         * Number of calls that got a reply.
+         */
+        public long getCompleted() {
+            long result = 0;
+            for (final long n : histogram) {
+                result += n;
+            }
+            return result;
+        }
+
+        public long getTotalLatency() {
+            return totalLatency;
+        }
+
+        public long getMeanLatency() {
+            final long completed = getCompleted();
+            return completed == 0 ? 0 : totalLatency / completed;
+        }
+
+        public long getMaxLatency() {
+            return maxLatency;
+        }
+
+        /**
+         * An upper bound of the given percentile (0..100) of the latency, within 12.5%.
+         */
+        public long getLatencyPercentile(final double percentile) {
+            final long completed = getCompleted();
+            if (completed == 0) {
+                return 0;
+            }
+            final long rank = (long) Math.ceil(completed * percentile / 100);
+            long seen = 0;
+            for (int i = 0; i < histogram.length; i++) {
+                seen += histogram[i];
+                if (seen >= rank && histogram[i] > 0) {
+                    return Math.min(RpcMetrics.upperBound(i), maxLatency);
+                }
+            }
+            return maxLatency;
+        }
+
+        /**
+         * The counts of the latency buckets, see {@link RpcMetrics#BUCKETS}.
+         */
+        public long[] getHistogram() {
+            return histogram.clone();
+        }
+
+        @SuppressWarnings("boxing")
+        @Override
+        public String toString() {
+            return String.format(
+                    "%s calls=%d inflight=%d failed=%d timeouts=%d out=%d in=%d "
+                            + "mean=%dus p50=%dus p99=%dus max=%dus",
+                    function, calls, inFlight, failures, timeouts, bytesSent,
+                    bytesReceived, getMeanLatency(), getLatencyPercentile(50),
+                    getLatencyPercentile(99), maxLatency);
+        }
+    }
+
+    private static final class Function {
+        final String name;
+        final LongAdder calls = new LongAdder();
+        final AtomicInteger inFlight = new AtomicInteger();
+        final LongAdder failures = new LongAdder();
+        final LongAdder timeouts = new LongAdder();
+        final LongAdder bytesSent = new LongAdder();
+        final LongAdder bytesReceived = new LongAdder();
+        final LongAdder totalLatency = new LongAdder();
+        final LongAccumulator maxLatency = new LongAccumulator(Math::max, 0);
+        final AtomicLongArray histogram = new AtomicLongArray(RpcMetrics.BUCKETS);
+
+        Function(final String name) {
+            this.name = name;
+        }
+
+        void record(final long nanos) {
+            final long micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+            histogram.incrementAndGet(RpcMetrics.bucket(micros));
+            totalLatency.add(micros);
+            maxLatency.accumulate(micros);
+        }
+    }
+
+    private RpcMetrics() {
+    }
+
+    /**
+     * Start recording an interactive call.
+     *
+     * @param function
+     *            the called function, as <code>module:function/arity</code>
+     */
+    public static Call start(final String function) {
+        return RpcMetrics.start(RpcPriority.INTERACTIVE, function);
+    }
+
+    /**
+     * Start recording a call made through the given lane.
+     */
+    public static Call start(final RpcPriority priority, final String function) {
+        final Function f = RpcMetrics.function(function);
+        final Function lane = RpcMetrics.lanes[priority.ordinal()];
+        f.calls.increment();
+        f.inFlight.incrementAndGet();
+        lane.calls.increment();
+        lane.inFlight.incrementAndGet();
+        return new Call(f, lane);
+    }
+
+    /**
+     * Count the bytes of a reply, when the call itself isn't at hand.
+     */
+    public static void received(final RpcPriority priority, final String function,
+            final int bytes) {
+        if (bytes > 0 && function != null) {
+            RpcMetrics.function(function).bytesReceived.add(bytes);
+            RpcMetrics.lanes[priority.ordinal()].bytesReceived.add(bytes);
+        }
+    }
+
+    /**
+     * @return a snapshot of the statistics of all the functions called so far, sorted by
+     *         the total time spent in them.
+     */
+    public static List<FunctionStats> getStats() {
+        final List<FunctionStats> result = new ArrayList<>();
+        for (final Function f : RpcMetrics.functions.values()) {
+            result.add(new FunctionStats(f));
+        }
+        Collections.sort(result,
+                (a, b) -> Long.compare(b.getTotalLatency(), a.getTotalLatency()));
+        return result;
+    }
+
+    /**
+     * @return a snapshot of the statistics of a function, or null if it wasn't called.
+     */
+    public static FunctionStats getStats(final String function) {
+        final Function f = RpcMetrics.functions.get(function);
+        return f == null ? null : new FunctionStats(f);
+    }
+
+    /**
+     * @return a snapshot of the statistics of all the calls made through a lane.
+     */
+    public static FunctionStats getStats(final RpcPriority priority) {
+        return new FunctionStats(RpcMetrics.lanes[priority.ordinal()]);
+    }
+
+    /**
+     * Forget everything recorded so far. Calls in flight aren't counted anymore.
+     */
+    public static void reset() {
+        RpcMetrics.functions.clear();
+        RpcMetrics.lanes = RpcMetrics.newLanes();
+        RpcCompression.reset();
+    }
+
+    private static Function[] newLanes() {
+        final RpcPriority[] priorities = RpcPriority.values();
+        final Function[] result = new Function[priorities.length];
+        for (final RpcPriority priority : priorities) {
+            result[priority.ordinal()] = new Function(
+                    "(" + priority.getLabel() + " lane)");
+        }
+        return result;
+    }
+
+    public static void dump(final String fileName) {
+        try (final PrintStream os = new PrintStream(
+                new FileOutputStream(fileName, true))) {
+            RpcMetrics.dump(os);
+        } catch (final FileNotFoundException e) {
+            ErlLogger.error(e);
+        }
+    }
+
+    @SuppressWarnings("boxing")
+    public static void dump(final PrintStream out) {
+        final String delim = "--------------------------------------------------------------";
+        final List<FunctionStats> stats = RpcMetrics.getStats();
+        long calls = 0;
+        int inFlight = 0;
+        for (final FunctionStats s : stats) {
+            calls += s.getCalls();
+            inFlight += s.getInFlight();
+        }
+
+        out.println("\n" + delim);
+        out.format("*** RPC statistics%n - %d calls to %d functions, %d in flight%n",
+                calls, stats.size(), inFlight);
+        out.println(delim);
+        out.format("%-45s %8s %5s %5s %5s %10s %10s %8s %8s %8s %8s%n", "function",
+                "calls", "run", "fail", "tmo", "out", "in", "mean us", "p50 us",
+                "p99 us", "max us");
+        final List<FunctionStats> rows = new ArrayList<>();
+        for (final RpcPriority priority : RpcPriority.values()) {
+            rows.add(RpcMetrics.getStats(priority));
+        }
+        rows.addAll(stats);
+        for (final FunctionStats s : rows) {
+            out.format("%-45s %8d %5d %5d %5d %10d %10d %8d %8d %8d %8d%n",
+                    s.getFunction(), s.getCalls(), s.getInFlight(), s.getFailures(),
+                    s.getTimeouts(), s.getBytesSent(), s.getBytesReceived(),
+                    s.getMeanLatency(), s.getLatencyPercentile(50),
+                    s.getLatencyPercentile(99), s.getMaxLatency());
+        }
+        if (RpcCompression.getBytesBefore() > 0) {
+            out.println(delim);
+            out.format(
+                    "compressed %d calls and %d replies, %d bytes saved, "
+                            + "%d us compressing and %d us unpacking%n",
+                    RpcCompression.getCompressedArguments(),
+                    RpcCompression.getCompressedResults(),
+                    RpcCompression.getBytesSaved(),
+                    RpcCompression.getCompressTime() / 1000,
+                    RpcCompression.getDecompressTime() / 1000);
+        }
+        out.println(delim);
+        out.flush();
+    }
+
+    public static void cleanupOldLogs(final String dirName, final String prefix) {
+        final File dir = new File(dirName);
+        for (final File f : dir.listFiles()) {
+            final long now = System.currentTimeMillis();
+            final int aWeek = 7 * 24 * 3600 * 1000;
+            if (f.getName().startsWith(prefix) && now - f.lastModified() > aWeek) {
+                f.delete();
+            }
+        }
+    }
+
+    static int bucket(final long micros) {
+        if (micros < 8) {
+            return (int) Math.max(0, micros);
+        }
+        final int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        final int bucket = (exponent - 2 << 3) + (int) (micros >>> exponent - 3 & 7);
+        return Math.min(RpcMetrics.BUCKETS - 1, bucket);
+    }
+
+    /*
+     * The largest latency that goes in the bucket.
+     */
+    static long upperBound(final int bucket) {
+        if (bucket < 8) {
+            return bucket;
+        }
+        final int shift = (bucket >>> 3) - 1;
+        return ((8L + (bucket & 7) + 1) << shift) - 1;
+    }
+
+    private static Function function(final String name) {
+        Function f = RpcMetrics.functions.get(name);
+        if (f == null) {
+            final Function created = new Function(name);
+            f = RpcMetrics.functions.putIfAbsent(name, created);
+            if (f == null) {
+                f = created;
+            }
+        }
+        return f;
+    }
+}
@@ -0,0 +1,21 @@
+package org.erlide.runtime.rpc;
+
+/**
+ * The lane a call goes through, see {@link IOtpRpc#withPriority(RpcPriority)}.
+ */
+public enum RpcPriority {
+    /**
+     * Short calls that someone is waiting for, like scanning while typing.
+     */
+    INTERACTIVE,
+    /**
+     * Long calls or large transfers, like building or searching, that shouldn't hold
+     * back the interactive ones. These calls can be cancelled: the process running them
+     * on the runtime is stopped when they are cancelled or pass their deadline.
+     */
+    BULK;
+
+    public String getLabel() {
+        return name().toLowerCase();
+    }
+}
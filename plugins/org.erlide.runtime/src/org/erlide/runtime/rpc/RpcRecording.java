@@ -0,0 +1,278 @@
+package org.erlide.runtime.rpc;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.erlide.util.erlang.Converters;
+import org.erlide.util.erlang.OtpErlang;
+import org.erlide.util.erlang.SignatureException;
+
+import com.ericsson.otp.erlang.OtpErlangAtom;
+import com.ericsson.otp.erlang.OtpErlangDecodeException;
+import com.ericsson.otp.erlang.OtpErlangList;
+import com.ericsson.otp.erlang.OtpErlangLong;
+import com.ericsson.otp.erlang.OtpErlangObject;
+import com.ericsson.otp.erlang.OtpErlangRangeException;
+import com.ericsson.otp.erlang.OtpErlangString;
+import com.ericsson.otp.erlang.OtpErlangTuple;
+import com.ericsson.otp.erlang.OtpExternal;
+import com.ericsson.otp.erlang.OtpInputStream;
+import com.ericsson.otp.erlang.OtpOutputStream;
+
+/**
+ * The replies to a run's RPCs, recorded by {@link RecordingOtpRpc} and served again by
+ * {@link ReplayOtpRpc}, so that the Java side can be run and measured without a
+ * runtime.
+ *
+ * <p>
+ * Replies are keyed by <code>module:function</code> and the encoded arguments. When a
+ * call was made several times, the replies are served in the order they were recorded,
+ * and the last one is repeated. Along with each reply, the time the call took is kept.
+ * </p>
+ *
+ * <p>
+ * The file is a single compressed term in external format:
+ * <code>{erlide_rpc_recording, Version, NodeName, [{M, F, Args, Reply, Micros}]}</code>.
+ * Failed calls have <code>{'$erlide_rpc_error', Message}</code> as reply, and calls
+ * that report their progress (see {@link IOtpRpc#async_call_result}) have
+ * <code>{'$erlide_rpc_reports', [{start | progress | stop, Msg}]}</code>.
+ * </p>
+ */
+public final class RpcRecording {
+
+    /**
+     * Record the RPCs of this run into the given file.
+     */
+    public static final String RECORD_FILE = System.getProperty("erlide.rpc.record");
+    /**
+     * Don't start any runtime, answer the RPCs from the given recording.
+     */
+    public static final String REPLAY_FILE = System.getProperty("erlide.rpc.replay");
+    /**
+     * How much of the recorded time a replayed call takes: 0 for none, 1 for as much as
+     * it took when recorded.
+     */
+    public static final double REPLAY_LATENCY = Double
+            .parseDouble(System.getProperty("erlide.rpc.replay.latency", "0"));
+
+    static final OtpErlangAtom ERROR = new OtpErlangAtom("$erlide_rpc_error");
+    static final OtpErlangAtom REPORTS = new OtpErlangAtom("$erlide_rpc_reports");
+
+    private static final OtpErlangAtom TAG = new OtpErlangAtom("erlide_rpc_recording");
+    private static final int VERSION = 1;
+    private static final int COMPRESSION_LEVEL = 6;
+
+    /**
+     * A recorded reply.
+     */
+    public static final class Reply {
+        private final OtpErlangObject value;
+        private final long micros;
+
+        Reply(final OtpErlangObject value, final long micros) {
+            this.value = value;
+            this.micros = micros;
+        }
+
+        public OtpErlangObject getValue() {
+            return value;
+        }
+
+        /**
+         * How long the call took when it was recorded.
+         */
+        public long getMicros() {
+            return micros;
+        }
+
+        /**
+         * @return the error message, if the call failed; null otherwise.
+         */
+        public String getError() {
+            if (RpcRecording.isTagged(value, RpcRecording.ERROR)) {
+                return ((OtpErlangString) ((OtpErlangTuple) value).elementAt(1))
+                        .stringValue();
+            }
+            return null;
+        }
+
+        /**
+         * @return the progress reports, if the call made any; null otherwise.
+         */
+        public OtpErlangList getReports() {
+            if (RpcRecording.isTagged(value, RpcRecording.REPORTS)) {
+                return (OtpErlangList) ((OtpErlangTuple) value).elementAt(1);
+            }
+            return null;
+        }
+    }
+
+    private static final String NO_NODE = "nonode@nohost";
+
+    private volatile String nodeName;
+    // in the order they were recorded, for saving
+    private final List<OtpErlangObject> entries = new ArrayList<>();
+    // by the encoding of {M, F, Args}, so that strings match the lists they decode to
+    private final Map<ByteBuffer, List<Reply>> replies = new HashMap<>();
+    private final Map<ByteBuffer, Integer> served = new HashMap<>();
+
+    /**
+     * @param nodeName
+     *            the node the calls are made to, or null to take it from the first batch
+     */
+    public RpcRecording(final String nodeName) {
+        this.nodeName = nodeName;
+    }
+
+    /**
+     * The node the calls were made to; it shows up in the arguments of batches.
+     */
+    public String getNodeName() {
+        final String name = nodeName;
+        return name != null ? name : RpcRecording.NO_NODE;
+    }
+
+    synchronized void usedNode(final String name) {
+        if (nodeName == null) {
+            nodeName = name;
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public void record(final String m, final String f, final OtpErlangObject[] args,
+            final OtpErlangObject reply, final long micros) {
+        final OtpErlangTuple call = RpcRecording.call(m, f, args);
+        final ByteBuffer key = RpcRecording.key(call);
+        synchronized (this) {
+            entries.add(OtpErlang.mkTuple(call.elementAt(0), call.elementAt(1),
+                    call.elementAt(2), reply, new OtpErlangLong(micros)));
+            add(key, new Reply(reply, micros));
+        }
+    }
+
+    public void recordError(final String m, final String f, final OtpErlangObject[] args,
+            final String message, final long micros) {
+        record(m, f, args, OtpErlang.mkTuple(RpcRecording.ERROR,
+                new OtpErlangString(message != null ? message : "")), micros);
+    }
+
+    public void recordReports(final String m, final String f,
+            final OtpErlangObject[] args, final List<OtpErlangObject> reports,
+            final long micros) {
+        record(m, f, args, OtpErlang.mkTuple(RpcRecording.REPORTS,
+                OtpErlang.mkList(reports)), micros);
+    }
+
+    /**
+     * @return the next reply to this call, or null if it wasn't recorded.
+     */
+    public synchronized Reply next(final String m, final String f,
+            final OtpErlangObject[] args) {
+        final ByteBuffer key = RpcRecording.key(RpcRecording.call(m, f, args));
+        final List<Reply> list = replies.get(key);
+        if (list == null) {
+            return null;
+        }
+        final int n = served.getOrDefault(key, 0);
+        served.put(key, n + 1);
+        return list.get(Math.min(n, list.size() - 1));
+    }
+
+    /**
+     * Serve the replies from the start again.
+     */
+    public synchronized void rewind() {
+        served.clear();
+    }
+
+    @SuppressWarnings("resource")
+    public void save(final File file) throws IOException {
+        final OtpErlangObject term;
+        synchronized (this) {
+            term = OtpErlang.mkTuple(RpcRecording.TAG,
+                    new OtpErlangLong(RpcRecording.VERSION),
+                    new OtpErlangAtom(getNodeName()), OtpErlang.mkList(entries));
+        }
+        final OtpOutputStream out = new OtpOutputStream();
+        out.write1(OtpExternal.versionTag);
+        out.write_compressed(term, RpcRecording.COMPRESSION_LEVEL);
+        Files.write(file.toPath(), out.toByteArray());
+    }
+
+    @SuppressWarnings("resource")
+    public static RpcRecording load(final File file) throws IOException {
+        try {
+            final OtpErlangObject term = new OtpInputStream(
+                    Files.readAllBytes(file.toPath())).read_any();
+            if (!RpcRecording.isTagged(term, RpcRecording.TAG)
+                    || ((OtpErlangTuple) term).arity() != 4) {
+                throw new IOException("Not an RPC recording: " + file);
+            }
+            final OtpErlangTuple t = (OtpErlangTuple) term;
+            final int version = ((OtpErlangLong) t.elementAt(1)).intValue();
+            if (version != RpcRecording.VERSION) {
+                throw new IOException(
+                        "Unsupported RPC recording version " + version + ": " + file);
+            }
+            final RpcRecording result = new RpcRecording(
+                    ((OtpErlangAtom) t.elementAt(2)).atomValue());
+            for (final OtpErlangObject e : (OtpErlangList) t.elementAt(3)) {
+                final OtpErlangTuple entry = (OtpErlangTuple) e;
+                final ByteBuffer key = RpcRecording.key(OtpErlang.mkTuple(
+                        entry.elementAt(0), entry.elementAt(1), entry.elementAt(2)));
+                result.entries.add(entry);
+                result.add(key, new Reply(entry.elementAt(3),
+                        ((OtpErlangLong) entry.elementAt(4)).longValue()));
+            }
+            return result;
+        } catch (final OtpErlangDecodeException | OtpErlangRangeException
+                | ClassCastException e) {
+            throw new IOException("Not an RPC recording: " + file, e);
+        }
+    }
+
+    /**
+     * Convert the arguments of a call as it would be sent.
+     */
+    static OtpErlangObject[] convert(final String signature, final Object... args)
+            throws RpcException {
+        final Object[] args0 = args == null ? new Object[] {} : args;
+        try {
+            return Converters.convert(Converters.forSignature(signature, args0.length),
+                    args0);
+        } catch (final SignatureException e) {
+            throw new RpcException(e);
+        }
+    }
+
+    private void add(final ByteBuffer key, final Reply reply) {
+        replies.computeIfAbsent(key, k -> new ArrayList<>()).add(reply);
+    }
+
+    private static OtpErlangTuple call(final String m, final String f,
+            final OtpErlangObject[] args) {
+        return OtpErlang.mkTuple(new OtpErlangAtom(m), new OtpErlangAtom(f),
+                new OtpErlangList(args));
+    }
+
+    @SuppressWarnings("resource")
+    private static ByteBuffer key(final OtpErlangTuple call) {
+        return ByteBuffer.wrap(new OtpOutputStream(call).toByteArray());
+    }
+
+    private static boolean isTagged(final OtpErlangObject term,
+            final OtpErlangAtom tag) {
+        return term instanceof OtpErlangTuple && ((OtpErlangTuple) term).arity() > 1
+                && tag.equals(((OtpErlangTuple) term).elementAt(0));
+    }
+
+}
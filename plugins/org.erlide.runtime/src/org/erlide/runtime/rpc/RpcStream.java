@@ -0,0 +1,289 @@
+package org.erlide.runtime.rpc;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.erlide.runtime.internal.rpc.RpcRequest;
+
+import com.ericsson.otp.erlang.OtpErlangAtom;
+import com.ericsson.otp.erlang.OtpErlangDecodeException;
+import com.ericsson.otp.erlang.OtpErlangExit;
+import com.ericsson.otp.erlang.OtpErlangObject;
+import com.ericsson.otp.erlang.OtpErlangPid;
+import com.ericsson.otp.erlang.OtpErlangRef;
+import com.ericsson.otp.erlang.OtpErlangTuple;
+import com.ericsson.otp.erlang.OtpLazyTerm;
+import com.ericsson.otp.erlang.OtpMbox;
+import com.ericsson.otp.erlang.OtpMsg;
+import com.google.common.collect.Lists;
+
+/**
+ * The result of a call that returns a long list, handed out one element at a time. The
+ * runtime sends the list in chunks of at most {@link #CHUNK_SIZE} elements, and stops
+ * when {@link #WINDOW} of them haven't been taken from the stream yet (see
+ * {@link RpcRequest#buildStream}). The chunks stay encoded and each element is decoded
+ * when it is asked for. A result <code>{ok, List}</code> is handled like
+ * <code>List</code>.
+ *
+ * <p>
+ * Errors, timeouts and results that aren't lists end the iteration and are thrown by
+ * {@link #close()}, so a stream is meant to be used in a try-with-resources block.
+ * Closing or cancelling it early stops the process that sends the chunks. A stream is
+ * used by a single thread.
+ * </p>
+ */
+public final class RpcStream implements Iterator<OtpErlangObject>, AutoCloseable {
+
+    /**
+     * The most elements sent in a chunk.
+     */
+    public static final int CHUNK_SIZE = 256;
+    /**
+     * How many chunks the runtime sends before waiting for one to be taken.
+     */
+    public static final int WINDOW = 4;
+
+    private static final OtpErlangAtom ACK = new OtpErlangAtom("ack");
+
+    private final OtpMbox mbox;
+    private final OtpErlangRef ref;
+    private final long timeout;
+    private final String env;
+    private final RpcMetrics.Call call;
+
+    private Iterator<OtpLazyTerm> elements = Collections.emptyIterator();
+    private OtpErlangObject next;
+    // the chunks taken so far, and how many were sent, once the reply tells
+    private int chunks;
+    private long sent = -1;
+    private RpcException error;
+    // no more messages are expected, the mailbox is given up
+    private boolean finished;
+    private boolean closed;
+
+    /**
+     * @param mbox
+     *            where the chunks and the reply are expected, it is given up at the end
+     * @param ref
+     *            the tag of the chunks
+     * @param timeout
+     *            how long to wait for each chunk, in milliseconds
+     */
+    public RpcStream(final OtpMbox mbox, final OtpErlangRef ref, final long timeout,
+            final String env, final RpcMetrics.Call call) {
+        this.mbox = mbox;
+        this.ref = ref;
+        this.timeout = timeout;
+        this.env = env;
+        this.call = call;
+    }
+
+    /**
+     * A stream over a result that is already here, like a replayed one (see
+     * {@link ReplayOtpRpc}).
+     */
+    public static RpcStream of(final OtpErlangObject result, final String env) {
+        final RpcStream stream = new RpcStream(null, null, 0, env, null);
+        stream.finished = true;
+        try {
+            stream.handle(new OtpLazyTerm(result));
+        } catch (final OtpErlangDecodeException e) {
+            stream.fail(new RpcException(e));
+        }
+        return stream;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next != null) {
+            return true;
+        }
+        while (!elements.hasNext()) {
+            if (finished) {
+                return false;
+            }
+            receive();
+        }
+        try {
+            next = elements.next().decode();
+            return true;
+        } catch (final OtpErlangDecodeException e) {
+            cancel();
+            fail(new RpcException(e));
+            return false;
+        }
+    }
+
+    @Override
+    public OtpErlangObject next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        final OtpErlangObject result = next;
+        next = null;
+        return result;
+    }
+
+    /**
+     * The elements left of the chunk that came last, or of the next one, so that they
+     * can be handled together.
+     *
+     * @return an empty list at the end of the stream
+     */
+    public List<OtpErlangObject> nextChunk() {
+        final List<OtpErlangObject> result = Lists.newArrayList();
+        if (!hasNext()) {
+            return result;
+        }
+        result.add(next());
+        while (elements.hasNext() && hasNext()) {
+            result.add(next());
+        }
+        return result;
+    }
+
+    /**
+     * @return the error that ended the stream, or null.
+     */
+    public RpcException getError() {
+        return error;
+    }
+
+    /**
+     * Drop what is left and stop the runtime from sending more.
+     *
+     * @return true if the call was still running
+     */
+    public boolean cancel() {
+        elements = Collections.emptyIterator();
+        next = null;
+        if (finished) {
+            return false;
+        }
+        finished = true;
+        call.failed();
+        // the process that sends the chunks is linked to the mailbox
+        mbox.exit(RpcRequest.CANCELLED);
+        return true;
+    }
+
+    /**
+     * Drop what is left of the reply, see {@link #cancel()}.
+     *
+     * @throws RpcException
+     *             if the call failed; only the first time
+     */
+    @Override
+    public void close() throws RpcException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        cancel();
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    private void receive() {
+        try {
+            final OtpMsg msg = receiveMsg();
+            if (msg == null) {
+                finished = true;
+                mbox.exit(RpcRequest.TIMEOUT);
+                call.timedOut();
+                fail(new RpcTimeoutException(env));
+                return;
+            }
+            call.received(msg.size());
+            final OtpLazyTerm m = msg.getLazyMsg();
+            if (isChunk(m)) {
+                // let the runtime send the next one while this one is used
+                final OtpErlangPid sender = (OtpErlangPid) m.elementAt(2).decode();
+                mbox.send(sender, new OtpErlangTuple(new OtpErlangObject[] { ref,
+                        RpcStream.ACK }));
+                chunks++;
+                elements = m.elementAt(3).elements().iterator();
+            } else if (m.isTuple() && m.arity() == 2 && m.elementAt(0).isAtom("rex")) {
+                final OtpLazyTerm reply = RpcCompression.decode(m.elementAt(1));
+                if (isDone(reply)) {
+                    sent = reply.elementAt(2).longValue();
+                } else {
+                    // not a list, or the call failed
+                    finished = true;
+                    mbox.close();
+                    handle(reply);
+                    return;
+                }
+            } else {
+                finished = true;
+                mbox.exit(RpcRequest.CANCELLED);
+                call.failed();
+                fail(new RpcException(m.toString()));
+                return;
+            }
+            // the reply may come before the last chunks
+            if (chunks == sent) {
+                finished = true;
+                mbox.recycle();
+                call.completed();
+            }
+        } catch (final OtpErlangExit | OtpErlangDecodeException e) {
+            // the sender died, or the message can't be read
+            finished = true;
+            mbox.close();
+            call.failed();
+            fail(new RpcException(e));
+        }
+    }
+
+    private boolean isChunk(final OtpLazyTerm m) throws OtpErlangDecodeException {
+        return m.isTuple() && m.arity() == 4 && m.elementAt(1).isAtom("chunk")
+                && ref.equals(m.elementAt(0).decode());
+    }
+
+    private boolean isDone(final OtpLazyTerm reply) throws OtpErlangDecodeException {
+        return reply.isTuple() && reply.arity() == 3 && reply.elementAt(1).isAtom("done")
+                && ref.equals(reply.elementAt(0).decode());
+    }
+
+    private void handle(final OtpLazyTerm reply) throws OtpErlangDecodeException {
+        OtpLazyTerm result = reply;
+        if (result.isTuple() && result.arity() == 2 && result.elementAt(0).isAtom("ok")) {
+            result = result.elementAt(1);
+        }
+        if (!result.isList()) {
+            final boolean badRpc = result.isTuple() && result.arity() > 0
+                    && result.elementAt(0).isAtom("badrpc");
+            if (call != null) {
+                call.failed();
+            }
+            fail(new RpcException((badRpc ? "Bad RPC: " : env + " returned ") + result));
+            return;
+        }
+        elements = result.elements().iterator();
+        if (call != null) {
+            call.completed();
+        }
+    }
+
+    private OtpMsg receiveMsg() throws OtpErlangExit {
+        if (timeout == Long.MAX_VALUE) {
+            return mbox.receiveMsg();
+        }
+        try {
+            return mbox.receiveMsg(timeout);
+        } catch (final InterruptedException e) {
+            // that's how a timeout is reported
+            return null;
+        }
+    }
+
+    private void fail(final RpcException e) {
+        error = e;
+        finished = true;
+        elements = Collections.emptyIterator();
+    }
+}
@@ -2,6 +2,7 @@ package org.erlide.ui.internal.search;
 
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
@@ -17,6 +18,8 @@ import org.erlide.engine.services.search.ErlangSearchPattern;
 import org.erlide.engine.services.search.ModuleLineFunctionArityRef;
 import org.erlide.runtime.rpc.IRpcResultCallback;
 import org.erlide.runtime.rpc.RpcException;
+import org.erlide.runtime.rpc.RpcFuture;
+import org.erlide.runtime.rpc.RpcTimeoutException;
 import org.erlide.ui.internal.ErlideUIPlugin;
 
 import com.ericsson.otp.erlang.OtpErlangLong;
@@ -28,13 +31,17 @@ import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 
 public class ErlSearchQuery implements ISearchQuery {
+    // how often to check whether the user cancelled the search, in milliseconds
+    private static final long CANCEL_POLL_INTERVAL = 200;
+
     private final ErlangSearchPattern pattern;
     private final ErlSearchScope scope;
     private final Map<String, IErlModule> pathToModuleMap;
     private ErlangSearchResult fSearchResult;
 
     private final String scopeDescription;
-    private boolean stopped;
+    // the process doing the search on the backend, known after the first results
+    private volatile OtpErlangPid searchPid;
 
     public ErlSearchQuery(final ErlangSearchPattern pattern, final ErlSearchScope scope,
             final String scopeDescription) {
@@ -83,7 +90,7 @@ public class ErlSearchQuery implements ISearchQuery {
 
     @Override
     public IStatus run(final IProgressMonitor monitor) throws OperationCanceledException {
-        final Object locker = new Object();
+        searchPid = null;
         final IRpcResultCallback callback = new IRpcResultCallback() {
 
             @Override
@@ -104,16 +111,12 @@ public class ErlSearchQuery implements ISearchQuery {
             @Override
             public void stop(final OtpErlangObject msg) {
                 monitor.done();
-                stopped = true;
-                synchronized (locker) {
-                    locker.notifyAll();
-                }
             }
 
             @Override
             public void progress(final OtpErlangObject msg) {
                 final OtpErlangTuple t = (OtpErlangTuple) msg;
-                final OtpErlangPid backgroundSearchPid = (OtpErlangPid) t.elementAt(0);
+                searchPid = (OtpErlangPid) t.elementAt(0);
                 final OtpErlangLong progressL = (OtpErlangLong) t.elementAt(1);
                 final OtpErlangObject resultO = t.elementAt(2);
                 int progress = 1;
@@ -125,35 +128,48 @@ public class ErlSearchQuery implements ISearchQuery {
                 } catch (final OtpErlangRangeException e) {
                 }
                 monitor.worked(progress);
-                if (monitor.isCanceled()) {
-                    try {
-                        ErlangEngine.getInstance().getSearchServerService()
-                                .cancelSearch(backgroundSearchPid);
-                    } catch (final RpcException e) {
-                    }
-                }
             }
 
         };
+        final RpcFuture search;
         try {
             final ErlSearchScope reducedScope = pattern.reduceScope(scope);
-            ErlangEngine.getInstance().getSearchServerService().startFindRefs(pattern,
-                    reducedScope, ErlangEngine.getInstance().getStateDir(), callback,
-                    false);
+            search = ErlangEngine.getInstance().getSearchServerService().startFindRefs(
+                    pattern, reducedScope, ErlangEngine.getInstance().getStateDir(),
+                    callback, false);
         } catch (final RpcException e) {
             return new Status(IStatus.ERROR, ErlideUIPlugin.PLUGIN_ID, "Search error", e);
         }
-        while (!stopped) {
-            synchronized (locker) {
-                try {
-                    if (!stopped) {
-                        locker.wait();
-                    }
-                } catch (final InterruptedException e) {
+        while (true) {
+            try {
+                search.checkedGet(ErlSearchQuery.CANCEL_POLL_INTERVAL,
+                        TimeUnit.MILLISECONDS);
+                return Status.OK_STATUS;
+            } catch (final RpcTimeoutException e) {
+                if (monitor.isCanceled()) {
+                    cancelSearch(search);
+                    monitor.done();
+                    return Status.CANCEL_STATUS;
                 }
+            } catch (final RpcException e) {
+                return new Status(IStatus.ERROR, ErlideUIPlugin.PLUGIN_ID,
+                        "Search error", e);
+            }
+        }
+    }
+
+    /*
+     * Stop the search on the backend and drop the results that are still coming.
+     */
+    private void cancelSearch(final RpcFuture search) {
+        final OtpErlangPid pid = searchPid;
+        if (pid != null) {
+            try {
+                ErlangEngine.getInstance().getSearchServerService().cancelSearch(pid);
+            } catch (final RpcException e) {
             }
         }
-        return Status.OK_STATUS;
+        search.cancel(true);
     }
 
     private void addMatches(final List<ModuleLineFunctionArityRef> chunk) {
@@ -0,0 +1,148 @@
+package org.erlide.ui.views;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.jface.action.Action;
+import org.eclipse.jface.action.IToolBarManager;
+import org.eclipse.jface.viewers.ArrayContentProvider;
+import org.eclipse.jface.viewers.ITableLabelProvider;
+import org.eclipse.jface.viewers.LabelProvider;
+import org.eclipse.jface.viewers.TableViewer;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.graphics.Image;
+import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Table;
+import org.eclipse.swt.widgets.TableColumn;
+import org.eclipse.ui.ISharedImages;
+import org.eclipse.ui.PlatformUI;
+import org.eclipse.ui.part.ViewPart;
+import org.erlide.runtime.rpc.RpcMetrics;
+import org.erlide.runtime.rpc.RpcMetrics.FunctionStats;
+import org.erlide.runtime.rpc.RpcPriority;
+
+/**
+ * Shows the {@link RpcMetrics} of each lane and of the called functions, refreshed
+ * every few seconds.
+ */
+public class RpcMetricsView extends ViewPart {
+
+    private static final int REFRESH_INTERVAL = 2000;
+
+    private static final String[] COLUMNS = {
+            "Function", "Calls", "In flight", "Failed", "Timeouts", "Bytes out",
+            "Bytes in", "Mean (us)", "p50 (us)", "p99 (us)", "Max (us)"
+    };
+
+    TableViewer viewer;
+
+    static class ViewLabelProvider extends LabelProvider implements ITableLabelProvider {
+
+        @Override
+        public String getColumnText(final Object obj, final int index) {
+            final FunctionStats s = (FunctionStats) obj;
+            switch (index) {
+            case 0:
+                return s.getFunction();
+            case 1:
+                return Long.toString(s.getCalls());
+            case 2:
+                return Integer.toString(s.getInFlight());
+            case 3:
+                return Long.toString(s.getFailures());
+            case 4:
+                return Long.toString(s.getTimeouts());
+            case 5:
+                return Long.toString(s.getBytesSent());
+            case 6:
+                return Long.toString(s.getBytesReceived());
+            case 7:
+                return Long.toString(s.getMeanLatency());
+            case 8:
+                return Long.toString(s.getLatencyPercentile(50));
+            case 9:
+                return Long.toString(s.getLatencyPercentile(99));
+            default:
+                return Long.toString(s.getMaxLatency());
+            }
+        }
+
+        @Override
+        public Image getColumnImage(final Object obj, final int index) {
+            return null;
+        }
+    }
+
+    private final Runnable refresher = new Runnable() {
+        @Override
+        public void run() {
+            if (viewer == null || viewer.getControl().isDisposed()) {
+                return;
+            }
+            refresh();
+            viewer.getControl().getDisplay()
+                    .timerExec(RpcMetricsView.REFRESH_INTERVAL, this);
+        }
+    };
+
+    @Override
+    public void createPartControl(final Composite parent) {
+        viewer = new TableViewer(parent, SWT.SINGLE | SWT.V_SCROLL | SWT.FULL_SELECTION);
+        final Table t = viewer.getTable();
+        for (int i = 0; i < RpcMetricsView.COLUMNS.length; i++) {
+            final TableColumn column = new TableColumn(t, i == 0 ? SWT.LEAD : SWT.TRAIL);
+            column.setText(RpcMetricsView.COLUMNS[i]);
+            column.setWidth(i == 0 ? 300 : 80);
+        }
+        t.setLinesVisible(true);
+        t.setHeaderVisible(true);
+        viewer.setContentProvider(ArrayContentProvider.getInstance());
+        viewer.setLabelProvider(new ViewLabelProvider());
+
+        contributeToActionBars();
+        refresher.run();
+    }
+
+    void refresh() {
+        final List<FunctionStats> stats = new ArrayList<>();
+        for (final RpcPriority priority : RpcPriority.values()) {
+            stats.add(RpcMetrics.getStats(priority));
+        }
+        stats.addAll(RpcMetrics.getStats());
+        viewer.setInput(stats);
+    }
+
+    private void contributeToActionBars() {
+        final IToolBarManager manager = getViewSite().getActionBars()
+                .getToolBarManager();
+        final Action refreshAction = new Action() {
+            @Override
+            public void run() {
+                refresh();
+            }
+        };
+        refreshAction.setText("Refresh");
+        refreshAction.setToolTipText("Refresh RPC statistics");
+        refreshAction.setImageDescriptor(PlatformUI.getWorkbench().getSharedImages()
+                .getImageDescriptor(ISharedImages.IMG_OBJS_INFO_TSK));
+        manager.add(refreshAction);
+
+        final Action resetAction = new Action() {
+            @Override
+            public void run() {
+                RpcMetrics.reset();
+                refresh();
+            }
+        };
+        resetAction.setText("Reset");
+        resetAction.setToolTipText("Forget the RPC statistics collected so far");
+        resetAction.setImageDescriptor(PlatformUI.getWorkbench().getSharedImages()
+                .getImageDescriptor(ISharedImages.IMG_ETOOL_CLEAR));
+        manager.add(resetAction);
+    }
+
+    @Override
+    public void setFocus() {
+        viewer.getControl().setFocus();
+    }
+}
@@ -8,6 +8,13 @@
  *******************************************************************************/
 package org.erlide.ui.views.processlist;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.jface.action.Action;
 import org.eclipse.jface.action.IMenuManager;
 import org.eclipse.jface.action.IToolBarManager;
@@ -40,7 +47,9 @@ import org.eclipse.ui.part.ViewPart;
 import org.erlide.backend.BackendCore;
 import org.erlide.backend.api.IBackend;
 import org.erlide.engine.ErlangEngine;
+import org.erlide.runtime.api.IOtpNodeProxy;
 import org.erlide.runtime.events.ErlEvent;
+import org.erlide.runtime.events.ErlEventDispatcher.OverflowPolicy;
 import org.erlide.runtime.events.ErlangEventHandler;
 import org.erlide.runtime.rpc.IOtpRpc;
 import org.erlide.ui.util.DisplayUtils;
@@ -67,6 +76,9 @@ public class ProcessListView extends ViewPart {
     TableViewer viewer;
     private Action refreshAction;
     Action doubleClickAction;
+    // what the table shows, only touched in the UI thread
+    final List<OtpErlangObject> processes = new ArrayList<>();
+    ProcessLoader loader;
 
     /*
      * The content provider class is responsible for providing objects to the view. It can
@@ -79,7 +91,11 @@ public class ProcessListView extends ViewPart {
         private final ProcessEventHandler handler = new ProcessEventHandler();
 
         public ViewContentProvider() {
-            getBackend().getRuntime().registerEventListener(handler);
+            final IOtpNodeProxy runtime = getBackend().getRuntime();
+            // each event only triggers a refresh, one pending is enough
+            runtime.getEventDispatcher().configure(handler.getTopic(),
+                    OverflowPolicy.COALESCE, 1);
+            runtime.registerEventListener(handler);
         }
 
         @Override
@@ -93,24 +109,8 @@ public class ProcessListView extends ViewPart {
 
         @Override
         public Object[] getElements(final Object parent) {
-            final IOtpRpc backend = getBackend().getOtpRpc();
-            if (backend == null) {
-                return new OtpErlangObject[] {};
-            }
-
-            final OtpErlangList r = ErlangEngine.getInstance().getProclistService()
-                    .getProcessList(backend);
-            if (r == null || r.arity() == 0) {
-                return new OtpErlangObject[] {};
-            }
-            final OtpErlangObject[] ss = new OtpErlangObject[r.elements().length];
-
-            for (int i = 0; i < r.elements().length; i++) {
-                final OtpErlangTuple e = (OtpErlangTuple) r.elementAt(i);
-                ss[i] = e;
-            }
-
-            return ss;
+            // filled in by the loader
+            return processes.toArray();
         }
 
         class ProcessEventHandler extends ErlangEventHandler {
@@ -126,13 +126,39 @@ public class ProcessListView extends ViewPart {
                 }
                 DisplayUtils.asyncExec(() -> {
                     if (!viewer.getControl().isDisposed()) {
-                        viewer.refresh();
+                        refreshProcesses();
                     }
                 });
             }
         }
     }
 
+    /*
+     * Adds the processes to the table a chunk at a time, as they arrive.
+     */
+    class ProcessLoader extends Job {
+
+        private final IOtpRpc backend;
+
+        ProcessLoader(final IOtpRpc backend) {
+            super("Process list");
+            this.backend = backend;
+            setSystem(true);
+        }
+
+        @Override
+        protected IStatus run(final IProgressMonitor monitor) {
+            ErlangEngine.getInstance().getProclistService().getProcessList(backend,
+                    monitor, chunk -> DisplayUtils.asyncExec(() -> {
+                        if (loader == this && !viewer.getControl().isDisposed()) {
+                            processes.addAll(chunk);
+                            viewer.add(chunk.toArray());
+                        }
+                    }));
+            return monitor.isCanceled() ? Status.CANCEL_STATUS : Status.OK_STATUS;
+        }
+    }
+
     static class ViewLabelProvider extends LabelProvider implements ITableLabelProvider {
 
         @Override
@@ -222,6 +248,33 @@ public class ProcessListView extends ViewPart {
         hookContextMenu();
         hookDoubleClickAction();
         contributeToActionBars();
+        refreshProcesses();
+    }
+
+    @Override
+    public void dispose() {
+        if (loader != null) {
+            loader.cancel();
+            loader = null;
+        }
+        super.dispose();
+    }
+
+    /**
+     * Load the processes again; a load that is still going on is cancelled.
+     */
+    void refreshProcesses() {
+        if (loader != null) {
+            loader.cancel();
+            loader = null;
+        }
+        processes.clear();
+        viewer.refresh();
+        final IOtpRpc backend = getBackend().getOtpRpc();
+        if (backend != null) {
+            loader = new ProcessLoader(backend);
+            loader.schedule();
+        }
     }
 
     private void initErlangService() {
@@ -265,7 +318,7 @@ public class ProcessListView extends ViewPart {
 
             @Override
             public void run() {
-                viewer.refresh();
+                refreshProcesses();
             }
         };
         refreshAction.setText("Refresh");
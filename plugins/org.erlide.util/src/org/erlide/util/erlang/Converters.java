@@ -0,0 +1,454 @@
+package org.erlide.util.erlang;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.ericsson.otp.erlang.OtpErlangAtom;
+import com.ericsson.otp.erlang.OtpErlangList;
+import com.ericsson.otp.erlang.OtpErlangLong;
+import com.ericsson.otp.erlang.OtpErlangMap;
+import com.ericsson.otp.erlang.OtpErlangObject;
+import com.ericsson.otp.erlang.OtpErlangRef;
+import com.ericsson.otp.erlang.OtpErlangString;
+import com.ericsson.otp.erlang.OtpErlangTuple;
+import com.google.common.collect.Maps;
+
+/**
+ * Compiled versions of the {@link TypeConverter} conversions. A signature string or a
+ * target class is turned once into a tree of converter objects, which is cached and then
+ * used without parsing, locking or reflective lookups.
+ *
+ * <p>
+ * The converters give the same results as {@link TypeConverter}. The usual cases (strings
+ * as atoms or strings, integers, booleans, lists and tuples of those) are handled
+ * directly; anything else falls back to the generic conversion.
+ * </p>
+ */
+public final class Converters {
+
+    /**
+     * Converts a Java value to an Erlang term of a given signature.
+     */
+    public interface ToErlang {
+        OtpErlangObject convert(Object obj) throws SignatureException;
+    }
+
+    /**
+     * Converts an Erlang term to a Java value of a given class.
+     */
+    public interface ToJava {
+        Object convert(OtpErlangObject obj) throws SignatureException;
+    }
+
+    private static final Map<String, ToErlang[]> SIGNATURES = new ConcurrentHashMap<>();
+
+    private static final ClassValue<ToJava> CLASSES = new ClassValue<ToJava>() {
+        @Override
+        protected ToJava computeValue(final Class<?> type) {
+            return Converters.compile(type);
+        }
+    };
+
+    private static final ToErlang ANY = Converters.generic(new Signature('x'));
+
+    private Converters() {
+    }
+
+    /**
+     * Get the converters for the arguments of a signature.
+     *
+     * @return one converter per argument, or null if the signature is null. The array is
+     *         shared and must not be modified.
+     */
+    public static ToErlang[] forSignature(final String signature)
+            throws SignatureException {
+        if (signature == null) {
+            return null;
+        }
+        ToErlang[] result = Converters.SIGNATURES.get(signature);
+        if (result == null) {
+            final Signature[] types = Signature.parse(signature);
+            result = new ToErlang[types.length];
+            for (int i = 0; i < types.length; i++) {
+                result[i] = Converters.forSignature(types[i]);
+            }
+            Converters.SIGNATURES.put(signature, result);
+        }
+        return result;
+    }
+
+    /**
+     * Get the converters for the arguments of a signature; a null signature means
+     * <code>arity</code> "x" arguments.
+     *
+     * @throws SignatureException
+     *             if the signature doesn't have <code>arity</code> arguments.
+     */
+    public static ToErlang[] forSignature(final String signature, final int arity)
+            throws SignatureException {
+        ToErlang[] result = Converters.forSignature(signature);
+        if (result == null) {
+            result = new ToErlang[arity];
+            Arrays.fill(result, Converters.ANY);
+        }
+        if (result.length != arity) {
+            throw new SignatureException("Signature doesn't match parameter number: "
+                    + result.length + "/" + arity);
+        }
+        return result;
+    }
+
+    public static ToErlang forSignature(final Signature type) {
+        switch (type.kind) {
+        case 'x':
+            return Converters.ANY;
+        case 's':
+            return Converters.string(type, false);
+        case 'a':
+            return Converters.string(type, true);
+        case 'i':
+            return Converters.integer(type);
+        case 'o':
+            return Converters.bool(type);
+        case 'l':
+            return Converters.list(type, Converters.forSignature(type.content[0]));
+        case 't':
+            final ToErlang[] elements = new ToErlang[type.content.length];
+            for (int i = 0; i < elements.length; i++) {
+                elements[i] = Converters.forSignature(type.content[i]);
+            }
+            return Converters.tuple(type, elements);
+        default:
+            return Converters.generic(type);
+        }
+    }
+
+    public static ToJava forClass(final Class<?> cls) {
+        return Converters.CLASSES.get(cls);
+    }
+
+    /**
+     * Convert a list of arguments.
+     */
+    public static OtpErlangObject[] convert(final ToErlang[] types, final Object[] args)
+            throws SignatureException {
+        final OtpErlangObject[] result = new OtpErlangObject[args.length];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = types[i].convert(args[i]);
+        }
+        return result;
+    }
+
+    private static ToErlang generic(final Signature type) {
+        return new ToErlang() {
+            @Override
+            public OtpErlangObject convert(final Object obj) throws SignatureException {
+                return TypeConverter.java2erlang(obj, type);
+            }
+        };
+    }
+
+    private static ToErlang string(final Signature type, final boolean atom) {
+        final ToErlang fallback = Converters.generic(type);
+        return new ToErlang() {
+            @Override
+            public OtpErlangObject convert(final Object obj) throws SignatureException {
+                if (obj instanceof String) {
+                    return atom ? OtpErlangAtom.valueOf((String) obj)
+                            : new OtpErlangString((String) obj);
+                }
+                return fallback.convert(obj);
+            }
+        };
+    }
+
+    private static ToErlang integer(final Signature type) {
+        final ToErlang fallback = Converters.generic(type);
+        return new ToErlang() {
+            @Override
+            public OtpErlangObject convert(final Object obj) throws SignatureException {
+                if (obj instanceof Integer || obj instanceof Long) {
+                    return new OtpErlangLong(((Number) obj).longValue());
+                }
+                return fallback.convert(obj);
+            }
+        };
+    }
+
+    private static ToErlang bool(final Signature type) {
+        final ToErlang fallback = Converters.generic(type);
+        return new ToErlang() {
+            @Override
+            public OtpErlangObject convert(final Object obj) throws SignatureException {
+                if (obj instanceof Boolean) {
+                    return OtpErlangAtom.valueOf(((Boolean) obj).booleanValue() ? "true"
+                            : "false");
+                }
+                return fallback.convert(obj);
+            }
+        };
+    }
+
+    private static ToErlang list(final Signature type, final ToErlang element) {
+        final ToErlang fallback = Converters.generic(type);
+        return new ToErlang() {
+            @Override
+            public OtpErlangObject convert(final Object obj) throws SignatureException {
+                final Object[] v;
+                if (obj instanceof Collection<?>) {
+                    v = ((Collection<?>) obj).toArray();
+                } else if (obj instanceof Object[]) {
+                    v = (Object[]) obj;
+                } else {
+                    return fallback.convert(obj);
+                }
+                final OtpErlangObject[] vv = new OtpErlangObject[v.length];
+                for (int i = 0; i < v.length; i++) {
+                    vv[i] = element.convert(v[i]);
+                }
+                return new OtpErlangList(vv);
+            }
+        };
+    }
+
+    private static ToErlang tuple(final Signature type, final ToErlang[] elements) {
+        final ToErlang fallback = Converters.generic(type);
+        return new ToErlang() {
+            @Override
+            public OtpErlangObject convert(final Object obj) throws SignatureException {
+                if (!(obj instanceof Object[])
+                        || ((Object[]) obj).length != elements.length) {
+                    return fallback.convert(obj);
+                }
+                final Object[] v = (Object[]) obj;
+                final OtpErlangObject[] vv = new OtpErlangObject[v.length];
+                for (int i = 0; i < v.length; i++) {
+                    vv[i] = elements[i].convert(v[i]);
+                }
+                return new OtpErlangTuple(vv);
+            }
+        };
+    }
+
+    private static ToJava compile(final Class<?> cls) {
+        final ToJava converter = Converters.compileFor(cls);
+        // a term that already has the wanted class is returned as is
+        return new ToJava() {
+            @Override
+            public Object convert(final OtpErlangObject obj) throws SignatureException {
+                if (obj.getClass() == cls) {
+                    return obj;
+                }
+                return converter.convert(obj);
+            }
+        };
+    }
+
+    private static ToJava compileFor(final Class<?> cls) {
+        final Method method = Converters.findFactory(cls);
+        if (method != null) {
+            return Converters.factory(cls, method);
+        }
+        if (cls.isArray()) {
+            return Converters.array(cls.getComponentType());
+        }
+        if (cls == String.class) {
+            return new ToJava() {
+                @Override
+                public Object convert(final OtpErlangObject obj)
+                        throws SignatureException {
+                    return TypeConverter.cvtString(obj);
+                }
+            };
+        }
+        if (TypeConverter.isNumericClass(cls)) {
+            return Converters.number(cls);
+        }
+        if (cls == boolean.class || cls == Boolean.class) {
+            return new ToJava() {
+                @Override
+                public Object convert(final OtpErlangObject obj)
+                        throws SignatureException {
+                    if (obj instanceof OtpErlangAtom) {
+                        final String s = ((OtpErlangAtom) obj).atomValue();
+                        if ("true".equals(s)) {
+                            return Boolean.TRUE;
+                        }
+                        if ("false".equals(s)) {
+                            return Boolean.FALSE;
+                        }
+                    }
+                    throw Converters.wrongType(obj, cls);
+                }
+            };
+        }
+        if (Map.class.isAssignableFrom(cls)) {
+            return new ToJava() {
+                @Override
+                public Object convert(final OtpErlangObject obj)
+                        throws SignatureException {
+                    if (!(obj instanceof OtpErlangMap)) {
+                        throw Converters.wrongType(obj, cls);
+                    }
+                    final Map<Object, Object> result = Maps.newHashMap();
+                    final OtpErlangMap map = (OtpErlangMap) obj;
+                    for (final OtpErlangObject key : map.keys()) {
+                        final OtpErlangObject value = map.get(key);
+                        result.put(Converters.forClass(key.getClass()).convert(key),
+                                Converters.forClass(value.getClass()).convert(value));
+                    }
+                    return result;
+                }
+            };
+        }
+        if (Collection.class.isAssignableFrom(cls)) {
+            return new ToJava() {
+                @Override
+                public Object convert(final OtpErlangObject obj)
+                        throws SignatureException {
+                    if (!(obj instanceof OtpErlangList)) {
+                        throw Converters.wrongType(obj, cls);
+                    }
+                    final OtpErlangObject[] list = ((OtpErlangList) obj).elements();
+                    final Object[] olist = new Object[list.length];
+                    for (int i = 0; i < list.length; i++) {
+                        olist[i] = Converters.forClass(list[i].getClass())
+                                .convert(list[i]);
+                    }
+                    return Arrays.asList(olist);
+                }
+            };
+        }
+        return new ToJava() {
+            @Override
+            public Object convert(final OtpErlangObject obj) throws SignatureException {
+                if (obj instanceof OtpErlangRef) {
+                    throw Converters.wrongType(obj, cls);
+                }
+                return obj;
+            }
+        };
+    }
+
+    /*
+     * The fromErlangObject(OtpErlangObject) method of the class, if there is one.
+     */
+    private static Method findFactory(final Class<?> cls) {
+        try {
+            return cls.getMethod("fromErlangObject", OtpErlangObject.class);
+        } catch (final NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    private static ToJava factory(final Class<?> cls, final Method method) {
+        MethodHandle handle = null;
+        if (Modifier.isStatic(method.getModifiers())) {
+            method.setAccessible(true);
+            try {
+                handle = MethodHandles.lookup().unreflect(method).asType(
+                        MethodType.methodType(Object.class, OtpErlangObject.class));
+            } catch (final IllegalAccessException e) {
+                // reported on use
+            }
+        }
+        final MethodHandle factory = handle;
+        return new ToJava() {
+            @Override
+            public Object convert(final OtpErlangObject obj) throws SignatureException {
+                if (factory == null) {
+                    throw new SignatureException(
+                            "can't call " + cls.getName() + ".fromErlangObject");
+                }
+                try {
+                    return factory.invokeExact(obj);
+                } catch (final SignatureException e) {
+                    throw e;
+                } catch (final Exception e) {
+                    throw new SignatureException(e);
+                } catch (final Error e) {
+                    throw e;
+                } catch (final Throwable e) {
+                    throw new SignatureException(new Exception(e));
+                }
+            }
+        };
+    }
+
+    private static ToJava array(final Class<?> component) {
+        final ToJava element = Converters.forClass(component);
+        return new ToJava() {
+            @Override
+            public Object convert(final OtpErlangObject obj) throws SignatureException {
+                OtpErlangObject[] els = null;
+                if (obj instanceof OtpErlangList) {
+                    els = ((OtpErlangList) obj).elements();
+                }
+                if (obj instanceof OtpErlangTuple) {
+                    els = ((OtpErlangTuple) obj).elements();
+                }
+                if (els != null) {
+                    final Object arr = Array.newInstance(component, els.length);
+                    if (arr instanceof Object[]) {
+                        final Object[] objects = (Object[]) arr;
+                        for (int i = 0; i < els.length; i++) {
+                            objects[i] = element.convert(els[i]);
+                        }
+                    } else {
+                        for (int i = 0; i < els.length; i++) {
+                            Array.set(arr, i, element.convert(els[i]));
+                        }
+                    }
+                    return arr;
+                }
+                if (obj instanceof OtpErlangString) {
+                    final byte[] s = ((OtpErlangString) obj).stringValue().getBytes();
+                    final Object arr = Array.newInstance(component, s.length);
+                    for (int i = 0; i < s.length; i++) {
+                        Array.set(arr, i, Byte.valueOf(s[i]));
+                    }
+                    return arr;
+                }
+                return new Object[0];
+            }
+        };
+    }
+
+    private static ToJava number(final Class<?> cls) {
+        return new ToJava() {
+            @Override
+            public Object convert(final OtpErlangObject obj) throws SignatureException {
+                if (!(obj instanceof OtpErlangLong)) {
+                    throw Converters.wrongType(obj, cls);
+                }
+                final long res = ((OtpErlangLong) obj).longValue();
+                if (cls == char.class || cls == Character.class) {
+                    return Character.valueOf((char) res);
+                }
+                if (cls == int.class || cls == Integer.class) {
+                    return Integer.valueOf((int) res);
+                }
+                if (cls == byte.class || cls == Byte.class) {
+                    return Byte.valueOf((byte) res);
+                }
+                if (cls == short.class || cls == Short.class) {
+                    return Short.valueOf((short) res);
+                }
+                return Long.valueOf(res);
+            }
+        };
+    }
+
+    static SignatureException wrongType(final OtpErlangObject obj, final Class<?> cls) {
+        return new SignatureException("wrong arg type " + obj.getClass().getName()
+                + ", can't convert to " + cls.getCanonicalName());
+    }
+}
@@ -8,10 +8,14 @@
  *******************************************************************************/
 package org.erlide.util.erlang;
 
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
 
 import org.eclipse.jdt.annotation.Nullable;
@@ -27,21 +31,45 @@ import com.ericsson.otp.erlang.OtpErlangString;
 import com.ericsson.otp.erlang.OtpErlangTuple;
 import com.google.common.collect.Lists;
 
-public final class OtpBindings implements Map<String, OtpErlangObject> {
+/**
+ * The variables bound by a match. There are only a few of them, so they are kept in two
+ * arrays and looked up by scanning, which is cheaper than hashing at this size.
+ */
+public final class OtpBindings extends AbstractMap<String, OtpErlangObject> {
 
-    private final Map<String, OtpErlangObject> bindings;
+    private static final String[] NO_NAMES = {};
+    private static final OtpErlangObject[] NO_VALUES = {};
+
+    // the names may be shared with the pattern that bound them, see OtpPattern
+    private String[] names;
+    private OtpErlangObject[] values;
+    private int size;
+    private boolean sharedNames;
 
     public OtpBindings() {
-        bindings = new HashMap<>();
+        names = OtpBindings.NO_NAMES;
+        values = OtpBindings.NO_VALUES;
     }
 
     public OtpBindings(final OtpBindings binds) {
-        this();
-        merge(binds);
+        names = Arrays.copyOf(binds.names, binds.size);
+        values = Arrays.copyOf(binds.values, binds.size);
+        size = binds.size;
+    }
+
+    /**
+     * The bindings of a pattern's variables, one value for each name. The names aren't
+     * copied.
+     */
+    OtpBindings(final String[] names, final OtpErlangObject[] values) {
+        this.names = names;
+        this.values = values;
+        size = names.length;
+        sharedNames = true;
     }
 
     public void merge(final OtpBindings binds) {
-        bindings.putAll(binds.getAll());
+        putAll(binds);
     }
 
     public int getInt(final String name) throws OtpErlangException {
@@ -117,12 +145,7 @@ public final class OtpBindings implements Map<String, OtpErlangObject> {
     }
 
     public Map<String, OtpErlangObject> getAll() {
-        return Collections.unmodifiableMap(bindings);
-    }
-
-    @Override
-    public String toString() {
-        return bindings.toString();
+        return Collections.unmodifiableMap(this);
     }
 
     public OtpErlangBinary getBinary(final String name) throws OtpErlangException {
@@ -140,62 +163,126 @@ public final class OtpBindings implements Map<String, OtpErlangObject> {
 
     @Override
     public int size() {
-        return bindings.size();
+        return size;
     }
 
     @Override
     public boolean isEmpty() {
-        return bindings.isEmpty();
+        return size == 0;
     }
 
     @Override
     public boolean containsKey(final Object key) {
-        return bindings.containsKey(key);
-    }
-
-    @Override
-    public boolean containsValue(final Object value) {
-        return bindings.containsValue(value);
+        return indexOf(key) >= 0;
     }
 
     @Override
     public OtpErlangObject get(final Object key) {
-        return bindings.get(key);
+        final int i = indexOf(key);
+        return i < 0 ? null : values[i];
     }
 
     @Override
     public OtpErlangObject put(final String key, final OtpErlangObject value) {
-        return bindings.put(key, value);
+        final int i = indexOf(key);
+        if (i >= 0) {
+            final OtpErlangObject old = values[i];
+            values[i] = value;
+            return old;
+        }
+        if (size == names.length || sharedNames) {
+            final int capacity = Math.max(4, size * 2);
+            names = Arrays.copyOf(names, capacity);
+            values = Arrays.copyOf(values, capacity);
+            sharedNames = false;
+        }
+        names[size] = key;
+        values[size] = value;
+        size++;
+        return null;
     }
 
     @Override
     public OtpErlangObject remove(final Object key) {
-        return bindings.remove(key);
-    }
-
-    @Override
-    public void putAll(final Map<? extends String, ? extends OtpErlangObject> m) {
-        bindings.putAll(m);
+        final int i = indexOf(key);
+        if (i < 0) {
+            return null;
+        }
+        final OtpErlangObject old = values[i];
+        removeAt(i);
+        return old;
     }
 
     @Override
     public void clear() {
-        bindings.clear();
+        names = OtpBindings.NO_NAMES;
+        values = OtpBindings.NO_VALUES;
+        size = 0;
+        sharedNames = false;
     }
 
     @Override
-    public Set<String> keySet() {
-        return bindings.keySet();
+    public Set<Map.Entry<String, OtpErlangObject>> entrySet() {
+        return new AbstractSet<Map.Entry<String, OtpErlangObject>>() {
+            @Override
+            public Iterator<Map.Entry<String, OtpErlangObject>> iterator() {
+                return new Iterator<Map.Entry<String, OtpErlangObject>>() {
+                    private int next;
+                    private int last = -1;
+
+                    @Override
+                    public boolean hasNext() {
+                        return next < size;
+                    }
+
+                    @Override
+                    public Map.Entry<String, OtpErlangObject> next() {
+                        if (next >= size) {
+                            throw new NoSuchElementException();
+                        }
+                        last = next++;
+                        return new AbstractMap.SimpleImmutableEntry<>(names[last],
+                                values[last]);
+                    }
+
+                    @Override
+                    public void remove() {
+                        if (last < 0) {
+                            throw new IllegalStateException();
+                        }
+                        removeAt(last);
+                        next = last;
+                        last = -1;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
     }
 
-    @Override
-    public Collection<OtpErlangObject> values() {
-        return bindings.values();
+    private int indexOf(final Object key) {
+        for (int i = 0; i < size; i++) {
+            if (names[i].equals(key)) {
+                return i;
+            }
+        }
+        return -1;
     }
 
-    @Override
-    public Set<java.util.Map.Entry<String, OtpErlangObject>> entrySet() {
-        return bindings.entrySet();
+    private void removeAt(final int i) {
+        if (sharedNames) {
+            names = names.clone();
+            sharedNames = false;
+        }
+        System.arraycopy(names, i + 1, names, i, size - i - 1);
+        System.arraycopy(values, i + 1, values, i, size - i - 1);
+        size--;
+        names[size] = null;
+        values[size] = null;
     }
 
 }
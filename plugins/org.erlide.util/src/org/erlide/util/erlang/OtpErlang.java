@@ -5,6 +5,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
 
 import com.ericsson.otp.erlang.OtpErlangAtom;
 import com.ericsson.otp.erlang.OtpErlangBinary;
@@ -14,6 +15,9 @@ import com.ericsson.otp.erlang.OtpErlangObject;
 import com.ericsson.otp.erlang.OtpErlangString;
 import com.ericsson.otp.erlang.OtpErlangTuple;
 import com.ericsson.otp.erlang.OtpOutputStream;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
 import com.google.common.collect.Lists;
 
 public class OtpErlang {
@@ -55,6 +59,14 @@ public class OtpErlang {
 
     private static final OtpParser TERM_PARSER = OtpErlang.getTermParser();
 
+    private static final LoadingCache<String, OtpPattern> PATTERNS = CacheBuilder
+            .newBuilder().maximumSize(250).build(new CacheLoader<String, OtpPattern>() {
+                @Override
+                public OtpPattern load(final String key) throws OtpParserException {
+                    return OtpPattern.compile(key);
+                }
+            });
+
     public static OtpErlangObject parse(final String string) throws OtpParserException {
         return OtpErlang.TERM_PARSER.parse(string);
     }
@@ -81,23 +93,22 @@ public class OtpErlang {
 
     public static OtpBindings match(final String pattern, final String term)
             throws OtpParserException {
-        return OtpErlang.match(OtpErlang.parse(pattern), OtpErlang.parse(term),
-                new OtpBindings());
+        return OtpErlang.pattern(pattern).match(OtpErlang.parse(term));
     }
 
     public static OtpBindings match(final String pattern, final OtpErlangObject term)
             throws OtpParserException {
-        return OtpErlang.match(OtpErlang.parse(pattern), term, new OtpBindings());
+        return OtpErlang.pattern(pattern).match(term);
     }
 
     public static OtpBindings match(final String pattern, final String term,
             final OtpBindings bindings) throws OtpParserException {
-        return OtpErlang.match(OtpErlang.parse(pattern), OtpErlang.parse(term), bindings);
+        return OtpErlang.pattern(pattern).match(OtpErlang.parse(term), bindings);
     }
 
     public static OtpBindings match(final OtpErlangObject pattern,
             final OtpErlangObject term) {
-        return OtpErlang.match(pattern, term, new OtpBindings());
+        return OtpPattern.compile(pattern).match(term);
     }
 
     /**
@@ -112,79 +123,23 @@ public class OtpErlang {
      * <p>
      * The returned value is null if there was any mismatch, otherwise it is a map of
      * variable names to matched values. <br>
-     *
+     * Patterns that are used often should be compiled once with
+     * {@link OtpPattern#compile(String)}.
      */
     public static OtpBindings match(final OtpErlangObject pattern,
             final OtpErlangObject term, final OtpBindings bindings) {
-        if (pattern == null && term == null) {
-            return bindings;
-        }
-        if (pattern == null || term == null) {
-            return null;
-        }
-        if (pattern instanceof OtpPatternVariable) {
-            final OtpPatternVariable var = (OtpPatternVariable) pattern;
-            if (!TypeConverter.doesMatchSignature(term, var.getSignature())) {
-                return null;
-            }
-            if ("_".equals(var.getName())) {
-                return bindings;
-            }
-            final OtpBindings result = new OtpBindings(bindings);
-            final OtpErlangObject old = bindings.get(var.getName());
-            if (old == null) {
-                // no previous binding
-                result.put(var.getName(), term);
-                return result;
-            }
-            return old.equals(term) ? result : null;
-        }
-        if (!pattern.getClass().equals(term.getClass())) {
-            return null;
-        }
-
-        if (pattern instanceof OtpErlangList) {
-            return OtpErlang.matchList(pattern, term, bindings);
-        } else if (pattern instanceof OtpErlangTuple) {
-            return OtpErlang.matchTuple(((OtpErlangTuple) pattern).elements(),
-                    ((OtpErlangTuple) term).elements(), bindings);
-        } else if (pattern.equals(term)) {
-            return bindings;
-        }
-        return null;
+        return OtpPattern.compile(pattern).match(term, bindings);
     }
 
-    private static OtpBindings matchList(final OtpErlangObject pattern,
-            final OtpErlangObject term, final OtpBindings bindings) {
-        final OtpErlangList lpattern = (OtpErlangList) pattern;
-        final OtpErlangList lterm = (OtpErlangList) term;
-        final int patternArity = lpattern.arity();
-        final int termArity = lterm.arity();
-        if (patternArity > termArity) {
-            return null;
-        }
-        if (patternArity < termArity && lpattern.isProper()) {
-            return null;
-        }
-        if (patternArity == termArity && lpattern.isProper() != lterm.isProper()) {
-            return null;
-        }
-        OtpBindings rez = bindings;
-        for (int i = 0; i < patternArity; i++) {
-            rez = OtpErlang.match(lpattern.elementAt(i), lterm.elementAt(i), rez);
-            if (rez == null) {
-                return null;
-            }
-        }
-        if (patternArity == termArity) {
-            rez = OtpErlang.match(lpattern.getLastTail(), lterm.getLastTail(), rez);
-            return rez;
-        }
-        if (lpattern.getLastTail() instanceof OtpPatternVariable) {
-            return OtpErlang.match(lpattern.getLastTail(), lterm.getNthTail(patternArity),
-                    rez);
+    /**
+     * The compiled pattern for the given text; the most recently used ones are kept.
+     */
+    public static OtpPattern pattern(final String pattern) throws OtpParserException {
+        try {
+            return OtpErlang.PATTERNS.get(pattern);
+        } catch (final ExecutionException e) {
+            throw (OtpParserException) e.getCause();
         }
-        return OtpErlang.match(lpattern.getLastTail(), lterm.getLastTail(), rez);
     }
 
     private static OtpErlangObject fill(final OtpErlangObject template,
@@ -220,21 +175,6 @@ public class OtpErlang {
         }
     }
 
-    private static OtpBindings matchTuple(final OtpErlangObject[] patterns,
-            final OtpErlangObject[] terms, final OtpBindings bindings) {
-        if (patterns.length != terms.length) {
-            return null;
-        }
-        OtpBindings result = new OtpBindings(bindings);
-        for (int i = 0; i < patterns.length; i++) {
-            result = OtpErlang.match(patterns[i], terms[i], result);
-            if (result == null) {
-                return null;
-            }
-        }
-        return result;
-    }
-
     /**
      * This is useful if a value can be anything, but we need to see it as a string (but
      * without any quotes if it really is a string).
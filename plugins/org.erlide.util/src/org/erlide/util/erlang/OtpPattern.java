@@ -0,0 +1,258 @@
+package org.erlide.util.erlang;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import com.ericsson.otp.erlang.OtpErlangList;
+import com.ericsson.otp.erlang.OtpErlangObject;
+import com.ericsson.otp.erlang.OtpErlangTuple;
+
+/**
+ * A pattern for {@link OtpErlang#match(OtpErlangObject, OtpErlangObject)}, parsed and
+ * prepared once so that it can be matched many times.
+ *
+ * <p>
+ * Each variable of the pattern gets a slot when it is compiled, so matching only fills
+ * an array that becomes the returned {@link OtpBindings}. Patterns are immutable and
+ * can be shared between threads; the usual place for them is a static field:
+ * </p>
+ *
+ * <pre>
+ * private static final OtpPattern PUT_CHARS = OtpPattern.compile("{put_chars, Chars}");
+ * ...
+ * final OtpBindings b = PUT_CHARS.match(request);
+ * </pre>
+ */
+public final class OtpPattern {
+
+    private final OtpErlangObject source;
+    private final Node root;
+    // the variable of each slot
+    private final String[] names;
+
+    private OtpPattern(final OtpErlangObject source) {
+        this.source = source;
+        final List<String> vars = new ArrayList<>();
+        root = OtpPattern.compile(source, vars);
+        names = vars.toArray(new String[vars.size()]);
+    }
+
+    public static OtpPattern compile(final String pattern) throws OtpParserException {
+        return new OtpPattern(OtpErlang.parse(pattern));
+    }
+
+    public static OtpPattern compile(final OtpErlangObject pattern) {
+        return new OtpPattern(pattern);
+    }
+
+    /**
+     * @return the variables of the pattern, without <code>_</code>.
+     */
+    public List<String> getVariables() {
+        return Collections.unmodifiableList(Arrays.asList(names));
+    }
+
+    /**
+     * @return the bindings of the pattern's variables, or null if the term doesn't
+     *         match.
+     */
+    public OtpBindings match(final OtpErlangObject term) {
+        final OtpErlangObject[] slots = new OtpErlangObject[names.length];
+        if (!root.match(term, slots)) {
+            return null;
+        }
+        return new OtpBindings(names, slots);
+    }
+
+    /**
+     * Match with some variables already bound: their values must be matched too. The
+     * result holds the given bindings as well as the new ones.
+     */
+    public OtpBindings match(final OtpErlangObject term, final OtpBindings bindings) {
+        if (bindings == null || bindings.isEmpty()) {
+            return match(term);
+        }
+        final OtpErlangObject[] slots = new OtpErlangObject[names.length];
+        for (int i = 0; i < names.length; i++) {
+            slots[i] = bindings.get(names[i]);
+        }
+        if (!root.match(term, slots)) {
+            return null;
+        }
+        final OtpBindings result = new OtpBindings(bindings);
+        for (int i = 0; i < names.length; i++) {
+            result.put(names[i], slots[i]);
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return String.valueOf(source);
+    }
+
+    private static Node compile(final OtpErlangObject pattern, final List<String> vars) {
+        if (pattern == null) {
+            return OtpPattern.NOTHING;
+        }
+        if (pattern instanceof OtpPatternVariable) {
+            final OtpPatternVariable var = (OtpPatternVariable) pattern;
+            if ("_".equals(var.getName())) {
+                return new Variable(-1, var.getSignature());
+            }
+            int slot = vars.indexOf(var.getName());
+            if (slot < 0) {
+                slot = vars.size();
+                vars.add(var.getName());
+            }
+            return new Variable(slot, var.getSignature());
+        }
+        if (pattern instanceof OtpErlangTuple) {
+            return new TupleNode(pattern.getClass(),
+                    OtpPattern.compile(((OtpErlangTuple) pattern).elements(), vars));
+        }
+        if (pattern instanceof OtpErlangList) {
+            final OtpErlangList list = (OtpErlangList) pattern;
+            return new ListNode(pattern.getClass(),
+                    OtpPattern.compile(list.elements(), vars),
+                    OtpPattern.compile(list.getLastTail(), vars), list.isProper(),
+                    list.getLastTail() instanceof OtpPatternVariable);
+        }
+        return new Literal(pattern);
+    }
+
+    private static Node[] compile(final OtpErlangObject[] patterns,
+            final List<String> vars) {
+        final Node[] result = new Node[patterns.length];
+        for (int i = 0; i < patterns.length; i++) {
+            result[i] = OtpPattern.compile(patterns[i], vars);
+        }
+        return result;
+    }
+
+    private abstract static class Node {
+        abstract boolean match(OtpErlangObject term, OtpErlangObject[] slots);
+    }
+
+    // the missing tail of a proper list
+    private static final Node NOTHING = new Node() {
+        @Override
+        boolean match(final OtpErlangObject term, final OtpErlangObject[] slots) {
+            return term == null;
+        }
+    };
+
+    private static final class Variable extends Node {
+        private final int slot;
+        private final Signature signature;
+
+        Variable(final int slot, final Signature signature) {
+            this.slot = slot;
+            this.signature = signature;
+        }
+
+        @Override
+        boolean match(final OtpErlangObject term, final OtpErlangObject[] slots) {
+            if (term == null || !TypeConverter.doesMatchSignature(term, signature)) {
+                return false;
+            }
+            if (slot < 0) {
+                return true;
+            }
+            final OtpErlangObject old = slots[slot];
+            if (old == null) {
+                slots[slot] = term;
+                return true;
+            }
+            return old.equals(term);
+        }
+    }
+
+    private static final class Literal extends Node {
+        private final OtpErlangObject value;
+
+        Literal(final OtpErlangObject value) {
+            this.value = value;
+        }
+
+        @Override
+        boolean match(final OtpErlangObject term, final OtpErlangObject[] slots) {
+            return term != null && value.getClass().equals(term.getClass())
+                    && value.equals(term);
+        }
+    }
+
+    private static final class TupleNode extends Node {
+        private final Class<?> type;
+        private final Node[] elements;
+
+        TupleNode(final Class<?> type, final Node[] elements) {
+            this.type = type;
+            this.elements = elements;
+        }
+
+        @Override
+        boolean match(final OtpErlangObject term, final OtpErlangObject[] slots) {
+            if (term == null || !type.equals(term.getClass())) {
+                return false;
+            }
+            final OtpErlangTuple tuple = (OtpErlangTuple) term;
+            if (tuple.arity() != elements.length) {
+                return false;
+            }
+            for (int i = 0; i < elements.length; i++) {
+                if (!elements[i].match(tuple.elementAt(i), slots)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static final class ListNode extends Node {
+        private final Class<?> type;
+        private final Node[] elements;
+        private final Node tail;
+        private final boolean proper;
+        private final boolean variableTail;
+
+        ListNode(final Class<?> type, final Node[] elements, final Node tail,
+                final boolean proper, final boolean variableTail) {
+            this.type = type;
+            this.elements = elements;
+            this.tail = tail;
+            this.proper = proper;
+            this.variableTail = variableTail;
+        }
+
+        @Override
+        boolean match(final OtpErlangObject term, final OtpErlangObject[] slots) {
+            if (term == null || !type.equals(term.getClass())) {
+                return false;
+            }
+            final OtpErlangList list = (OtpErlangList) term;
+            final int arity = list.arity();
+            if (elements.length > arity) {
+                return false;
+            }
+            if (elements.length < arity && proper) {
+                return false;
+            }
+            if (elements.length == arity && proper != list.isProper()) {
+                return false;
+            }
+            for (int i = 0; i < elements.length; i++) {
+                if (!elements[i].match(list.elementAt(i), slots)) {
+                    return false;
+                }
+            }
+            if (elements.length < arity && variableTail) {
+                return tail.match(list.getNthTail(elements.length), slots);
+            }
+            return tail.match(list.getLastTail(), slots);
+        }
+    }
+
+}
@@ -9,12 +9,12 @@
 package org.erlide.util.erlang;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class Signature {
-    private static final Map<String, Signature[]> CACHE = new HashMap<>();
+    private static final Map<String, Signature[]> CACHE = new ConcurrentHashMap<>();
     private static boolean useCache = true;
 
     public char kind = 'x';
@@ -50,7 +50,7 @@ public class Signature {
         return kind + res.toString();
     }
 
-    public static synchronized Signature[] parse(final String signature)
+    public static Signature[] parse(final String signature)
             throws SignatureException {
         if (signature == null) {
             return null;
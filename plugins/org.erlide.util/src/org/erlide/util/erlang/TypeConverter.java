@@ -9,9 +9,7 @@
 package org.erlide.util.erlang;
 
 import java.lang.reflect.Array;
-import java.lang.reflect.Method;
 import java.math.BigInteger;
-import java.util.Arrays;
 import java.util.Collection;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -35,7 +33,6 @@ import com.ericsson.otp.erlang.OtpErlangRef;
 import com.ericsson.otp.erlang.OtpErlangShort;
 import com.ericsson.otp.erlang.OtpErlangString;
 import com.ericsson.otp.erlang.OtpErlangTuple;
-import com.google.common.collect.Maps;
 
 /**
  * Helps converting Java values to Erlang terms, and back. The type information is
@@ -152,102 +149,14 @@ public final class TypeConverter {
 
     }
 
-    @SuppressWarnings("boxing")
+    /**
+     * Converts an Erlang term to a Java value of the given class. The conversion for a
+     * class is compiled once, see {@link Converters#forClass(Class)}.
+     */
     public static Object erlang2java(final OtpErlangObject obj, final Class<?> cls)
             throws SignatureException {
         try {
-            if (cls == obj.getClass()) {
-                return obj;
-            }
-            // if the conversion method exists, use it
-            try {
-                final Method method = cls.getMethod("fromErlangObject",
-                        OtpErlangObject.class);
-                method.setAccessible(true);
-                final Object o = method.invoke(null, obj);
-                return o;
-            } catch (final NoSuchMethodException e) {
-                // ignore, continue
-            }
-
-            if (cls.isArray()) {
-                return TypeConverter.cvtArray(obj, cls);
-            }
-
-            if (cls == String.class) {
-                return TypeConverter.cvtString(obj);
-            }
-            if (TypeConverter.isNumericClass(cls)) {
-                if (obj instanceof OtpErlangLong) {
-                    final long res = ((OtpErlangLong) obj).longValue();
-                    if (cls == char.class || cls == Character.class) {
-                        return (char) res;
-                    }
-                    if (cls == int.class || cls == Integer.class) {
-                        return (int) res;
-                    }
-                    if (cls == byte.class || cls == Byte.class) {
-                        return (byte) res;
-                    }
-                    if (cls == short.class || cls == Short.class) {
-                        return (short) res;
-                    }
-                    if (cls == long.class || cls == Long.class) {
-                        return res;
-                    }
-                }
-                throw new SignatureException(
-                        TypeConverter.WRONG_ARG_TYPE + obj.getClass().getName()
-                                + TypeConverter.CANT_CONVERT_TO + cls.getCanonicalName());
-            }
-            if (cls == boolean.class || cls == Boolean.class) {
-                if (obj instanceof OtpErlangAtom) {
-                    final String s = ((OtpErlangAtom) obj).atomValue();
-                    if ("true".equals(s)) {
-                        return true;
-                    }
-                    if ("false".equals(s)) {
-                        return false;
-                    }
-                }
-                throw new SignatureException(
-                        TypeConverter.WRONG_ARG_TYPE + obj.getClass().getName()
-                                + TypeConverter.CANT_CONVERT_TO + cls.getCanonicalName());
-            }
-            if (Map.class.isAssignableFrom(cls)) {
-                if (obj instanceof OtpErlangMap) {
-                    final Map<Object, Object> result = Maps.newHashMap();
-                    final OtpErlangMap map = (OtpErlangMap) obj;
-                    for (final OtpErlangObject key : map.keys()) {
-                        final OtpErlangObject value = map.get(key);
-                        result.put(TypeConverter.erlang2java(key, key.getClass()),
-                                TypeConverter.erlang2java(value, value.getClass()));
-                    }
-                    return result;
-                }
-                throw new SignatureException(
-                        TypeConverter.WRONG_ARG_TYPE + obj.getClass().getName()
-                                + TypeConverter.CANT_CONVERT_TO + cls.getCanonicalName());
-            }
-            if (Collection.class.isAssignableFrom(cls)) {
-                if (obj instanceof OtpErlangList) {
-                    final OtpErlangObject[] list = ((OtpErlangList) obj).elements();
-                    final Object[] olist = new Object[list.length];
-                    for (int i = 0; i < list.length; i++) {
-                        olist[i] = TypeConverter.erlang2java(list[i], list[i].getClass());
-                    }
-                    return Arrays.asList(olist);
-                }
-                throw new SignatureException(
-                        TypeConverter.WRONG_ARG_TYPE + obj.getClass().getName()
-                                + TypeConverter.CANT_CONVERT_TO + cls.getCanonicalName());
-            }
-            if (obj instanceof OtpErlangRef) {
-                throw new SignatureException(
-                        TypeConverter.WRONG_ARG_TYPE + obj.getClass().getName()
-                                + TypeConverter.CANT_CONVERT_TO + cls.getCanonicalName());
-            }
-            return obj;
+            return Converters.forClass(cls).convert(obj);
         } catch (final SignatureException e) {
             throw e;
         } catch (final Exception e) {
@@ -255,14 +164,14 @@ public final class TypeConverter {
         }
     }
 
-    private static boolean isNumericClass(final Class<?> cls) {
+    static boolean isNumericClass(final Class<?> cls) {
         return cls == char.class || cls == Character.class || cls == int.class
                 || cls == Integer.class || cls == byte.class || cls == Byte.class
                 || cls == short.class || cls == Short.class || cls == long.class
                 || cls == Long.class;
     }
 
-    private static String cvtString(final OtpErlangObject obj) throws SignatureException {
+    static String cvtString(final OtpErlangObject obj) throws SignatureException {
         if (obj instanceof OtpErlangString) {
             return ((OtpErlangString) obj).stringValue();
         }
@@ -288,35 +197,6 @@ public final class TypeConverter {
                 + obj.getClass().getName() + TypeConverter.CANT_CONVERT_TO + "String");
     }
 
-    private static Object cvtArray(final OtpErlangObject obj, final Class<?> cls)
-            throws SignatureException {
-        OtpErlangObject[] els = null;
-        if (obj instanceof OtpErlangList) {
-            els = ((OtpErlangList) obj).elements();
-        }
-        if (obj instanceof OtpErlangTuple) {
-            els = ((OtpErlangTuple) obj).elements();
-        }
-        if (els != null) {
-            final Object arr = Array.newInstance(cls.getComponentType(), els.length);
-            for (int i = 0; i < els.length; i++) {
-                Array.set(arr, i,
-                        TypeConverter.erlang2java(els[i], cls.getComponentType()));
-            }
-            return arr;
-        }
-        if (obj instanceof OtpErlangString) {
-            final byte[] s = ((OtpErlangString) obj).stringValue().getBytes();
-            final Object arr = Array.newInstance(cls.getComponentType(), s.length);
-
-            for (int i = 0; i < s.length; i++) {
-                Array.set(arr, i, s[i]);
-            }
-            return arr;
-        }
-        return new Object[0];
-    }
-
     /**
      * Converts Java objects to Erlang terms.<br/>
      *
@@ -329,7 +209,7 @@ public final class TypeConverter {
      */
     public static OtpErlangObject java2erlang(final Object obj, final String type)
             throws SignatureException {
-        return TypeConverter.java2erlang(obj, Signature.parse(type)[0]);
+        return Converters.forSignature(type)[0].convert(obj);
     }
 
     @SuppressWarnings("boxing")
@@ -502,7 +382,7 @@ public final class TypeConverter {
         if (type.kind == 's') {
             return new OtpErlangString((String) obj);
         } else if (type.kind == 'a') {
-            return new OtpErlangAtom((String) obj);
+            return OtpErlangAtom.valueOf((String) obj);
         } else if (type.kind == 'b') {
             return new OtpErlangBinary(((String) obj).getBytes());
         } else {
@@ -0,0 +1,141 @@
+package org.erlide.engine.model.erlang;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.erlide.engine.internal.model.erlang.ErlAttribute;
+import org.erlide.engine.model.ErlElementKind;
+import org.erlide.engine.model.IErlElement;
+import org.erlide.engine.model.IErlElement.AcceptFlags;
+import org.erlide.engine.model.root.IErlModule;
+import org.erlide.engine.util.ErlideTestUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+/**
+ * The children of the elements are read without locks, and changing one element doesn't
+ * wait for readers of another one.
+ */
+public class ErlElementConcurrencyTest extends ErlModelTestBase {
+
+    private static final int ROUNDS = 2000;
+    private static final EnumSet<@NonNull AcceptFlags> NO_FLAGS = EnumSet
+            .noneOf(AcceptFlags.class);
+
+    private IErlModule other;
+    private ExecutorService executor;
+
+    @Override
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        other = ErlideTestUtils.createModule(ErlModelTestBase.projects[1], "zz.erl",
+                "-module(zz).\n-export([g/0]).\ng() ->\n    ok.\n");
+        module.open(null);
+        other.open(null);
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @Override
+    @After
+    public void tearDown() throws Exception {
+        executor.shutdownNow();
+        super.tearDown();
+    }
+
+    @Test
+    public void writersDontWaitForReadersOfOtherElements() throws Exception {
+        final CountDownLatch visiting = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final Future<?> reader = executor.submit(() -> {
+            module.accept(element -> {
+                visiting.countDown();
+                Uninterruptibles.awaitUninterruptibly(release);
+                return false;
+            }, ErlElementConcurrencyTest.NO_FLAGS, ErlElementKind.FUNCTION);
+            return null;
+        });
+        try {
+            assertTrue(visiting.await(10, TimeUnit.SECONDS));
+            // the reader is still inside accept()
+            final Future<?> writer = executor.submit(() -> {
+                other.addChild(new ErlAttribute(other, "a", null, "test"));
+                module.addChild(new ErlAttribute(module, "b", null, "test"));
+                return other.getChildren();
+            });
+            assertNotNull(writer.get(10, TimeUnit.SECONDS));
+            assertFalse(reader.isDone());
+        } finally {
+            release.countDown();
+        }
+        reader.get(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void concurrentReconcileAndQueries() throws Exception {
+        final List<IErlElement> original = module.getChildren();
+        final int functions = module.getChildrenOfKind(ErlElementKind.FUNCTION).size();
+        final List<Future<?>> tasks = Lists.newArrayList();
+
+        // reconciling replaces the children, edits add and remove some
+        tasks.add(executor.submit(() -> {
+            final List<IErlElement> reversed = Lists.newArrayList(original);
+            Collections.reverse(reversed);
+            for (int i = 0; i < ROUNDS; i++) {
+                module.setChildren(i % 2 == 0 ? reversed : original);
+            }
+            module.setChildren(original);
+            return null;
+        }));
+        for (int w = 0; w < 2; w++) {
+            final String name = "attr" + w;
+            tasks.add(executor.submit(() -> {
+                for (int i = 0; i < ROUNDS; i++) {
+                    final ErlAttribute a = new ErlAttribute(module, name, null, "x");
+                    module.addChild(a);
+                    module.removeChild(a);
+                }
+                return null;
+            }));
+        }
+        for (int r = 0; r < 4; r++) {
+            tasks.add(executor.submit(() -> {
+                for (int i = 0; i < ROUNDS; i++) {
+                    final List<IErlElement> children = module.getChildren();
+                    for (final IErlElement child : children) {
+                        assertNotNull(child);
+                    }
+                    assertEquals(functions,
+                            module.getChildrenOfKind(ErlElementKind.FUNCTION).size());
+                    assertEquals(1, module.getIncludeFiles().size());
+                    assertTrue(module.hasChildrenOfKind(ErlElementKind.FUNCTION));
+                    module.accept(element -> true, ErlElementConcurrencyTest.NO_FLAGS,
+                            ErlElementKind.FUNCTION);
+                }
+                return null;
+            }));
+        }
+        for (final Future<?> task : tasks) {
+            // rethrows what went wrong in the task
+            task.get(60, TimeUnit.SECONDS);
+        }
+        assertEquals(original, module.getChildren());
+    }
+
+}
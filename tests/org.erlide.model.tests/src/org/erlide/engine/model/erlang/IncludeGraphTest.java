@@ -0,0 +1,127 @@
+package org.erlide.engine.model.erlang;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IResource;
+import org.erlide.engine.ErlangEngine;
+import org.erlide.engine.internal.model.cache.IncludeGraph;
+import org.erlide.engine.internal.model.root.ErlModule;
+import org.erlide.engine.model.root.IErlModule;
+import org.erlide.engine.util.ErlideTestUtils;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+public class IncludeGraphTest extends ErlModelTestBase {
+
+    private final IncludeGraph graph = IncludeGraph.getDefault();
+
+    @Test
+    public void reverseEdgesAndTheirClosure() {
+        final IErlModule a = mkModule("ig_a.erl");
+        final IErlModule b = mkModule("ig_b.erl");
+        final IErlModule h1 = mkModule("ig_h1.hrl");
+        final IErlModule h2 = mkModule("ig_h2.hrl");
+        try {
+            graph.setIncludes(a, Lists.newArrayList(inc("ig_h1.hrl")));
+            graph.setIncludes(h2, Lists.newArrayList(inc("../include/ig_h1.hrl")));
+            graph.setIncludes(b, Lists.newArrayList(inc("ig_h2.hrl"), inc("x.hrl")));
+            graph.setIncludes(h1, Collections.<ErlangIncludeFile> emptyList());
+
+            assertThat(graph.getIncludingModules("ig_h1.hrl")).containsExactly(a, h2);
+            assertThat(graph.getAllIncludingModules("ig_h1.hrl")).containsExactly(a, h2,
+                    b);
+            assertThat(graph.getIncludes(b)).containsExactly("ig_h2.hrl", "x.hrl");
+
+            // reparsed without the include
+            graph.setIncludes(a, Collections.<ErlangIncludeFile> emptyList());
+            assertThat(graph.getIncludingModules("ig_h1.hrl")).containsExactly(h2);
+
+            graph.removeModule(h2);
+            assertThat(graph.contains(h2)).isFalse();
+            assertThat(graph.getAllIncludingModules("ig_h1.hrl")).isEmpty();
+        } finally {
+            for (final IErlModule m : Lists.newArrayList(a, b, h1, h2)) {
+                graph.removeModule(m);
+            }
+        }
+    }
+
+    @Test
+    public void parsedModulesAreInTheGraph() throws Exception {
+        final IErlModule include = ErlideTestUtils.createInclude(project, "yy.hrl",
+                "-define(A, hej).\n");
+        module.open(null);
+        assertThat(graph.getIncludes(module)).containsExactly("yy.hrl");
+        assertThat(ErlangEngine.getInstance().getModelFindService()
+                .findIncludingModules(project, include.getName(), false))
+                        .containsExactly(module);
+
+        ErlideTestUtils.deleteModule(module);
+        assertThat(graph.contains(module)).isFalse();
+        assertThat(graph.getIncludingModules("yy.hrl")).doesNotContain(module);
+    }
+
+    @Test
+    public void unparsedModulesGetTheirEdgesFromTheStructureIndex() throws Exception {
+        ErlideTestUtils.createInclude(project, "zz.hrl", "-define(B, hej).\n");
+        final String text = "-module(ig_c).\n-include(\"zz.hrl\").\n";
+        final IErlModule parsed = ErlideTestUtils.createModule(project, "ig_c.erl",
+                text);
+        parsed.open(null);
+        final String path = parsed.getFilePath();
+
+        // as after a restart, nothing but the stored structure is known
+        final ErlModule copy = new ErlModule(null, "ig_c.erl", path, null, text);
+        try {
+            assertThat(copy.restoreIncludes()).isTrue();
+            assertThat(copy.isOpen()).isFalse();
+            assertThat(graph.getIncludes(copy)).containsExactly("zz.hrl");
+
+            final ErlModule edited = new ErlModule(null, "ig_c.erl", path, null,
+                    text + "f() -> ok.\n");
+            assertThat(edited.restoreIncludes()).isFalse();
+        } finally {
+            graph.removeModule(copy);
+        }
+    }
+
+    @Test
+    public void modulesChangedOnDiskGetNewEdges() throws Exception {
+        final IErlModule include = ErlideTestUtils.createInclude(project, "ww.hrl",
+                "-define(C, hej).\n");
+        final IErlModule changed = ErlideTestUtils.createModule(project, "ig_d.erl",
+                "-module(ig_d).\n");
+        changed.open(null);
+        assertThat(ErlangEngine.getInstance().getModelFindService()
+                .findIncludingModules(project, include.getName(), false))
+                        .doesNotContain(changed);
+
+        // rewritten outside the editor, e.g. by a checkout
+        final IFile file = (IFile) changed.getResource();
+        final File f = file.getLocation().toFile();
+        Files.write(f.toPath(), "-module(ig_d).\n-include(\"ww.hrl\").\n"
+                .getBytes(StandardCharsets.UTF_8));
+        f.setLastModified(f.lastModified() + 2000);
+        file.refreshLocal(IResource.DEPTH_ZERO, null);
+
+        assertThat(ErlangEngine.getInstance().getModelFindService()
+                .findIncludingModules(project, include.getName(), false))
+                        .contains(changed);
+        assertThat(graph.getIncludes(changed)).containsExactly("ww.hrl");
+    }
+
+    private static IErlModule mkModule(final String name) {
+        return new ErlModule(null, name, "/p/" + name, null, null);
+    }
+
+    private static ErlangIncludeFile inc(final String name) {
+        return new ErlangIncludeFile(false, name);
+    }
+}
@@ -0,0 +1,212 @@
+package org.erlide.engine.model.erlang;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.List;
+
+import org.erlide.engine.ErlangEngine;
+import org.erlide.engine.internal.model.cache.ModuleIndex;
+import org.erlide.engine.internal.model.root.ErlModule;
+import org.erlide.engine.model.root.IErlElementLocator;
+import org.erlide.engine.model.root.IErlModel;
+import org.erlide.engine.model.root.IErlModule;
+import org.erlide.engine.util.ErlideTestUtils;
+import org.erlide.engine.util.ResourceUtil;
+import org.erlide.util.ErlLogger;
+import org.erlide.util.SystemConfiguration;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+public class ModuleIndexTest extends ErlModelTestBase {
+
+    private static final int PROJECTS = 20;
+    private static final int MODULES_PER_PROJECT = 600;
+    private static final int SHARED = 20;
+
+    @Test
+    public void pathsAreTriedBeforeNames() {
+        final IErlModule a = mkModule("a.erl", "/p/src/a.erl");
+        final IErlModule b = mkModule("b.erl", "/p/src/b.erl");
+        final IErlModule a2 = mkModule("a.erl", "/p/test/a.erl");
+        final ModuleIndex index = ModuleIndex.of(Lists.newArrayList(a, b, a2));
+
+        assertThat(index.find("a", null)).isSameInstanceAs(a);
+        assertThat(index.find("a.erl", null)).isSameInstanceAs(a);
+        assertThat(index.find("a", "/p/test/a.erl")).isSameInstanceAs(a2);
+        assertThat(index.find("b", "/elsewhere/b.erl")).isSameInstanceAs(b);
+        assertThat(index.find(null, "/p/src/b.erl")).isSameInstanceAs(b);
+        assertThat(index.find("c", null)).isNull();
+        assertThat(index.find("a.hrl", null)).isNull();
+    }
+
+    @Test
+    public void earlierGroupsWin() {
+        final IErlModule a = mkModule("a.erl", "/p1/src/a.erl");
+        final IErlModule a2 = mkModule("a.erl", "/p2/src/a.erl");
+        final ModuleIndex index = ModuleIndex.of(Lists.newArrayList(
+                ModuleIndex.of(Lists.newArrayList(a)),
+                ModuleIndex.of(Lists.newArrayList(a2))));
+
+        assertThat(index.size()).isEqualTo(2);
+        // a scan of the first project finds it by name before looking at the second one
+        assertThat(index.find("a", "/p2/src/a.erl")).isSameInstanceAs(a);
+        assertThat(index.find("x", "/p2/src/a.erl")).isSameInstanceAs(a2);
+    }
+
+    @Test
+    public void lookupsFollowAddedAndRemovedModules() throws Exception {
+        final IErlModel model = ErlangEngine.getInstance().getModel();
+        assertThat(find(model, "xx")).isEqualTo(module);
+        assertThat(find(model, "zz")).isNull();
+
+        final IErlModule zz = ErlideTestUtils.createModule(project, "zz.erl",
+                "-module(zz).\n");
+        assertThat(find(model, "zz")).isEqualTo(zz);
+        assertThat(model.findModule("zz")).isEqualTo(zz);
+
+        ErlideTestUtils.deleteModule(zz);
+        assertThat(find(model, "zz")).isNull();
+        assertThat(model.findModule("zz")).isNull();
+    }
+
+    @Test
+    public void lookupsInManyModules() {
+        final List<List<IErlModule>> projects = ModuleIndexTest.manyModules();
+        final ModuleIndex index = ModuleIndexTest.index(projects);
+        final List<IErlModule> all = index.getModules();
+        assertThat(all.size()).isAtLeast(10000);
+
+        // the index finds what the model found before it had one
+        for (int i = 0; i < all.size(); i++) {
+            final IErlModule module = all.get(i);
+            final String name = module.getModuleName();
+            final IErlModule found = ModuleIndexTest.scan(projects, name, null);
+            assertThat(found).isNotNull();
+            assertThat(index.find(name, null)).isSameInstanceAs(found);
+            if (i % 10 == 0) {
+                // the file name of one module with the path of another
+                final String path = all.get(i * 7919 % all.size()).getFilePath();
+                assertThat(index.find(module.getName(), path)).isSameInstanceAs(
+                        ModuleIndexTest.scan(projects, module.getName(), path));
+            }
+        }
+    }
+
+    @Ignore("benchmark, depends on the machine")
+    @Test
+    public void indexIsFasterThanScanning() {
+        final List<List<IErlModule>> projects = ModuleIndexTest.manyModules();
+        final ModuleIndex index = ModuleIndexTest.index(projects);
+        final List<IErlModule> all = index.getModules();
+        final List<String> names = Lists.newArrayList();
+        for (int i = 0; i < all.size(); i += 10) {
+            names.add(all.get(i).getModuleName());
+        }
+
+        // warm up both
+        ModuleIndexTest.timeScan(projects, names);
+        ModuleIndexTest.timeIndex(index, names);
+
+        final long scanTime = ModuleIndexTest.timeScan(projects, names);
+        final long indexTime = ModuleIndexTest.timeIndex(index, names);
+        ErlLogger.info("%d lookups in %d modules: scan %d us, index %d us",
+                names.size(), all.size(), scanTime / 1000, indexTime / 1000);
+        assertThat(indexTime).isLessThan(scanTime);
+    }
+
+    private IErlModule find(final IErlModel model, final String name) throws Exception {
+        return model.findModuleFromProject(project, name, null,
+                IErlElementLocator.Scope.PROJECT_ONLY);
+    }
+
+    private static IErlModule mkModule(final String name, final String path) {
+        return new ErlModule(null, name, path, null, null);
+    }
+
+    /*
+     * Projects with many modules of their own. Each one also has some modules of the
+     * next project, like through a linked folder, and modules with the same names as in
+     * the other projects.
+     */
+    private static List<List<IErlModule>> manyModules() {
+        final List<List<IErlModule>> projects = Lists.newArrayList();
+        for (int p = 0; p < ModuleIndexTest.PROJECTS; p++) {
+            final List<IErlModule> modules = Lists.newArrayList();
+            final int next = (p + 1) % ModuleIndexTest.PROJECTS;
+            for (int m = 0; m < ModuleIndexTest.SHARED; m++) {
+                modules.add(ModuleIndexTest.mkModule(ModuleIndexTest.fileName(next, m),
+                        ModuleIndexTest.pathOf(next, m)));
+                final String name = "common" + m + ".erl";
+                modules.add(ModuleIndexTest.mkModule(name, "/p" + p + "/test/" + name));
+            }
+            for (int m = 0; m < ModuleIndexTest.MODULES_PER_PROJECT; m++) {
+                modules.add(ModuleIndexTest.mkModule(ModuleIndexTest.fileName(p, m),
+                        ModuleIndexTest.pathOf(p, m)));
+            }
+            projects.add(modules);
+        }
+        return projects;
+    }
+
+    private static ModuleIndex index(final List<List<IErlModule>> projects) {
+        final List<ModuleIndex> indexes = Lists.newArrayList();
+        for (final List<IErlModule> modules : projects) {
+            indexes.add(ModuleIndex.of(modules));
+        }
+        return ModuleIndex.of(indexes);
+    }
+
+    // what the model did before it had an index
+    private static IErlModule scan(final List<List<IErlModule>> projects,
+            final String moduleName, final String modulePath) {
+        for (final List<IErlModule> modules : projects) {
+            if (modulePath != null) {
+                for (final IErlModule module : modules) {
+                    final String path = module.getFilePath();
+                    if (path != null && ResourceUtil.samePath(modulePath, path)) {
+                        return module;
+                    }
+                }
+            }
+            if (moduleName != null) {
+                final boolean hasExtension = SystemConfiguration
+                        .hasExtension(moduleName);
+                for (final IErlModule module : modules) {
+                    final String name = hasExtension ? module.getName()
+                            : module.getModuleName();
+                    if (moduleName.equals(name)) {
+                        return module;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    private static long timeScan(final List<List<IErlModule>> projects,
+            final List<String> names) {
+        final long start = System.nanoTime();
+        for (final String name : names) {
+            assertThat(ModuleIndexTest.scan(projects, name, null)).isNotNull();
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static long timeIndex(final ModuleIndex index, final List<String> names) {
+        final long start = System.nanoTime();
+        for (final String name : names) {
+            assertThat(index.find(name, null)).isNotNull();
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static String fileName(final int project, final int module) {
+        return "m" + project + "_" + module + ".erl";
+    }
+
+    private static String pathOf(final int project, final int module) {
+        return "/p" + project + "/src/" + ModuleIndexTest.fileName(project, module);
+    }
+}
@@ -0,0 +1,86 @@
+package org.erlide.engine.model.erlang;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.List;
+
+import org.erlide.engine.ErlangEngine;
+import org.erlide.engine.internal.model.erlang.ErlAttribute;
+import org.erlide.engine.model.IErlElement;
+import org.erlide.engine.model.root.IErlModel;
+import org.erlide.engine.model.root.IErlModule;
+import org.erlide.engine.util.ErlideTestUtils;
+import org.junit.Test;
+
+public class PositionIndexTest extends ErlModelTestBase {
+
+    private static final String TEXT = "-module(pi).\n-export([f/1, g/0]).\n"
+            + "-record(r, {a, b = 2}).\n-define(M, 1).\n\n% about f\n"
+            + "f(0) ->\n    zero;\nf(N) ->\n    N + ?M.\n\n-spec g() -> ok.\n"
+            + "g() ->\n    #r{}, ok.\n";
+
+    @Test
+    public void sameAnswersAsWalkingTheTree() throws Exception {
+        final IErlModule m = ErlideTestUtils.createModule(project, "pi.erl",
+                PositionIndexTest.TEXT);
+        m.open(null);
+        assertSameAnswers(m);
+    }
+
+    @Test
+    public void answersFollowChangedChildren() throws Exception {
+        final IErlModule m = ErlideTestUtils.createModule(project, "pi.erl",
+                PositionIndexTest.TEXT);
+        m.open(null);
+        final int end = PositionIndexTest.TEXT.length();
+        assertThat(m.getElementAt(end + 5)).isNull();
+
+        final ErlAttribute a = new ErlAttribute(m, "a", null, "x");
+        a.setSourceRangeOffset(end + 1);
+        a.setSourceRangeLength(10);
+        a.setLineStart(100);
+        a.setLineEnd(101);
+        m.addChild(a);
+        assertThat(m.getElementAt(end + 5)).isSameInstanceAs(a);
+        assertThat(m.getElementAtLine(101)).isSameInstanceAs(a);
+        assertSameAnswers(m);
+
+        m.removeChild(a);
+        assertThat(m.getElementAt(end + 5)).isNull();
+        assertThat(m.getElementAtLine(101)).isNull();
+
+        final List<IErlElement> children = m.getChildren();
+        m.setChildren(children.subList(0, 1));
+        assertThat(m.getElementAt(end - 2)).isNull();
+        m.setChildren(children);
+        assertSameAnswers(m);
+    }
+
+    private static void assertSameAnswers(final IErlModule m) throws Exception {
+        final IErlModel model = ErlangEngine.getInstance().getModel();
+        for (int offset = -1; offset <= PositionIndexTest.TEXT.length() + 12; offset++) {
+            final int position = offset;
+            final IErlElement expected = model.innermostThat(m, e -> {
+                if (e instanceof ISourceReference) {
+                    final ISourceRange r = ((ISourceReference) e).getSourceRange();
+                    return r != null && r.hasPosition(position);
+                }
+                return false;
+            });
+            assertThat(m.getElementAt(offset)).isSameInstanceAs(expected);
+        }
+        for (int line = -1; line <= 102; line++) {
+            final int lineNumber = line;
+            final IErlElement expected = model.innermostThat(m, e -> {
+                if (e instanceof ISourceReference) {
+                    final ISourceReference sr = (ISourceReference) e;
+                    return sr.getLineStart() <= lineNumber
+                            && sr.getLineEnd() >= lineNumber;
+                }
+                return false;
+            });
+            assertThat(m.getElementAtLine(line)).isSameInstanceAs(expected);
+        }
+    }
+
+}
@@ -0,0 +1,112 @@
+package org.erlide.engine.model.erlang;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.erlide.engine.internal.model.cache.StructureIndex;
+import org.erlide.engine.internal.model.root.ErlModule;
+import org.erlide.engine.model.IErlElement;
+import org.erlide.engine.model.root.IErlModule;
+import org.erlide.engine.util.ErlideTestUtils;
+import org.junit.Test;
+
+import com.ericsson.otp.erlang.OtpErlangAtom;
+import com.ericsson.otp.erlang.OtpErlangList;
+import com.ericsson.otp.erlang.OtpErlangObject;
+import com.ericsson.otp.erlang.OtpErlangTuple;
+
+public class StructureIndexTest extends ErlModelTestBase {
+
+    private static final OtpErlangTuple STRUCTURE = new OtpErlangTuple(
+            new OtpErlangObject[] {
+                    new OtpErlangList(new OtpErlangAtom("form")), new OtpErlangList()
+            });
+
+    @Test
+    public void entriesSurviveReloading() throws Exception {
+        final File file = File.createTempFile("structure", ".idx");
+        try {
+            file.delete();
+            final StructureIndex index = new StructureIndex(file);
+            index.put("/p/a.erl", "-module(a).", StructureIndexTest.STRUCTURE);
+            index.put("/p/b.erl", "-module(b).", StructureIndexTest.STRUCTURE);
+            assertThat(index.get("/p/a.erl", "-module(a).")).isEqualTo(
+                    StructureIndexTest.STRUCTURE);
+            // the text has changed
+            assertThat(index.get("/p/a.erl", "-module(a).\n")).isNull();
+
+            final StructureIndex reloaded = new StructureIndex(file);
+            assertThat(reloaded.size()).isEqualTo(2);
+            assertThat(reloaded.get("/p/b.erl", "-module(b).")).isEqualTo(
+                    StructureIndexTest.STRUCTURE);
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void replacedAndCutOffRecordsAreDropped() throws Exception {
+        final File dir = Files.createTempDirectory("structure").toFile();
+        try {
+            final File file = new File(dir, "structure.idx");
+            final StructureIndex index = new StructureIndex(file);
+            for (int i = 0; i < 5; i++) {
+                index.put("/p/a.erl", "text" + i, StructureIndexTest.STRUCTURE);
+            }
+            final long length = index.getFile().length();
+            try (FileOutputStream os = new FileOutputStream(index.getFile(), true)) {
+                os.write(new byte[] { 0, 0, 0, 42, 1 });
+            }
+
+            final StructureIndex reloaded = new StructureIndex(file);
+            assertThat(reloaded.size()).isEqualTo(1);
+            assertThat(reloaded.get("/p/a.erl", "text0")).isNull();
+            assertThat(reloaded.get("/p/a.erl", "text4")).isEqualTo(
+                    StructureIndexTest.STRUCTURE);
+            // compacted into a new file, the mapped one is left alone
+            assertThat(reloaded.getFile()).isNotEqualTo(index.getFile());
+            assertThat(reloaded.getFile().length()).isLessThan(length);
+
+            // appended after compaction, beyond the mapped part of the file
+            reloaded.put("/p/b.erl", "-module(b).", StructureIndexTest.STRUCTURE);
+            reloaded.put("/p/a.erl", "text5", StructureIndexTest.STRUCTURE);
+            assertThat(reloaded.get("/p/b.erl", "-module(b).")).isEqualTo(
+                    StructureIndexTest.STRUCTURE);
+            assertThat(reloaded.get("/p/a.erl", "text5")).isEqualTo(
+                    StructureIndexTest.STRUCTURE);
+            assertThat(new StructureIndex(file).size()).isEqualTo(2);
+        } finally {
+            for (final File f : dir.listFiles()) {
+                f.delete();
+            }
+            dir.delete();
+        }
+    }
+
+    @Test
+    public void unchangedModulesAreRestored() throws Exception {
+        final String text = "-module(si).\n-export([f/0]).\n-record(r, {a}).\n"
+                + "% about f\nf() ->\n    ok.\n";
+        final IErlModule parsed = ErlideTestUtils.createModule(project, "si.erl",
+                text);
+        parsed.open(null);
+        final String path = parsed.getFilePath();
+        assertThat(StructureIndex.getDefault().get(path, text)).isNotNull();
+
+        final ErlModule copy = new ErlModule(null, "si.erl", path, null, text);
+        assertThat(copy.internalBuildStructure(null)).isTrue();
+        final List<IErlElement> expected = parsed.getChildren();
+        final List<IErlElement> children = copy.getChildren();
+        assertThat(children).hasSize(expected.size());
+        for (int i = 0; i < children.size(); i++) {
+            assertThat(children.get(i).getKind()).isEqualTo(expected.get(i).getKind());
+            assertThat(children.get(i).getName()).isEqualTo(expected.get(i).getName());
+        }
+        assertThat(copy.getComments()).hasSize(parsed.getComments().size());
+    }
+
+}
@@ -1,12 +1,20 @@
 package com.ericson.erlang;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 
 import java.util.Arrays;
 
 import org.junit.Test;
 
+import com.ericsson.otp.erlang.OtpErlangAtom;
+import com.ericsson.otp.erlang.OtpErlangDecodeException;
+import com.ericsson.otp.erlang.OtpErlangList;
+import com.ericsson.otp.erlang.OtpErlangObject;
 import com.ericsson.otp.erlang.OtpErlangString;
+import com.ericsson.otp.erlang.OtpErlangTuple;
+import com.ericsson.otp.erlang.OtpInputStream;
+import com.ericsson.otp.erlang.OtpOutputStream;
 
 public class OtpErlangTest {
 
@@ -20,4 +28,32 @@ public class OtpErlangTest {
         };
         assertEquals(Arrays.toString(expect), Arrays.toString(cps));
     }
+
+    @Test
+    public void decodedAtomsAreShared() throws OtpErlangDecodeException {
+        final OtpErlangObject term = new OtpErlangList(new OtpErlangObject[] {
+                new OtpErlangTuple(new OtpErlangObject[] { new OtpErlangAtom("ok"),
+                        new OtpErlangAtom("mod") }),
+                new OtpErlangTuple(new OtpErlangObject[] { new OtpErlangAtom("ok"),
+                        new OtpErlangAtom("mod") }) });
+        final OtpErlangList decoded = (OtpErlangList) new OtpInputStream(
+                new OtpOutputStream(term).toByteArray()).read_any();
+        final OtpErlangTuple t0 = (OtpErlangTuple) decoded.elementAt(0);
+        final OtpErlangTuple t1 = (OtpErlangTuple) decoded.elementAt(1);
+
+        assertEquals(term, decoded);
+        assertSame(t0.elementAt(0), t1.elementAt(0));
+        assertSame(t0.elementAt(1), t1.elementAt(1));
+        assertSame(OtpErlangAtom.valueOf("mod"), t0.elementAt(1));
+    }
+
+    @Test
+    public void nonAsciiAtomsAreDecoded() throws OtpErlangDecodeException {
+        final OtpErlangAtom atom = new OtpErlangAtom("\u00e5\u00e4\u00f6");
+        final OtpErlangObject decoded = new OtpInputStream(
+                new OtpOutputStream(atom).toByteArray()).read_any();
+
+        assertEquals(atom, decoded);
+        assertEquals(atom, OtpErlangAtom.valueOf("\u00e5\u00e4\u00f6"));
+    }
 }
@@ -0,0 +1,109 @@
+package com.ericson.erlang;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import com.ericsson.otp.erlang.OtpErlangAtom;
+import com.ericsson.otp.erlang.OtpErlangBinary;
+import com.ericsson.otp.erlang.OtpErlangDecodeException;
+import com.ericsson.otp.erlang.OtpErlangDouble;
+import com.ericsson.otp.erlang.OtpErlangList;
+import com.ericsson.otp.erlang.OtpErlangLong;
+import com.ericsson.otp.erlang.OtpErlangMap;
+import com.ericsson.otp.erlang.OtpErlangObject;
+import com.ericsson.otp.erlang.OtpErlangPid;
+import com.ericsson.otp.erlang.OtpErlangRef;
+import com.ericsson.otp.erlang.OtpErlangString;
+import com.ericsson.otp.erlang.OtpErlangTuple;
+import com.ericsson.otp.erlang.OtpInputStream;
+import com.ericsson.otp.erlang.OtpLazyTerm;
+import com.ericsson.otp.erlang.OtpOutputStream;
+
+public class OtpLazyTermTest {
+
+    private static OtpLazyTerm lazy(final OtpErlangObject term)
+            throws OtpErlangDecodeException {
+        final OtpOutputStream out = new OtpOutputStream();
+        out.write1(131);
+        out.write_any(term);
+        return new OtpInputStream(out.toByteArray()).read_lazy();
+    }
+
+    private static OtpErlangObject sample() {
+        final OtpErlangObject[] forms = new OtpErlangObject[100];
+        for (int i = 0; i < forms.length; i++) {
+            forms[i] = new OtpErlangTuple(new OtpErlangObject[] {
+                    new OtpErlangAtom("function"), new OtpErlangLong(i),
+                    new OtpErlangString("f" + i), new OtpErlangBinary(new byte[i]) });
+        }
+        final OtpErlangMap map = new OtpErlangMap();
+        map.put(new OtpErlangAtom("k"), new OtpErlangDouble(1.5));
+        return new OtpErlangTuple(new OtpErlangObject[] { new OtpErlangAtom("event"),
+                new OtpErlangAtom("log"), new OtpErlangList(forms),
+                new OtpErlangPid("n@h", 1, 2, 3), new OtpErlangRef("n@h", 4, 0), map,
+                new OtpErlangLong(1L << 62), new OtpErlangList() });
+    }
+
+    @Test
+    public void skipsToElementsWithoutDecoding() throws Exception {
+        final OtpErlangTuple term = (OtpErlangTuple) sample();
+        final OtpLazyTerm view = lazy(term);
+
+        assertThat(view.isTuple()).isTrue();
+        assertThat(view.arity()).isEqualTo(term.arity());
+        assertThat(view.elementAt(1).atomValue()).isEqualTo("log");
+        assertThat(view.elementAt(0).isAtom("event")).isTrue();
+        for (int i = 0; i < term.arity(); i++) {
+            assertThat(view.elementAt(i).decode()).isEqualTo(term.elementAt(i));
+        }
+        assertThat(view.elementAt(term.arity())).isNull();
+        assertThat(view.decode()).isEqualTo(term);
+    }
+
+    @Test
+    public void walksListElements() throws Exception {
+        final OtpErlangList forms = (OtpErlangList) ((OtpErlangTuple) sample())
+                .elementAt(2);
+        final List<OtpLazyTerm> elements = lazy(forms).elements();
+
+        assertThat(elements).hasSize(forms.arity());
+        for (int i = 0; i < forms.arity(); i++) {
+            assertThat(elements.get(i).elementAt(1).longValue()).isEqualTo((long) i);
+            assertThat(elements.get(i).decode()).isEqualTo(forms.elementAt(i));
+        }
+    }
+
+    @Test
+    public void stringsAreLists() throws Exception {
+        final OtpLazyTerm view = lazy(new OtpErlangString("abc"));
+
+        assertThat(view.isList()).isTrue();
+        assertThat(view.arity()).isEqualTo(3);
+        assertThat(view.elementAt(1).longValue()).isEqualTo((long) 'b');
+        assertThat(view.elements()).hasSize(3);
+    }
+
+    @Test
+    public void streamIsPositionedAfterTheTerm() throws Exception {
+        final OtpOutputStream out = new OtpOutputStream();
+        out.write_any(sample());
+        out.write_any(new OtpErlangAtom("next"));
+        final OtpInputStream in = new OtpInputStream(out.toByteArray());
+
+        final OtpLazyTerm first = in.read_lazy();
+
+        assertThat(in.read_atom()).isEqualTo("next");
+        assertThat(first.decode()).isEqualTo(sample());
+    }
+
+    @Test(expected = OtpErlangDecodeException.class)
+    public void truncatedTermIsRejected() throws Exception {
+        final OtpOutputStream out = new OtpOutputStream();
+        out.write_any(sample());
+        final byte[] bytes = out.toByteArray();
+        new OtpInputStream(bytes, 0, bytes.length - 1, 0).read_lazy();
+    }
+}
@@ -0,0 +1,51 @@
+package org.erlide.runtime;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.erlide.runtime.api.RuntimeData;
+import org.erlide.runtime.internal.OtpNodeProxy;
+import org.erlide.runtime.runtimeinfo.RuntimeInfo;
+import org.erlide.runtime.runtimeinfo.RuntimeInfoCatalog;
+import org.erlide.util.HostnameChecker;
+import org.junit.After;
+import org.junit.Before;
+
+/**
+ * Starts a managed runtime from the first configured installation before each test and
+ * kills it afterwards.
+ */
+public abstract class AbstractRuntimeTest {
+
+    protected OtpNodeProxy runtime;
+
+    @Before
+    public void prepareRuntime() {
+        final RuntimeInfoCatalog cat = new RuntimeInfoCatalog();
+        cat.initializeRuntimesList();
+        assertThat(cat.getRuntimes()).isNotEmpty();
+        final RuntimeInfo info = cat.getRuntimes().iterator().next();
+        assertThat(info).isNotEqualTo(RuntimeInfo.NO_RUNTIME_INFO);
+
+        HostnameChecker.getInstance().detectHostNames(info.getOtpHome());
+
+        final RuntimeData data = new RuntimeData(info, "run");
+        data.setNodeName("etest" + System.currentTimeMillis());
+        data.setLongName(false);
+        data.setCookie("c");
+        data.setManaged(true);
+        data.setRestartable(false);
+
+        runtime = new OtpNodeProxy(data);
+        runtime.ensureRunning();
+    }
+
+    @After
+    public void cleanupRuntime() {
+        final Process process = runtime.getProcess();
+        if (process != null) {
+            process.destroy();
+        }
+        runtime = null;
+    }
+
+}
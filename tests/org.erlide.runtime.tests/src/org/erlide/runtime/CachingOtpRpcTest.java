@@ -0,0 +1,123 @@
+package org.erlide.runtime;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.lang.reflect.Proxy;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.erlide.runtime.rpc.CachingOtpRpc;
+import org.erlide.runtime.rpc.IOtpRpc;
+import org.erlide.runtime.rpc.RpcException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.ericsson.otp.erlang.OtpErlangAtom;
+import com.ericsson.otp.erlang.OtpErlangLong;
+import com.ericsson.otp.erlang.OtpErlangObject;
+import com.ericsson.otp.erlang.OtpErlangTuple;
+
+public class CachingOtpRpcTest {
+
+    private final AtomicInteger calls = new AtomicInteger();
+    private final AtomicInteger version = new AtomicInteger();
+    private volatile CountDownLatch gate;
+    private volatile OtpErlangObject reply;
+    private CachingOtpRpc rpc;
+
+    @Before
+    public void setUp() {
+        final IOtpRpc backend = (IOtpRpc) Proxy.newProxyInstance(
+                IOtpRpc.class.getClassLoader(), new Class<?>[] { IOtpRpc.class },
+                (proxy, method, args) -> {
+                    if (!"call".equals(method.getName())) {
+                        return null;
+                    }
+                    if (gate != null) {
+                        gate.await();
+                    }
+                    return reply != null ? reply
+                            : new OtpErlangLong(calls.incrementAndGet());
+                });
+        rpc = new CachingOtpRpc(backend, 2);
+        CachingOtpRpc.register("m", "cached", CachingOtpRpc.RUNTIME);
+        CachingOtpRpc.register("m", "versioned",
+                args -> Integer.valueOf(version.get()));
+    }
+
+    @After
+    public void tearDown() {
+        CachingOtpRpc.unregister("m", "cached");
+        CachingOtpRpc.unregister("m", "versioned");
+    }
+
+    @Test
+    public void registeredCallsAreCached() throws RpcException {
+        final OtpErlangObject first = rpc.call("m", "cached", "s", "a");
+        assertThat(rpc.call("m", "cached", "s", "a")).isSameInstanceAs(first);
+        assertThat(rpc.call(1000, "m", "cached", "s", "a")).isSameInstanceAs(first);
+        assertThat(rpc.call("m", "cached", "s", "b")).isNotEqualTo(first);
+        assertThat(rpc.call("m", "other", "s", "a"))
+                .isNotEqualTo(rpc.call("m", "other", "s", "a"));
+
+        assertThat(rpc.getHits()).isEqualTo(2L);
+        assertThat(rpc.getMisses()).isEqualTo(2L);
+        assertThat(calls.get()).isEqualTo(4);
+    }
+
+    @Test
+    public void changedVersionInvalidates() throws RpcException {
+        final OtpErlangObject first = rpc.call("m", "versioned", "");
+        assertThat(rpc.call("m", "versioned", "")).isSameInstanceAs(first);
+        version.incrementAndGet();
+        assertThat(rpc.call("m", "versioned", "")).isNotEqualTo(first);
+
+        rpc.setConnected(false);
+        assertThat(rpc.size()).isEqualTo(0L);
+    }
+
+    @Test
+    public void sizeIsBounded() throws RpcException {
+        for (int i = 0; i < 10; i++) {
+            rpc.call("m", "cached", "i", Integer.valueOf(i));
+        }
+        assertThat(rpc.size()).isAtMost(2L);
+    }
+
+    @Test
+    public void errorsAreNotCached() throws RpcException {
+        reply = new OtpErlangTuple(new OtpErlangObject[] { new OtpErlangAtom("error"),
+                new OtpErlangAtom("x") });
+        rpc.call("m", "cached", "");
+        rpc.call("m", "cached", "");
+        assertThat(rpc.getMisses()).isEqualTo(2L);
+    }
+
+    @Test
+    public void concurrentCallsShareOneRoundTrip() throws Exception {
+        gate = new CountDownLatch(1);
+        final CompletableFuture<OtpErlangObject> first = CompletableFuture
+                .supplyAsync(() -> call());
+        while (rpc.getMisses() == 0) {
+            Thread.sleep(1);
+        }
+        final CompletableFuture<OtpErlangObject> second = CompletableFuture
+                .supplyAsync(() -> call());
+        while (rpc.getShared() == 0) {
+            Thread.sleep(1);
+        }
+        gate.countDown();
+        assertThat(second.get()).isSameInstanceAs(first.get());
+        assertThat(calls.get()).isEqualTo(1);
+    }
+
+    private OtpErlangObject call() {
+        try {
+            return rpc.call("m", "cached", "");
+        } catch (final RpcException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
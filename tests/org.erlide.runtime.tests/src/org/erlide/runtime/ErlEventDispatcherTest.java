@@ -0,0 +1,123 @@
+package org.erlide.runtime;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.erlide.runtime.events.ErlEvent;
+import org.erlide.runtime.events.ErlEventDispatcher;
+import org.erlide.runtime.events.ErlEventDispatcher.OverflowPolicy;
+import org.erlide.runtime.events.ErlangEventHandler;
+import org.junit.Test;
+
+import com.ericsson.otp.erlang.OtpErlangLong;
+import com.ericsson.otp.erlang.OtpErlangPid;
+import com.google.common.eventbus.Subscribe;
+
+public class ErlEventDispatcherTest {
+
+    private static final OtpErlangPid SENDER = new OtpErlangPid("n@h", 1, 0, 0);
+
+    private static ErlEvent event(final String topic, final int n) {
+        return new ErlEvent(topic, null, new OtpErlangLong(n),
+                ErlEventDispatcherTest.SENDER);
+    }
+
+    private static class Recorder extends ErlangEventHandler {
+        final List<Long> seen = new CopyOnWriteArrayList<>();
+        final CountDownLatch gate;
+
+        Recorder(final String topic, final CountDownLatch gate) {
+            super(topic);
+            this.gate = gate;
+        }
+
+        @Subscribe
+        public void handleEvent(final ErlEvent event) throws Exception {
+            gate.await();
+            seen.add(((OtpErlangLong) event.getEvent()).longValue());
+        }
+    }
+
+    @Test
+    public void slowTopicDoesNotHoldBackOthers() throws Exception {
+        final ErlEventDispatcher dispatcher = new ErlEventDispatcher("test");
+        final CountDownLatch closed = new CountDownLatch(1);
+        final Recorder slow = new Recorder("trace", closed);
+        final Recorder fast = new Recorder("log", new CountDownLatch(0));
+        dispatcher.register(slow);
+        dispatcher.register(fast);
+
+        for (int i = 0; i < 10; i++) {
+            dispatcher.dispatch(event("trace", i));
+            dispatcher.dispatch(event("log", i));
+        }
+        waitFor(fast, 10);
+
+        assertThat(fast.seen).containsExactly(0L, 1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L)
+                .inOrder();
+        assertThat(slow.seen).isEmpty();
+        closed.countDown();
+        waitFor(slow, 10);
+        assertThat(slow.seen).containsExactly(0L, 1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L)
+                .inOrder();
+        assertThat(dispatcher.getStats("trace").getDelivered()).isEqualTo(10L);
+        assertThat(dispatcher.getStats("trace").getDropped()).isEqualTo(0L);
+    }
+
+    @Test
+    public void fullQueueDropsOldest() throws Exception {
+        final ErlEventDispatcher dispatcher = new ErlEventDispatcher("test");
+        final CountDownLatch closed = new CountDownLatch(1);
+        final Recorder slow = new Recorder("trace", closed);
+        dispatcher.register(slow);
+        dispatcher.configure("trace", OverflowPolicy.DROP_OLDEST, 3);
+
+        dispatcher.dispatch(event("trace", 0));
+        // wait until the handler holds the first one
+        while (dispatcher.getStats("trace").getQueued() > 0) {
+            Thread.sleep(1);
+        }
+        for (int i = 1; i <= 5; i++) {
+            dispatcher.dispatch(event("trace", i));
+        }
+        assertThat(dispatcher.getStats("trace").getMaxQueued()).isEqualTo(3);
+        closed.countDown();
+        waitFor(slow, 4);
+
+        assertThat(slow.seen).containsExactly(0L, 3L, 4L, 5L).inOrder();
+        assertThat(dispatcher.getStats("trace").getDropped()).isEqualTo(2L);
+    }
+
+    @Test
+    public void coalescedEventsKeepTheLatest() throws Exception {
+        final ErlEventDispatcher dispatcher = new ErlEventDispatcher("test");
+        final CountDownLatch closed = new CountDownLatch(1);
+        final Recorder slow = new Recorder("processlist", closed);
+        dispatcher.register(slow);
+        dispatcher.configure("processlist", OverflowPolicy.COALESCE, 1);
+
+        dispatcher.dispatch(event("processlist", 0));
+        while (dispatcher.getStats("processlist").getQueued() > 0) {
+            Thread.sleep(1);
+        }
+        for (int i = 1; i <= 5; i++) {
+            dispatcher.dispatch(event("processlist", i));
+        }
+        closed.countDown();
+        waitFor(slow, 2);
+
+        assertThat(slow.seen).containsExactly(0L, 5L).inOrder();
+    }
+
+    private static void waitFor(final Recorder recorder, final int count)
+            throws InterruptedException {
+        final long stop = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (recorder.seen.size() < count && System.nanoTime() < stop) {
+            Thread.sleep(1);
+        }
+    }
+}
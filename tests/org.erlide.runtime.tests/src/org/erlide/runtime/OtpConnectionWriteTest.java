@@ -0,0 +1,190 @@
+package org.erlide.runtime;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import org.erlide.runtime.internal.rpc.OtpRpc;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameter;
+import org.junit.runners.Parameterized.Parameters;
+
+import com.ericsson.otp.erlang.OtpErlangLong;
+import com.ericsson.otp.erlang.OtpErlangObject;
+import com.ericsson.otp.erlang.OtpNioTransportFactory;
+import com.ericsson.otp.erlang.OtpNode;
+import com.ericsson.otp.erlang.OtpServerTransport;
+import com.ericsson.otp.erlang.OtpSocketTransportFactory;
+import com.ericsson.otp.erlang.OtpTransport;
+import com.ericsson.otp.erlang.OtpTransportFactory;
+import com.google.common.collect.Lists;
+
+/**
+ * Runs the same RPC load over loopback with separate writes, gathering writes and write
+ * coalescing, counting the socket writes each one needs. Runs over both the blocking
+ * and the NIO transport.
+ */
+@RunWith(Parameterized.class)
+public class OtpConnectionWriteTest extends AbstractRuntimeTest {
+
+    private static final int THREADS = 8;
+    private static final int CALLS_PER_THREAD = 500;
+
+    @Parameters
+    public static List<Object[]> transports() {
+        return Arrays.asList(new Object[][] { { false }, { true } });
+    }
+
+    @Parameter
+    public boolean nio;
+
+    @Test
+    public void fewerWritesWithGatheringAndCoalescing() throws Exception {
+        final long separate = run(false, 0);
+        final long gathering = run(true, 0);
+        final long coalescing = run(true, 50000);
+
+        assertThat(gathering).isLessThan(separate);
+        assertThat(coalescing).isAtMost(gathering);
+    }
+
+    /**
+     * @return number of socket writes
+     */
+    private long run(final boolean gathering, final long coalesceNanos)
+            throws Exception {
+        final CountingTransportFactory socketFactory = new CountingTransportFactory();
+        final OtpNioTransportFactory nioFactory = nio ? new OtpNioTransportFactory(1)
+                : null;
+        final OtpNode node = new OtpNode("wbench" + System.currentTimeMillis(), "c",
+                nio ? nioFactory : socketFactory);
+        final LongSupplier writes = nio ? nioFactory::getWriteCount
+                : socketFactory.writes::get;
+        try {
+            node.setGatheringWrites(gathering);
+            node.setWriteCoalescing(coalesceNanos);
+            assertThat(node.ping(runtime.getNodeName(), 2000)).isTrue();
+            final OtpRpc rpc = new OtpRpc(node, runtime.getNodeName(), true);
+            rpc.setConnected(true);
+            try {
+                // warm up
+                load(rpc);
+                final long before = writes.getAsLong();
+                load(rpc);
+                return writes.getAsLong() - before;
+            } finally {
+                rpc.setConnected(false);
+            }
+        } finally {
+            node.close();
+            if (nioFactory != null) {
+                nioFactory.close();
+            }
+        }
+    }
+
+    private void load(final OtpRpc rpc) throws Exception {
+        final ExecutorService pool = Executors
+                .newFixedThreadPool(OtpConnectionWriteTest.THREADS);
+        try {
+            final List<Callable<Void>> tasks = Lists.newArrayList();
+            for (int t = 0; t < OtpConnectionWriteTest.THREADS; t++) {
+                final int base = t * OtpConnectionWriteTest.CALLS_PER_THREAD;
+                tasks.add(() -> {
+                    for (int i = 0; i < OtpConnectionWriteTest.CALLS_PER_THREAD; i++) {
+                        final OtpErlangObject r = rpc.call("erlang", "abs", "i",
+                                -(base + i));
+                        assertThat(((OtpErlangLong) r).longValue())
+                                .isEqualTo((long) base + i);
+                    }
+                    return null;
+                });
+            }
+            for (final Future<Void> f : pool.invokeAll(tasks)) {
+                f.get();
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static class CountingTransportFactory implements OtpTransportFactory {
+
+        final AtomicLong writes = new AtomicLong();
+        private final OtpTransportFactory delegate = new OtpSocketTransportFactory();
+
+        @Override
+        public OtpTransport createTransport(final String addr, final int port)
+                throws IOException {
+            return new CountingTransport(delegate.createTransport(addr, port));
+        }
+
+        @Override
+        public OtpTransport createTransport(final InetAddress addr, final int port)
+                throws IOException {
+            return new CountingTransport(delegate.createTransport(addr, port));
+        }
+
+        @Override
+        public OtpServerTransport createServerTransport(final int port)
+                throws IOException {
+            return delegate.createServerTransport(port);
+        }
+
+        private class CountingTransport implements OtpTransport {
+
+            private final OtpTransport transport;
+            private OutputStream out;
+
+            CountingTransport(final OtpTransport transport) {
+                this.transport = transport;
+            }
+
+            @Override
+            public InputStream getInputStream() throws IOException {
+                return transport.getInputStream();
+            }
+
+            @Override
+            public synchronized OutputStream getOutputStream() throws IOException {
+                if (out == null) {
+                    out = new FilterOutputStream(transport.getOutputStream()) {
+                        @Override
+                        public void write(final int b) throws IOException {
+                            writes.incrementAndGet();
+                            super.out.write(b);
+                        }
+
+                        @Override
+                        public void write(final byte[] b, final int off, final int len)
+                                throws IOException {
+                            writes.incrementAndGet();
+                            super.out.write(b, off, len);
+                        }
+                    };
+                }
+                return out;
+            }
+
+            @Override
+            public void close() throws IOException {
+                transport.close();
+            }
+        }
+    }
+
+}
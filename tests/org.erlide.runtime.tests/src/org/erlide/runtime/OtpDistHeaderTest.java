@@ -0,0 +1,58 @@
+package org.erlide.runtime;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.io.IOException;
+
+import org.erlide.runtime.internal.rpc.OtpRpc;
+import org.erlide.runtime.rpc.RpcException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.ericsson.otp.erlang.OtpErlangAtom;
+import com.ericsson.otp.erlang.OtpErlangList;
+import com.ericsson.otp.erlang.OtpErlangObject;
+import com.ericsson.otp.erlang.OtpErlangTuple;
+import com.ericsson.otp.erlang.OtpNode;
+
+/**
+ * Talks to a live runtime over a connection where both sides announced the distribution
+ * header atom cache. The runtime then refers to the atoms it sent before through the
+ * cache, and only accepts our messages with a distribution header.
+ */
+public class OtpDistHeaderTest extends AbstractRuntimeTest {
+
+    private OtpNode node;
+
+    @Before
+    public void createNode() throws IOException {
+        node = new OtpNode("atomcache" + System.currentTimeMillis(), "c");
+        node.setDistributionAtomCache(true);
+        assertThat(node.ping(runtime.getNodeName(), 2000)).isTrue();
+    }
+
+    @After
+    public void closeNode() {
+        if (node != null) {
+            node.close();
+        }
+    }
+
+    @Test
+    public void repeatedAtomsComeFromTheCache() throws RpcException {
+        final OtpRpc rpc = new OtpRpc(node, runtime.getNodeName());
+        rpc.setConnected(true);
+        for (int i = 0; i < 100; i++) {
+            // the same few atoms again and again, later replies only refer to them
+            final OtpErlangObject[] atoms = { new OtpErlangAtom("ok"),
+                    new OtpErlangAtom("cached_" + i % 10),
+                    new OtpErlangAtom("åtom_" + i % 3) };
+            final OtpErlangObject r = rpc.call("erlang", "list_to_tuple", "x",
+                    new OtpErlangList(atoms));
+            assertThat(r).isEqualTo(new OtpErlangTuple(atoms));
+        }
+        assertThat(node.ping(runtime.getNodeName(), 2000)).isTrue();
+    }
+
+}
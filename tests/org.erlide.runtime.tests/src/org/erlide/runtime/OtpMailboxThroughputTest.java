@@ -0,0 +1,128 @@
+package org.erlide.runtime;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.io.IOException;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.ericsson.otp.erlang.OtpErlangLong;
+import com.ericsson.otp.erlang.OtpErlangObject;
+import com.ericsson.otp.erlang.OtpErlangPid;
+import com.ericsson.otp.erlang.OtpErlangTuple;
+import com.ericsson.otp.erlang.OtpMbox;
+import com.ericsson.otp.erlang.OtpNode;
+import com.google.common.collect.Maps;
+
+/**
+ * Many local producers sending to one hot mailbox, like the runtime's event box, with
+ * the synchronized and the lock-free mailbox queue, and the node's mailbox registry.
+ * The runtime is only started to have epmd around.
+ */
+public class OtpMailboxThroughputTest extends AbstractRuntimeTest {
+
+    private static final int PRODUCERS = 8;
+    private static final int MESSAGES_PER_PRODUCER = 20000;
+
+    private OtpNode node;
+
+    @Before
+    public void createNode() throws IOException {
+        node = new OtpNode("mboxbench" + System.currentTimeMillis(), "c");
+    }
+
+    @After
+    public void closeNode() {
+        node.close();
+    }
+
+    @Test
+    public void hotMailboxKeepsOrderPerSender() throws Exception {
+        run(false);
+        run(true);
+    }
+
+    @Test
+    public void timedReceiveTimesOut() throws Exception {
+        node.setLockFreeMailboxes(true);
+        final OtpMbox mbox = node.createMbox();
+        final long start = System.currentTimeMillis();
+
+        assertThat(mbox.receive(100)).isNull();
+        assertThat(System.currentTimeMillis() - start).isAtLeast(100L);
+
+        node.createMbox().send(mbox.self(), new OtpErlangLong(1));
+        assertThat(mbox.receive(100)).isEqualTo(new OtpErlangLong(1));
+        mbox.close();
+    }
+
+    @Test
+    public void recycledMailboxGetsNewPid() throws Exception {
+        node.setMboxPoolSize(4);
+        final OtpMbox mbox = node.createMbox();
+        final OtpErlangPid old = mbox.self();
+        node.createMbox().send(old, new OtpErlangLong(1));
+        mbox.recycle();
+
+        final OtpMbox reused = node.createMbox();
+        assertThat(reused).isSameInstanceAs(mbox);
+        assertThat(reused.self()).isNotEqualTo(old);
+        assertThat(reused.receive(10)).isNull();
+
+        node.createMbox().send(old, new OtpErlangLong(2));
+        assertThat(reused.receive(100)).isNull();
+        node.createMbox().send(reused.self(), new OtpErlangLong(3));
+        assertThat(reused.receive(100)).isEqualTo(new OtpErlangLong(3));
+        reused.close();
+    }
+
+    @Test
+    public void namesAreUnique() throws Exception {
+        final OtpMbox named = node.createMbox("registry_test");
+        assertThat(node.createMbox("registry_test")).isNull();
+        assertThat(node.whereis("registry_test")).isEqualTo(named.self());
+        assertThat(node.getNames()).asList().contains("registry_test");
+
+        named.close();
+        assertThat(node.whereis("registry_test")).isNull();
+        assertThat(node.createMbox("registry_test")).isNotNull();
+    }
+
+    private void run(final boolean lockFree) throws Exception {
+        node.setLockFreeMailboxes(lockFree);
+        final OtpMbox hot = node.createMbox();
+        final Thread[] producers = new Thread[OtpMailboxThroughputTest.PRODUCERS];
+        for (int p = 0; p < producers.length; p++) {
+            final OtpMbox from = node.createMbox();
+            producers[p] = new Thread(() -> {
+                for (int i = 0; i < OtpMailboxThroughputTest.MESSAGES_PER_PRODUCER; i++) {
+                    from.send(hot.self(), new OtpErlangTuple(new OtpErlangObject[] {
+                            from.self(), new OtpErlangLong(i) }));
+                }
+            });
+        }
+
+        for (final Thread producer : producers) {
+            producer.start();
+        }
+        final Map<OtpErlangPid, Long> last = Maps.newHashMap();
+        final int messages = OtpMailboxThroughputTest.PRODUCERS
+                * OtpMailboxThroughputTest.MESSAGES_PER_PRODUCER;
+        for (int i = 0; i < messages; i++) {
+            final OtpErlangTuple msg = (OtpErlangTuple) hot.receive(10000);
+            assertThat(msg).isNotNull();
+            final OtpErlangPid sender = (OtpErlangPid) msg.elementAt(0);
+            final long n = ((OtpErlangLong) msg.elementAt(1)).longValue();
+            final Long previous = last.put(sender, n);
+            assertThat(n).isEqualTo(previous == null ? 0L : previous + 1);
+        }
+        for (final Thread producer : producers) {
+            producer.join();
+        }
+        hot.close();
+    }
+
+}
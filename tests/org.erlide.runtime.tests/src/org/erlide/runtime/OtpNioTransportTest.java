@@ -0,0 +1,85 @@
+package org.erlide.runtime;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.erlide.runtime.internal.rpc.OtpRpc;
+import org.erlide.runtime.rpc.RpcException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.ericsson.otp.erlang.OtpErlangBinary;
+import com.ericsson.otp.erlang.OtpErlangLong;
+import com.ericsson.otp.erlang.OtpErlangObject;
+import com.ericsson.otp.erlang.OtpErlangString;
+import com.ericsson.otp.erlang.OtpNioTransportFactory;
+import com.ericsson.otp.erlang.OtpNode;
+import com.google.common.collect.Lists;
+
+public class OtpNioTransportTest extends AbstractRuntimeTest {
+
+    private OtpNioTransportFactory factory;
+    private OtpNode node;
+
+    @Before
+    public void createNode() throws IOException {
+        factory = new OtpNioTransportFactory(1);
+        node = new OtpNode("niotest" + System.currentTimeMillis(), "c", factory);
+        assertThat(node.ping(runtime.getNodeName(), 2000)).isTrue();
+    }
+
+    @After
+    public void closeNode() {
+        node.close();
+        factory.close();
+    }
+
+    @Test
+    public void concurrentCallsWork() throws Exception {
+        final OtpRpc rpc = new OtpRpc(node, runtime.getNodeName());
+        rpc.setConnected(true);
+        final ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            final List<Callable<Void>> tasks = Lists.newArrayList();
+            for (int t = 0; t < 4; t++) {
+                final int base = t * 1000;
+                tasks.add(() -> {
+                    for (int i = 0; i < 200; i++) {
+                        final OtpErlangObject r = rpc.call("erlang", "abs", "i",
+                                -(base + i));
+                        assertThat(((OtpErlangLong) r).longValue())
+                                .isEqualTo((long) base + i);
+                    }
+                    return null;
+                });
+            }
+            for (final Future<Void> f : pool.invokeAll(tasks)) {
+                f.get();
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void largeMessagesArePartiallyWritten() throws RpcException {
+        final OtpRpc rpc = new OtpRpc(node, runtime.getNodeName());
+        rpc.setConnected(true);
+        factory.setMaxWriteSize(64 * 1024);
+        final long queued = factory.getQueuedWriteCount();
+        final byte[] data = new byte[8 * 1024 * 1024];
+        data[data.length - 1] = 42;
+        final OtpErlangObject r = rpc.call("erlang", "binary_to_list", "xii",
+                new OtpErlangBinary(data), data.length, data.length);
+        assertThat(r).isEqualTo(new OtpErlangString("*"));
+        assertThat(factory.getQueuedWriteCount()).isGreaterThan(queued);
+    }
+
+}
@@ -2,10 +2,14 @@ package org.erlide.runtime;
 
 import static com.google.common.truth.Truth.assertThat;
 
+import java.util.List;
+
 import org.erlide.runtime.api.RuntimeData;
 import org.erlide.runtime.internal.OtpNodeProxy;
 import org.erlide.runtime.rpc.IOtpRpc;
+import org.erlide.runtime.rpc.RpcBatch;
 import org.erlide.runtime.rpc.RpcException;
+import org.erlide.runtime.rpc.RpcResult;
 import org.erlide.runtime.runtimeinfo.RuntimeInfo;
 import org.erlide.runtime.runtimeinfo.RuntimeInfoCatalog;
 import org.erlide.util.ErlLogger;
@@ -14,6 +18,7 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import com.ericsson.otp.erlang.OtpErlangLong;
 import com.ericsson.otp.erlang.OtpErlangObject;
 import com.google.common.util.concurrent.Service.State;
 
@@ -80,6 +85,42 @@ public class OtpNodeProxyTest {
         expect(runtime, process, 0, State.TERMINATED);
     }
 
+    @Test
+    public void batchResultsAreInOrderAndFailIndependently() throws RpcException {
+        final IOtpRpc site = runtime.getOtpRpc();
+        final List<RpcResult> results = site.batch().add("erlang", "abs", "i", -3)
+                .add("erlang", "no_such_function", "")
+                .add("erlang", "abs", "i", -5).call();
+        assertThat(results).hasSize(3);
+        assertThat(results.get(0).isOk()).isTrue();
+        assertThat(results.get(0).getValue()).isEqualTo(new OtpErlangLong(3));
+        assertThat(results.get(1).isOk()).isFalse();
+        assertThat(results.get(2).getValue()).isEqualTo(new OtpErlangLong(5));
+        assertThat(site.batch().call()).isEmpty();
+    }
+
+    @Test
+    public void largeBatchesKeepEarlierResultsOnTimeout() throws RpcException {
+        final IOtpRpc site = runtime.getOtpRpc();
+        final RpcBatch batch = site.batch();
+        final int size = RpcBatch.CHUNK_SIZE + 8;
+        for (int i = 0; i < size; i++) {
+            if (i == RpcBatch.CHUNK_SIZE + 2) {
+                batch.add("timer", "sleep", "i", 5000);
+            } else {
+                batch.add("erlang", "abs", "i", -i);
+            }
+        }
+        final List<RpcResult> results = batch.call(100);
+        assertThat(results).hasSize(size);
+        for (int i = 0; i < RpcBatch.CHUNK_SIZE; i++) {
+            assertThat(results.get(i).getValue()).isEqualTo(new OtpErlangLong(i));
+        }
+        for (int i = RpcBatch.CHUNK_SIZE; i < size; i++) {
+            assertThat(results.get(i).isOk()).isFalse();
+        }
+    }
+
     @Test
     public void shutdownIsDetected() {
         final IOtpRpc site = runtime.getOtpRpc();
@@ -0,0 +1,179 @@
+package org.erlide.runtime;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.erlide.runtime.internal.rpc.OtpRpc;
+import org.erlide.runtime.rpc.IOtpRpc;
+import org.erlide.runtime.rpc.IRpcCallback;
+import org.erlide.runtime.rpc.RpcFuture;
+import org.erlide.runtime.rpc.RpcTimeoutException;
+import org.erlide.util.ErlLogger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import com.ericsson.otp.erlang.OtpErlangAtom;
+import com.ericsson.otp.erlang.OtpErlangLong;
+import com.ericsson.otp.erlang.OtpErlangObject;
+import com.ericsson.otp.erlang.OtpNode;
+import com.google.common.collect.Lists;
+
+/**
+ * Runs many concurrent calls in the per-call mailbox RPC mode and in the multiplexed
+ * channel mode against a live runtime, and checks that every caller gets its own reply.
+ * Also checks that asynchronous calls complete without a waiting thread per call. The
+ * throughput comparison of the two modes is a benchmark and ignored by default.
+ */
+public class OtpRpcMultiplexingTest extends AbstractRuntimeTest {
+
+    private static final int THREADS = 8;
+    private static final int CALLS_PER_THREAD = 500;
+
+    private OtpNode node;
+
+    @Before
+    public void createNode() throws IOException {
+        node = new OtpNode("rpcbench" + System.currentTimeMillis(), "c");
+        assertThat(node.ping(runtime.getNodeName(), 2000)).isTrue();
+    }
+
+    @After
+    public void closeNode() {
+        if (node != null) {
+            node.close();
+        }
+    }
+
+    @Test
+    public void repliesReachTheirCallers() throws Exception {
+        for (final boolean multiplexed : new boolean[] { false, true }) {
+            final OtpRpc rpc = new OtpRpc(node, runtime.getNodeName(), multiplexed);
+            rpc.setConnected(true);
+            assertThat(run(rpc)).isEqualTo(OtpRpcMultiplexingTest.THREADS
+                    * OtpRpcMultiplexingTest.CALLS_PER_THREAD);
+            rpc.setConnected(false);
+        }
+    }
+
+    @Ignore("benchmark, depends on the machine")
+    @Test
+    public void multiplexedModeIsFasterThanMailboxMode() throws Exception {
+        final OtpRpc mailboxRpc = new OtpRpc(node, runtime.getNodeName(), false);
+        mailboxRpc.setConnected(true);
+        final OtpRpc multiplexedRpc = new OtpRpc(node, runtime.getNodeName(), true);
+        multiplexedRpc.setConnected(true);
+
+        // warm up both paths
+        time(mailboxRpc);
+        time(multiplexedRpc);
+
+        final long mailboxTime = time(mailboxRpc);
+        final long multiplexedTime = time(multiplexedRpc);
+        mailboxRpc.setConnected(false);
+        multiplexedRpc.setConnected(false);
+
+        final int calls = OtpRpcMultiplexingTest.THREADS
+                * OtpRpcMultiplexingTest.CALLS_PER_THREAD;
+        ErlLogger.info("RPC throughput, %d threads: mailbox %d calls/s, "
+                + "multiplexed %d calls/s", OtpRpcMultiplexingTest.THREADS,
+                calls * 1000L / Math.max(1, mailboxTime),
+                calls * 1000L / Math.max(1, multiplexedTime));
+        assertThat(multiplexedTime).isAtMost(mailboxTime);
+    }
+
+    @Test
+    public void asyncCallsDontTakeAThreadEach() throws Exception {
+        for (final boolean multiplexed : new boolean[] { false, true }) {
+            final OtpRpc rpc = new OtpRpc(node, runtime.getNodeName(), multiplexed);
+            rpc.setConnected(true);
+            final int threads = Thread.activeCount();
+            final int calls = 1000;
+            final CountDownLatch done = new CountDownLatch(calls);
+            final AtomicInteger ok = new AtomicInteger();
+            for (int i = 0; i < calls; i++) {
+                rpc.async_call_cb(new IRpcCallback() {
+                    @Override
+                    public void onSuccess(final OtpErlangObject result) {
+                        if (new OtpErlangAtom("ok").equals(result)) {
+                            ok.incrementAndGet();
+                        }
+                        done.countDown();
+                    }
+
+                    @Override
+                    public void onFailure(final Throwable t) {
+                        done.countDown();
+                    }
+                }, 10000, "timer", "sleep", "i", 200);
+            }
+            assertThat(Thread.activeCount() - threads).isLessThan(50);
+            assertThat(done.await(20, TimeUnit.SECONDS)).isTrue();
+            assertThat(ok.get()).isEqualTo(calls);
+            rpc.setConnected(false);
+        }
+    }
+
+    @Test
+    public void asyncCallTimesOut() throws Exception {
+        final OtpRpc rpc = new OtpRpc(node, runtime.getNodeName(), false);
+        rpc.setConnected(true);
+        final RpcFuture future = rpc.async_call("timer", "sleep", "i", 1000);
+        future.failAfter(100, TimeUnit.MILLISECONDS);
+        final Throwable failure = future.toCompletableFuture()
+                .handle((result, e) -> e).get();
+        assertThat(failure).isInstanceOf(RpcTimeoutException.class);
+        assertThat(rpc.async_call("erlang", "abs", "i", -3).checkedGet())
+                .isEqualTo(new OtpErlangLong(3));
+    }
+
+    private long time(final IOtpRpc rpc) throws Exception {
+        final long start = System.currentTimeMillis();
+        assertThat(run(rpc)).isEqualTo(
+                OtpRpcMultiplexingTest.THREADS * OtpRpcMultiplexingTest.CALLS_PER_THREAD);
+        return System.currentTimeMillis() - start;
+    }
+
+    /**
+     * @return the number of calls that got the reply meant for them
+     */
+    private int run(final IOtpRpc rpc) throws Exception {
+        final ExecutorService pool = Executors
+                .newFixedThreadPool(OtpRpcMultiplexingTest.THREADS);
+        try {
+            final List<Callable<Integer>> tasks = Lists.newArrayList();
+            for (int t = 0; t < OtpRpcMultiplexingTest.THREADS; t++) {
+                final int base = t * OtpRpcMultiplexingTest.CALLS_PER_THREAD;
+                tasks.add(() -> {
+                    int matched = 0;
+                    for (int i = 0; i < OtpRpcMultiplexingTest.CALLS_PER_THREAD; i++) {
+                        final OtpErlangObject r = rpc.call("erlang", "abs", "i",
+                                -(base + i));
+                        if (((OtpErlangLong) r).longValue() == base + i) {
+                            matched++;
+                        }
+                    }
+                    return matched;
+                });
+            }
+            int matched = 0;
+            for (final Future<Integer> f : pool.invokeAll(tasks)) {
+                matched += f.get();
+            }
+            return matched;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+}
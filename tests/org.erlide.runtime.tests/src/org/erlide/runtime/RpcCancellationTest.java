@@ -0,0 +1,198 @@
+package org.erlide.runtime;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.io.IOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.erlide.runtime.internal.rpc.OtpRpc;
+import org.erlide.runtime.rpc.RpcException;
+import org.erlide.runtime.rpc.RpcFuture;
+import org.erlide.runtime.rpc.RpcPriority;
+import org.erlide.runtime.rpc.RpcTimeoutException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.ericsson.otp.erlang.OtpErlangAtom;
+import com.ericsson.otp.erlang.OtpErlangExit;
+import com.ericsson.otp.erlang.OtpErlangList;
+import com.ericsson.otp.erlang.OtpErlangLong;
+import com.ericsson.otp.erlang.OtpErlangObject;
+import com.ericsson.otp.erlang.OtpErlangPid;
+import com.ericsson.otp.erlang.OtpErlangTuple;
+import com.ericsson.otp.erlang.OtpMbox;
+import com.ericsson.otp.erlang.OtpNode;
+
+/**
+ * Calls answered by a fake rex server on a local node, which runs each call in a
+ * mailbox of its own that links to the caller like the expression sent by cancellable
+ * calls does. The runtime is only started to have epmd around.
+ */
+public class RpcCancellationTest extends AbstractRuntimeTest {
+
+    private static final OtpErlangAtom DONE = new OtpErlangAtom("done");
+    private static final OtpErlangAtom CANCELLED = new OtpErlangAtom("cancelled");
+    private static final OtpErlangAtom NO_DEADLINE = new OtpErlangAtom("none");
+
+    private OtpNode node;
+    private OtpMbox rex;
+    private OtpRpc bulk;
+    private OtpRpc interactive;
+    // the deadline of each call that started
+    private final BlockingQueue<OtpErlangObject> started = new LinkedBlockingQueue<>();
+    // the reasons the workers were stopped for
+    private final BlockingQueue<OtpErlangObject> exits = new LinkedBlockingQueue<>();
+
+    @Before
+    public void createNode() throws IOException {
+        node = new OtpNode("cancel" + System.currentTimeMillis(), "c");
+        rex = node.createMbox("rex");
+        final Thread server = new Thread(this::serve, "fake rex");
+        server.setDaemon(true);
+        server.start();
+
+        bulk = new OtpRpc(node, node.node(), false, RpcPriority.BULK);
+        bulk.setConnected(true);
+        interactive = new OtpRpc(node, node.node(), false, RpcPriority.INTERACTIVE);
+        interactive.setConnected(true);
+    }
+
+    @After
+    public void closeNode() {
+        if (node != null) {
+            node.close();
+        }
+    }
+
+    @Test
+    public void cancelStopsTheRemoteCall() throws RpcException, InterruptedException {
+        final RpcFuture future = bulk.async_call("m", "slow", "");
+        assertThat(started.poll(5, TimeUnit.SECONDS)).isEqualTo(NO_DEADLINE);
+
+        assertThat(future.cancel(true)).isTrue();
+        assertThat(future.isCancelled()).isTrue();
+        assertThat(future.isDone()).isTrue();
+        assertThat(exits.poll(5, TimeUnit.SECONDS)).isEqualTo(CANCELLED);
+        try {
+            future.checkedGet();
+            throw new AssertionError("a cancelled call has no result");
+        } catch (final RpcException e) {
+            assertThat(e).isNotInstanceOf(RpcTimeoutException.class);
+        }
+        assertThat(future.cancel(true)).isFalse();
+    }
+
+    @Test
+    public void timedOutCallSendsItsDeadlineAndIsStopped() throws InterruptedException {
+        try {
+            bulk.call(300, "m", "slow", "");
+            throw new AssertionError("the call should time out");
+        } catch (final RpcException e) {
+            assertThat(e).isInstanceOf(RpcTimeoutException.class);
+        }
+        assertThat(started.poll(5, TimeUnit.SECONDS)).isEqualTo(new OtpErlangLong(300));
+        assertThat(exits.poll(5, TimeUnit.SECONDS)).isEqualTo(CANCELLED);
+    }
+
+    @Test
+    public void passedDeadlineFailsTheCall() throws RpcException {
+        final RpcFuture future = bulk.async_call("m", "expire", "");
+        try {
+            future.checkedGet(5000, TimeUnit.MILLISECONDS);
+            throw new AssertionError("the call should have expired");
+        } catch (final RpcTimeoutException e) {
+            assertThat(future.isDone()).isTrue();
+        }
+    }
+
+    @Test
+    public void bulkCallsStillReply() throws RpcException {
+        assertThat(bulk.call(5000, "m", "fast", "")).isEqualTo(DONE);
+    }
+
+    @Test
+    public void shortWaitsDontFailTheCall() throws RpcException {
+        final RpcFuture future = interactive.async_call("m", "late", "");
+        try {
+            future.checkedGet(10, TimeUnit.MILLISECONDS);
+            throw new AssertionError("the reply is late");
+        } catch (final RpcTimeoutException e) {
+            assertThat(future.isDone()).isFalse();
+        }
+        assertThat(future.checkedGet(5000, TimeUnit.MILLISECONDS)).isEqualTo(DONE);
+    }
+
+    private void serve() {
+        try {
+            while (true) {
+                final OtpErlangTuple msg = (OtpErlangTuple) rex.receive();
+                final OtpErlangPid from = (OtpErlangPid) msg.elementAt(0);
+                final OtpErlangTuple call = (OtpErlangTuple) msg.elementAt(1);
+                final Thread worker = new Thread(() -> work(from, call), "fake worker");
+                worker.setDaemon(true);
+                worker.start();
+            }
+        } catch (final Exception e) {
+            // node closed
+        }
+    }
+
+    private void work(final OtpErlangPid from, final OtpErlangTuple call) {
+        String fun = ((OtpErlangAtom) call.elementAt(2)).atomValue();
+        OtpErlangObject link = null;
+        OtpErlangObject deadline = NO_DEADLINE;
+        if ("erl_eval".equals(((OtpErlangAtom) call.elementAt(1)).atomValue())) {
+            final OtpErlangList args = (OtpErlangList) call.elementAt(3);
+            for (final OtpErlangObject b : (OtpErlangList) args.elementAt(1)) {
+                final OtpErlangTuple t = (OtpErlangTuple) b;
+                final String name = ((OtpErlangAtom) t.elementAt(0)).atomValue();
+                if ("F".equals(name)) {
+                    fun = ((OtpErlangAtom) t.elementAt(1)).atomValue();
+                } else if ("P".equals(name)) {
+                    link = t.elementAt(1);
+                } else if ("D".equals(name)) {
+                    deadline = t.elementAt(1);
+                }
+            }
+        }
+        final OtpMbox worker = node.createMbox();
+        try {
+            if (link != null) {
+                worker.link((OtpErlangPid) link);
+            }
+            started.add(deadline);
+            switch (fun) {
+            case "slow":
+                worker.receive();
+                break;
+            case "expire":
+                // what timer:exit_after does at the deadline
+                worker.exit(new OtpErlangAtom("timeout"));
+                break;
+            case "late":
+                Thread.sleep(300);
+                reply(worker, link, from);
+                break;
+            default:
+                reply(worker, link, from);
+                break;
+            }
+        } catch (final OtpErlangExit e) {
+            exits.add(e.reason());
+        } catch (final Exception e) {
+            // node closed
+        }
+    }
+
+    private void reply(final OtpMbox worker, final OtpErlangObject link,
+            final OtpErlangPid from) {
+        if (link != null) {
+            worker.unlink((OtpErlangPid) link);
+        }
+        rex.send(from, new OtpErlangTuple(
+                new OtpErlangObject[] { new OtpErlangAtom("rex"), DONE }));
+    }
+}
@@ -0,0 +1,117 @@
+package org.erlide.runtime;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.erlide.runtime.internal.rpc.OtpRpc;
+import org.erlide.runtime.internal.rpc.RpcRequest;
+import org.erlide.runtime.rpc.RpcCompression;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.ericsson.otp.erlang.OtpErlangAtom;
+import com.ericsson.otp.erlang.OtpErlangBinary;
+import com.ericsson.otp.erlang.OtpErlangDecodeException;
+import com.ericsson.otp.erlang.OtpErlangList;
+import com.ericsson.otp.erlang.OtpErlangObject;
+import com.ericsson.otp.erlang.OtpErlangString;
+import com.ericsson.otp.erlang.OtpErlangTuple;
+import com.ericsson.otp.erlang.OtpExternal;
+import com.ericsson.otp.erlang.OtpInputStream;
+import com.ericsson.otp.erlang.OtpLazyTerm;
+import com.ericsson.otp.erlang.OtpOutputStream;
+import com.google.common.base.Strings;
+
+public class RpcCompressionTest {
+
+    private static final OtpErlangAtom M = new OtpErlangAtom("m");
+    private static final OtpErlangAtom F = new OtpErlangAtom("f");
+    private static final OtpErlangAtom USER = new OtpErlangAtom("user");
+
+    private final OtpErlangObject[] large = {
+            new OtpErlangString(Strings.repeat("-module(foo).\n", 1000))
+    };
+    private final OtpErlangObject[] small = {
+            new OtpErlangAtom("foo")
+    };
+
+    @Before
+    public void setUp() {
+        RpcCompression.reset();
+    }
+
+    @Test
+    public void requestIsUnchangedWhenOff() {
+        final OtpErlangTuple request = request(RpcCompression.OFF, large);
+        assertThat(request).isEqualTo(new OtpErlangTuple(new OtpErlangObject[] {
+                new OtpErlangAtom("call"), M, F, new OtpErlangList(large), USER }));
+        assertThat(RpcCompression.getCompressedArguments()).isEqualTo(0L);
+    }
+
+    @Test
+    public void largeArgumentsAreCompressed() throws OtpErlangDecodeException {
+        final OtpErlangTuple request = request(new RpcCompression(1000, 1), large);
+        assertThat(request.elementAt(1)).isEqualTo(new OtpErlangAtom("erl_eval"));
+        assertThat(request.elementAt(2)).isEqualTo(new OtpErlangAtom("expr"));
+        assertThat(request.elementAt(4)).isEqualTo(USER);
+
+        final OtpErlangObject a = binding(request, "A");
+        assertThat(a).isInstanceOf(OtpErlangBinary.class);
+        final byte[] bytes = ((OtpErlangBinary) a).binaryValue();
+        assertThat(bytes.length).isLessThan(1000);
+        assertThat(new OtpInputStream(bytes).read_any())
+                .isEqualTo(new OtpErlangList(large));
+
+        assertThat(RpcCompression.getCompressedArguments()).isEqualTo(1L);
+        assertThat(RpcCompression.getBytesSaved()).isGreaterThan(10000L);
+    }
+
+    @Test
+    public void smallArgumentsAreNotCompressed() {
+        final OtpErlangTuple request = request(new RpcCompression(1000, 1), small);
+        assertThat(request.elementAt(1)).isEqualTo(new OtpErlangAtom("erl_eval"));
+        assertThat(binding(request, "A")).isEqualTo(new OtpErlangList(small));
+        assertThat(binding(request, "M")).isEqualTo(M);
+        assertThat(binding(request, "F")).isEqualTo(F);
+        assertThat(RpcCompression.getCompressedArguments()).isEqualTo(0L);
+    }
+
+    @Test
+    public void compressedResultsAreUnpacked() throws OtpErlangDecodeException {
+        final OtpErlangObject result = new OtpErlangList(large);
+        final OtpErlangTuple zipped = new OtpErlangTuple(new OtpErlangObject[] {
+                new OtpErlangAtom("$erlide_zip"), zip(result) });
+
+        assertThat(RpcCompression.decode(zipped)).isEqualTo(result);
+        assertThat(RpcCompression.decode(new OtpLazyTerm(zipped)).decode())
+                .isEqualTo(result);
+        assertThat(RpcCompression.getCompressedResults()).isEqualTo(2L);
+        assertThat(RpcCompression.getBytesSaved()).isGreaterThan(20000L);
+
+        assertThat(RpcCompression.decode(result)).isSameInstanceAs(result);
+    }
+
+    private static OtpErlangTuple request(final RpcCompression compression,
+            final OtpErlangObject[] args) {
+        return RpcRequest.build(M, F, args, USER, compression, null, OtpRpc.INFINITY);
+    }
+
+    private static OtpErlangObject binding(final OtpErlangTuple request,
+            final String name) {
+        final OtpErlangList args = (OtpErlangList) request.elementAt(3);
+        for (final OtpErlangObject b : (OtpErlangList) args.elementAt(1)) {
+            final OtpErlangTuple t = (OtpErlangTuple) b;
+            if (new OtpErlangAtom(name).equals(t.elementAt(0))) {
+                return t.elementAt(1);
+            }
+        }
+        return null;
+    }
+
+    @SuppressWarnings("resource")
+    private static OtpErlangBinary zip(final OtpErlangObject term) {
+        final OtpOutputStream out = new OtpOutputStream();
+        out.write1(OtpExternal.versionTag);
+        out.write_compressed(term, 6);
+        return new OtpErlangBinary(out.toByteArray());
+    }
+}
@@ -0,0 +1,99 @@
+package org.erlide.runtime;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.erlide.runtime.rpc.RpcMetrics;
+import org.erlide.runtime.rpc.RpcMetrics.FunctionStats;
+import org.erlide.runtime.rpc.RpcPriority;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RpcMetricsTest {
+
+    @Before
+    public void reset() {
+        RpcMetrics.reset();
+    }
+
+    @Test
+    public void callsAreCountedOnce() {
+        final RpcMetrics.Call ok = RpcMetrics.start("m:f/1");
+        final RpcMetrics.Call late = RpcMetrics.start("m:f/1");
+        final RpcMetrics.Call running = RpcMetrics.start("m:f/1");
+        ok.sent(100);
+        ok.received(30);
+        ok.completed();
+        late.timedOut();
+        late.completed();
+        late.failed();
+
+        final FunctionStats stats = RpcMetrics.getStats("m:f/1");
+        assertThat(stats.getCalls()).isEqualTo(3L);
+        assertThat(stats.getCompleted()).isEqualTo(1L);
+        assertThat(stats.getTimeouts()).isEqualTo(1L);
+        assertThat(stats.getFailures()).isEqualTo(0L);
+        assertThat(stats.getInFlight()).isEqualTo(1);
+        assertThat(stats.getBytesSent()).isEqualTo(100L);
+        assertThat(stats.getBytesReceived()).isEqualTo(30L);
+
+        running.failed();
+        assertThat(RpcMetrics.getStats("m:f/1").getInFlight()).isEqualTo(0);
+        assertThat(RpcMetrics.getStats("m:f/2")).isNull();
+    }
+
+    @Test
+    public void percentilesAreCloseToTheLatency() throws InterruptedException {
+        for (int i = 0; i < 5; i++) {
+            final RpcMetrics.Call call = RpcMetrics.start("m:slow/0");
+            Thread.sleep(20);
+            call.completed();
+        }
+        final FunctionStats stats = RpcMetrics.getStats("m:slow/0");
+        assertThat(stats.getLatencyPercentile(50)).isAtLeast(20000L);
+        assertThat(stats.getLatencyPercentile(50)).isAtMost(stats.getMaxLatency());
+        assertThat(stats.getMeanLatency()).isAtLeast(20000L);
+    }
+
+    @Test
+    public void concurrentCallsAreAllCounted() throws InterruptedException {
+        final Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 10000; i++) {
+                    final RpcMetrics.Call call = RpcMetrics.start("m:hot/0");
+                    call.sent(10);
+                    call.completed();
+                }
+            });
+            threads[t].start();
+        }
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+        final FunctionStats stats = RpcMetrics.getStats("m:hot/0");
+        assertThat(stats.getCalls()).isEqualTo(40000L);
+        assertThat(stats.getCompleted()).isEqualTo(40000L);
+        assertThat(stats.getBytesSent()).isEqualTo(400000L);
+        assertThat(stats.getInFlight()).isEqualTo(0);
+    }
+
+    @Test
+    public void lanesAreCountedSeparately() {
+        final RpcMetrics.Call bulk = RpcMetrics.start(RpcPriority.BULK, "m:build/1");
+        final RpcMetrics.Call typing = RpcMetrics.start("m:scan/1");
+        bulk.sent(5000);
+        typing.completed();
+
+        final FunctionStats interactive = RpcMetrics.getStats(RpcPriority.INTERACTIVE);
+        assertThat(interactive.getCalls()).isEqualTo(1L);
+        assertThat(interactive.getCompleted()).isEqualTo(1L);
+        assertThat(interactive.getBytesSent()).isEqualTo(0L);
+        final FunctionStats bulkLane = RpcMetrics.getStats(RpcPriority.BULK);
+        assertThat(bulkLane.getInFlight()).isEqualTo(1);
+        assertThat(bulkLane.getBytesSent()).isEqualTo(5000L);
+
+        bulk.completed();
+        assertThat(RpcMetrics.getStats(RpcPriority.BULK).getInFlight()).isEqualTo(0);
+        assertThat(RpcMetrics.getStats("m:build/1").getCompleted()).isEqualTo(1L);
+    }
+}
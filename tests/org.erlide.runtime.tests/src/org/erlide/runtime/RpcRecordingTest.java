@@ -0,0 +1,216 @@
+package org.erlide.runtime;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.erlide.runtime.rpc.IOtpRpc;
+import org.erlide.runtime.rpc.IRpcResultCallback;
+import org.erlide.runtime.rpc.RecordingOtpRpc;
+import org.erlide.runtime.rpc.ReplayOtpRpc;
+import org.erlide.runtime.rpc.RpcException;
+import org.erlide.runtime.rpc.RpcRecording;
+import org.erlide.runtime.rpc.RpcStream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.ericsson.otp.erlang.OtpErlangAtom;
+import com.ericsson.otp.erlang.OtpErlangList;
+import com.ericsson.otp.erlang.OtpErlangLong;
+import com.ericsson.otp.erlang.OtpErlangObject;
+import com.ericsson.otp.erlang.OtpErlangString;
+import com.ericsson.otp.erlang.OtpErlangTuple;
+
+public class RpcRecordingTest {
+
+    private final AtomicInteger calls = new AtomicInteger();
+    private RpcRecording recording;
+    private RecordingOtpRpc rpc;
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        // answers m:f with the number of calls so far, and fails m:bad
+        final IOtpRpc backend = (IOtpRpc) Proxy.newProxyInstance(
+                IOtpRpc.class.getClassLoader(), new Class<?>[] { IOtpRpc.class },
+                (proxy, method, args) -> {
+                    if (!"call".equals(method.getName())) {
+                        return null;
+                    }
+                    if ("bad".equals(args[args.length - 3])) {
+                        throw new RpcException("bad call");
+                    }
+                    if ("list".equals(args[args.length - 3])) {
+                        return new OtpErlangList(new OtpErlangObject[] {
+                                new OtpErlangAtom("a"), new OtpErlangAtom("b") });
+                    }
+                    return new OtpErlangLong(calls.incrementAndGet());
+                });
+        recording = new RpcRecording("node@host");
+        rpc = new RecordingOtpRpc(backend, recording);
+        file = File.createTempFile("rpc", ".rec");
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void repliesAreServedInOrderAndTheLastIsRepeated()
+            throws RpcException, IOException {
+        rpc.call("m", "f", "sa", "x", "y");
+        rpc.call("m", "f", "sa", "x", "y");
+        rpc.call("m", "f", "sa", "z", "y");
+
+        final ReplayOtpRpc replay = new ReplayOtpRpc(saveAndLoad());
+        assertThat(replay.call("m", "f", "sa", "x", "y")).isEqualTo(new OtpErlangLong(1));
+        assertThat(replay.call("m", "f", "sa", "z", "y")).isEqualTo(new OtpErlangLong(3));
+        assertThat(replay.call("m", "f", "sa", "x", "y")).isEqualTo(new OtpErlangLong(2));
+        assertThat(replay.call("m", "f", "sa", "x", "y")).isEqualTo(new OtpErlangLong(2));
+
+        replay.getRecording().rewind();
+        assertThat(replay.call("m", "f", "sa", "x", "y")).isEqualTo(new OtpErlangLong(1));
+    }
+
+    @Test
+    public void fileKeepsTheCalls() throws RpcException, IOException {
+        rpc.call("m", "f", "s", "x");
+        final RpcRecording loaded = saveAndLoad();
+        assertThat(loaded.size()).isEqualTo(1);
+        assertThat(loaded.getNodeName()).isEqualTo("node@host");
+        // strings come back as lists of characters, but still match
+        assertThat(loaded.next("m", "f",
+                new OtpErlangObject[] { new OtpErlangString("x") }).getValue())
+                        .isEqualTo(new OtpErlangLong(1));
+    }
+
+    @Test(expected = IOException.class)
+    public void otherFilesAreRejected() throws IOException {
+        Files.write(file.toPath(), new byte[] { (byte) 131, 100, 0, 1, 120 });
+        RpcRecording.load(file);
+    }
+
+    @Test
+    public void unknownCallsFail() {
+        final ReplayOtpRpc replay = new ReplayOtpRpc(recording);
+        try {
+            replay.call("m", "f", "s", "x");
+            throw new AssertionError("nothing was recorded");
+        } catch (final RpcException e) {
+            assertThat(e.getMessage()).contains("m:f/1");
+        }
+    }
+
+    @Test
+    public void errorsAreReplayed() throws IOException {
+        try {
+            rpc.call("m", "bad", "");
+            throw new AssertionError("the call fails");
+        } catch (final RpcException e) {
+            // expected
+        }
+        final ReplayOtpRpc replay = new ReplayOtpRpc(saveAndLoad());
+        try {
+            replay.call("m", "bad", "");
+            throw new AssertionError("the call failed when recorded");
+        } catch (final RpcException e) {
+            assertThat(e.getMessage()).isEqualTo("bad call");
+        }
+        assertThat(replay.call_noexception("m", "bad", "").isOk()).isFalse();
+    }
+
+    @Test
+    public void asyncCallsAreReplayedWithLatency() throws RpcException, IOException {
+        recording.record("m", "f", new OtpErlangObject[0], new OtpErlangAtom("ok"),
+                200000);
+        final ReplayOtpRpc replay = new ReplayOtpRpc(saveAndLoad());
+        replay.setLatency(1);
+        final long start = System.nanoTime();
+        assertThat(replay.async_call("m", "f", "").checkedGet(5, TimeUnit.SECONDS))
+                .isEqualTo(new OtpErlangAtom("ok"));
+        assertThat(System.nanoTime() - start)
+                .isAtLeast(TimeUnit.MILLISECONDS.toNanos(150));
+    }
+
+    @Test
+    public void reportsAreReplayed() throws RpcException, IOException {
+        final List<OtpErlangObject> reports = new ArrayList<>();
+        reports.add(mkReport("start", new OtpErlangAtom("s")));
+        reports.add(mkReport("progress", new OtpErlangLong(1)));
+        reports.add(mkReport("progress", new OtpErlangLong(2)));
+        reports.add(mkReport("stop", new OtpErlangAtom("done")));
+        recording.recordReports("m", "f", new OtpErlangObject[0], reports, 10);
+
+        final List<String> seen = new ArrayList<>();
+        final ReplayOtpRpc replay = new ReplayOtpRpc(saveAndLoad());
+        final OtpErlangObject result = replay
+                .async_call_result(new IRpcResultCallback() {
+                    @Override
+                    public void start(final OtpErlangObject msg) {
+                        seen.add("start " + msg);
+                    }
+
+                    @Override
+                    public void progress(final OtpErlangObject msg) {
+                        seen.add("progress " + msg);
+                    }
+
+                    @Override
+                    public void stop(final OtpErlangObject msg) {
+                        seen.add("stop " + msg);
+                    }
+                }, "m", "f", "").checkedGet(5000, TimeUnit.MILLISECONDS);
+
+        assertThat(result).isEqualTo(new OtpErlangAtom("done"));
+        assertThat(seen).containsExactly("start s", "progress 1", "progress 2",
+                "stop done").inOrder();
+    }
+
+    @Test
+    public void streamsAreReplayed() throws RpcException, IOException {
+        try (RpcStream stream = rpc.stream("m", "list", "")) {
+            assertThat(stream.next()).isEqualTo(new OtpErlangAtom("a"));
+        }
+        final ReplayOtpRpc replay = new ReplayOtpRpc(saveAndLoad());
+        final List<OtpErlangObject> elements = new ArrayList<>();
+        try (RpcStream stream = replay.stream("m", "list", "")) {
+            stream.forEachRemaining(elements::add);
+        }
+        assertThat(elements).containsExactly(new OtpErlangAtom("a"),
+                new OtpErlangAtom("b")).inOrder();
+    }
+
+    @Test
+    public void replayedCallsCanBeRecordedAgain() throws RpcException, IOException {
+        rpc.call("m", "f", "i", 1);
+        rpc.call("m", "f", "i", 2);
+        final RpcRecording copy = new RpcRecording("node@host");
+        final RecordingOtpRpc again = new RecordingOtpRpc(
+                new ReplayOtpRpc(saveAndLoad()), copy);
+        again.call("m", "f", "i", 2);
+        again.call("m", "f", "i", 1);
+        assertThat(copy.size()).isEqualTo(2);
+        assertThat(copy.next("m", "f", new OtpErlangObject[] { new OtpErlangLong(1) })
+                .getValue()).isEqualTo(new OtpErlangLong(1));
+    }
+
+    private RpcRecording saveAndLoad() throws IOException {
+        recording.save(file);
+        return RpcRecording.load(file);
+    }
+
+    private static OtpErlangObject mkReport(final String tag,
+            final OtpErlangObject msg) {
+        return new OtpErlangTuple(
+                new OtpErlangObject[] { new OtpErlangAtom(tag), msg });
+    }
+}
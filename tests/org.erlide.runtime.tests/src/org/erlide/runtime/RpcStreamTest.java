@@ -0,0 +1,284 @@
+package org.erlide.runtime;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.erlide.runtime.internal.rpc.OtpRpc;
+import org.erlide.runtime.rpc.RpcException;
+import org.erlide.runtime.rpc.RpcPriority;
+import org.erlide.runtime.rpc.RpcStream;
+import org.erlide.runtime.rpc.RpcTimeoutException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.ericsson.otp.erlang.OtpErlangAtom;
+import com.ericsson.otp.erlang.OtpErlangExit;
+import com.ericsson.otp.erlang.OtpErlangList;
+import com.ericsson.otp.erlang.OtpErlangLong;
+import com.ericsson.otp.erlang.OtpErlangObject;
+import com.ericsson.otp.erlang.OtpErlangPid;
+import com.ericsson.otp.erlang.OtpErlangTuple;
+import com.ericsson.otp.erlang.OtpMbox;
+import com.ericsson.otp.erlang.OtpNode;
+import com.google.common.collect.Lists;
+
+/**
+ * Streamed calls answered by a fake rex server on a local node, which does what the
+ * expression sent by a streamed call does: it sends the list result in chunks from a
+ * mailbox linked to the caller, waits for acknowledgements when too many are out, and
+ * replies with the number of chunks. The runtime is only started to have epmd around.
+ */
+public class RpcStreamTest extends AbstractRuntimeTest {
+
+    private static final int SIZE = 1000;
+    private static final OtpErlangAtom CANCELLED = new OtpErlangAtom("cancelled");
+    private static final OtpErlangAtom TIMEOUT = new OtpErlangAtom("timeout");
+
+    private OtpNode node;
+    private OtpMbox rex;
+    private OtpRpc rpc;
+    // the chunks sent by the workers, and the reasons they were stopped for
+    private final AtomicInteger sent = new AtomicInteger();
+    private final BlockingQueue<OtpErlangObject> exits = new LinkedBlockingQueue<>();
+
+    @Before
+    public void createNode() throws IOException {
+        node = new OtpNode("stream" + System.currentTimeMillis(), "c");
+        rex = node.createMbox("rex");
+        final Thread server = new Thread(this::serve, "fake rex");
+        server.setDaemon(true);
+        server.start();
+
+        rpc = new OtpRpc(node, node.node(), false, RpcPriority.INTERACTIVE);
+        rpc.setConnected(true);
+    }
+
+    @After
+    public void closeNode() {
+        if (node != null) {
+            node.close();
+        }
+    }
+
+    @Test
+    public void elementsComeInOrder() throws RpcException {
+        final List<OtpErlangObject> result = Lists.newArrayList();
+        try (final RpcStream stream = rpc.stream("m", "list", "")) {
+            while (stream.hasNext()) {
+                result.add(stream.next());
+            }
+        }
+        assertThat(result).hasSize(SIZE);
+        assertThat(result.get(0)).isEqualTo(new OtpErlangLong(0));
+        assertThat(result.get(SIZE - 1)).isEqualTo(new OtpErlangLong(SIZE - 1));
+        assertThat(sent.get()).isEqualTo((SIZE + RpcStream.CHUNK_SIZE - 1)
+                / RpcStream.CHUNK_SIZE);
+    }
+
+    @Test
+    public void chunksAreHandedOutWhole() throws RpcException {
+        try (final RpcStream stream = rpc.stream("m", "list", "")) {
+            assertThat(stream.next()).isEqualTo(new OtpErlangLong(0));
+            assertThat(stream.nextChunk()).hasSize(RpcStream.CHUNK_SIZE - 1);
+            final List<OtpErlangObject> chunk = stream.nextChunk();
+            assertThat(chunk).hasSize(RpcStream.CHUNK_SIZE);
+            assertThat(chunk.get(0)).isEqualTo(new OtpErlangLong(RpcStream.CHUNK_SIZE));
+        }
+    }
+
+    @Test
+    public void replyBeforeTheLastChunksIsWaitedFor() throws RpcException {
+        int count = 0;
+        try (final RpcStream stream = rpc.stream("m", "early", "")) {
+            while (stream.hasNext()) {
+                stream.next();
+                count++;
+            }
+        }
+        assertThat(count).isEqualTo(SIZE);
+    }
+
+    @Test
+    public void okTupleIsUnwrapped() throws RpcException {
+        try (final RpcStream stream = rpc.stream("m", "ok", "")) {
+            assertThat(stream.next()).isEqualTo(new OtpErlangAtom("a"));
+            assertThat(stream.next()).isEqualTo(new OtpErlangAtom("b"));
+            assertThat(stream.hasNext()).isFalse();
+        }
+    }
+
+    @Test(expected = RpcException.class)
+    public void badRpcIsThrownOnClose() throws RpcException {
+        try (final RpcStream stream = rpc.stream("m", "bad", "")) {
+            assertThat(stream.hasNext()).isFalse();
+            assertThat(stream.getError()).isNotNull();
+        }
+    }
+
+    @Test
+    public void missingChunkTimesOutAndStopsTheSender() throws InterruptedException {
+        final RpcStream stream;
+        try {
+            stream = rpc.stream(100, "m", "silent", "");
+        } catch (final RpcException e) {
+            throw new IllegalStateException(e);
+        }
+        assertThat(stream.hasNext()).isFalse();
+        assertThat(stream.getError()).isInstanceOf(RpcTimeoutException.class);
+        assertThat(exits.poll(5, TimeUnit.SECONDS)).isEqualTo(TIMEOUT);
+    }
+
+    @Test
+    public void senderWaitsForTheChunksToBeTaken()
+            throws RpcException, InterruptedException {
+        try (final RpcStream stream = rpc.stream("m", "endless", "")) {
+            assertThat(stream.next()).isEqualTo(new OtpErlangLong(0));
+            Thread.sleep(300);
+            // the one being used and the window
+            assertThat(sent.get()).isEqualTo(RpcStream.WINDOW + 1);
+        }
+    }
+
+    @Test
+    public void closingEarlyStopsTheSender() throws RpcException, InterruptedException {
+        final RpcStream stream = rpc.stream("m", "endless", "");
+        assertThat(stream.next()).isEqualTo(new OtpErlangLong(0));
+        stream.close();
+        assertThat(exits.poll(5, TimeUnit.SECONDS)).isEqualTo(CANCELLED);
+        assertThat(stream.hasNext()).isFalse();
+        stream.close();
+    }
+
+    @Test
+    public void cancelStopsTheSender() throws RpcException, InterruptedException {
+        try (final RpcStream stream = rpc.stream("m", "endless", "")) {
+            assertThat(stream.hasNext()).isTrue();
+            assertThat(stream.cancel()).isTrue();
+            assertThat(exits.poll(5, TimeUnit.SECONDS)).isEqualTo(CANCELLED);
+            assertThat(stream.hasNext()).isFalse();
+            assertThat(stream.cancel()).isFalse();
+        }
+    }
+
+    private void serve() {
+        try {
+            while (true) {
+                final OtpErlangTuple msg = (OtpErlangTuple) rex.receive();
+                final OtpErlangPid from = (OtpErlangPid) msg.elementAt(0);
+                final OtpErlangTuple call = (OtpErlangTuple) msg.elementAt(1);
+                final Thread worker = new Thread(() -> work(from, call), "fake worker");
+                worker.setDaemon(true);
+                worker.start();
+            }
+        } catch (final Exception e) {
+            // node closed
+        }
+    }
+
+    private void work(final OtpErlangPid from, final OtpErlangTuple call) {
+        String fun = null;
+        OtpErlangPid link = null;
+        OtpErlangObject ref = null;
+        int chunkSize = 0;
+        int window = 0;
+        final OtpErlangList args = (OtpErlangList) call.elementAt(3);
+        for (final OtpErlangObject b : (OtpErlangList) args.elementAt(1)) {
+            final OtpErlangTuple t = (OtpErlangTuple) b;
+            final String name = ((OtpErlangAtom) t.elementAt(0)).atomValue();
+            final OtpErlangObject value = t.elementAt(1);
+            if ("F".equals(name)) {
+                fun = ((OtpErlangAtom) value).atomValue();
+            } else if ("P".equals(name)) {
+                link = (OtpErlangPid) value;
+            } else if ("S".equals(name)) {
+                ref = value;
+            } else if ("N".equals(name)) {
+                chunkSize = (int) ((OtpErlangLong) value).longValue();
+            } else if ("W".equals(name)) {
+                window = (int) ((OtpErlangLong) value).longValue();
+            }
+        }
+        final OtpMbox worker = node.createMbox();
+        try {
+            worker.link(link);
+            switch (fun) {
+            case "list":
+                reply(worker, link, from,
+                        send(worker, link, ref, SIZE, chunkSize, window));
+                break;
+            case "early":
+                // all chunks fit in the window, the reply goes first
+                reply(worker, link, from, done(ref, (SIZE + chunkSize - 1) / chunkSize));
+                send(worker, link, ref, SIZE, chunkSize, SIZE);
+                break;
+            case "endless":
+                send(worker, link, ref, Integer.MAX_VALUE, chunkSize, window);
+                break;
+            case "ok":
+                reply(worker, link, from, new OtpErlangTuple(new OtpErlangObject[] {
+                        new OtpErlangAtom("ok"),
+                        new OtpErlangList(new OtpErlangObject[] {
+                                new OtpErlangAtom("a"), new OtpErlangAtom("b") }) }));
+                break;
+            case "bad":
+                reply(worker, link, from, new OtpErlangTuple(new OtpErlangObject[] {
+                        new OtpErlangAtom("badrpc"), new OtpErlangAtom("undef") }));
+                break;
+            default:
+                worker.receive();
+                break;
+            }
+        } catch (final OtpErlangExit e) {
+            exits.add(e.reason());
+        } catch (final Exception e) {
+            // node closed
+        }
+    }
+
+    /*
+     * Send the numbers below size in chunks, waiting for an acknowledgement when the
+     * window is full.
+     */
+    private OtpErlangObject send(final OtpMbox worker, final OtpErlangPid to,
+            final OtpErlangObject ref, final int size, final int chunkSize,
+            final int window) throws Exception {
+        int credit = window;
+        int chunks = 0;
+        for (int i = 0; i < size; i += chunkSize) {
+            if (credit == 0) {
+                worker.receive();
+                credit++;
+            }
+            final int n = Math.min(chunkSize, size - i);
+            final OtpErlangObject[] items = new OtpErlangObject[n];
+            for (int j = 0; j < n; j++) {
+                items[j] = new OtpErlangLong(i + j);
+            }
+            worker.send(to, new OtpErlangTuple(new OtpErlangObject[] { ref,
+                    new OtpErlangAtom("chunk"), worker.self(), new OtpErlangList(items) }));
+            sent.incrementAndGet();
+            chunks++;
+            credit--;
+        }
+        return done(ref, chunks);
+    }
+
+    private static OtpErlangObject done(final OtpErlangObject ref, final int chunks) {
+        return new OtpErlangTuple(new OtpErlangObject[] { ref, new OtpErlangAtom("done"),
+                new OtpErlangLong(chunks) });
+    }
+
+    private void reply(final OtpMbox worker, final OtpErlangPid link,
+            final OtpErlangPid from, final OtpErlangObject result) {
+        worker.unlink(link);
+        rex.send(from, new OtpErlangTuple(
+                new OtpErlangObject[] { new OtpErlangAtom("rex"), result }));
+    }
+}
@@ -0,0 +1,157 @@
+package org.erlide.util;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.erlide.util.erlang.Converters;
+import org.erlide.util.erlang.Converters.ToErlang;
+import org.erlide.util.erlang.OtpErlang;
+import org.erlide.util.erlang.SignatureException;
+import org.erlide.util.erlang.TypeConverter;
+import org.junit.Test;
+
+import com.ericsson.otp.erlang.OtpErlangAtom;
+import com.ericsson.otp.erlang.OtpErlangList;
+import com.ericsson.otp.erlang.OtpErlangLong;
+import com.ericsson.otp.erlang.OtpErlangObject;
+import com.ericsson.otp.erlang.OtpErlangString;
+import com.ericsson.otp.erlang.OtpErlangTuple;
+
+public class ConvertersTest {
+
+    public static class Rec {
+        final String name;
+        final long line;
+
+        Rec(final String name, final long line) {
+            this.name = name;
+            this.line = line;
+        }
+
+        public static Rec fromErlangObject(final OtpErlangObject obj)
+                throws SignatureException {
+            final OtpErlangTuple t = (OtpErlangTuple) obj;
+            if (t.arity() != 3) {
+                throw new SignatureException("bad record " + obj);
+            }
+            return new Rec(((OtpErlangAtom) t.elementAt(1)).atomValue(),
+                    ((OtpErlangLong) t.elementAt(2)).longValue());
+        }
+    }
+
+    private static OtpErlangObject rec(final String name, final long line) {
+        return OtpErlang.mkTuple(new OtpErlangAtom("rec"), new OtpErlangAtom(name),
+                new OtpErlangLong(line));
+    }
+
+    private static OtpErlangObject[] convert(final String signature,
+            final Object... args) throws SignatureException {
+        return Converters.convert(Converters.forSignature(signature, args.length), args);
+    }
+
+    @Test
+    public void signatureIsCompiledOnce() throws SignatureException {
+        assertThat(Converters.forSignature("assso"))
+                .isSameInstanceAs(Converters.forSignature("assso"));
+        assertThat(Converters.forClass(Rec[][].class))
+                .isSameInstanceAs(Converters.forClass(Rec[][].class));
+    }
+
+    @Test
+    public void convertsArguments() throws SignatureException {
+        final OtpErlangObject[] result = ConvertersTest.convert("assso", "mod", "a", "b",
+                "c", Boolean.TRUE);
+        assertThat(result).asList().containsExactly(new OtpErlangAtom("mod"),
+                new OtpErlangString("a"), new OtpErlangString("b"),
+                new OtpErlangString("c"), new OtpErlangAtom("true")).inOrder();
+    }
+
+    @Test
+    public void convertsListsAndTerms() throws SignatureException {
+        final OtpErlangObject term = new OtpErlangAtom("x");
+        final OtpErlangObject[] result = ConvertersTest.convert("lslslsoo",
+                Arrays.asList("a", "b"), new String[] { "c" }, Arrays.asList(),
+                Boolean.TRUE, Boolean.FALSE);
+        assertThat(result[0]).isEqualTo(new OtpErlangList(new OtpErlangObject[] {
+                new OtpErlangString("a"), new OtpErlangString("b") }));
+        assertThat(result[1]).isEqualTo(new OtpErlangList(
+                new OtpErlangObject[] { new OtpErlangString("c") }));
+        assertThat(result[2]).isEqualTo(new OtpErlangList());
+        assertThat(result[4]).isEqualTo(new OtpErlangAtom("false"));
+
+        final OtpErlangObject[] other = ConvertersTest.convert("sslsx", "a", "b",
+                Arrays.asList("c"), term);
+        assertThat(other[3]).isSameInstanceAs(term);
+    }
+
+    @Test
+    public void sameResultsAsGenericConversion() throws SignatureException {
+        final Object[][] cases = { { Integer.valueOf(3), "i" },
+                { Long.valueOf(1L << 40), "i" }, { "s", "b" },
+                { new Object[] { "a", Integer.valueOf(1) }, "2si" },
+                { new Object[] { "a", "b" }, "3sss" }, { Character.valueOf('c'), "i" },
+                { Double.valueOf(1.5), "d" }, { new String[] { "a" }, "la" } };
+        for (final Object[] c : cases) {
+            final ToErlang converter = Converters.forSignature((String) c[1])[0];
+            Object expected;
+            try {
+                expected = TypeConverter.java2erlang(c[0],
+                        org.erlide.util.erlang.Signature.parse((String) c[1])[0]);
+            } catch (final Exception e) {
+                expected = e.getClass();
+            }
+            Object actual;
+            try {
+                actual = converter.convert(c[0]);
+            } catch (final Exception e) {
+                actual = e.getClass();
+            }
+            assertThat(actual).isEqualTo(expected);
+        }
+    }
+
+    @Test(expected = SignatureException.class)
+    public void badArgumentFails() throws SignatureException {
+        ConvertersTest.convert("ai", "a", "b");
+    }
+
+    @Test(expected = SignatureException.class)
+    public void argumentCountMustMatch() throws SignatureException {
+        ConvertersTest.convert("ai", "a");
+    }
+
+    @Test
+    public void convertsNestedListsOfRecords() throws SignatureException {
+        final OtpErlangList term = new OtpErlangList(new OtpErlangObject[] {
+                new OtpErlangList(
+                        new OtpErlangObject[] { ConvertersTest.rec("f", 1),
+                                ConvertersTest.rec("g", 2) }),
+                new OtpErlangList() });
+
+        final Rec[][] result = (Rec[][]) TypeConverter.erlang2java(term, Rec[][].class);
+        assertThat(result.length).isEqualTo(2);
+        assertThat(result[0][1].name).isEqualTo("g");
+        assertThat(result[0][1].line).isEqualTo(2L);
+        assertThat(result[1]).isEmpty();
+
+        final long[] lines = (long[]) TypeConverter.erlang2java(new OtpErlangList(
+                new OtpErlangObject[] { new OtpErlangLong(1), new OtpErlangLong(2) }),
+                long[].class);
+        assertThat(lines).asList().containsExactly(1L, 2L).inOrder();
+        final List<?> list = (List<?>) TypeConverter.erlang2java(term.elementAt(1),
+                List.class);
+        assertThat(list).isEmpty();
+    }
+
+    @Test(expected = SignatureException.class)
+    public void failingFactoryFails() throws SignatureException {
+        TypeConverter.erlang2java(new OtpErlangTuple(new OtpErlangObject[0]), Rec.class);
+    }
+
+    @Test(expected = SignatureException.class)
+    public void wrongTermFails() throws SignatureException {
+        TypeConverter.erlang2java(new OtpErlangAtom("a"), int.class);
+    }
+}
@@ -0,0 +1,88 @@
+package org.erlide.util;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.Iterator;
+import java.util.Map;
+
+import org.erlide.util.erlang.OtpBindings;
+import org.erlide.util.erlang.OtpErlang;
+import org.erlide.util.erlang.OtpParserException;
+import org.erlide.util.erlang.OtpPattern;
+import org.junit.Test;
+
+import com.ericsson.otp.erlang.OtpErlangAtom;
+import com.ericsson.otp.erlang.OtpErlangLong;
+import com.ericsson.otp.erlang.OtpErlangObject;
+
+public class OtpPatternTest {
+
+    @Test
+    public void compiledPatternIsReusable() throws OtpParserException {
+        final OtpPattern p = OtpPattern.compile("{put_chars, Enc:a, Chars}");
+        assertThat(p.getVariables()).containsExactly("Enc", "Chars").inOrder();
+
+        final OtpBindings b1 = p.match(OtpErlang.parse("{put_chars, unicode, \"x\"}"));
+        final OtpBindings b2 = p.match(OtpErlang.parse("{put_chars, latin1, \"y\"}"));
+        assertThat(b1.get("Enc")).isEqualTo(new OtpErlangAtom("unicode"));
+        assertThat(b2.get("Enc")).isEqualTo(new OtpErlangAtom("latin1"));
+        assertThat(b1.getAsString("Chars")).isEqualTo("x");
+
+        assertThat(p.match(OtpErlang.parse("{put_chars, \"x\", \"y\"}"))).isNull();
+        assertThat(p.match(OtpErlang.parse("{put_chars, unicode}"))).isNull();
+    }
+
+    @Test
+    public void repeatedVariablesMustBeEqual() throws OtpParserException {
+        final OtpPattern p = OtpPattern.compile("{W, [W | T]}");
+        assertThat(p.getVariables()).containsExactly("W", "T").inOrder();
+        assertThat(p.match(OtpErlang.parse("{a, [a, b]}")).get("T"))
+                .isEqualTo(OtpErlang.parse("[b]"));
+        assertThat(p.match(OtpErlang.parse("{a, [b, b]}"))).isNull();
+    }
+
+    @Test
+    public void earlierBindingsAreKept() throws OtpParserException {
+        final OtpBindings before = new OtpBindings();
+        before.put("X", new OtpErlangLong(1));
+        before.put("W", new OtpErlangAtom("a"));
+
+        final OtpPattern p = OtpPattern.compile("[W, V]");
+        final OtpBindings b = p.match(OtpErlang.parse("[a, b]"), before);
+        assertThat(b).hasSize(3);
+        assertThat(b.get("X")).isEqualTo(new OtpErlangLong(1));
+        assertThat(b.get("V")).isEqualTo(new OtpErlangAtom("b"));
+        assertThat(before).hasSize(2);
+
+        assertThat(p.match(OtpErlang.parse("[c, b]"), before)).isNull();
+    }
+
+    @Test
+    public void stringPatternsAreCompiledOnce() throws OtpParserException {
+        assertThat(OtpErlang.pattern("{ok, X}"))
+                .isSameInstanceAs(OtpErlang.pattern("{ok, X}"));
+    }
+
+    @Test
+    public void bindingsBehaveAsAMap() throws OtpParserException {
+        final OtpBindings b = OtpErlang.match("{A, B, C}", "{1, 2, 3}");
+        assertThat(b.keySet()).containsExactly("A", "B", "C").inOrder();
+
+        b.put("D", new OtpErlangLong(4));
+        assertThat(b.remove("B")).isEqualTo(new OtpErlangLong(2));
+        assertThat(b.containsKey("B")).isFalse();
+        assertThat(b.put("A", new OtpErlangLong(5))).isEqualTo(new OtpErlangLong(1));
+
+        final Iterator<Map.Entry<String, OtpErlangObject>> it = b.entrySet().iterator();
+        assertThat(it.next().getKey()).isEqualTo("A");
+        it.remove();
+        assertThat(b.keySet()).containsExactly("C", "D").inOrder();
+        assertThat(b.getAll()).isEqualTo(b);
+
+        // the pattern's names weren't touched
+        assertThat(OtpErlang.pattern("{A, B, C}").getVariables())
+                .containsExactly("A", "B", "C").inOrder();
+        b.clear();
+        assertThat(b).isEmpty();
+    }
+}